@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mjsip.pool.PortPool;
+import org.mjsip.sdp.SdpMessage;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.call.Call;
+import org.mjsip.sip.call.CallListenerAdapter;
+import org.mjsip.sip.call.ExtendedCall;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+import org.mjsip.sip.provider.SipId;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.provider.SipProviderListener;
+
+/**
+ * {@link LoadScenario} answering all incoming calls.
+ *
+ * <p>
+ * Calls are accepted after the configured ring time and are kept until the caller hangs up.
+ * </p>
+ */
+class AnswerScenario extends LoadScenario implements SipProviderListener {
+
+	/**
+	 * Creates an {@link AnswerScenario} and starts listening for calls.
+	 */
+	AnswerScenario(SipProvider sipProvider, LoadGenConfig config, PortPool portPool, RtpPrompt prompt) {
+		super(sipProvider, config, new LoadStats("answer"), portPool, prompt);
+		sipProvider.addSelectiveListener(SipId.createMethodId(SipMethods.INVITE), this);
+	}
+
+	@Override
+	public void startAttempt(int user) {
+		// Calls are started by the remote side.
+	}
+
+	@Override
+	public void stop() {
+		_sipProvider.removeSelectiveListener(SipId.createMethodId(SipMethods.INVITE));
+	}
+
+	@Override
+	public void onReceivedMessage(SipProvider sipProvider, SipMessage msg) {
+		if (msg.isRequest() && msg.isInvite()) {
+			new ExtendedCall(sipProvider, msg, new Attempt());
+		}
+	}
+
+	/**
+	 * A single incoming call.
+	 */
+	private class Attempt extends CallListenerAdapter {
+
+		private final AtomicBoolean _finished = new AtomicBoolean();
+
+		private long _start;
+
+		private int _port = NO_MEDIA_PORT;
+
+		private ScheduledFuture<?> _accept;
+
+		private RtpPrompt.Stream _media;
+
+		@Override
+		public synchronized void onCallInvite(Call call, NameAddress callee, NameAddress caller, SdpMessage remoteSdp,
+				SipMessage invite) {
+			_start = System.nanoTime();
+			_stats.attempts.inc();
+			_stats.active.incrementAndGet();
+			try {
+				_port = allocatePort();
+			} catch (PortPool.Exhausted ex) {
+				_finished.set(true);
+				_stats.active.decrementAndGet();
+				_stats.skipped.inc();
+				call.refuse();
+				return;
+			}
+			call.ring();
+			_stats.ringing.recordSince(_start);
+
+			long ringTime = _config.getRingTime();
+			if (ringTime > 0) {
+				_accept = _sipProvider.scheduler().schedule(ringTime, () -> accept(call, remoteSdp));
+			} else {
+				accept(call, remoteSdp);
+			}
+		}
+
+		private synchronized void accept(Call call, SdpMessage remoteSdp) {
+			if (_finished.get()) {
+				return;
+			}
+			call.accept(localSdp(_port));
+			_stats.response.recordSince(_start);
+			_stats.succeeded.inc();
+			_media = startMedia(_port, remoteSdp);
+		}
+
+		@Override
+		public void onCallCancel(Call call, SipMessage cancel) {
+			finish();
+		}
+
+		@Override
+		public void onCallBye(Call call, SipMessage bye) {
+			finish();
+		}
+
+		@Override
+		public void onCallClosed(Call call, SipMessage resp) {
+			finish();
+		}
+
+		private void finish() {
+			if (!_finished.compareAndSet(false, true)) {
+				return;
+			}
+			synchronized (this) {
+				if (_accept != null) {
+					_accept.cancel(false);
+				}
+				releaseMedia(_port, _media);
+			}
+			_stats.active.decrementAndGet();
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.util.Vector;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.pool.PortPool;
+import org.mjsip.sdp.SdpMessage;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.call.Call;
+import org.mjsip.sip.call.CallListenerAdapter;
+import org.mjsip.sip.call.ExtendedCall;
+import org.mjsip.sip.call.SipUser;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.SipProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link LoadScenario} placing INVITE/ACK/BYE calls to a single target.
+ */
+class CallScenario extends LoadScenario {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CallScenario.class);
+
+	private final NameAddress _target;
+
+	private final String _domain;
+
+	/**
+	 * Creates a {@link CallScenario}.
+	 */
+	CallScenario(SipProvider sipProvider, LoadGenConfig config, PortPool portPool, RtpPrompt prompt) {
+		super(sipProvider, config, new LoadStats("call"), portPool, prompt);
+		_target = NameAddress.parse(config.getTarget());
+		_domain = _target.getAddress().toSipURI().getHost();
+	}
+
+	@Override
+	public void startAttempt(int user) {
+		int port;
+		try {
+			port = allocatePort();
+		} catch (PortPool.Exhausted ex) {
+			_stats.skipped.inc();
+			return;
+		}
+		new Attempt(user, port).start();
+	}
+
+	/**
+	 * A single call.
+	 */
+	private class Attempt extends CallListenerAdapter {
+
+		private final int _user;
+
+		private final int _port;
+
+		private final AtomicBoolean _finished = new AtomicBoolean();
+
+		private long _start;
+
+		private boolean _ringing;
+
+		private ExtendedCall _call;
+
+		private ScheduledFuture<?> _hangup;
+
+		private RtpPrompt.Stream _media;
+
+		Attempt(int user, int port) {
+			_user = user;
+			_port = port;
+		}
+
+		void start() {
+			_stats.attempts.inc();
+			_stats.active.incrementAndGet();
+			_call = new ExtendedCall(_sipProvider, new SipUser(userAddress(_user, _domain)), this);
+			_start = System.nanoTime();
+			_call.call(_target, localSdp(_port));
+		}
+
+		@Override
+		public void onCallProgress(Call call, SipMessage resp) {
+			onRinging();
+		}
+
+		@Override
+		public void onCallRinging(Call call, SipMessage resp) {
+			onRinging();
+		}
+
+		@Override
+		public void onCallConfirmableProgress(Call call, SipMessage resp) {
+			onRinging();
+		}
+
+		private synchronized void onRinging() {
+			if (!_ringing) {
+				_ringing = true;
+				_stats.ringing.recordSince(_start);
+			}
+		}
+
+		@Override
+		public synchronized void onCallAccepted(Call call, SdpMessage remoteSdp, SipMessage resp) {
+			_stats.response.recordSince(_start);
+			_stats.succeeded.inc();
+			if (_finished.get()) {
+				return;
+			}
+			_media = startMedia(_port, remoteSdp);
+			_hangup = _sipProvider.scheduler().schedule(_config.getCallDuration(), this::hangup);
+		}
+
+		private void hangup() {
+			LOG.debug("Hanging up call {}.", _call.getCallId());
+			_call.hangup();
+		}
+
+		@Override
+		public void onCallRefused(Call call, String reason, SipMessage resp) {
+			finish(_stats.failed);
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public void onCallRedirected(Call call, String reason, Vector contacts, SipMessage resp) {
+			finish(_stats.failed);
+		}
+
+		@Override
+		public void onCallTimeout(Call call) {
+			finish(_stats.timeouts);
+		}
+
+		@Override
+		public void onCallBye(Call call, SipMessage bye) {
+			finish(null);
+		}
+
+		@Override
+		public void onCallClosed(Call call, SipMessage resp) {
+			finish(null);
+		}
+
+		private void finish(Counter outcome) {
+			if (!_finished.compareAndSet(false, true)) {
+				return;
+			}
+			if (outcome != null) {
+				outcome.inc();
+			}
+			synchronized (this) {
+				if (_hangup != null) {
+					_hangup.cancel(false);
+				}
+				releaseMedia(_port, _media);
+			}
+			_stats.active.decrementAndGet();
+		}
+	}
+
+}
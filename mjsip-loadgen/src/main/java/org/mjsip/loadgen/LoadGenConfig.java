@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import org.kohsuke.args4j.Option;
+import org.mjsip.config.YesNoHandler;
+
+/**
+ * Configuration options of the {@link LoadGenerator}.
+ */
+public class LoadGenConfig {
+
+	/**
+	 * The traffic a {@link LoadGenerator} produces.
+	 */
+	public enum Scenario {
+		/** INVITE/ACK/BYE calls to the target. */
+		CALL,
+
+		/** REGISTER requests for a range of users at the target registrar. */
+		REGISTER,
+
+		/** Answer all incoming calls. */
+		ANSWER;
+	}
+
+	@Option(name = "--scenario", usage = "The scenario to run: call, register, or answer.")
+	private Scenario _scenario = Scenario.CALL;
+
+	@Option(name = "--target", usage = "The callee URI for calls, or the registrar URI for registrations, e.g. sip:uas@127.0.0.1:5070.")
+	private String _target;
+
+	@Option(name = "--user", usage = "The local user name, '%d' is replaced with the user index.")
+	private String _user = "load%d";
+
+	@Option(name = "--domain", usage = "The domain of the local users, by default the host of the target.")
+	private String _domain;
+
+	@Option(name = "--users", usage = "The number of distinct users that calls and registrations cycle through.")
+	private int _users = 1;
+
+	@Option(name = "--rate", usage = "The number of calls or registrations started per second.")
+	private double _rate = 10;
+
+	@Option(name = "--limit", usage = "The total number of calls or registrations, 0 for no limit.")
+	private long _limit = 0;
+
+	@Option(name = "--max-active", usage = "The maximum number of calls or registrations in progress, attempts above are skipped.")
+	private int _maxActive = 1000;
+
+	@Option(name = "--call-duration", usage = "The time (in milliseconds) a call is held after it has been answered.")
+	private long _callDuration = 5000;
+
+	@Option(name = "--ring-time", usage = "The time (in milliseconds) an answered call rings before it is accepted.")
+	private long _ringTime = 0;
+
+	@Option(name = "--rtp-prompt", usage = "A file with raw G.711 u-law samples that is sent as RTP during calls.")
+	private String _rtpPrompt;
+
+	@Option(name = "--report-interval", usage = "The interval (in milliseconds) of progress reports.")
+	private long _reportInterval = 1000;
+
+	@Option(name = "--loopback", handler = YesNoHandler.class, usage = "Whether to start a proxy/registrar and an answering user agent in the same process on the loopback interface.")
+	private boolean _loopback = false;
+
+	@Option(name = "--loopback-port", usage = "The SIP port of the loopback proxy, the answering user agent uses the next port.")
+	private int _loopbackPort = 5070;
+
+	/**
+	 * The traffic to produce.
+	 */
+	public Scenario getScenario() {
+		return _scenario;
+	}
+
+	/** @see #getScenario() */
+	public void setScenario(Scenario scenario) {
+		_scenario = scenario;
+	}
+
+	/**
+	 * The URI of the callee or registrar.
+	 */
+	public String getTarget() {
+		return _target;
+	}
+
+	/** @see #getTarget() */
+	public void setTarget(String target) {
+		_target = target;
+	}
+
+	/**
+	 * Pattern for the local user names, <code>%d</code> is replaced with the user index.
+	 */
+	public String getUser() {
+		return _user;
+	}
+
+	/** @see #getUser() */
+	public void setUser(String user) {
+		_user = user;
+	}
+
+	/**
+	 * The domain of the local users, <code>null</code> for the host of the {@link #getTarget()
+	 * target}.
+	 */
+	public String getDomain() {
+		return _domain;
+	}
+
+	/** @see #getDomain() */
+	public void setDomain(String domain) {
+		_domain = domain;
+	}
+
+	/**
+	 * The number of distinct users.
+	 */
+	public int getUsers() {
+		return _users;
+	}
+
+	/** @see #getUsers() */
+	public void setUsers(int users) {
+		_users = users;
+	}
+
+	/**
+	 * The number of attempts started per second.
+	 */
+	public double getRate() {
+		return _rate;
+	}
+
+	/** @see #getRate() */
+	public void setRate(double rate) {
+		_rate = rate;
+	}
+
+	/**
+	 * The total number of attempts, <code>0</code> for no limit.
+	 */
+	public long getLimit() {
+		return _limit;
+	}
+
+	/** @see #getLimit() */
+	public void setLimit(long limit) {
+		_limit = limit;
+	}
+
+	/**
+	 * The maximum number of attempts in progress.
+	 */
+	public int getMaxActive() {
+		return _maxActive;
+	}
+
+	/** @see #getMaxActive() */
+	public void setMaxActive(int maxActive) {
+		_maxActive = maxActive;
+	}
+
+	/**
+	 * The time in milliseconds a call is held after it has been answered.
+	 */
+	public long getCallDuration() {
+		return _callDuration;
+	}
+
+	/** @see #getCallDuration() */
+	public void setCallDuration(long callDuration) {
+		_callDuration = callDuration;
+	}
+
+	/**
+	 * The time in milliseconds an incoming call rings before it is accepted.
+	 */
+	public long getRingTime() {
+		return _ringTime;
+	}
+
+	/** @see #getRingTime() */
+	public void setRingTime(long ringTime) {
+		_ringTime = ringTime;
+	}
+
+	/**
+	 * The file with raw G.711 u-law samples to send during calls, <code>null</code> for calls
+	 * without media.
+	 */
+	public String getRtpPrompt() {
+		return _rtpPrompt;
+	}
+
+	/** @see #getRtpPrompt() */
+	public void setRtpPrompt(String rtpPrompt) {
+		_rtpPrompt = rtpPrompt;
+	}
+
+	/**
+	 * The interval of progress reports in milliseconds.
+	 */
+	public long getReportInterval() {
+		return _reportInterval;
+	}
+
+	/** @see #getReportInterval() */
+	public void setReportInterval(long reportInterval) {
+		_reportInterval = reportInterval;
+	}
+
+	/**
+	 * Whether to start a proxy/registrar and an answering user agent in the same process.
+	 */
+	public boolean isLoopback() {
+		return _loopback;
+	}
+
+	/** @see #isLoopback() */
+	public void setLoopback(boolean loopback) {
+		_loopback = loopback;
+	}
+
+	/**
+	 * The SIP port of the loopback proxy.
+	 */
+	public int getLoopbackPort() {
+		return _loopbackPort;
+	}
+
+	/** @see #getLoopbackPort() */
+	public void setLoopbackPort(int loopbackPort) {
+		_loopbackPort = loopbackPort;
+	}
+
+	/**
+	 * The name of the user with the given index.
+	 */
+	public String getUserName(int index) {
+		return String.format(_user, Integer.valueOf(index));
+	}
+
+}
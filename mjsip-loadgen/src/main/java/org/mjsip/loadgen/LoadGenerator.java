@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.config.OptionParser;
+import org.mjsip.metrics.Histogram;
+import org.mjsip.metrics.MetricsConfig;
+import org.mjsip.metrics.MetricsExporter;
+import org.mjsip.pool.PortConfig;
+import org.mjsip.pool.PortPool;
+import org.mjsip.pool.SocketPool;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.Scheduler;
+import org.mjsip.time.SchedulerConfig;
+
+/**
+ * SIP load generator driving calls or registrations at a fixed rate and reporting call rate,
+ * retransmissions and latency percentiles while running.
+ *
+ * <p>
+ * All attempts are started and timed from the scheduler of the SIP stack, so that a handful of
+ * threads can keep thousands of calls in progress. With <code>--loopback</code>, a proxy/registrar
+ * and an answering user agent are started in the same process to benchmark the stack on a single
+ * host.
+ * </p>
+ */
+public class LoadGenerator {
+
+	private static final double NANOS_PER_MS = 1e6;
+
+	private final LoadScenario _scenario;
+
+	private final LoadGenConfig _config;
+
+	private final ScheduledExecutorService _scheduler;
+
+	private final PrintStream _out;
+
+	private final CountDownLatch _done = new CountDownLatch(1);
+
+	private ScheduledFuture<?> _pacer;
+
+	private ScheduledFuture<?> _reporter;
+
+	/** Attempts started, only modified by the pacer. */
+	private volatile long _started;
+
+	private volatile boolean _pacing;
+
+	private long _startTime;
+
+	private long _lastTime;
+
+	private long _lastAttempts;
+
+	/**
+	 * Creates a {@link LoadGenerator}.
+	 *
+	 * @param scenario
+	 *        The traffic to produce.
+	 * @param config
+	 *        The options.
+	 * @param scheduler
+	 *        The scheduler for pacing and reporting.
+	 * @param out
+	 *        The stream to report progress to.
+	 */
+	LoadGenerator(LoadScenario scenario, LoadGenConfig config, ScheduledExecutorService scheduler,
+			PrintStream out) {
+		_scenario = scenario;
+		_config = config;
+		_scheduler = scheduler;
+		_out = out;
+	}
+
+	/**
+	 * Starts producing traffic.
+	 */
+	public void start() {
+		_startTime = _lastTime = System.nanoTime();
+		_out.println(String.format("%8s %8s %7s %9s %9s %7s %7s %7s %7s %9s %9s %9s",
+			"time[s]", "rate[/s]", "active", "attempts", "ok", "failed", "timeout", "skipped", "retrans",
+			"p50[ms]", "p90[ms]", "p99[ms]"));
+
+		if (_config.getScenario() != LoadGenConfig.Scenario.ANSWER) {
+			_pacing = true;
+			long period = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / _config.getRate()));
+			_pacer = _scheduler.scheduleAtFixedRate(this::tick, 0, period, TimeUnit.NANOSECONDS);
+		}
+		long interval = _config.getReportInterval();
+		_reporter = _scheduler.scheduleAtFixedRate(this::report, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	private void tick() {
+		long limit = _config.getLimit();
+		if (limit > 0 && _started >= limit) {
+			_pacing = false;
+			_pacer.cancel(false);
+			return;
+		}
+
+		LoadStats stats = _scenario.getStats();
+		if (stats.active.get() >= _config.getMaxActive()) {
+			stats.skipped.inc();
+			return;
+		}
+
+		int user = (int) (_started % Math.max(1, _config.getUsers()));
+		_started++;
+		_scenario.startAttempt(user);
+	}
+
+	private void report() {
+		LoadStats stats = _scenario.getStats();
+		long now = System.nanoTime();
+		long attempts = stats.attempts.get();
+		double rate = (attempts - _lastAttempts) * 1e9 / Math.max(1, now - _lastTime);
+		_lastTime = now;
+		_lastAttempts = attempts;
+
+		Histogram response = stats.response;
+		_out.println(String.format("%8.1f %8.1f %7d %9d %9d %7d %7d %7d %7d %9.2f %9.2f %9.2f",
+			(now - _startTime) / 1e9, rate, stats.active.get(), attempts, stats.succeeded.get(), stats.failed.get(),
+			stats.timeouts.get(), stats.skipped.get(), LoadStats.retransmissions(), ms(response.getPercentile(0.5)),
+			ms(response.getPercentile(0.9)), ms(response.getPercentile(0.99))));
+
+		if (!_pacing && _pacer != null && stats.active.get() == 0) {
+			_done.countDown();
+		}
+	}
+
+	/**
+	 * Waits until all attempts have completed.
+	 */
+	public void await() throws InterruptedException {
+		_done.await();
+	}
+
+	/**
+	 * Stops producing traffic and prints a summary.
+	 *
+	 * @return Whether all attempts succeeded.
+	 */
+	public boolean stop() {
+		if (_pacer != null) {
+			_pacer.cancel(false);
+		}
+		_reporter.cancel(false);
+		_scenario.stop();
+
+		LoadStats stats = _scenario.getStats();
+		double seconds = (System.nanoTime() - _startTime) / 1e9;
+		_out.println();
+		_out.println(String.format("%s: %d attempts in %.1fs (%.1f/s), %d ok, %d failed, %d timeout, %d skipped, %d retransmissions",
+			stats.getScenario(), stats.attempts.get(), seconds, stats.attempts.get() / seconds,
+			stats.succeeded.get(), stats.failed.get(), stats.timeouts.get(), stats.skipped.get(),
+			LoadStats.retransmissions()));
+		printLatency("ringing", stats.ringing);
+		printLatency("response", stats.response);
+		return stats.failed.get() == 0 && stats.timeouts.get() == 0;
+	}
+
+	private void printLatency(String label, Histogram histogram) {
+		if (histogram.getCount() == 0) {
+			return;
+		}
+		_out.println(String.format("%-8s latency [ms]: mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f",
+			label, histogram.getMean() / NANOS_PER_MS, ms(histogram.getPercentile(0.5)),
+			ms(histogram.getPercentile(0.9)), ms(histogram.getPercentile(0.99)), ms(histogram.getPercentile(0.999)),
+			ms(histogram.getMax())));
+	}
+
+	private static double ms(long nanos) {
+		return nanos / NANOS_PER_MS;
+	}
+
+	/** The main method. */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		SipConfig sipConfig = new SipConfig();
+		SchedulerConfig schedulerConfig = new SchedulerConfig();
+		PortConfig portConfig = new PortConfig();
+		MetricsConfig metricsConfig = new MetricsConfig();
+		LoadGenConfig config = new LoadGenConfig();
+
+		OptionParser.parseOptions(args, ".mjsip-loadgen", sipConfig, schedulerConfig, portConfig, metricsConfig, config);
+
+		Scheduler scheduler = new ConfiguredScheduler(schedulerConfig);
+		PortPool portPool = portConfig.createPool();
+		RtpPrompt prompt = config.getRtpPrompt() != null ? RtpPrompt.load(config.getRtpPrompt()) : null;
+
+		Loopback loopback = null;
+		if (config.isLoopback()) {
+			String via = sipConfig.getViaAddrIPv4();
+			if (via == null || via.equalsIgnoreCase(SipConfig.AUTO_CONFIGURATION)) {
+				sipConfig.setViaAddrIPv4(Loopback.ADDRESS);
+			}
+			loopback = Loopback.start(config, scheduler, portPool, prompt);
+		}
+		if (config.getTarget() == null && config.getScenario() != LoadGenConfig.Scenario.ANSWER) {
+			System.err.println("No target given, use --target or --loopback.");
+			System.exit(2);
+		}
+
+		sipConfig.normalize();
+		MetricsExporter.startIfEnabled(metricsConfig);
+
+		SipProvider sipProvider = new SipProvider(sipConfig, scheduler);
+		LoadScenario scenario;
+		switch (config.getScenario()) {
+			case REGISTER:
+				scenario = new RegisterScenario(sipProvider, config, portPool);
+				break;
+			case ANSWER:
+				scenario = new AnswerScenario(sipProvider, config, portPool, prompt);
+				break;
+			default:
+				scenario = new CallScenario(sipProvider, config, portPool, prompt);
+				break;
+		}
+
+		LoadGenerator generator = new LoadGenerator(scenario, config, scheduler.scheduler(), System.out);
+		generator.start();
+		generator.await();
+		boolean ok = generator.stop();
+
+		sipProvider.halt();
+		if (loopback != null) {
+			loopback.close();
+		}
+		if (portPool instanceof SocketPool) {
+			((SocketPool) portPool).close();
+		}
+		System.exit(ok ? 0 : 1);
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.io.IOException;
+
+import org.mjsip.pool.PortPool;
+import org.mjsip.pool.RtpSocketPair;
+import org.mjsip.sdp.MediaDescriptor;
+import org.mjsip.sdp.SdpMessage;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.provider.SipProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.UdpSocket;
+
+/**
+ * Base class for the traffic produced by a {@link LoadGenerator}.
+ */
+abstract class LoadScenario {
+
+	private static final Logger LOG = LoggerFactory.getLogger(LoadScenario.class);
+
+	/** SDP port for calls without media (discard). */
+	static final int NO_MEDIA_PORT = 9;
+
+	/** The provider to send requests with. */
+	protected final SipProvider _sipProvider;
+
+	/** The options. */
+	protected final LoadGenConfig _config;
+
+	/** The statistics of this scenario. */
+	protected final LoadStats _stats;
+
+	private final PortPool _portPool;
+
+	private final RtpPrompt _prompt;
+
+	/**
+	 * Creates a {@link LoadScenario}.
+	 *
+	 * @param portPool
+	 *        The pool of local RTP ports.
+	 * @param prompt
+	 *        The audio to send during calls, <code>null</code> for calls without media.
+	 */
+	protected LoadScenario(SipProvider sipProvider, LoadGenConfig config, LoadStats stats, PortPool portPool,
+			RtpPrompt prompt) {
+		_sipProvider = sipProvider;
+		_config = config;
+		_stats = stats;
+		_portPool = portPool;
+		_prompt = prompt;
+	}
+
+	/**
+	 * The statistics of this scenario.
+	 */
+	public LoadStats getStats() {
+		return _stats;
+	}
+
+	/**
+	 * Starts a new attempt.
+	 *
+	 * @param user
+	 *        The index of the local user to use.
+	 */
+	public abstract void startAttempt(int user);
+
+	/**
+	 * Stops accepting traffic.
+	 */
+	public void stop() {
+		// No resources by default.
+	}
+
+	/**
+	 * The address of the local user with the given index.
+	 */
+	protected NameAddress userAddress(int user, String defaultDomain) {
+		String domain = _config.getDomain() != null ? _config.getDomain() : defaultDomain;
+		return new NameAddress(new SipURI(_config.getUserName(user), domain));
+	}
+
+	/**
+	 * Allocates a local RTP port for a call.
+	 *
+	 * @return The port, or {@link #NO_MEDIA_PORT} for calls without media.
+	 * @throws PortPool.Exhausted
+	 *         If no more ports are available.
+	 */
+	protected int allocatePort() {
+		return _prompt == null ? NO_MEDIA_PORT : _portPool.allocate();
+	}
+
+	/**
+	 * Starts sending the prompt to the audio stream of the given session description.
+	 *
+	 * @param port
+	 *        The port allocated with {@link #allocatePort()}.
+	 * @return The stream to pass to {@link #releaseMedia(int, RtpPrompt.Stream)}, or
+	 *         <code>null</code> if no media is sent.
+	 */
+	protected RtpPrompt.Stream startMedia(int port, SdpMessage remoteSdp) {
+		String address = remoteAddress(remoteSdp);
+		int remotePort = remotePort(remoteSdp);
+		if (port == NO_MEDIA_PORT || address == null || remotePort == 0) {
+			return null;
+		}
+
+		RtpSocketPair sockets = _portPool.getSockets(port);
+		try {
+			UdpSocket socket = sockets != null ? sockets.getRtpSocket() : new UdpSocket(port);
+			return _prompt.start(_sipProvider.scheduler().scheduler(), socket, sockets == null, address, remotePort);
+		} catch (IOException ex) {
+			LOG.warn("Cannot send RTP from port {}: {}", port, ex.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Stops the given stream and releases its port.
+	 */
+	protected void releaseMedia(int port, RtpPrompt.Stream stream) {
+		if (stream != null) {
+			stream.stop();
+		}
+		if (port != NO_MEDIA_PORT) {
+			_portPool.release(port);
+		}
+	}
+
+	/**
+	 * Creates a session description offering or answering a G.711 u-law stream.
+	 *
+	 * @param port
+	 *        The local RTP port, {@link #NO_MEDIA_PORT} if no media is sent.
+	 */
+	protected SdpMessage localSdp(int port) {
+		String address = _sipProvider.getViaAddress();
+		return new SdpMessage("v=0\r\n"
+				+ "o=loadgen 0 0 IN IP4 " + address + "\r\n"
+				+ "s=-\r\n"
+				+ "c=IN IP4 " + address + "\r\n"
+				+ "t=0 0\r\n"
+				+ "m=audio " + port + " RTP/AVP " + RtpPrompt.PAYLOAD_TYPE + "\r\n"
+				+ "a=rtpmap:" + RtpPrompt.PAYLOAD_TYPE + " PCMU/8000\r\n");
+	}
+
+	/**
+	 * The address of the audio stream in the given session description, <code>null</code> if
+	 * there is none.
+	 */
+	protected static String remoteAddress(SdpMessage sdp) {
+		MediaDescriptor audio = sdp == null ? null : sdp.getMediaDescriptor("audio");
+		if (audio == null) {
+			return null;
+		}
+		if (audio.getConnection() != null) {
+			return audio.getConnection().getAddress();
+		}
+		return sdp.getConnection() == null ? null : sdp.getConnection().getAddress();
+	}
+
+	/**
+	 * The port of the audio stream in the given session description, <code>0</code> if there is
+	 * none.
+	 */
+	protected static int remotePort(SdpMessage sdp) {
+		MediaDescriptor audio = sdp == null ? null : sdp.getMediaDescriptor("audio");
+		return audio == null ? 0 : audio.getMediaField().getPort();
+	}
+
+}
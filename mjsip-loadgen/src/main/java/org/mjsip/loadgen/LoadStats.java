@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Histogram;
+import org.mjsip.metrics.Metric;
+import org.mjsip.metrics.Metrics;
+
+/**
+ * Statistics of a {@link LoadScenario}.
+ *
+ * <p>
+ * Counters and histograms are kept in the {@link Metrics#global() global registry}, so that they can
+ * be exported together with the metrics of the SIP stack.
+ * </p>
+ */
+final class LoadStats {
+
+	private final String _scenario;
+
+	/** Attempts started. */
+	final Counter attempts;
+
+	/** Attempts that succeeded, i.e. answered calls or accepted registrations. */
+	final Counter succeeded;
+
+	/** Attempts that were rejected. */
+	final Counter failed;
+
+	/** Attempts that got no final response. */
+	final Counter timeouts;
+
+	/** Attempts that were not started, because too many attempts were in progress. */
+	final Counter skipped;
+
+	/** Time from starting an attempt to the first provisional response. */
+	final Histogram ringing;
+
+	/** Time from starting an attempt to the successful final response. */
+	final Histogram response;
+
+	/** Attempts in progress. */
+	final AtomicInteger active = new AtomicInteger();
+
+	/**
+	 * Creates {@link LoadStats}.
+	 *
+	 * @param scenario
+	 *        The name of the scenario used as label value.
+	 */
+	LoadStats(String scenario) {
+		_scenario = scenario;
+		Metrics metrics = Metrics.global();
+		attempts = metrics.counter("loadgen_attempts_total", "Attempts started by the load generator.",
+				"scenario", scenario);
+		succeeded = metrics.counter("loadgen_succeeded_total", "Attempts of the load generator that succeeded.",
+				"scenario", scenario);
+		failed = outcome("failed");
+		timeouts = outcome("timeout");
+		skipped = outcome("skipped");
+		ringing = metrics.histogram("loadgen_ringing_seconds",
+				"Time from starting an attempt to the first provisional response.", "scenario", scenario);
+		response = metrics.histogram("loadgen_response_seconds",
+				"Time from starting an attempt to the successful final response.", "scenario", scenario);
+	}
+
+	private Counter outcome(String outcome) {
+		return Metrics.global().counter("loadgen_unsuccessful_total", "Attempts of the load generator that did not succeed.",
+				"scenario", _scenario, "outcome", outcome);
+	}
+
+	/**
+	 * The scenario name.
+	 */
+	String getScenario() {
+		return _scenario;
+	}
+
+	/**
+	 * The number of retransmissions of all SIP transactions in this process.
+	 */
+	static long retransmissions() {
+		long result = 0;
+		for (Metric metric : Metrics.global().getMetrics()) {
+			if (metric instanceof Counter && metric.getName().equals("sip_retransmissions_total")) {
+				result += ((Counter) metric).get();
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.pool.PortPool;
+import org.mjsip.server.Proxy;
+import org.mjsip.server.ServerProfile;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.time.Scheduler;
+import org.mjsip.ua.registration.RegistrationClient;
+import org.mjsip.ua.registration.RegistrationClientListener;
+
+/**
+ * Proxy/registrar and answering user agent running in the same process on the loopback interface.
+ *
+ * <p>
+ * The answering user agent registers as {@link #UAS_USER} with the proxy and answers all calls, so
+ * that a complete call path can be benchmarked on a single host without external tools.
+ * </p>
+ */
+final class Loopback implements AutoCloseable {
+
+	/** The loopback address. */
+	static final String ADDRESS = "127.0.0.1";
+
+	/** The user name of the answering user agent. */
+	static final String UAS_USER = "uas";
+
+	/** Time in seconds to wait for the registration of the answering user agent. */
+	private static final long REGISTRATION_TIMEOUT = 10;
+
+	private final SipProvider _proxyProvider;
+
+	private final SipProvider _uasProvider;
+
+	private final AnswerScenario _uas;
+
+	private Loopback(SipProvider proxyProvider, SipProvider uasProvider, AnswerScenario uas) {
+		_proxyProvider = proxyProvider;
+		_uasProvider = uasProvider;
+		_uas = uas;
+	}
+
+	/**
+	 * Starts the proxy and the answering user agent.
+	 *
+	 * @param config
+	 *        The load generator options, the {@link LoadGenConfig#getTarget() target} is set to the
+	 *        loopback proxy, if not given.
+	 * @param scheduler
+	 *        The scheduler shared with the load generator.
+	 * @param portPool
+	 *        The pool of media ports shared with the load generator.
+	 * @param prompt
+	 *        The audio the answering user agent sends, or <code>null</code>.
+	 * @return The running loopback setup.
+	 */
+	static Loopback start(LoadGenConfig config, Scheduler scheduler, PortPool portPool, RtpPrompt prompt)
+			throws InterruptedException {
+		int port = config.getLoopbackPort();
+
+		SipProvider proxyProvider = new SipProvider(loopbackConfig(port), scheduler);
+		ServerProfile profile = new ServerProfile();
+		profile.domainNames = new String[] { ADDRESS };
+		profile.domainPortAny = true;
+		profile.locationDb = null;
+		profile.normalize();
+		new Proxy(proxyProvider, profile);
+
+		SipProvider uasProvider = new SipProvider(loopbackConfig(port + 1), scheduler);
+		AnswerScenario uas = new AnswerScenario(uasProvider, config, portPool, prompt);
+
+		Loopback result = new Loopback(proxyProvider, uasProvider, uas);
+		result.register(new SipURI(ADDRESS, port));
+
+		if (config.getTarget() == null) {
+			if (config.getScenario() == LoadGenConfig.Scenario.REGISTER) {
+				config.setTarget("sip:" + ADDRESS + ":" + port);
+			} else {
+				config.setTarget("sip:" + UAS_USER + "@" + ADDRESS + ":" + port);
+			}
+		}
+		return result;
+	}
+
+	private static SipConfig loopbackConfig(int port) {
+		SipConfig result = new SipConfig();
+		result.setHostPort(port);
+		result.setViaAddrIPv4(ADDRESS);
+		result.normalize();
+		return result;
+	}
+
+	private void register(SipURI registrar) throws InterruptedException {
+		CountDownLatch registered = new CountDownLatch(1);
+		NameAddress user = new NameAddress(new SipURI(UAS_USER, ADDRESS));
+		RegisterScenario.Registration options = new RegisterScenario.Registration(user, registrar,
+				_uasProvider.sipConfig().getDefaultExpires());
+		RegistrationClient client = new RegistrationClient(_uasProvider, options, new RegistrationClientListener() {
+			@Override
+			public void onRegistrationSuccess(RegistrationClient registration, NameAddress target,
+					NameAddress contact, int expires, int renewTime, String result) {
+				registered.countDown();
+			}
+
+			@Override
+			public void onRegistrationFailure(RegistrationClient registration, NameAddress target,
+					NameAddress contact, String result) {
+				// Reported by timeout below.
+			}
+		});
+		client.register(options.getExpires());
+		if (!registered.await(REGISTRATION_TIMEOUT, TimeUnit.SECONDS)) {
+			close();
+			throw new IllegalStateException("Registration of the loopback user agent at " + registrar + " failed.");
+		}
+	}
+
+	/**
+	 * Statistics of the answering user agent.
+	 */
+	LoadStats getStats() {
+		return _uas.getStats();
+	}
+
+	@Override
+	public void close() {
+		_uas.stop();
+		_uasProvider.halt();
+		_proxyProvider.halt();
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import org.mjsip.pool.PortPool;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.ua.registration.RegistrationClient;
+import org.mjsip.ua.registration.RegistrationClientListener;
+import org.mjsip.ua.registration.RegistrationOptions;
+
+/**
+ * {@link LoadScenario} sending single REGISTER requests for a range of users.
+ */
+class RegisterScenario extends LoadScenario {
+
+	private final SipURI _registrar;
+
+	/**
+	 * Creates a {@link RegisterScenario}.
+	 */
+	RegisterScenario(SipProvider sipProvider, LoadGenConfig config, PortPool portPool) {
+		super(sipProvider, config, new LoadStats("register"), portPool, null);
+		_registrar = SipURI.parseSipURI(config.getTarget());
+	}
+
+	@Override
+	public void startAttempt(int user) {
+		_stats.attempts.inc();
+		_stats.active.incrementAndGet();
+		Attempt attempt = new Attempt(userAddress(user, _registrar.getHost()), _registrar,
+				_sipProvider.sipConfig().getDefaultExpires());
+		new RegistrationClient(_sipProvider, attempt, attempt).register(attempt.getExpires());
+	}
+
+	/**
+	 * {@link RegistrationOptions} for a single user without authentication.
+	 */
+	static class Registration implements RegistrationOptions {
+
+		private final NameAddress _user;
+
+		private final SipURI _registrar;
+
+		private final int _expires;
+
+		/**
+		 * Creates a {@link Registration}.
+		 */
+		Registration(NameAddress user, SipURI registrar, int expires) {
+			_user = user;
+			_registrar = registrar;
+			_expires = expires;
+		}
+
+		@Override
+		public NameAddress getUserURI() {
+			return _user;
+		}
+
+		@Override
+		public String getAuthUser() {
+			return null;
+		}
+
+		@Override
+		public String getAuthPasswd() {
+			return null;
+		}
+
+		@Override
+		public String getAuthRealm() {
+			return null;
+		}
+
+		@Override
+		public SipURI getRoute() {
+			return null;
+		}
+
+		@Override
+		public SipURI getRegistrar() {
+			return _registrar;
+		}
+
+		@Override
+		public int getExpires() {
+			return _expires;
+		}
+	}
+
+	/**
+	 * A single registration.
+	 */
+	private class Attempt extends Registration implements RegistrationClientListener {
+
+		private final long _start = System.nanoTime();
+
+		Attempt(NameAddress user, SipURI registrar, int expires) {
+			super(user, registrar, expires);
+		}
+
+		@Override
+		public void onRegistrationSuccess(RegistrationClient registration, NameAddress target, NameAddress contact,
+				int expires, int renewTime, String result) {
+			_stats.response.recordSince(_start);
+			_stats.succeeded.inc();
+			_stats.active.decrementAndGet();
+		}
+
+		@Override
+		public void onRegistrationFailure(RegistrationClient registration, NameAddress target, NameAddress contact,
+				String result) {
+			("Timeout".equals(result) ? _stats.timeouts : _stats.failed).inc();
+			_stats.active.decrementAndGet();
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.rtp.RtpPacket;
+import org.mjsip.rtp.RtpSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.SocketAddress;
+import org.zoolu.net.UdpSocket;
+import org.zoolu.util.Random;
+
+/**
+ * Audio prompt that is sent as G.711 u-law RTP stream during load test calls.
+ *
+ * <p>
+ * All streams are paced by a shared scheduler instead of a thread per stream, so that a large
+ * number of concurrent calls can send media from a few threads.
+ * </p>
+ */
+final class RtpPrompt {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RtpPrompt.class);
+
+	/** RTP payload type of G.711 u-law. */
+	static final int PAYLOAD_TYPE = 0;
+
+	/** Packet time in milliseconds. */
+	private static final int PACKET_TIME = 20;
+
+	/** Samples (and bytes) per packet at 8kHz. */
+	private static final int PACKET_SIZE = 160;
+
+	private final byte[] _samples;
+
+	private RtpPrompt(byte[] samples) {
+		_samples = samples;
+	}
+
+	/**
+	 * Reads a prompt from a file with raw G.711 u-law samples.
+	 */
+	static RtpPrompt load(String file) throws IOException {
+		byte[] samples = Files.readAllBytes(Paths.get(file));
+		if (samples.length < PACKET_SIZE) {
+			throw new IOException("RTP prompt '" + file + "' is shorter than a single packet.");
+		}
+		return new RtpPrompt(samples);
+	}
+
+	/**
+	 * Starts sending this prompt repeatedly.
+	 *
+	 * @param scheduler
+	 *        The scheduler pacing the stream.
+	 * @param socket
+	 *        The local RTP socket.
+	 * @param owned
+	 *        Whether the socket is closed when the stream is stopped.
+	 * @param remoteAddress
+	 *        The address of the receiver.
+	 * @param remotePort
+	 *        The RTP port of the receiver.
+	 * @return The stream to stop with {@link Stream#stop()}.
+	 */
+	Stream start(ScheduledExecutorService scheduler, UdpSocket socket, boolean owned, String remoteAddress,
+			int remotePort) {
+		Stream result = new Stream(socket, owned, remoteAddress, remotePort);
+		result.start(scheduler);
+		return result;
+	}
+
+	/**
+	 * A single RTP stream sending the prompt.
+	 */
+	final class Stream {
+
+		private final UdpSocket _socket;
+
+		private final boolean _owned;
+
+		private final RtpSocket _rtpSocket;
+
+		private final long _ssrc = Random.nextInt() & 0xffffffffL;
+
+		private ScheduledFuture<?> _task;
+
+		private int _offset;
+
+		private int _sequence;
+
+		private long _timestamp;
+
+		Stream(UdpSocket socket, boolean owned, String remoteAddress, int remotePort) {
+			_socket = socket;
+			_owned = owned;
+			_rtpSocket = new RtpSocket(_socket, new SocketAddress(remoteAddress, remotePort));
+		}
+
+		void start(ScheduledExecutorService scheduler) {
+			_task = scheduler.scheduleAtFixedRate(this::send, 0, PACKET_TIME, TimeUnit.MILLISECONDS);
+		}
+
+		private void send() {
+			if (_offset + PACKET_SIZE > _samples.length) {
+				_offset = 0;
+			}
+			RtpPacket packet = new RtpPacket(PAYLOAD_TYPE, _ssrc, _sequence, _timestamp, _samples, _offset,
+					PACKET_SIZE);
+			_offset += PACKET_SIZE;
+			_sequence = (_sequence + 1) & 0xffff;
+			_timestamp += PACKET_SIZE;
+			try {
+				_rtpSocket.send(packet);
+			} catch (IOException ex) {
+				LOG.debug("Failed to send RTP packet: {}", ex.getMessage());
+			}
+		}
+
+		/**
+		 * Stops sending and closes the socket, if owned.
+		 */
+		void stop() {
+			_task.cancel(false);
+			if (_owned) {
+				_socket.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.pool.PortPool;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.time.ConfiguredScheduler;
+
+/**
+ * Smoke test running the {@link LoadGenerator} against the {@link Loopback} proxy and answering
+ * user agent.
+ */
+@SuppressWarnings("javadoc")
+class TestLoadGenerator {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+	private ConfiguredScheduler _scheduler;
+
+	private Loopback _loopback;
+
+	private SipProvider _sipProvider;
+
+	private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+
+	@BeforeEach
+	void setUp() {
+		_scheduler = org.mjsip.sip.test.Loopback.scheduler();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (_sipProvider != null) {
+			_sipProvider.halt();
+		}
+		if (_loopback != null) {
+			_loopback.close();
+		}
+		_scheduler.halt();
+	}
+
+	@Test
+	void testCalls(@TempDir Path dir) throws Exception {
+		LoadGenConfig config = config(LoadGenConfig.Scenario.CALL, 4);
+		config.setCallDuration(200);
+
+		// Calls with media, both sides send ten packets of u-law silence.
+		byte[] samples = new byte[1600];
+		Arrays.fill(samples, (byte) 0xFF);
+		Path promptFile = Files.write(dir.resolve("prompt.ulaw"), samples);
+		RtpPrompt prompt = RtpPrompt.load(promptFile.toString());
+		PortPool portPool = new PortPool(org.mjsip.sip.test.Loopback.freePortRange(16), 16);
+
+		_loopback = Loopback.start(config, _scheduler, portPool, prompt);
+		Assertions.assertEquals("sip:" + Loopback.UAS_USER + "@" + Loopback.ADDRESS + ":" + config.getLoopbackPort(),
+			config.getTarget());
+		_sipProvider = new SipProvider(org.mjsip.sip.test.Loopback.config(), _scheduler);
+		CallScenario scenario = new CallScenario(_sipProvider, config, portPool, prompt);
+
+		Snapshot calls = new Snapshot(scenario.getStats());
+		Snapshot answers = new Snapshot(_loopback.getStats());
+		Assertions.assertTrue(run(scenario, config), _out.toString());
+
+		calls.assertOutcome(4);
+		Assertions.assertEquals(0, scenario.getStats().active.get());
+		answers.assertOutcome(4);
+		Assertions.assertTrue(scenario.getStats().ringing.getCount() >= calls.ringing + 4);
+		assertReport("call: 4 attempts", "ringing  latency [ms]", "response latency [ms]");
+	}
+
+	@Test
+	void testRegistrations() throws Exception {
+		LoadGenConfig config = config(LoadGenConfig.Scenario.REGISTER, 6);
+		config.setUsers(3);
+		PortPool portPool = new PortPool(0, 0);
+
+		_loopback = Loopback.start(config, _scheduler, portPool, null);
+		Assertions.assertEquals("sip:" + Loopback.ADDRESS + ":" + config.getLoopbackPort(), config.getTarget());
+		_sipProvider = new SipProvider(org.mjsip.sip.test.Loopback.config(), _scheduler);
+		RegisterScenario scenario = new RegisterScenario(_sipProvider, config, portPool);
+
+		Snapshot registrations = new Snapshot(scenario.getStats());
+		Assertions.assertTrue(run(scenario, config), _out.toString());
+
+		registrations.assertOutcome(6);
+		Assertions.assertEquals(0, scenario.getStats().active.get());
+		assertReport("register: 6 attempts", "response latency [ms]");
+	}
+
+	private static LoadGenConfig config(LoadGenConfig.Scenario scenario, long limit) {
+		LoadGenConfig config = new LoadGenConfig();
+		config.setScenario(scenario);
+		config.setLoopback(true);
+		// The proxy and the answering user agent.
+		config.setLoopbackPort(org.mjsip.sip.test.Loopback.freePortRange(2));
+		config.setRate(20);
+		config.setLimit(limit);
+		config.setReportInterval(100);
+		return config;
+	}
+
+	private boolean run(LoadScenario scenario, LoadGenConfig config) {
+		LoadGenerator generator = new LoadGenerator(scenario, config, _scheduler.scheduler(),
+			new PrintStream(_out, true));
+		generator.start();
+		Assertions.assertTimeoutPreemptively(TIMEOUT, generator::await, _out::toString);
+		return generator.stop();
+	}
+
+	/**
+	 * Checks the progress reports and the summary.
+	 */
+	private void assertReport(String... summary) {
+		String report = new String(_out.toByteArray(), StandardCharsets.UTF_8);
+		String[] lines = report.split("\\R");
+		Assertions.assertTrue(lines[0].trim().startsWith("time[s]"), report);
+		Assertions.assertTrue(lines[0].trim().endsWith("p50[ms]   p90[ms]   p99[ms]"), report);
+		for (String expected : summary) {
+			Assertions.assertTrue(report.contains(expected), () -> "Missing '" + expected + "' in: " + report);
+		}
+
+		// The last progress report shows the latency percentiles of the completed attempts.
+		String last = null;
+		for (String line : lines) {
+			if (line.isEmpty()) {
+				break;
+			}
+			last = line;
+		}
+		String[] columns = last.trim().split("\\s+");
+		Assertions.assertEquals(12, columns.length, last);
+		double p50 = Double.parseDouble(columns[9]);
+		double p90 = Double.parseDouble(columns[10]);
+		double p99 = Double.parseDouble(columns[11]);
+		Assertions.assertTrue(p50 > 0, last);
+		Assertions.assertTrue(p50 <= p90 && p90 <= p99, last);
+	}
+
+	/**
+	 * Counter values before a run, since the counters are global and shared between tests.
+	 */
+	private static final class Snapshot {
+
+		private final LoadStats _stats;
+
+		private final long _attempts;
+
+		private final long _succeeded;
+
+		private final long _failed;
+
+		private final long _timeouts;
+
+		private final long _response;
+
+		final long ringing;
+
+		Snapshot(LoadStats stats) {
+			_stats = stats;
+			_attempts = stats.attempts.get();
+			_succeeded = stats.succeeded.get();
+			_failed = stats.failed.get();
+			_timeouts = stats.timeouts.get();
+			_response = stats.response.getCount();
+			ringing = stats.ringing.getCount();
+		}
+
+		void assertOutcome(long expected) {
+			Assertions.assertEquals(expected, _stats.attempts.get() - _attempts, "attempts");
+			Assertions.assertEquals(expected, _stats.succeeded.get() - _succeeded, "succeeded");
+			Assertions.assertEquals(0, _stats.failed.get() - _failed, "failed");
+			Assertions.assertEquals(0, _stats.timeouts.get() - _timeouts, "timeouts");
+			Assertions.assertEquals(expected, _stats.response.getCount() - _response, "responses");
+		}
+	}
+
+}
@@ -25,6 +25,7 @@ package org.mjsip.net;
 import java.io.InterruptedIOException;
 import java.util.Vector;
 
+import org.slf4j.LoggerFactory;
 import org.zoolu.net.SocketAddress;
 import org.zoolu.net.UdpPacket;
 
@@ -47,6 +48,8 @@ import org.zoolu.net.UdpPacket;
   */
 public class UdpMultiRelay extends Thread {
 	
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(UdpMultiRelay.class);
+
 	/** Local socket */
 	UdpConnectedSocket socket;  
 
@@ -66,7 +69,7 @@ public class UdpMultiRelay extends Thread {
 	UdpMultiRelayListener listener;   
 
 	/** Whether it is running */
-	boolean stop;
+	volatile boolean stop;
 	/** Maximum time that the UDP relay can remain active after been halted */
 	int socket_to=3000; // 3sec 
 
@@ -129,17 +132,23 @@ public class UdpMultiRelay extends Thread {
 		this.filtered=filtered;
 	}
 
-	/** Stops the UDP relay */
+	/** Stops the UDP relay.
+	  * <p> The local socket is closed to terminate a pending receive. */
 	public void halt() {
 		stop=true;
+		socket.close();
 	}
 
-	/** Sets the maximum time that the UDP relay can remain active after been halted */
+	/** Sets the maximum time that the UDP relay can remain active after been halted
+	  * @deprecated {@link #halt()} closes the socket, the relay stops immediately. */
+	@Deprecated
 	public void setSoTimeout(int so_to) {
 		socket_to=so_to;
 	}
 
-	/** Gets the maximum time that the UDP relay can remain active after been halted */
+	/** Gets the maximum time that the UDP relay can remain active after been halted
+	  * @deprecated {@link #halt()} closes the socket, the relay stops immediately. */
+	@Deprecated
 	public int getSoTimeout() {
 		return socket_to;
 	}
@@ -150,11 +159,10 @@ public class UdpMultiRelay extends Thread {
 		try    {
 			byte []buf = new byte[2000];
 			
-			socket.setSoTimeout(socket_to);
+			socket.setSoTimeout(0);
 			while(!stop) {
 				UdpPacket packet = new UdpPacket(buf, buf.length);          
 				
-				// non-blocking receiver
 				try {
 					socket.receive(packet);           
 				}
@@ -183,7 +191,11 @@ public class UdpMultiRelay extends Thread {
 			//socket.close();
 			if (listener!=null) listener.onUdpMultiRelayTerminated(this);
 		}
-		catch (Exception e) { e.printStackTrace(); } 
+		catch (Exception e) {
+			// closing the socket on halt is not an error
+			if (!stop) LOG.error("UDP relay failed on port {}.", socket.getLocalPort(), e);
+			else if (listener!=null) listener.onUdpMultiRelayTerminated(this);
+		} 
 	}  
 	
 }
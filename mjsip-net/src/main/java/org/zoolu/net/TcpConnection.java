@@ -32,6 +32,7 @@ import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 
+import org.mjsip.time.ServiceThreads;
 import org.slf4j.LoggerFactory;
 
 
@@ -44,15 +45,14 @@ public class TcpConnection extends Thread {
 	/** The reading buffer size */
 	static final int BUFFER_SIZE=65535;
 
-	/** Default value for the maximum time that the tcp connection can remain active after been halted (in milliseconds) */
+	/** Default value for the maximum time that the tcp connection can remain active after been halted (in milliseconds)
+	  * @deprecated {@link #halt()} closes the socket, the connection stops immediately. */
+	@Deprecated
 	public static final int DEFAULT_SOCKET_TIMEOUT=2000; // 2sec 
 
 	/** The TCP socket */ 
 	TcpSocket socket;  
 
-	/** Maximum time that the connection can remain active after been halted (in milliseconds) */
-	int socket_timeout;
-
 	/** Maximum time that the connection remains active without receiving data (in milliseconds) */
 	long alive_time; 
 
@@ -63,7 +63,7 @@ public class TcpConnection extends Thread {
 	OutputStream ostream;
 
 	/** Whether it has been halted */
-	boolean stop; 
+	volatile boolean stop; 
 
 	/** Whether it is running */
 	boolean is_running; 
@@ -91,7 +91,6 @@ public class TcpConnection extends Thread {
 	private void init(TcpSocket socket, long alive_time, TcpConnectionListener listener) throws IOException {
 		this.listener=listener;
 		this.socket=socket;
-		this.socket_timeout=DEFAULT_SOCKET_TIMEOUT;
 		this.alive_time=alive_time;
 		this.stop=false; 
 		this.is_running=true; 
@@ -137,17 +136,23 @@ public class TcpConnection extends Thread {
 	}
 
 
-	/** Stops running. */
+	/** Stops running.
+	  * <p> The socket is closed to terminate a pending read. */
 	public void halt() {
 		if (!stop) {
 			LOG.debug("Stopping TCP connection to: {}", socket);
 			stop = true;
+			try {
+				socket.close();
+			} catch (IOException ex) {
+				LOG.debug("Closing TCP connection failed: {}", ex.getMessage());
+			}
 		}
 	}
 
 
 	/** Sends data. */
-	public void send(byte[] buff, int offset, int len)  throws IOException {
+	public synchronized void send(byte[] buff, int offset, int len)  throws IOException {
 		if (!stop && ostream!=null) {
 			ostream.write(buff,offset,len);
 			ostream.flush();
@@ -173,7 +178,7 @@ public class TcpConnection extends Thread {
 		if (alive_time>0) expire=System.currentTimeMillis()+alive_time;
 		IOException error = null;
 		try {
-			socket.setSoTimeout(socket_timeout);         
+			socket.setSoTimeout(ServiceThreads.receiveTimeout(alive_time));         
 			// loop
 			while(!stop) {
 				int len=0;
@@ -196,9 +201,13 @@ public class TcpConnection extends Thread {
 			}
 		}
 		catch (IOException e) {
-			LOG.info("TCP connection terminated: {}", e.getMessage());
-			error=e;
-			stop=true;
+			if (stop) {
+				LOG.debug("TCP connection closed: {}", socket);
+			} else {
+				LOG.info("TCP connection terminated: {}", e.getMessage());
+				error=e;
+				stop=true;
+			}
 		}
 		is_running=false;
 		if (istream!=null) try {  istream.close();  } catch (Exception e) {}
@@ -28,13 +28,20 @@ import java.io.InterruptedIOException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 
+import org.mjsip.time.ServiceThreads;
+import org.slf4j.LoggerFactory;
+
 
 
 /** TcpServer implements a TCP server wainting for incoming connection.
   */
 public class TcpServer extends Thread {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(TcpServer.class);
 	
-	/** Default value for the maximum time that the tcp server can remain active after been halted (in milliseconds) */
+	/** Default value for the maximum time that the tcp server can remain active after been halted (in milliseconds)
+	  * @deprecated {@link #halt()} closes the server socket, the server stops immediately. */
+	@Deprecated
 	public static final int DEFAULT_SOCKET_TIMEOUT=5000; // 5sec 
 
 	/** Default ServerSocket backlog value */
@@ -52,14 +59,11 @@ public class TcpServer extends Thread {
 	/** The TCP server socket */ 
 	ServerSocket server_socket;
 
-	/** Maximum time that the connection can remain active after been halted (in milliseconds) */
-	int socket_timeout;
-
 	/** Maximum time that the server remains active without incoming connections (in milliseconds) */
 	long alive_time; 
 
 	/** Whether it has been halted */
-	boolean stop; 
+	volatile boolean stop; 
 
 	/** Whether it is running */
 	boolean is_running; 
@@ -103,14 +107,14 @@ public class TcpServer extends Thread {
 	/** Inits the TcpServer */
 	private void init(ServerSocket server_socket, int port, IpAddress bind_ipaddr, long alive_time, TcpServerListener listener) throws java.io.IOException {
 		this.listener=listener;
-		this.server_port=port;
 		this.server_ipaddr=bind_ipaddr;
 		if (server_socket==null) {
 			if (bind_ipaddr==null) server_socket=new ServerSocket(port);
 			else server_socket=new ServerSocket(port,DEFAULT_SOCKET_BACKLOG,bind_ipaddr.getInetAddress());
 		}
 		this.server_socket=server_socket;
-		this.socket_timeout=DEFAULT_SOCKET_TIMEOUT;
+		// the actual port, if bound to port 0
+		this.server_port=server_socket.getLocalPort();
 		this.alive_time=alive_time;
 		this.stop=false; 
 		this.is_running=true;
@@ -129,9 +133,14 @@ public class TcpServer extends Thread {
 	}
 
 
-	/** Stops running */
+	/** Stops running.
+	  * <p> The server socket is closed to terminate a pending accept. */
 	public void halt() {
 		stop=true;
+		try {
+			server_socket.close();
+		}
+		catch (java.io.IOException e) {}
 	}
 
 
@@ -140,7 +149,7 @@ public class TcpServer extends Thread {
 	public void run() {
 		Exception error=null;
 		try {
-			server_socket.setSoTimeout(socket_timeout);         
+			server_socket.setSoTimeout(ServiceThreads.receiveTimeout(alive_time));         
 			long expire=0;
 			if (alive_time>0) expire=System.currentTimeMillis()+alive_time;
 			// loop
@@ -158,8 +167,11 @@ public class TcpServer extends Thread {
 			}
 		}
 		catch (Exception e) {
-			error=e;
-			e.printStackTrace();
+			// closing the server socket on halt is not an error
+			if (!stop) {
+				error=e;
+				LOG.error("TCP server on port {} failed.", server_port, e);
+			}
 			stop=true;
 		}
 		is_running=false;
@@ -66,6 +66,18 @@ public class TcpSocket implements Closeable {
 		socket=new Socket(ipaddr.getInetAddress(),port);
 	}
 
+	/** Creates a new TcpSocket, waiting at most <i>timeout</i> milliseconds for the connection to be established (0 for no timeout). */ 
+	public TcpSocket(IpAddress ipaddr, int port, int timeout) throws java.io.IOException {
+		socket=new Socket();
+		try {
+			socket.connect(new java.net.InetSocketAddress(ipaddr.getInetAddress(),port),timeout);
+		}
+		catch (java.io.IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
 	/** Creates a new TcpSocket */ 
 	public TcpSocket(IpAddress ipaddr, int port, IpAddress local_ipaddr, int local_port) throws java.io.IOException {
 		socket=new Socket(ipaddr.getInetAddress(),port,local_ipaddr.getInetAddress(),local_port);
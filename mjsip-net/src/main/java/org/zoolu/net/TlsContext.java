@@ -149,6 +149,19 @@ public class TlsContext {
 	}   
 
 
+	/** Sets whether stateless session tickets (RFC 5077, and TLS 1.3 resumption tickets) are used.
+	  * <p>
+	  * With tickets, a server does not need to keep state for resumable sessions.
+	  * This is a JVM-wide setting of the JSSE provider, that is only effective before the first TLS
+	  * connection of the JVM. It must therefore be set once by the application at startup, not by
+	  * individual components. An explicit setting of the corresponding system properties takes precedence. */
+	public static void setSessionTickets(boolean enable) {
+		String value=String.valueOf(enable);
+		if (System.getProperty("jdk.tls.server.enableSessionTicketExtension")==null) System.setProperty("jdk.tls.server.enableSessionTicketExtension",value);
+		if (System.getProperty("jdk.tls.client.enableSessionTicketExtension")==null) System.setProperty("jdk.tls.client.enableSessionTicketExtension",value);
+	}
+
+
 	/** Gets KeyStore. */
 	public KeyStore getKeyStore() {
 		return ks;
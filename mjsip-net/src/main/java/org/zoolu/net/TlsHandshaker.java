@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.zoolu.net;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Histogram;
+import org.mjsip.metrics.Metrics;
+import org.mjsip.time.ServiceThreads;
+
+/**
+ * Performs TLS handshakes on a bounded pool of threads.
+ *
+ * <p>
+ * A full handshake costs considerably more CPU than a resumed one. When many clients reconnect at
+ * the same time (e.g. after a network outage), limiting the number of concurrent handshakes keeps
+ * the node responsive. Handshakes that do not fit into the queue are rejected, and the socket is
+ * closed.
+ * </p>
+ *
+ * <p>
+ * Full, resumed, failed and rejected handshakes are counted in the metric
+ * <code>tls_handshakes_total</code>.
+ * </p>
+ */
+public class TlsHandshaker {
+
+	private static final Counter FULL = counter("full");
+
+	private static final Counter RESUMED = counter("resumed");
+
+	private static final Counter FAILED = counter("failed");
+
+	private static final Counter REJECTED = counter("rejected");
+
+	private static final Histogram DURATION = Metrics.global().histogram("tls_handshake_seconds",
+			"Duration of successful TLS handshakes.");
+
+	/** Default maximum number of handshakes waiting for a thread. */
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+	private static final AtomicInteger POOLS = new AtomicInteger();
+
+	private final ThreadPoolExecutor _executor;
+
+	/**
+	 * Creates a {@link TlsHandshaker} with platform threads.
+	 *
+	 * @param threads
+	 *        The maximum number of concurrent handshakes, 0 for the number of available processors.
+	 * @param queue_size
+	 *        The maximum number of handshakes waiting for a thread.
+	 */
+	public TlsHandshaker(int threads, int queue_size) {
+		this(threads, queue_size, ServiceThreads.PLATFORM);
+	}
+
+	/**
+	 * Creates a {@link TlsHandshaker}.
+	 *
+	 * @param threads
+	 *        The maximum number of concurrent handshakes, 0 for the number of available processors.
+	 * @param queue_size
+	 *        The maximum number of handshakes waiting for a thread.
+	 * @param factory
+	 *        The factory for handshake threads, e.g. the service threads of the scheduler.
+	 */
+	public TlsHandshaker(int threads, int queue_size, ThreadFactory factory) {
+		int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		String prefix = "TLS-handshake-" + POOLS.incrementAndGet() + "-";
+		AtomicInteger count = new AtomicInteger();
+		_executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, queue_size)), r -> {
+					Thread thread = factory.newThread(r);
+					thread.setName(prefix + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		_executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Schedules the handshake of the given socket.
+	 *
+	 * @param socket
+	 *        A connected {@link TlsSocket}, or a socket accepted by a {@link TlsServer}.
+	 * @param timeout
+	 *        Maximum time in milliseconds to wait for the peer, 0 for no timeout.
+	 * @return Future completed with the given socket, when the handshake succeeds. If the
+	 *         handshake fails or is rejected, the socket is closed and the future completes
+	 *         exceptionally.
+	 */
+	public CompletableFuture<TcpSocket> handshake(TcpSocket socket, int timeout) {
+		Task task = new Task(socket, timeout);
+		try {
+			_executor.execute(task);
+		} catch (RejectedExecutionException ex) {
+			REJECTED.inc();
+			task.cancel(new IOException("Too many pending TLS handshakes.", ex));
+		}
+		return task._result;
+	}
+
+	/**
+	 * The number of handshakes waiting for a thread.
+	 */
+	public int getQueued() {
+		return _executor.getQueue().size();
+	}
+
+	/**
+	 * Stops all threads, pending handshakes are cancelled.
+	 */
+	public void halt() {
+		for (Runnable pending : _executor.shutdownNow()) {
+			((Task) pending).cancel(new IOException("TLS handshaker halted."));
+		}
+	}
+
+	/**
+	 * Performs the handshake of the given socket in the calling thread.
+	 *
+	 * @param socket
+	 *        A {@link TcpSocket} wrapping an {@link SSLSocket}.
+	 * @param timeout
+	 *        Maximum time in milliseconds to wait for the peer, 0 for no timeout.
+	 * @return Whether a previous session has been resumed.
+	 * @throws IOException
+	 *         If the handshake fails, the socket is closed in that case.
+	 */
+	public static boolean handshakeNow(TcpSocket socket, int timeout) throws IOException {
+		SSLSocket ssl_socket = (SSLSocket) socket.socket;
+		long start = System.nanoTime();
+		long start_millis = System.currentTimeMillis();
+		try {
+			ssl_socket.setSoTimeout(timeout);
+			ssl_socket.startHandshake();
+			ssl_socket.setSoTimeout(0);
+		} catch (IOException ex) {
+			FAILED.inc();
+			close(socket);
+			throw ex;
+		}
+		DURATION.recordSince(start);
+
+		// Session IDs cannot tell a resumption: With TLS 1.3, a resumed session gets a new ID, and a
+		// resumption from a stateless ticket has no cached session to compare with. In both TLS 1.2
+		// and TLS 1.3, JSSE keeps the creation time of the session that is resumed, see the
+		// resumption tests of the TLS transport.
+		SSLSession session = ssl_socket.getSession();
+		boolean resumed = session.getCreationTime() < start_millis;
+		(resumed ? RESUMED : FULL).inc();
+		return resumed;
+	}
+
+	private static void close(TcpSocket socket) {
+		try {
+			socket.close();
+		} catch (IOException ex) {
+			// Ignore.
+		}
+	}
+
+	/**
+	 * A scheduled handshake.
+	 */
+	private static final class Task implements Runnable {
+
+		private final TcpSocket _socket;
+
+		private final int _timeout;
+
+		final CompletableFuture<TcpSocket> _result = new CompletableFuture<>();
+
+		Task(TcpSocket socket, int timeout) {
+			_socket = socket;
+			_timeout = timeout;
+		}
+
+		@Override
+		public void run() {
+			try {
+				handshakeNow(_socket, _timeout);
+				_result.complete(_socket);
+			} catch (IOException ex) {
+				_result.completeExceptionally(ex);
+			}
+		}
+
+		void cancel(IOException reason) {
+			close(_socket);
+			_result.completeExceptionally(reason);
+		}
+	}
+
+	private static Counter counter(String type) {
+		return Metrics.global().counter("tls_handshakes_total", "TLS handshakes by outcome.", "type", type);
+	}
+
+}
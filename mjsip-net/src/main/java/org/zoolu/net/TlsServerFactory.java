@@ -30,6 +30,7 @@ import java.security.KeyStore;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.TrustManager;
@@ -44,6 +45,9 @@ public class TlsServerFactory {
 	/** SSLServerSocketFactory */
 	SSLServerSocketFactory ssl_factory;
 
+	/** Cache of server sessions for resumption */
+	SSLSessionContext session_context;
+
 	/** Whether using client mode in first TLS handshake */
 	boolean client_mode=false;
 	
@@ -74,6 +78,14 @@ public class TlsServerFactory {
 		sc.init(key_managers,trust_managers,null/*new java.security.SecureRandom()*/);
 		// get the socket factory
 		ssl_factory=sc.getServerSocketFactory();
+		session_context=sc.getServerSessionContext();
+	}
+
+
+	/** Gets the cache of sessions that can be resumed by later connections.
+	  * The cache size and session lifetime can be configured through the returned context. */
+	public SSLSessionContext getSessionContext() {
+		return session_context;
 	}
 
 
@@ -31,6 +31,7 @@ import java.security.cert.X509Certificate;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
@@ -47,6 +48,9 @@ public class TlsSocketFactory {
 	/** SSLSocketFactory */
 	SSLSocketFactory ssl_factory;
 
+	/** Cache of client sessions for resumption */
+	SSLSessionContext session_context;
+
 	/** Whether using client mode in first TLS handshake */
 	boolean client_mode=true;
 
@@ -88,6 +92,14 @@ public class TlsSocketFactory {
 		sc.init(key_managers,trust_managers,null/*new java.security.SecureRandom()*/);
 		// get the socket factory
 		ssl_factory=sc.getSocketFactory();
+		session_context=sc.getClientSessionContext();
+	}
+
+
+	/** Gets the cache of sessions that can be resumed by later connections.
+	  * The cache size and session lifetime can be configured through the returned context. */
+	public SSLSessionContext getSessionContext() {
+		return session_context;
 	}
 
 
@@ -159,6 +171,36 @@ public class TlsSocketFactory {
 	}
 
 
+	/** Creates a new TlsSocket and completes the TLS handshake.
+	  * Connecting and the handshake each wait at most <i>timeout</i> milliseconds (0 for no timeout). */
+	public TlsSocket createTlsSocket(IpAddress ipaddr, int port, int timeout) throws java.io.IOException {
+		TlsSocket tls_socket=connectTlsSocket(ipaddr,port,timeout);
+		TlsHandshaker.handshakeNow(tls_socket,timeout);
+		return tls_socket;
+	}
+
+
+	/** Creates a new TlsSocket without starting the TLS handshake.
+	  * The socket is bound to the remote address and port, so that a previous session with the same peer
+	  * can be resumed, see {@link #getSessionContext()}. The handshake can be completed with a {@link TlsHandshaker}.
+	  * @param timeout the maximum time to wait for the connection in milliseconds (0 for no timeout) */
+	public TlsSocket connectTlsSocket(IpAddress ipaddr, int port, int timeout) throws java.io.IOException {
+		java.net.Socket socket=new java.net.Socket();
+		SSLSocket ssl_socket;
+		try {
+			socket.connect(new java.net.InetSocketAddress(ipaddr.getInetAddress(),port),timeout);
+			ssl_socket=(SSLSocket)ssl_factory.createSocket(socket,ipaddr.toString(),port,true);
+		}
+		catch (java.io.IOException e) {
+			socket.close();
+			throw e;
+		}
+		if (!client_mode) ssl_socket.setUseClientMode(false);
+		if (enabled_protocols!=null) ssl_socket.setEnabledProtocols(enabled_protocols);
+		return new TlsSocket(ssl_socket);
+	}
+
+
 	/** Creates a new TlsSocket */
 	public TlsSocket createTlsSocket(IpAddress ipaddr, int port, IpAddress local_ipaddr, int local_port) throws java.io.IOException {
 		//SSLSocket ssl_socket=(SSLSocket)ssl_factory.createSocket(ipaddr.getInetAddress(),port);
@@ -27,6 +27,8 @@ package org.zoolu.net;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 
+import org.mjsip.time.ServiceThreads;
+
 
 /** UdpProvider provides an UDP send/receive service.
   * On the receiver side it waits for UDP datagrams and passes them
@@ -43,7 +45,9 @@ public class UdpProvider extends Thread {
 	/** The reading buffer size */
 	public static final int BUFFER_SIZE=65535;
 	  
-	/** Default value for the maximum time that the UDP receiver can remain active after been halted (in milliseconds) */
+	/** Default value for the maximum time that the UDP receiver can remain active after been halted (in milliseconds)
+	  * @deprecated {@link #halt()} closes the socket, the receiver stops immediately. */
+	@Deprecated
 	public static final int DEFAULT_SOCKET_TIMEOUT=2000; // 2sec 
 
 	/** UDP socket */
@@ -62,7 +66,7 @@ public class UdpProvider extends Thread {
 	protected int minimum_length; 
 
 	/** Whether it has been halted */
-	protected boolean stop; 
+	protected volatile boolean stop; 
 
 	/** Whether it is running */
 	protected boolean is_running; 
@@ -113,13 +117,17 @@ public class UdpProvider extends Thread {
 	}
 
 
-	/** Sets the maximum time that the UDP service can remain active after been halted. */
+	/** Sets the maximum time that the UDP service can remain active after been halted.
+	  * @deprecated {@link #halt()} closes the socket, the service stops immediately. */
+	@Deprecated
 	public void setSoTimeout(int timeout) {
 		socket_timeout=timeout;
 	}
 
 
-	/** Gets the maximum time that the UDP service can remain active after been halted. */
+	/** Gets the maximum time that the UDP service can remain active after been halted.
+	  * @deprecated {@link #halt()} closes the socket, the service stops immediately. */
+	@Deprecated
 	public int getSoTimeout() {
 		return socket_timeout;
 	}
@@ -151,9 +159,11 @@ public class UdpProvider extends Thread {
 	}
 
 
-	/** Stops running. */
+	/** Stops running.
+	  * <p> The socket is closed to terminate a pending receive. */
 	public void halt() {
 		stop=true;
+		socket.close();
 	}
 
 
@@ -168,14 +178,14 @@ public class UdpProvider extends Thread {
 		long expire=0;
 		if (alive_time>0) expire=System.currentTimeMillis()+alive_time;
 		try    {
-			socket.setSoTimeout(socket_timeout);
+			socket.setSoTimeout(ServiceThreads.receiveTimeout(alive_time));
 			// loop
 			while(!stop) {
 				try {
 					socket.receive(packet);           
 				}
 				catch (InterruptedIOException ie) {
-					if (alive_time>0 && System.currentTimeMillis()>expire) halt();
+					if (alive_time>0 && System.currentTimeMillis()>expire) stop=true;
 					continue;
 				}
 				if (packet.getLength()>=minimum_length) {
@@ -187,7 +197,8 @@ public class UdpProvider extends Thread {
 			}
 		}
 		catch (Exception e) {
-			error=e;
+			// closing the socket on halt is not an error
+			if (!stop) error=e;
 			stop=true;
 		} 
 		is_running=false;
@@ -57,8 +57,8 @@ public class UdpSocket implements Closeable {
 		socket=null;
 	}
 
-	/** Creates a new UdpSocket */ 
-	protected UdpSocket(DatagramSocket sock) {
+	/** Creates a new UdpSocket for the given bound socket */ 
+	public UdpSocket(DatagramSocket sock) {
 		socket=sock;
 	}
 
@@ -88,6 +88,11 @@ public class UdpSocket implements Closeable {
 		return socket.getLocalPort();
 	}
 	
+	/** Gets the channel of this socket, or <code>null</code>, if the socket was not created from a channel. */
+	public java.nio.channels.DatagramChannel getChannel() {
+		return socket.getChannel();
+	}
+
 	/** Gets the socket timeout. */
 	public int getSoTimeout() throws java.net.SocketException {
 		return socket.getSoTimeout();
@@ -0,0 +1,83 @@
+package test.org.zoolu.net;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.UdpPacket;
+import org.zoolu.net.UdpProvider;
+import org.zoolu.net.UdpProviderListener;
+import org.zoolu.net.UdpSocket;
+
+/**
+ * Test case for halting an {@link UdpProvider}.
+ */
+@SuppressWarnings("javadoc")
+class TestUdpProvider {
+
+	private final BlockingQueue<String> _received = new LinkedBlockingQueue<>();
+
+	private final BlockingQueue<String> _terminated = new LinkedBlockingQueue<>();
+
+	@Test
+	void testCloseOnHalt() throws Exception {
+		UdpSocket socket = new UdpSocket(0, IpAddress.getByName("127.0.0.1"));
+		// Without receive timeout, only closing the socket ends the receive.
+		UdpProvider provider = new UdpProvider(socket, listener());
+		checkReceive(provider);
+
+		provider.halt();
+		provider.join(5000);
+		Assertions.assertFalse(provider.isAlive());
+		Assertions.assertFalse(provider.isRunning());
+		// Closing the socket on halt is not reported as error.
+		Assertions.assertEquals("null", _terminated.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void testAliveTime() throws Exception {
+		UdpSocket socket = new UdpSocket(0, IpAddress.getByName("127.0.0.1"));
+		try {
+			UdpProvider provider = new UdpProvider(socket, 200, listener());
+			checkReceive(provider);
+
+			// Stops without being halted, after not receiving anything.
+			provider.join(5000);
+			Assertions.assertFalse(provider.isAlive());
+			Assertions.assertEquals("null", _terminated.poll(5, TimeUnit.SECONDS));
+		} finally {
+			socket.close();
+		}
+	}
+
+	private void checkReceive(UdpProvider provider) throws Exception {
+		UdpSocket sender = new UdpSocket(0, IpAddress.getByName("127.0.0.1"));
+		try {
+			byte[] data = "ping".getBytes();
+			sender.send(new UdpPacket(data, 0, data.length, IpAddress.getByName("127.0.0.1"),
+				provider.getUdpSocket().getLocalPort()));
+			Assertions.assertEquals("ping", _received.poll(5, TimeUnit.SECONDS));
+			Assertions.assertTrue(provider.isAlive());
+		} finally {
+			sender.close();
+		}
+	}
+
+	private UdpProviderListener listener() {
+		return new UdpProviderListener() {
+			@Override
+			public void onReceivedPacket(UdpProvider udp, UdpPacket packet) {
+				_received.add(new String(packet.getData(), packet.getOffset(), packet.getLength()));
+			}
+
+			@Override
+			public void onServiceTerminated(UdpProvider udp, Exception error) {
+				_terminated.add(String.valueOf(error));
+			}
+		};
+	}
+
+}
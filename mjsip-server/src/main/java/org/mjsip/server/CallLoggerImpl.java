@@ -1,9 +1,9 @@
 package org.mjsip.server;
 
 
+import java.util.ArrayDeque;
 import java.util.Date;
 import java.util.Hashtable;
-import java.util.Vector;
 
 import org.mjsip.sip.header.StatusLine;
 import org.mjsip.sip.message.SipMessage;
@@ -38,7 +38,7 @@ public class CallLoggerImpl implements CallLogger {
 	Hashtable<String, String> callees;
 
 	/** Set : (String)call_id. */
-	Vector<String> calls;
+	ArrayDeque<String> calls;
 
 	/** 
 	 * Costructs a new CallLoggerImpl.
@@ -48,7 +48,7 @@ public class CallLoggerImpl implements CallLogger {
 		accepted_dates=new Hashtable<>();
 		refused_dates=new Hashtable<>();
 		bye_dates=new Hashtable<>();
-		calls=new Vector<>();
+		calls=new ArrayDeque<>();
 		callers=new Hashtable<>();
 		callees=new Hashtable<>();
 		
@@ -115,16 +115,15 @@ public class CallLoggerImpl implements CallLogger {
 	private void insert(Hashtable<String, Date> table, String call_id, Date time) {
 		if (!invite_dates.containsKey(call_id) && !accepted_dates.containsKey(call_id) && !refused_dates.containsKey(call_id) && !bye_dates.containsKey(call_id)); {
 			if (calls.size()>=MAX_SIZE)  {
-				String call_0=calls.elementAt(0);
+				String call_0=calls.pollFirst();
 				invite_dates.remove(call_0);
 				accepted_dates.remove(call_0);
 				refused_dates.remove(call_0);
 				bye_dates.remove(call_0);
 				callers.remove(call_0);
 				callees.remove(call_0);
-				calls.removeElementAt(0);
 			}
-			calls.addElement(call_id);
+			calls.addLast(call_id);
 		}
 		table.put(call_id,time);
 	}
@@ -137,7 +136,7 @@ public class CallLoggerImpl implements CallLogger {
 	 */
 	private void eventlog(Date time, String call_id, String event, String caller, String callee) {
 		//call_logger.log(DateFormat.formatHHMMSS(time)+"\t"+call_id+"\t"+event+"\t"+caller+"\t"+callee);
-		LOG.info("{}\t{}\t{}\t{}\t{]", DateFormat.formatYyyyMMddHHmmssSSS(time), call_id, event, caller, callee);
+		LOG.info("{}\t{}\t{}\t{}\t{}", DateFormat.formatYyyyMMddHHmmssSSS(time), call_id, event, caller, callee);
 	}
 
 
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Enumeration;
+
+import org.mjsip.server.store.SlabStore;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link AuthenticationService} keeping user keys in a {@link SlabStore} outside of the Java heap.
+ *
+ * <p>
+ * Each user is stored as a single record with the raw key bytes as value. The store file uses a
+ * binary format and cannot share its file with {@link AuthenticationServiceImpl}.
+ * </p>
+ *
+ * <p>
+ * Selected with the authentication service type <code>mapped</code>.
+ * </p>
+ */
+public class MappedAuthenticationService implements AuthenticationService {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(MappedAuthenticationService.class);
+
+	private static final byte[] NULL_ARRAY = new byte[0];
+
+	private final SlabStore _store;
+
+	/**
+	 * Creates a {@link MappedAuthenticationService}.
+	 *
+	 * @param file_name
+	 *        The store file, <code>null</code> for keeping users in memory only.
+	 */
+	public MappedAuthenticationService(String file_name) throws IOException {
+		_store = new SlabStore(file_name);
+		LOG.info("Opened authentication store {} with {} users.", file_name, _store.size());
+	}
+
+	// **************** Methods of interface Registry ****************
+
+	@Override
+	public void sync() {
+		_store.sync();
+	}
+
+	@Override
+	public int size() {
+		return _store.size();
+	}
+
+	@Override
+	public Enumeration<String> getUsers() {
+		return _store.keys();
+	}
+
+	@Override
+	public boolean hasUser(String user) {
+		return _store.contains(user);
+	}
+
+	@Override
+	public Repository addUser(String user) {
+		addUser(user, NULL_ARRAY);
+		return this;
+	}
+
+	@Override
+	public Repository removeUser(String user) {
+		_store.remove(user);
+		return this;
+	}
+
+	@Override
+	public Repository removeAllUsers() {
+		_store.clear();
+		return this;
+	}
+
+	/**
+	 * Summary of the store, the users are not listed.
+	 */
+	@Override
+	public String toString() {
+		return _store.toString();
+	}
+
+	// **************** Methods of interface AuthenticationService ****************
+
+	@Override
+	public AuthenticationService addUser(String user, byte[] key) {
+		synchronized (_store) {
+			if (!hasUser(user)) {
+				store(user, key);
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public AuthenticationService setUserKey(String user, byte[] key) {
+		synchronized (_store) {
+			if (hasUser(user)) {
+				store(user, key);
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public byte[] getUserKey(String user) {
+		return _store.get(user);
+	}
+
+	private void store(String user, byte[] key) {
+		try {
+			_store.put(user, key);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Cannot extend authentication store.", ex);
+		}
+	}
+
+}
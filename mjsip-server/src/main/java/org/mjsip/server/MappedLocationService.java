@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.mjsip.server.store.SlabStore;
+import org.mjsip.sip.address.GenericURIImpl;
+import org.mjsip.sip.address.NameAddress;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link LocationService} keeping its bindings in a {@link SlabStore} outside of the Java heap.
+ *
+ * <p>
+ * In contrast to {@link LocationServiceImpl}, which holds a table of contact headers for each
+ * user, the bindings of a user are stored as a single binary record:
+ * </p>
+ *
+ * <pre>
+ * bindings := count:short contact*
+ * contact  := expires:long uri:utf has_name:boolean [name:utf]
+ * </pre>
+ *
+ * <p>
+ * Records are decoded only while a request is processed, so that heap usage does not grow with the
+ * number of subscribers. The store file is updated in place and survives crashes, {@link #sync()}
+ * forces it to disk. It uses a binary format and cannot share its file with
+ * {@link LocationServiceImpl}.
+ * </p>
+ *
+ * <p>
+ * Selected with the location service type <code>mapped</code>.
+ * </p>
+ */
+public class MappedLocationService implements LocationService {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(MappedLocationService.class);
+
+	private static final byte[] NO_BINDINGS = { 0, 0 };
+
+	private final SlabStore _store;
+
+	/**
+	 * Creates a {@link MappedLocationService}.
+	 *
+	 * @param file_name
+	 *        The store file, <code>null</code> for keeping bindings in memory only.
+	 */
+	public MappedLocationService(String file_name) throws IOException {
+		if (file_name == null) {
+			LOG.warn("no file has been provided for location DB: only temporary memory will be used.");
+		}
+		_store = new SlabStore(file_name);
+		LOG.info("Opened location store {} with {} users.", file_name, _store.size());
+	}
+
+	// **************** Methods of interface Registry ****************
+
+	@Override
+	public void sync() {
+		_store.sync();
+	}
+
+	@Override
+	public int size() {
+		return _store.size();
+	}
+
+	@Override
+	public Enumeration<String> getUsers() {
+		return _store.keys();
+	}
+
+	@Override
+	public boolean hasUser(String user) {
+		return _store.contains(user);
+	}
+
+	@Override
+	public Repository addUser(String user) {
+		synchronized (_store) {
+			if (!hasUser(user)) {
+				store(user, NO_BINDINGS);
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public Repository removeUser(String user) {
+		_store.remove(user);
+		return this;
+	}
+
+	@Override
+	public Repository removeAllUsers() {
+		_store.clear();
+		return this;
+	}
+
+	/**
+	 * Summary of the store, the bindings are not listed.
+	 */
+	@Override
+	public String toString() {
+		return _store.toString();
+	}
+
+	// **************** Methods of interface LocationService ****************
+
+	@Override
+	public boolean hasUserContact(String user, String uri) {
+		return getBinding(user, uri) != null;
+	}
+
+	@Override
+	public LocationService addUserContact(String user, NameAddress contact, Date expire) {
+		String uri = contact.getAddress().toString();
+		synchronized (_store) {
+			List<Binding> bindings = getBindings(user);
+			Binding existing = find(bindings, uri);
+			if (existing != null) {
+				// A refreshed registration replaces the previous expiration time.
+				bindings.remove(existing);
+			}
+			// The expiration time is kept with the precision of the Expires header.
+			bindings.add(new Binding(uri, contact.getDisplayName(), expire.getTime() / 1000 * 1000));
+			store(user, encode(bindings));
+		}
+		return this;
+	}
+
+	@Override
+	public Enumeration<String> getUserContactURIs(String user) {
+		byte[] data = _store.get(user);
+		if (data == null) {
+			return null;
+		}
+		List<String> result = new ArrayList<>();
+		for (Binding binding : decode(data)) {
+			result.add(binding._uri);
+		}
+		return Collections.enumeration(result);
+	}
+
+	@Override
+	public LocationService removeUserContact(String user, String uri) {
+		synchronized (_store) {
+			List<Binding> bindings = getBindings(user);
+			Binding binding = find(bindings, uri);
+			if (binding != null) {
+				bindings.remove(binding);
+				store(user, encode(bindings));
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public NameAddress getUserContactNameAddress(String user, String uri) {
+		Binding binding = getBinding(user, uri);
+		if (binding == null) {
+			return null;
+		}
+		return new NameAddress(binding._name, new GenericURIImpl(binding._uri));
+	}
+
+	@Override
+	public Date getUserContactExpirationDate(String user, String uri) {
+		Binding binding = getBinding(user, uri);
+		return binding == null ? null : new Date(binding._expires);
+	}
+
+	@Override
+	public boolean isUserContactExpired(String user, String uri) {
+		Binding binding = getBinding(user, uri);
+		// Same as a contact header with expires parameter 0.
+		return binding == null || binding._expires - System.currentTimeMillis() < 1000;
+	}
+
+	@Override
+	public LocationService addUserStaticContact(String user, NameAddress name_address) {
+		return addUserContact(user, name_address, new Date(LocationServiceImpl.NEVER));
+	}
+
+	@Override
+	public boolean isUserContactStatic(String user, String uri) {
+		return getUserContactExpirationDate(user, uri).getTime() >= LocationServiceImpl.NEVER;
+	}
+
+	// ***************************** Private methods *****************************
+
+	private void store(String user, byte[] data) {
+		try {
+			_store.put(user, data);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Cannot extend location store.", ex);
+		}
+	}
+
+	private Binding getBinding(String user, String uri) {
+		byte[] data = _store.get(user);
+		return data == null ? null : find(decode(data), uri);
+	}
+
+	private List<Binding> getBindings(String user) {
+		byte[] data = _store.get(user);
+		return data == null ? new ArrayList<>() : decode(data);
+	}
+
+	private static Binding find(List<Binding> bindings, String uri) {
+		for (Binding binding : bindings) {
+			if (binding._uri.equals(uri)) {
+				return binding;
+			}
+		}
+		return null;
+	}
+
+	private static byte[] encode(List<Binding> bindings) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(2 + 64 * bindings.size());
+		try (DataOutputStream out = new DataOutputStream(buffer)) {
+			out.writeShort(bindings.size());
+			for (Binding binding : bindings) {
+				out.writeLong(binding._expires);
+				out.writeUTF(binding._uri);
+				out.writeBoolean(binding._name != null);
+				if (binding._name != null) {
+					out.writeUTF(binding._name);
+				}
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return buffer.toByteArray();
+	}
+
+	private static List<Binding> decode(byte[] data) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+			int count = in.readUnsignedShort();
+			List<Binding> result = new ArrayList<>(count + 1);
+			for (int n = 0; n < count; n++) {
+				long expires = in.readLong();
+				String uri = in.readUTF();
+				String name = in.readBoolean() ? in.readUTF() : null;
+				result.add(new Binding(uri, name, expires));
+			}
+			return result;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Decoded contact of a user.
+	 */
+	private static final class Binding {
+
+		final String _uri;
+
+		final String _name;
+
+		final long _expires;
+
+		Binding(String uri, String name, long expires) {
+			_uri = uri;
+			_name = name;
+			_expires = expires;
+		}
+	}
+
+}
@@ -22,20 +22,29 @@
 package org.mjsip.server;
 
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Vector;
 
 import org.mjsip.config.MetaConfig;
 import org.mjsip.config.OptionParser;
+import org.mjsip.metrics.MetricsConfig;
+import org.mjsip.metrics.MetricsExporter;
+import org.mjsip.server.cdr.CdrCallLogger;
+import org.mjsip.server.cdr.CdrConfig;
 import org.mjsip.sip.address.GenericURI;
 import org.mjsip.sip.address.NameAddress;
 import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.header.Header;
 import org.mjsip.sip.header.MaxForwardsHeader;
 import org.mjsip.sip.header.MultipleHeader;
 import org.mjsip.sip.header.RecordRouteHeader;
 import org.mjsip.sip.header.RequestLine;
 import org.mjsip.sip.header.RouteHeader;
+import org.mjsip.sip.header.SipHeaders;
 import org.mjsip.sip.header.ViaHeader;
 import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMessageSplicer;
 import org.mjsip.sip.message.SipResponses;
 import org.mjsip.sip.provider.SipConfig;
 import org.mjsip.sip.provider.SipProvider;
@@ -53,6 +62,12 @@ public class Proxy extends Registrar {
 	
 	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(Proxy.class);
 
+	/** Compiled proxying rules, replaced atomically on reload. */
+	private volatile RoutingTable routing_table=new RoutingTable();
+
+	/** Last modification time of the routing file that is loaded into the routing table. */
+	private long routing_file_modified=0;
+
 	/** Costructs a void Proxy */
 	protected Proxy() {}
 
@@ -60,6 +75,51 @@ public class Proxy extends Registrar {
 	/** Costructs a new Proxy that acts also as location server for registered users. */
 	public Proxy(SipProvider provider, ServerProfile server_profile) {
 		super(provider,server_profile);
+		routing_table=RoutingTable.fromProfile(server_profile);
+		// the received bytes are only kept if they are forwarded
+		if (isStatelessFastPathEnabled()) sip_provider.setKeepReceivedBytes(true);
+		if (server_profile.routingFile!=null) {
+			reloadRoutingTable();
+			if (server_profile.routingCheckInterval>0) {
+				sip_provider.scheduler().schedulerWithFixedDelay(server_profile.routingCheckInterval,this::checkRoutingFile);
+			}
+		}
+	}
+
+
+	/** Gets the routing table currently used for proxying. */
+	public RoutingTable getRoutingTable() {
+		return routing_table;
+	}
+
+
+	/** Re-reads the routing file and atomically replaces the current routing table.
+	  * If the file cannot be read, the current routing table is kept.
+	  * @return whether the routing table has been replaced */
+	public synchronized boolean reloadRoutingTable() {
+		if (server_profile.routingFile==null) return false;
+		// else
+		File file=new File(server_profile.routingFile);
+		long modified=file.lastModified();
+		try {
+			RoutingTable table=RoutingTable.load(file,server_profile);
+			RoutingTable old_table=routing_table;
+			routing_table=table;
+			routing_file_modified=modified;
+			LOG.info("Routing table loaded from '{}': {} routes (replaced {})", file, table.size(), old_table);
+			return true;
+		}
+		catch (IOException e) {
+			LOG.warn("Cannot load routing file '{}', keeping current routing table.", file, e);
+			return false;
+		}
+	}
+
+
+	/** Reloads the routing table, if the routing file has been modified since the last load. */
+	private void checkRoutingFile() {
+		long modified=new File(server_profile.routingFile).lastModified();
+		if (modified!=0 && modified!=routing_file_modified) reloadRoutingTable();
 	}
 
 
@@ -75,8 +135,7 @@ public class Proxy extends Registrar {
 			// send a stateless error response
 			//int result=501; // response code 501 ("Not Implemented")
 			//int result=485; // response code 485 ("Ambiguous");
-			SipMessage resp=sip_provider.messageFactory().createResponse(msg,SipResponses.ADDRESS_INCOMPLETE,null,null);
-			sip_provider.sendMessage(resp);
+			sip_provider.sendStatelessResponse(msg,SipResponses.ADDRESS_INCOMPLETE,null);
 		}
 	}
 
@@ -108,13 +167,15 @@ public class Proxy extends Registrar {
 		}
 		if (targets.isEmpty()) {
 			LOG.info("No target found, message discarded");
-			if (!msg.isAck()) sip_provider.sendMessage(sip_provider.messageFactory().createResponse(msg,SipResponses.NOT_FOUND,null,null));
+			if (!msg.isAck()) sip_provider.sendStatelessResponse(msg,SipResponses.NOT_FOUND,null);
 			return;
 		}           
 		
 		LOG.debug("message will be forwarded to {} user's contact(s)", targets.size()); 
 		for (int i=0; i<targets.size(); i++)  {
 			SipURI target_uri=SipURI.parseSipURI(targets.elementAt(i));
+			if (forwardStateless(msg,target_uri)) continue;
+			// else
 			SipMessage request=new SipMessage(msg);
 			request.removeRequestLine();
 			request.setRequestLine(new RequestLine(msg.getRequestLine().getMethod(),target_uri));
@@ -134,7 +195,7 @@ public class Proxy extends Registrar {
 			// check whether the caller or callee is a local user 
 			if (!isResponsibleFor(msg.getFromHeader().getNameAddress().getAddress()) && !isResponsibleFor(msg.getToHeader().getNameAddress().getAddress())) {
 				LOG.info("both caller and callee are not registered with the local server: proxy denied.");
-				sip_provider.sendMessage(sip_provider.messageFactory().createResponse(msg,SipResponses.SERVICE_UNAVAILABLE,null,null));
+				sip_provider.sendStatelessResponse(msg,SipResponses.SERVICE_UNAVAILABLE,null);
 				return;
 			}
 		}
@@ -154,6 +215,8 @@ public class Proxy extends Registrar {
 		SipURI nexthop=null;
 		if (isResponsibleFor(msg.getFromHeader().getNameAddress().getAddress())) nexthop=getAuthDomainBasedProxyingTarget(request_uri);
 		if (nexthop==null) nexthop=getDomainBasedProxyingTarget(request_uri);
+		if (forwardStateless(msg,nexthop)) return;
+		// else
 		if (nexthop!=null) msg.setRequestLine(new RequestLine(rl.getMethod(),nexthop));
 		
 		updateProxyingRequest(msg); 
@@ -241,6 +304,128 @@ public class Proxy extends Registrar {
 	}
 	
 
+	/** Whether requests may be forwarded by editing their received bytes, see {@link #forwardStateless(SipMessage,SipURI)}.
+	  * Subclasses that modify forwarded requests in {@link #updateProxyingRequest(SipMessage)} must return false,
+	  * since the fast path does not call it. The {@link org.mjsip.server.sbc.SessionBorderController} does so. */
+	protected boolean isStatelessFastPathEnabled() {
+		return server_profile.statelessFastPath;
+	}
+
+
+	/** Forwards a request by editing the bytes it has been received with (stateless fast path).
+	  * <p>
+	  * The same header processing as in {@link #updateProxyingRequest(SipMessage)} is applied
+	  * (a Via is prepended, Max-Forwards is decremented, the local Route is removed, and a Record-Route is added if required),
+	  * but directly to the received bytes, without copying and re-serializing the message.
+	  * <p>
+	  * The fast path is only taken for requests received and forwarded over UDP, that have not been modified since being received,
+	  * and that need no strict-route adaption.
+	  * @param msg the received request
+	  * @param target_uri the new request-uri, or null if the request-uri is not changed
+	  * @return whether the request has been forwarded; if false, the request has not been touched and must be forwarded through the regular path */
+	protected boolean forwardStateless(SipMessage msg, SipURI target_uri) {
+		if (!isStatelessFastPathEnabled() || msg.getReceivedBytes()==null) return false;
+		// else
+		try {
+			SipMessageSplicer splicer=new SipMessageSplicer(msg);
+			
+			// the request-line must not have been changed (e.g. by a strict route update)
+			RequestLine rl=msg.getRequestLine();
+			if (!splicer.getFirstLine().equals(rl.toString().trim())) return false;
+			
+			// the top Via may have been updated with received and rport values
+			int via_index=splicer.indexOfHeader(SipHeaders.Via,SipHeaders.Via_short);
+			if (via_index<0) return false;
+			// else
+			// a Via in compact form is not known to the parsed message, the branch cannot be computed
+			if (via_index!=splicer.indexOfHeader(SipHeaders.Via)) return false;
+			// else
+			ViaHeader top_via=msg.getViaHeader();
+			String raw_via=splicer.getHeaderValue(via_index);
+			if (!raw_via.equals(top_via.getValue())) {
+				if (raw_via.indexOf(',')>=0) return false;
+				// else
+				splicer.replaceHeader(via_index,top_via);
+			}
+			
+			// remove Route if present
+			GenericURI next_route=null;
+			int route_index=splicer.indexOfHeader(SipHeaders.Route);
+			if (route_index>=0) {
+				MultipleHeader mr=msg.getRoutes();
+				GenericURI route=(new RouteHeader(mr.getTop())).getNameAddress().getAddress();
+				if (route.isSipURI() && isResponsibleFor(route.toSipURI().getHost(),route.toSipURI().getPort())) {
+					splicer.removeFirstValue(route_index);
+					mr.removeTop();
+				}
+				if (mr.size()>0) {
+					next_route=(new RouteHeader(mr.getTop())).getNameAddress().getAddress();
+					// strict route adaption requires the regular path
+					if (!next_route.hasLr()) return false;
+				}
+			}
+			
+			// next hop
+			GenericURI request_uri=(target_uri!=null)? target_uri : rl.getAddress();
+			GenericURI nexthop_uri=sip_provider.getOutboundProxy();
+			if (nexthop_uri==null) nexthop_uri=(next_route!=null)? next_route : request_uri;
+			if (!nexthop_uri.isSipURI()) return false;
+			// else
+			SipURI nexthop_sip_uri=nexthop_uri.toSipURI();
+			if (nexthop_sip_uri.hasMaddr()) return false;
+			// else
+			String proto;
+			if (nexthop_sip_uri.isSecure()) proto=SipProvider.PROTO_TLS;
+			else if (nexthop_sip_uri.hasTransport()) proto=nexthop_sip_uri.getTransport();
+			else proto=sip_provider.getDefaultTransport();
+			if (!SipProvider.PROTO_UDP.equalsIgnoreCase(proto)) return false;
+			// else
+			String dest_addr=nexthop_sip_uri.getHost();
+			int dest_port=nexthop_sip_uri.getPort();
+			if (dest_port<=0) dest_port=sip_provider.sipConfig().getDefaultPort();
+
+			// change the request-uri
+			if (target_uri!=null) splicer.setFirstLine(new RequestLine(rl.getMethod(),target_uri).toString().trim());
+
+			// add Via
+			ViaHeader via=new ViaHeader(proto,sip_provider.getViaAddress(SipURI.isIPv6(dest_addr)),sip_provider.getPort());
+			if (sip_provider.isRportSet()) via.setRport();
+			String branch=sip_provider.pickBranch(msg,request_uri);
+			if (server_profile.loopDetection) {
+				Header loop_tag=msg.getHeader(Loop_Tag);
+				if (loop_tag!=null) branch+=loop_tag.getValue();
+			}
+			via.setBranch(branch);
+			splicer.addHeaderTop(via);
+
+			// add Record-Route?
+			if (server_profile.onRoute && msg.isInvite()) {
+				SipURI rr_uri;
+				if (sip_provider.getPort()==sip_provider.sipConfig().getDefaultPort()) rr_uri=SipURI.parseSipURI(sip_provider.getViaAddress());
+				else rr_uri=new SipURI(sip_provider.getViaAddress(),sip_provider.getPort());
+				if (server_profile.looseRoute) rr_uri.addLr();
+				splicer.addHeaderTop(new RecordRouteHeader(new NameAddress(rr_uri)));
+			}
+
+			// decrement Max-Forwards
+			int maxfwd_index=splicer.indexOfHeader(SipHeaders.Max_Forwards);
+			if (maxfwd_index>=0) {
+				MaxForwardsHeader maxfwd=new MaxForwardsHeader(splicer.getHeaderValue(maxfwd_index));
+				maxfwd.decrement();
+				splicer.replaceHeader(maxfwd_index,maxfwd);
+			}
+			else splicer.addHeaderTop(new MaxForwardsHeader(sip_provider.sipConfig().getMaxForwards()));
+
+			LOG.debug("stateless fast path: forwarding to {}:{}",dest_addr,dest_port);
+			return sip_provider.sendRawBytes(splicer.getBytes(),proto,dest_addr,dest_port);
+		}
+		catch (Exception e) {
+			LOG.debug("stateless fast path not applicable", e);
+			return false;
+		}
+	}
+
+
 	/** When a new response message is received */
 	@Override
 	public void processResponse(SipMessage resp) {
@@ -265,6 +450,7 @@ public class Proxy extends Registrar {
 		//if (vh.getHost().equals(sip_provider.getViaAddress())) resp.removeViaHeader();
 		// remove the top most via regardless the via has been insterted by this node or not (this prevents loops)
 		resp.removeViaHeader();
+		addOverloadFeedback(resp);
 		return resp;
 	}
 	
@@ -272,37 +458,32 @@ public class Proxy extends Registrar {
 	/** Gets a new target according to the domain-based forwarding rules. */
 	protected SipURI getAuthDomainBasedProxyingTarget(GenericURI request_uri) {
 		LOG.trace("inside getAuthDomainBasedProxyingTarget(uri)");
-		// authenticated rules
-		for (int i=0; i<server_profile.authenticatedDomainProxyingRules.length; i++) {
-			ProxyingRule rule=(ProxyingRule)server_profile.authenticatedDomainProxyingRules[i];
-			SipURI nexthop=rule.getNexthop(request_uri);
-			if (nexthop!=null) {
-				LOG.debug("domain-based authenticated forwarding: {}; YES",rule);
-				LOG.debug("target={}",nexthop);
-				return nexthop;
-			}
-			else 
-				LOG.debug("domain-based authenticated forwarding: {}:NO",rule);
+		RoutingTable.Route route=routing_table.findDomainRoute(request_uri,true);
+		if (route==null) {
+			LOG.debug("domain-based authenticated forwarding: NO");
+			return null;
 		}
-		return null;
+		// else
+		SipURI nexthop=route.getTarget(request_uri);
+		LOG.debug("domain-based authenticated forwarding: {}: YES", route);
+		LOG.debug("target={}",nexthop);
+		return nexthop;
 	}
 
 
 	/** Gets a new target according to the domain-based forwarding rules. */
 	protected SipURI getDomainBasedProxyingTarget(GenericURI request_uri) {
 		LOG.trace("inside getDomainBasedForwardingTarget(uri)");
-		// non-authenticated rules
-		for (int i=0; i<server_profile.domainProxyingRules.length; i++) {
-			ProxyingRule rule=(ProxyingRule)server_profile.domainProxyingRules[i];
-			SipURI nexthop=rule.getNexthop(request_uri);
-			if (nexthop!=null) {
-				LOG.debug("domain-based forwarding: {}: YES", rule);
-				LOG.debug("target={}", nexthop);
-				return nexthop;
-			}
-			else LOG.debug("domain-based forwarding: {}: NO", rule);
+		RoutingTable.Route route=routing_table.findDomainRoute(request_uri,false);
+		if (route==null) {
+			LOG.debug("domain-based forwarding: NO");
+			return null;
 		}
-		return null;
+		// else
+		SipURI nexthop=route.getTarget(request_uri);
+		LOG.debug("domain-based forwarding: {}: YES", route);
+		LOG.debug("target={}",nexthop);
+		return nexthop;
 	}
 
 
@@ -315,19 +496,16 @@ public class Proxy extends Registrar {
 		String username=sip_uri.getUserName();
 		if (username==null || !isPhoneNumber(username))  return null;
 		// else
-		// authenticated rules
-		LOG.trace("authenticated prefix-based rules: {}", server_profile.authenticatedPhoneProxyingRules.length);
-		for (int i=0; i<server_profile.authenticatedPhoneProxyingRules.length; i++) {
-			ProxyingRule rule=(ProxyingRule)server_profile.authenticatedPhoneProxyingRules[i];
-			SipURI nexthop=rule.getNexthop(request_uri);
-			if (nexthop!=null) {
-				LOG.debug("prefix-based authenticated forwarding: {}: YES", rule);
-				LOG.debug("target={}", nexthop);
-				return nexthop;
-			}
-			else LOG.debug("prefix-based authenticated forwarding: {}: NO", rule);
+		RoutingTable.Route route=routing_table.findPrefixRoute(request_uri,true);
+		if (route==null) {
+			LOG.debug("prefix-based authenticated forwarding: NO");
+			return null;
 		}
-		return null;
+		// else
+		SipURI nexthop=route.getTarget(request_uri);
+		LOG.debug("prefix-based authenticated forwarding: {}: YES", route);
+		LOG.debug("target={}",nexthop);
+		return nexthop;
 	}
 
 
@@ -340,19 +518,16 @@ public class Proxy extends Registrar {
 		String username=sip_uri.getUserName();
 		if (username==null || !isPhoneNumber(username))  return null;
 		// else
-		// non-authenticated rules
-		LOG.trace("prefix-based rules: {}", server_profile.phoneProxyingRules.length);
-		for (int i=0; i<server_profile.phoneProxyingRules.length; i++) {
-			ProxyingRule rule=(ProxyingRule)server_profile.phoneProxyingRules[i];
-			SipURI nexthop=rule.getNexthop(request_uri);
-			if (nexthop!=null) {
-				LOG.debug("prefix-based forwarding: {}: YES", rule);
-				LOG.debug("target= {}", nexthop.toString());
-				return nexthop;
-			}
-			else LOG.debug("prefix-based forwarding: {}: NO", rule);
+		RoutingTable.Route route=routing_table.findPrefixRoute(request_uri,false);
+		if (route==null) {
+			LOG.debug("prefix-based forwarding: NO");
+			return null;
 		}
-		return null;
+		// else
+		SipURI nexthop=route.getTarget(request_uri);
+		LOG.debug("prefix-based forwarding: {}: YES", route);
+		LOG.debug("target={}",nexthop);
+		return nexthop;
 	}
 
 
@@ -376,15 +551,20 @@ public class Proxy extends Registrar {
 		SipConfig sipConfig = new SipConfig();
 		SchedulerConfig schedulerConfig = new SchedulerConfig();
 		ServerProfile server_profile=new ServerProfile();
+		CdrConfig cdrConfig=new CdrConfig();
+		MetricsConfig metricsConfig = new MetricsConfig();
 
-		MetaConfig metaConfig = OptionParser.parseOptions(args, ".mjsip-proxy", sipConfig, schedulerConfig, server_profile);
+		MetaConfig metaConfig = OptionParser.parseOptions(args, ".mjsip-proxy", sipConfig, schedulerConfig, server_profile, cdrConfig, metricsConfig);
 		
 		sipConfig.normalize();
 		server_profile.normalize();
+
+		MetricsExporter.startIfEnabled(metricsConfig);
 					
 		SipProvider sip_provider=new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig));
 
-		new Proxy(sip_provider,server_profile);
+		Proxy proxy=new Proxy(sip_provider,server_profile);
+		if (cdrConfig.isEnabled()) proxy.setCallLogger(new CdrCallLogger(cdrConfig));
 	}
   
 }
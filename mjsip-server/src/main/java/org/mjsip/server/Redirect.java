@@ -26,6 +26,8 @@ import java.util.Vector;
 
 import org.mjsip.config.MetaConfig;
 import org.mjsip.config.OptionParser;
+import org.mjsip.metrics.MetricsConfig;
+import org.mjsip.metrics.MetricsExporter;
 import org.mjsip.sip.header.MultipleHeader;
 import org.mjsip.sip.header.SipHeaders;
 import org.mjsip.sip.message.SipMessage;
@@ -61,7 +63,7 @@ public class Redirect extends Registrar {
 
 		if (contacts.isEmpty()) {
 			LOG.info("No target found, message discarded");
-			if (!msg.isAck()) sip_provider.sendMessage(sip_provider.messageFactory().createResponse(msg,SipResponses.NOT_FOUND,null,null));
+			if (!msg.isAck()) sip_provider.sendStatelessResponse(msg,SipResponses.NOT_FOUND,null);
 			return;
 		} 
 					 
@@ -79,7 +81,7 @@ public class Redirect extends Registrar {
 	public void processRequestToRemoteUA(SipMessage msg) {
 		LOG.debug("inside processRequestToRemoteUA(msg)");
 		LOG.info("request not for local server");
-		if (!msg.isAck()) sip_provider.sendMessage(sip_provider.messageFactory().createResponse(msg,SipResponses.NOT_FOUND,null,null));
+		if (!msg.isAck()) sip_provider.sendStatelessResponse(msg,SipResponses.NOT_FOUND,null);
 		else LOG.info("message discarded");
 	}   
 
@@ -99,11 +101,14 @@ public class Redirect extends Registrar {
 		SipConfig sipConfig = new SipConfig();
 		SchedulerConfig schedulerConfig = new SchedulerConfig();
 		ServerProfile server_profile=new ServerProfile();
+		MetricsConfig metricsConfig = new MetricsConfig();
 
-		MetaConfig metaConfig = OptionParser.parseOptions(args, ".mjsip-redirect", sipConfig, schedulerConfig, server_profile);
+		MetaConfig metaConfig = OptionParser.parseOptions(args, ".mjsip-redirect", sipConfig, schedulerConfig, server_profile, metricsConfig);
 		
 		sipConfig.normalize();
 		server_profile.normalize();
+
+		MetricsExporter.startIfEnabled(metricsConfig);
 						
 		SipProvider sip_provider=new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig));
 
@@ -28,6 +28,8 @@ import java.util.Vector;
 
 import org.mjsip.config.MetaConfig;
 import org.mjsip.config.OptionParser;
+import org.mjsip.metrics.MetricsConfig;
+import org.mjsip.metrics.MetricsExporter;
 import org.mjsip.sip.address.GenericURI;
 import org.mjsip.sip.address.NameAddress;
 import org.mjsip.sip.address.SipURI;
@@ -89,11 +91,11 @@ public class Registrar extends ServerEngine {
 				resp.setAuthenticationInfoHeader(as.getAuthenticationInfoHeader());
 			}
 			
+			addOverloadFeedback(resp);
 			t.respondWith(resp);
 		} else if (!msg.isAck()) {
 			// send a stateless error response
-			SipMessage resp=sip_provider.messageFactory().createResponse(msg,SipResponses.NOT_IMPLEMENTED,null,null);
-			sip_provider.sendMessage(resp);
+			sip_provider.sendStatelessResponse(msg,SipResponses.NOT_IMPLEMENTED,null);
 		}     
 	}
 
@@ -102,7 +104,7 @@ public class Registrar extends ServerEngine {
 	public void processRequestToLocalUser(SipMessage msg) {
 		LOG.debug("inside processRequestToLocalUser(msg)");
 		// stateless-response (in order to avoid DoS attacks)
-		if (!msg.isAck()) sip_provider.sendMessage(sip_provider.messageFactory().createResponse(msg,SipResponses.NOT_FOUND,null,null));
+		if (!msg.isAck()) sip_provider.sendStatelessResponse(msg,SipResponses.NOT_FOUND,null);
 		else LOG.info("message discarded");
 	}
  
@@ -115,7 +117,7 @@ public class Registrar extends ServerEngine {
 			// Ignore.
 		} else {
 			LOG.info("Ignoring proxy request to: {}", msg.getToHeader().getValue());
-			sip_provider.sendMessage(sip_provider.messageFactory().createResponse(msg,SipResponses.NOT_FOUND,null,null));
+			sip_provider.sendStatelessResponse(msg,SipResponses.NOT_FOUND,null);
 		}
 	}
 
@@ -324,11 +326,14 @@ public class Registrar extends ServerEngine {
 		SipConfig sipConfig = new SipConfig();
 		SchedulerConfig schedulerConfig = new SchedulerConfig();
 		ServerProfile server_profile=new ServerProfile();
+		MetricsConfig metricsConfig = new MetricsConfig();
 
-		MetaConfig metaConfig = OptionParser.parseOptions(args, ".mjsip-registrar", sipConfig, schedulerConfig, server_profile);
+		MetaConfig metaConfig = OptionParser.parseOptions(args, ".mjsip-registrar", sipConfig, schedulerConfig, server_profile, metricsConfig);
 		
 		sipConfig.normalize();
 		server_profile.normalize();
+
+		MetricsExporter.startIfEnabled(metricsConfig);
 			
 		SipProvider sip_provider=new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig));
 		
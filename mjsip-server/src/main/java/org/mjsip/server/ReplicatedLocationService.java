@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.mjsip.server.cluster.BindingReplica;
+import org.mjsip.server.cluster.BindingReplica.Binding;
+import org.mjsip.server.cluster.GossipService;
+import org.mjsip.sip.address.GenericURIImpl;
+import org.mjsip.sip.address.NameAddress;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link LocationService} that shares its bindings with the other nodes of a server cluster.
+ *
+ * <p>
+ * Each node keeps a full replica of all bindings in memory, so that looking up the targets of a
+ * request never leaves the node. Registrations processed by any node are pushed to all other
+ * nodes immediately and reconciled periodically with a random node by a {@link GossipService}.
+ * Concurrent updates of the same binding are resolved in favor of the latest one, see
+ * {@link BindingReplica}.
+ * </p>
+ *
+ * <p>
+ * The replica is not persisted, the location DB file is not used. A restarted node receives the
+ * current bindings from the other nodes. The cluster is configured with the options
+ * <code>--cluster-port</code> and <code>--cluster-peers</code> of the {@link ServerProfile}, each
+ * node lists all other nodes as peers.
+ * </p>
+ *
+ * <p>
+ * Selected with the location service type <code>replicated</code>.
+ * </p>
+ */
+public class ReplicatedLocationService implements LocationService {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ReplicatedLocationService.class);
+
+	private final BindingReplica _replica;
+
+	private final GossipService _gossip;
+
+	/**
+	 * Creates a {@link ReplicatedLocationService} from the cluster options of the given profile.
+	 */
+	public ReplicatedLocationService(ServerProfile profile) throws IOException {
+		this(profile.clusterNode, address(profile.clusterAddress, profile.clusterPort),
+				peers(profile.clusterPeers, profile.clusterPort), profile.clusterGossipInterval);
+	}
+
+	/**
+	 * Creates a {@link ReplicatedLocationService}.
+	 *
+	 * @param node
+	 *        The name of this node, <code>null</code> to use the local address.
+	 * @param address
+	 *        The local address to exchange bindings with other nodes.
+	 * @param peers
+	 *        The addresses of the other nodes.
+	 * @param interval
+	 *        The interval in milliseconds in which bindings are reconciled with a random peer.
+	 */
+	public ReplicatedLocationService(String node, InetSocketAddress address, List<InetSocketAddress> peers,
+			long interval) throws IOException {
+		String name = node != null ? node : address.getHostString() + ":" + address.getPort();
+		// Sequence numbers start again after a restart, the origin must be new.
+		_replica = new BindingReplica(name + "/" + Long.toString(System.currentTimeMillis(), 36));
+		_gossip = new GossipService(_replica, address, peers, interval);
+		_gossip.start();
+		LOG.info("Replicating location service {} on {} with peers {}.", _replica.getOrigin(),
+				_gossip.getLocalAddress(), peers);
+	}
+
+	/**
+	 * The local address other nodes send bindings to.
+	 */
+	public InetSocketAddress getLocalAddress() {
+		return _gossip.getLocalAddress();
+	}
+
+	/**
+	 * Stops replication and releases the cluster port.
+	 */
+	public void halt() {
+		_gossip.halt();
+	}
+
+	// **************** Methods of interface Registry ****************
+
+	/**
+	 * Nothing to do, bindings are replicated continuously.
+	 */
+	@Override
+	public void sync() {
+		// Ignore.
+	}
+
+	@Override
+	public int size() {
+		return _replica.getUsers().size();
+	}
+
+	@Override
+	public Enumeration<String> getUsers() {
+		return Collections.enumeration(_replica.getUsers());
+	}
+
+	@Override
+	public boolean hasUser(String user) {
+		return _replica.hasUser(user);
+	}
+
+	@Override
+	public Repository addUser(String user) {
+		synchronized (_replica) {
+			if (_replica.get(user, BindingReplica.USER_MARKER) == null) {
+				publish(_replica.update(user, BindingReplica.USER_MARKER, null, LocationServiceImpl.NEVER, false));
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public Repository removeUser(String user) {
+		_gossip.publish(_replica.remove(user));
+		return this;
+	}
+
+	@Override
+	public Repository removeAllUsers() {
+		List<Binding> removed = new ArrayList<>();
+		for (String user : _replica.getUsers()) {
+			removed.addAll(_replica.remove(user));
+		}
+		_gossip.publish(removed);
+		return this;
+	}
+
+	/**
+	 * Summary of the replica, the bindings are not listed.
+	 */
+	@Override
+	public String toString() {
+		return "ReplicatedLocationService(" + _replica.getOrigin() + ", users=" + size() + ")";
+	}
+
+	// **************** Methods of interface LocationService ****************
+
+	@Override
+	public boolean hasUserContact(String user, String uri) {
+		return _replica.get(user, uri) != null;
+	}
+
+	@Override
+	public LocationService addUserContact(String user, NameAddress contact, Date expire) {
+		String uri = contact.getAddress().toString();
+		synchronized (_replica) {
+			addUser(user);
+			// A refreshed registration replaces the previous expiration time.
+			publish(_replica.update(user, uri, contact.getDisplayName(), expire.getTime(), false));
+		}
+		return this;
+	}
+
+	@Override
+	public Enumeration<String> getUserContactURIs(String user) {
+		if (!_replica.hasUser(user)) {
+			return null;
+		}
+		List<String> result = new ArrayList<>();
+		for (Binding binding : _replica.getBindings(user)) {
+			result.add(binding.getUri());
+		}
+		return Collections.enumeration(result);
+	}
+
+	@Override
+	public LocationService removeUserContact(String user, String uri) {
+		synchronized (_replica) {
+			if (_replica.get(user, uri) != null) {
+				publish(_replica.update(user, uri, null, 0, true));
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public NameAddress getUserContactNameAddress(String user, String uri) {
+		Binding binding = _replica.get(user, uri);
+		if (binding == null) {
+			return null;
+		}
+		return new NameAddress(binding.getName(), new GenericURIImpl(binding.getUri()));
+	}
+
+	@Override
+	public Date getUserContactExpirationDate(String user, String uri) {
+		Binding binding = _replica.get(user, uri);
+		return binding == null ? null : new Date(binding.getExpires());
+	}
+
+	@Override
+	public boolean isUserContactExpired(String user, String uri) {
+		Binding binding = _replica.get(user, uri);
+		// Same as a contact header with expires parameter 0.
+		return binding == null || binding.getExpires() - System.currentTimeMillis() < 1000;
+	}
+
+	@Override
+	public LocationService addUserStaticContact(String user, NameAddress name_address) {
+		return addUserContact(user, name_address, new Date(LocationServiceImpl.NEVER));
+	}
+
+	@Override
+	public boolean isUserContactStatic(String user, String uri) {
+		return getUserContactExpirationDate(user, uri).getTime() >= LocationServiceImpl.NEVER;
+	}
+
+	// ***************************** Private methods *****************************
+
+	private void publish(Binding binding) {
+		_gossip.publish(Collections.singletonList(binding));
+	}
+
+	private static InetSocketAddress address(String host, int port) {
+		return host == null ? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+	}
+
+	private static List<InetSocketAddress> peers(String[] peers, int default_port) {
+		List<InetSocketAddress> result = new ArrayList<>();
+		if (peers == null) {
+			return result;
+		}
+		for (String peer : peers) {
+			int sep = peer.lastIndexOf(':');
+			if (sep < 0) {
+				result.add(new InetSocketAddress(peer, default_port));
+			} else {
+				result.add(new InetSocketAddress(peer.substring(0, sep), Integer.parseInt(peer.substring(sep + 1))));
+			}
+		}
+		return result;
+	}
+
+}
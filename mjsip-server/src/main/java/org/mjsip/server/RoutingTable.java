@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mjsip.sip.address.GenericURI;
+import org.mjsip.sip.address.SipURI;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Compiled form of the proxying rules of a {@link Proxy}.
+ *
+ * <p>
+ * Prefix rules are compiled into a digit trie that selects the rule with the longest matching
+ * prefix in time proportional to the length of the user name (independent of the number of rules).
+ * Domain rules are stored in a hash table keyed by the lower-case domain name.
+ * </p>
+ *
+ * <p>
+ * A {@link RoutingTable} is immutable after creation (except for its match statistics). To change
+ * the routing at runtime, a new table is built (e.g. with {@link #load(File, ServerProfile)}) and
+ * atomically exchanged with the old one, see {@link Proxy#reloadRoutingTable()}.
+ * </p>
+ *
+ * <p>
+ * The routing file is line-based. Each non-empty line that does not start with <code>#</code> has
+ * the form:
+ * </p>
+ *
+ * <pre>
+ * &lt;kind&gt; &lt;key&gt; &lt;nexthop&gt;
+ * </pre>
+ *
+ * <p>
+ * where <code>kind</code> is one of <code>prefix</code>, <code>domain</code>,
+ * <code>auth-prefix</code>, or <code>auth-domain</code>, <code>key</code> is the phone prefix
+ * (<code>*</code> for the default rule) or domain name, and <code>nexthop</code> is the next-hop
+ * socket address, e.g. <code>prefix 0049 127.0.0.2:7002</code>.
+ * </p>
+ */
+public class RoutingTable {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RoutingTable.class);
+
+	/** Rule kind of non-authenticated prefix rules in a routing file. */
+	public static final String KIND_PREFIX = "prefix";
+
+	/** Rule kind of non-authenticated domain rules in a routing file. */
+	public static final String KIND_DOMAIN = "domain";
+
+	/** Rule kind of authenticated prefix rules in a routing file. */
+	public static final String KIND_AUTH_PREFIX = "auth-prefix";
+
+	/** Rule kind of authenticated domain rules in a routing file. */
+	public static final String KIND_AUTH_DOMAIN = "auth-domain";
+
+	/**
+	 * A single entry of a {@link RoutingTable} with its match statistics.
+	 */
+	public static final class Route {
+
+		private final String _kind;
+
+		private final String _key;
+
+		private final SocketAddress _nexthop;
+
+		private final LongAdder _matches = new LongAdder();
+
+		Route(String kind, String key, SocketAddress nexthop) {
+			_kind = kind;
+			_key = key;
+			_nexthop = nexthop;
+		}
+
+		/**
+		 * The kind of rule, one of {@link RoutingTable#KIND_PREFIX}, {@link RoutingTable#KIND_DOMAIN},
+		 * {@link RoutingTable#KIND_AUTH_PREFIX}, {@link RoutingTable#KIND_AUTH_DOMAIN}.
+		 */
+		public String getKind() {
+			return _kind;
+		}
+
+		/**
+		 * The matching prefix or domain.
+		 */
+		public String getKey() {
+			return _key;
+		}
+
+		/**
+		 * The next-hop address requests are forwarded to.
+		 */
+		public SocketAddress getNexthop() {
+			return _nexthop;
+		}
+
+		/**
+		 * The number of requests that have been routed by this entry.
+		 */
+		public long getMatches() {
+			return _matches.sum();
+		}
+
+		/**
+		 * The next-hop URI for a request to the given URI, counted as match of this entry.
+		 */
+		public SipURI getTarget(GenericURI requestUri) {
+			_matches.increment();
+			return new SipURI(requestUri.toSipURI().getUserName(), _nexthop.getAddress().toString(),
+					_nexthop.getPort());
+		}
+
+		@Override
+		public String toString() {
+			return "{" + _kind + "=" + _key + ",nexthop=" + _nexthop + ",matches=" + getMatches() + "}";
+		}
+	}
+
+	/**
+	 * Node of the digit trie.
+	 */
+	private static final class Node {
+		Node[] children;
+
+		Route route;
+
+		Node child(int index, boolean create) {
+			if (children == null) {
+				if (!create) {
+					return null;
+				}
+				children = new Node[DIGITS];
+			}
+			Node result = children[index];
+			if (result == null && create) {
+				result = new Node();
+				children[index] = result;
+			}
+			return result;
+		}
+	}
+
+	/** Number of characters that may occur in a phone number, see {@link Proxy#isPhoneNumber(String)}. */
+	private static final int DIGITS = 14;
+
+	/**
+	 * Set of rules with the same authentication requirement.
+	 */
+	private static final class RuleSet {
+		final Node prefixes = new Node();
+
+		final Map<String, Route> domains = new HashMap<>();
+
+		void addPrefix(Route route) {
+			String prefix = route.getKey();
+			Node node = prefixes;
+			if (!PrefixProxyingRule.DEFAULT_PREFIX.equalsIgnoreCase(prefix)) {
+				for (int n = 0, cnt = prefix.length(); n < cnt; n++) {
+					int index = digitIndex(prefix.charAt(n));
+					if (index < 0) {
+						throw new IllegalArgumentException("Not a phone number prefix: " + prefix);
+					}
+					node = node.child(index, true);
+				}
+			}
+			if (node.route == null) {
+				// First rule wins as with the linear rule lists.
+				node.route = route;
+			}
+		}
+
+		void addDomain(Route route) {
+			domains.putIfAbsent(route.getKey().toLowerCase(Locale.ROOT), route);
+		}
+
+		Route lookupPrefix(String username) {
+			Node node = prefixes;
+			Route result = node.route;
+			for (int n = 0, cnt = username.length(); n < cnt; n++) {
+				int index = digitIndex(username.charAt(n));
+				if (index < 0) {
+					break;
+				}
+				node = node.child(index, false);
+				if (node == null) {
+					break;
+				}
+				if (node.route != null) {
+					result = node.route;
+				}
+			}
+			return result;
+		}
+
+		Route lookupDomain(String host) {
+			if (domains.isEmpty()) {
+				return null;
+			}
+			return domains.get(host.toLowerCase(Locale.ROOT));
+		}
+	}
+
+	private final RuleSet _rules = new RuleSet();
+
+	private final RuleSet _authRules = new RuleSet();
+
+	private final List<Route> _routes = new ArrayList<>();
+
+	private final LongAdder _lookups = new LongAdder();
+
+	private final LongAdder _misses = new LongAdder();
+
+	/**
+	 * Creates an empty {@link RoutingTable}.
+	 */
+	public RoutingTable() {
+		super();
+	}
+
+	/**
+	 * Creates a {@link RoutingTable} from the static proxying rules of the given
+	 * {@link ServerProfile}.
+	 */
+	public static RoutingTable fromProfile(ServerProfile profile) {
+		RoutingTable result = new RoutingTable();
+		result.addRules(profile);
+		return result;
+	}
+
+	/**
+	 * Creates a {@link RoutingTable} from the static proxying rules of the given
+	 * {@link ServerProfile} and the rules from the given routing file.
+	 *
+	 * <p>
+	 * Rules from the profile take precedence over rules with the same key from the file.
+	 * </p>
+	 */
+	public static RoutingTable load(File file, ServerProfile profile) throws IOException {
+		RoutingTable result = fromProfile(profile);
+		try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+			int lineNumber = 0;
+			String line;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] parts = line.split("\\s+");
+				if (parts.length != 3) {
+					throw new IOException("Invalid routing rule in line " + lineNumber + " of '" + file + "': " + line);
+				}
+				try {
+					result.addRule(parts[0], parts[1], new SocketAddress(parts[2]));
+				} catch (RuntimeException ex) {
+					throw new IOException("Invalid routing rule in line " + lineNumber + " of '" + file + "': " + line, ex);
+				}
+			}
+		}
+		return result;
+	}
+
+	private void addRules(ServerProfile profile) {
+		addRules(KIND_AUTH_PREFIX, profile.authenticatedPhoneProxyingRules);
+		addRules(KIND_PREFIX, profile.phoneProxyingRules);
+		addRules(KIND_AUTH_DOMAIN, profile.authenticatedDomainProxyingRules);
+		addRules(KIND_DOMAIN, profile.domainProxyingRules);
+	}
+
+	private void addRules(String kind, ProxyingRule[] rules) {
+		if (rules == null) {
+			return;
+		}
+		for (ProxyingRule rule : rules) {
+			try {
+				if (rule instanceof PrefixProxyingRule) {
+					PrefixProxyingRule prefixRule = (PrefixProxyingRule) rule;
+					addRule(kind, prefixRule.prefix, prefixRule.nexthop);
+				} else if (rule instanceof DomainProxyingRule) {
+					DomainProxyingRule domainRule = (DomainProxyingRule) rule;
+					addRule(kind, domainRule.domain, domainRule.nexthop);
+				} else {
+					LOG.warn("Unsupported proxying rule ignored: {}", rule);
+				}
+			} catch (IllegalArgumentException ex) {
+				// Such rule could never match, since only phone numbers are routed by prefix.
+				LOG.warn("Proxying rule ignored: {}", ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Adds a rule to this table.
+	 *
+	 * @param kind
+	 *        The kind of rule, one of {@link #KIND_PREFIX}, {@link #KIND_DOMAIN},
+	 *        {@link #KIND_AUTH_PREFIX}, {@link #KIND_AUTH_DOMAIN}.
+	 * @param key
+	 *        The phone prefix (or <code>*</code>) for prefix rules, the domain name for domain
+	 *        rules.
+	 * @param nexthop
+	 *        The address to forward matching requests to.
+	 */
+	public void addRule(String kind, String key, SocketAddress nexthop) {
+		if (key.equals("*")) {
+			key = PrefixProxyingRule.DEFAULT_PREFIX;
+		}
+		Route route = new Route(kind, key, nexthop);
+		switch (kind) {
+		case KIND_PREFIX:
+			_rules.addPrefix(route);
+			break;
+		case KIND_AUTH_PREFIX:
+			_authRules.addPrefix(route);
+			break;
+		case KIND_DOMAIN:
+			_rules.addDomain(route);
+			break;
+		case KIND_AUTH_DOMAIN:
+			_authRules.addDomain(route);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown rule kind: " + kind);
+		}
+		_routes.add(route);
+	}
+
+	/**
+	 * Looks up the prefix rule for the given request URI.
+	 *
+	 * @param requestUri
+	 *        The request URI of the request to forward.
+	 * @param authenticated
+	 *        Whether to use the rules for authenticated users.
+	 * @return The rule with the longest prefix matching the user name of the given URI, or
+	 *         <code>null</code>, if no rule matches.
+	 */
+	public Route findPrefixRoute(GenericURI requestUri, boolean authenticated) {
+		if (!requestUri.isSipURI()) {
+			return null;
+		}
+		String username = requestUri.toSipURI().getUserName();
+		if (username == null) {
+			return null;
+		}
+		_lookups.increment();
+		Route route = (authenticated ? _authRules : _rules).lookupPrefix(username);
+		if (route == null) {
+			_misses.increment();
+		}
+		return route;
+	}
+
+	/**
+	 * Looks up the domain rule for the given request URI.
+	 *
+	 * @param requestUri
+	 *        The request URI of the request to forward.
+	 * @param authenticated
+	 *        Whether to use the rules for authenticated users.
+	 * @return The rule matching the host of the given URI, or <code>null</code>, if no rule
+	 *         matches.
+	 */
+	public Route findDomainRoute(GenericURI requestUri, boolean authenticated) {
+		if (!requestUri.isSipURI()) {
+			return null;
+		}
+		_lookups.increment();
+		Route route = (authenticated ? _authRules : _rules).lookupDomain(requestUri.toSipURI().getHost());
+		if (route == null) {
+			_misses.increment();
+		}
+		return route;
+	}
+
+	/**
+	 * Gets the next-hop for the given request URI according to the prefix rules.
+	 *
+	 * @param requestUri
+	 *        The request URI of the request to forward.
+	 * @param authenticated
+	 *        Whether to use the rules for authenticated users.
+	 * @return The next-hop URI of the rule with the longest prefix matching the user name of the
+	 *         given URI, or <code>null</code>, if no rule matches.
+	 * 
+	 * @see #findPrefixRoute(GenericURI, boolean)
+	 */
+	public SipURI getPrefixTarget(GenericURI requestUri, boolean authenticated) {
+		Route route = findPrefixRoute(requestUri, authenticated);
+		return route == null ? null : route.getTarget(requestUri);
+	}
+
+	/**
+	 * Gets the next-hop for the given request URI according to the domain rules.
+	 *
+	 * @param requestUri
+	 *        The request URI of the request to forward.
+	 * @param authenticated
+	 *        Whether to use the rules for authenticated users.
+	 * @return The next-hop URI of the rule matching the host of the given URI, or
+	 *         <code>null</code>, if no rule matches.
+	 * 
+	 * @see #findDomainRoute(GenericURI, boolean)
+	 */
+	public SipURI getDomainTarget(GenericURI requestUri, boolean authenticated) {
+		Route route = findDomainRoute(requestUri, authenticated);
+		return route == null ? null : route.getTarget(requestUri);
+	}
+
+	/**
+	 * All entries of this table in the order they were added.
+	 */
+	public List<Route> getRoutes() {
+		return Collections.unmodifiableList(_routes);
+	}
+
+	/**
+	 * The number of entries in this table.
+	 */
+	public int size() {
+		return _routes.size();
+	}
+
+	/**
+	 * The number of lookups performed with this table.
+	 */
+	public long getLookups() {
+		return _lookups.sum();
+	}
+
+	/**
+	 * The number of lookups that did not match any entry.
+	 */
+	public long getMisses() {
+		return _misses.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "RoutingTable{routes=" + size() + ",lookups=" + getLookups() + ",misses=" + getMisses() + "}";
+	}
+
+	/**
+	 * Index of the given character in the trie child array, or <code>-1</code> if the character
+	 * may not occur in a phone number.
+	 */
+	static int digitIndex(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		switch (c) {
+		case '*':
+			return 10;
+		case '#':
+			return 11;
+		case '+':
+			return 12;
+		case '-':
+			return 13;
+		default:
+			return -1;
+		}
+	}
+
+}
@@ -25,6 +25,7 @@ package org.mjsip.server;
 import java.util.Enumeration;
 import java.util.Vector;
 
+import org.mjsip.server.overload.OverloadControl;
 import org.mjsip.sip.address.GenericURI;
 import org.mjsip.sip.address.SipURI;
 import org.mjsip.sip.header.Header;
@@ -32,6 +33,7 @@ import org.mjsip.sip.header.LegacyHeader;
 import org.mjsip.sip.header.MaxForwardsHeader;
 import org.mjsip.sip.header.MultipleHeader;
 import org.mjsip.sip.header.RouteHeader;
+import org.mjsip.sip.header.SipHeaders;
 import org.mjsip.sip.header.ViaHeader;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipResponses;
@@ -79,16 +81,22 @@ public abstract class ServerEngine implements SipProviderListener {
 
 	/** AuthenticationServer. */
 	protected AuthenticationServer as;
+
+	/** CallLogger informed about all received messages, or <i>null</i> */
+	protected volatile CallLogger call_logger=null;
+
+	/** Admission control for new requests, or <i>null</i> if disabled */
+	protected OverloadControl overload_control=null;
 	
 	/** List of already supported location services */
-	protected static final String[] LOCATION_SERVICES={ "local" };
+	protected static final String[] LOCATION_SERVICES={ "local", "mapped", "replicated" };
 	/** List of location service Classes (ordered as in <i>LOCATION_SERVICES</i>) */
-	protected static final String[] LOCATION_SERVICE_CLASSES={ LocationServiceImpl.class.getName() };
+	protected static final String[] LOCATION_SERVICE_CLASSES={ LocationServiceImpl.class.getName(), MappedLocationService.class.getName(), ReplicatedLocationService.class.getName() };
 
 	/** List of already supported authentication services */
-	protected static final String[] AUTHENTICATION_SERVICES={ "local" };
+	protected static final String[] AUTHENTICATION_SERVICES={ "local", "mapped" };
 	/** List of authentication service Classes (ordered as in <i>AUTHENTICATION_SERVICES</i>) */
-	protected static final String[] AUTHENTICATION_SERVICE_CLASSES={ AuthenticationServiceImpl.class.getName() };
+	protected static final String[] AUTHENTICATION_SERVICE_CLASSES={ AuthenticationServiceImpl.class.getName(), MappedAuthenticationService.class.getName() };
 
 	/** List of already supported authentication schemes */
 	protected static final String[] AUTHENTICATION_SCHEMES={ "Digest" };
@@ -122,6 +130,7 @@ public abstract class ServerEngine implements SipProviderListener {
 	public ServerEngine(SipProvider provider, ServerProfile profile) {
 		server_profile=profile;
 		sip_provider=provider;
+		if (profile.overloadControl) overload_control=new OverloadControl(profile,provider.scheduler(),provider::getPendingMessages);
 		sip_provider.addSelectiveListener(SipId.ANY_METHOD,this);
 			 
 		// LOCAL DOMAINS
@@ -133,15 +142,22 @@ public abstract class ServerEngine implements SipProviderListener {
 			if (LOCATION_SERVICES[i].equalsIgnoreCase(profile.locationService)) {  location_service_class=LOCATION_SERVICE_CLASSES[i];  break;  }
 		try {
 			Class myclass=Class.forName(location_service_class);
-			Class[] parameter_types={ Class.forName("java.lang.String") };
-			Object[] parameters={ profile.locationDb };
 			try  {
-				java.lang.reflect.Constructor constructor=myclass.getConstructor(parameter_types);
-				location_service=(LocationService)constructor.newInstance(parameters);
+				// services configured by more than the DB file name
+				java.lang.reflect.Constructor constructor=myclass.getConstructor(ServerProfile.class);
+				location_service=(LocationService)constructor.newInstance(profile);
 			}
-			catch (NoSuchMethodException e) {
-				LOG.debug("Exception.", e);
-				location_service=(LocationService)myclass.newInstance();
+			catch (NoSuchMethodException e0) {
+				Class[] parameter_types={ Class.forName("java.lang.String") };
+				Object[] parameters={ profile.locationDb };
+				try  {
+					java.lang.reflect.Constructor constructor=myclass.getConstructor(parameter_types);
+					location_service=(LocationService)constructor.newInstance(parameters);
+				}
+				catch (NoSuchMethodException e) {
+					LOG.debug("Exception.", e);
+					location_service=(LocationService)myclass.newInstance();
+				}
 			}
 		}
 		catch (Exception e) {
@@ -248,10 +264,68 @@ public abstract class ServerEngine implements SipProviderListener {
 	
 	// **************************** public methods ****************************
 
+	/** Sets the CallLogger that is informed about all received requests and responses.
+	  * @param logger the call logger, or <i>null</i> to disable call logging */
+	public void setCallLogger(CallLogger logger) {
+		call_logger=logger;
+	}
+
+	/** Gets the CallLogger, or <i>null</i> if not set. */
+	public CallLogger getCallLogger() {
+		return call_logger;
+	}
+
+	/** Gets the OverloadControl, or <i>null</i> if overload control is disabled. */
+	public OverloadControl getOverloadControl() {
+		return overload_control;
+	}
+
 	/** When a new message is received by the SipProvider.
-	  * If the received message is a request, it cheks for loops, */
+	  * New requests are first passed to the admission control (if enabled), and are rejected if the
+	  * server is overloaded. */
 	@Override
 	public void onReceivedMessage(SipProvider provider, SipMessage msg) {
+		OverloadControl overload=overload_control;
+		if (overload==null) {
+			processReceivedMessage(msg);
+			return;
+		}
+		if (msg.isRequest() && !overload.admit(msg)) {
+			rejectOverloaded(msg);
+			return;
+		}
+		long start=System.nanoTime();
+		try {
+			processReceivedMessage(msg);
+		}
+		finally {
+			overload.processed(System.nanoTime()-start);
+		}
+	}
+
+	/** Rejects a new request statelessly with 503 (Service Unavailable), because the server is overloaded. */
+	protected void rejectOverloaded(SipMessage req) {
+		LOG.debug("server overloaded: request rejected");
+		LegacyHeader retry_after=new LegacyHeader(SipHeaders.Retry_After,Integer.toString(overload_control.getRetryAfter()));
+		if (!overload_control.requestsFeedback(req)) {
+			sip_provider.sendStatelessResponse(req,SipResponses.SERVICE_UNAVAILABLE,retry_after);
+			return;
+		}
+		SipMessage resp=sip_provider.messageFactory().createResponse(req,SipResponses.SERVICE_UNAVAILABLE,null,null);
+		resp.setHeader(retry_after);
+		overload_control.addFeedback(resp);
+		sip_provider.sendMessage(resp);
+	}
+
+	/** Adds overload control feedback to a response sent to a client, if overload control is enabled. */
+	protected void addOverloadFeedback(SipMessage resp) {
+		OverloadControl overload=overload_control;
+		if (overload!=null) overload.addFeedback(resp);
+	}
+
+	/** Processes a message received by the SipProvider.
+	  * If the received message is a request, it cheks for loops, */
+	protected void processReceivedMessage(SipMessage msg) {
 		LOG.debug("message received");
 		if (msg.isRequest()) {
 			// it is an INVITE or ACK or BYE or OPTIONS or REGISTER or CANCEL
@@ -265,6 +339,9 @@ public abstract class ServerEngine implements SipProviderListener {
 				return;
 			}
 
+			CallLogger logger=call_logger;
+			if (logger!=null) logger.update(msg);
+
 			// target
 			GenericURI target=msg.getRequestLine().getAddress();  
 			
@@ -357,6 +434,8 @@ public abstract class ServerEngine implements SipProviderListener {
 			// the message may be a response
 			if (msg.isResponse()) {
 				LOG.trace("message is a response");
+				CallLogger logger=call_logger;
+				if (logger!=null) logger.update(msg);
 				processResponse(msg);
 			}
 			else LOG.warn("received message is not recognized as a request nor a response: discarded");
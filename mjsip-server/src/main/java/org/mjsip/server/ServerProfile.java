@@ -47,7 +47,7 @@ public class ServerProfile {
 	public boolean isOpenProxy=false;
 	
 	@Option(name = "--location-service", usage = "The type of location service. "
-			+ "Valid location service types are (local, ldap, radius, mysql) or a class name (e.g. local.server.LocationServiceImpl).")
+			+ "Valid location service types are (local, mapped, replicated, ldap, radius, mysql) or a class name (e.g. local.server.LocationServiceImpl).")
 	public String locationService="local";
 	
 	@Option(name = "--location-db", usage = "The file name of the location DB.")
@@ -56,6 +56,22 @@ public class ServerProfile {
 	@Option(name = "--clean-location-db", usage = "Whether the location DB is cleaned during startup.", handler = YesNoHandler.class)
 	public boolean cleanLocationDb=false;
 
+	@Option(name = "--cluster-node", usage = "The name of this node in a cluster of servers sharing their user bindings (location service 'replicated'). "
+			+ "Defaults to the cluster address and port.")
+	public String clusterNode=null;
+
+	@Option(name = "--cluster-address", usage = "The local address for exchanging user bindings with the other cluster nodes; by default all interfaces are used.")
+	public String clusterAddress=null;
+
+	@Option(name = "--cluster-port", usage = "The local UDP port for exchanging user bindings with the other cluster nodes.")
+	public int clusterPort=5070;
+
+	@Option(name = "--cluster-peers", usage = "The addresses of the other cluster nodes.", handler = ClusterPeersHandler.class)
+	public String[] clusterPeers=null;
+
+	@Option(name = "--cluster-gossip-interval", usage = "Interval (in milliseconds) in which user bindings are reconciled with a random cluster node.")
+	public long clusterGossipInterval=1000;
+
 	@Option(name = "--do-authentication", usage = "Whether the server requires authentication from local users.", handler = YesNoHandler.class)
 	public boolean doAuthentication=false;
 	
@@ -71,7 +87,7 @@ public class ServerProfile {
 	public String authenticationRealm=null;
 	
 	@Option(name = "--authentication-service", usage = "The type of authentication service. "
-			+ "Valid authentication service types are 'local', 'ldap', 'radius', 'mysql', or a class name (e.g. local.server.AuthenticationServiceImpl).")
+			+ "Valid authentication service types are 'local', 'mapped', 'ldap', 'radius', 'mysql', or a class name (e.g. local.server.AuthenticationServiceImpl).")
 	public String authenticationService="local";
 	
 	@Option(name = "--authentication-db", usage = "The fila name of the authentication DB.")
@@ -114,11 +130,49 @@ public class ServerProfile {
 	@Option(name = "--doman-proxying-rules", handler = DomainRuleHandler.class)
 	public ProxyingRule[] domainProxyingRules=null;
 
+	@Option(name = "--stateless-fast-path", usage = "Whether the stateless proxy forwards unmodified UDP requests by editing the received bytes instead of re-serializing them.", handler = YesNoHandler.class)
+	public boolean statelessFastPath=false;
+
+	@Option(name = "--routing-file", usage = "File with additional proxying rules (one '<kind> <key> <nexthop>' per line, "
+			+ "where kind is prefix, domain, auth-prefix, or auth-domain). The file is reloaded, when modified.")
+	public String routingFile=null;
+
+	@Option(name = "--routing-check-interval", usage = "Interval (in milliseconds) for checking the routing file for modifications; 0 disables automatic reload.")
+	public long routingCheckInterval=10000;
+
+	@Option(name = "--overload-control", usage = "Whether new INVITE and REGISTER requests are rejected with 503 (Service Unavailable) when the server is overloaded.", handler = YesNoHandler.class)
+	public boolean overloadControl=false;
+
+	@Option(name = "--overload-latency", usage = "Average request processing time (in milliseconds) above which the server considers itself overloaded.")
+	public long overloadLatency=20;
+
+	@Option(name = "--overload-queue", usage = "Number of received messages waiting for being processed above which the server considers itself overloaded; 0 disables this check.")
+	public int overloadQueue=50000;
+
+	@Option(name = "--overload-interval", usage = "Interval (in milliseconds) in which the overload state is re-evaluated.")
+	public long overloadInterval=500;
+
+	@Option(name = "--overload-source-rate", usage = "Maximum rate (in requests per second) of new INVITE and REGISTER requests accepted from a single source address; 0 disables the per-source limit.")
+	public double overloadSourceRate=0;
+
+	@Option(name = "--overload-source-burst", usage = "Number of new INVITE and REGISTER requests a single source address may send in a burst.")
+	public int overloadSourceBurst=20;
+
+	@Option(name = "--overload-sources", usage = "Maximum number of source addresses tracked for the per-source limit.")
+	public int overloadSources=65536;
+
+	@Option(name = "--overload-retry-after", usage = "Minimum value (in seconds) of the Retry-After header in 503 responses sent due to overload.")
+	public int overloadRetryAfter=5;
+
 	@Option(name = "--memory-log", usage = "Whether maintaining a memory log.")
 	public boolean memoryLog=false;
 
 	public void normalize() {
 		if (authenticationRealm!=null && authenticationRealm.equals(Configure.NONE)) authenticationRealm=null;
+		if (routingFile!=null && routingFile.equals(Configure.NONE)) routingFile=null;
+		if (clusterNode!=null && clusterNode.equals(Configure.NONE)) clusterNode=null;
+		if (clusterAddress!=null && clusterAddress.equals(Configure.NONE)) clusterAddress=null;
+		if (clusterPeers==null) clusterPeers=new String[0];
 		if (domainNames==null) domainNames=new String[0];
 		
 		for (int n = 0, cnt = domainNames.length; n < cnt; n++) {
@@ -159,6 +213,17 @@ public class ServerProfile {
 		}
 	}
 	
+	public static class ClusterPeersHandler extends DomainNamesHandler {
+		public ClusterPeersHandler(CmdLineParser parser, OptionDef option, Setter<? super String> setter) {
+			super(parser, option, setter);
+		}
+
+		@Override
+		public String getDefaultMetaVariable() {
+			return "<host1>:<port1>,<host2>:<port2>,...";
+		}
+	}
+
 	public static class ProxyRuleHandler extends OptionHandler<ProxyingRule> {
 		public ProxyRuleHandler(CmdLineParser parser, OptionDef option, Setter<? super ProxyingRule> setter) {
 			super(parser, option, setter);
@@ -28,6 +28,8 @@ import java.util.Vector;
 
 import org.mjsip.config.MetaConfig;
 import org.mjsip.config.OptionParser;
+import org.mjsip.metrics.MetricsConfig;
+import org.mjsip.metrics.MetricsExporter;
 import org.mjsip.sip.address.GenericURI;
 import org.mjsip.sip.address.SipURI;
 import org.mjsip.sip.header.RequestLine;
@@ -359,11 +361,14 @@ public class StatefulProxy extends Proxy implements TransactionClientListener {
 		SipConfig sipConfig = new SipConfig();
 		SchedulerConfig schedulerConfig = new SchedulerConfig();
 		ServerProfile server_profile=new ServerProfile();
+		MetricsConfig metricsConfig = new MetricsConfig();
 
-		MetaConfig metaConfig = OptionParser.parseOptions(args, ".mjsip-proxy", sipConfig, schedulerConfig, server_profile);
+		MetaConfig metaConfig = OptionParser.parseOptions(args, ".mjsip-proxy", sipConfig, schedulerConfig, server_profile, metricsConfig);
 		
 		sipConfig.normalize();
 		server_profile.normalize();
+
+		MetricsExporter.startIfEnabled(metricsConfig);
 						
 		SipProvider sip_provider=new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig));
 		
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cdr;
+
+/**
+ * Call state change observed on the signaling path, passed from the signaling thread to the CDR
+ * writer.
+ */
+final class CallEvent {
+
+	/** An initial INVITE request has been seen. */
+	static final int INVITE = 0;
+
+	/** A final response to an INVITE has been seen. */
+	static final int FINAL_RESPONSE = 1;
+
+	/** A BYE request has been seen. */
+	static final int BYE = 2;
+
+	final int type;
+
+	final long time;
+
+	final String callId;
+
+	final String caller;
+
+	final String callee;
+
+	final int code;
+
+	CallEvent(int type, long time, String callId, String caller, String callee, int code) {
+		this.type = type;
+		this.time = time;
+		this.callId = callId;
+		this.caller = caller;
+		this.callee = callee;
+		this.code = code;
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cdr;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free multi-producer single-consumer ring buffer of {@link CallEvent}s.
+ *
+ * <p>
+ * Each slot carries a sequence number that tells producers whether the slot is free and the
+ * consumer whether it has been filled. Producers claim slots with a CAS on the tail counter and
+ * never block: if the ring is full, {@link #offer(CallEvent)} fails immediately. The consumer may
+ * wait for the next event with {@link #poll(long)}.
+ * </p>
+ */
+final class CallEventRing {
+
+	private final CallEvent[] _buffer;
+
+	private final AtomicLongArray _sequence;
+
+	private final int _mask;
+
+	private final AtomicLong _tail = new AtomicLong();
+
+	/**
+	 * Read position, only accessed by the consumer thread.
+	 */
+	private long _head;
+
+	/**
+	 * The consumer thread while waiting in {@link #poll(long)}, otherwise <code>null</code>.
+	 */
+	private volatile Thread _waiter;
+
+	/**
+	 * Creates a {@link CallEventRing}.
+	 *
+	 * @param capacity
+	 *        The number of slots, must be a power of two.
+	 */
+	CallEventRing(int capacity) {
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+		}
+		_buffer = new CallEvent[capacity];
+		_sequence = new AtomicLongArray(capacity);
+		for (int n = 0; n < capacity; n++) {
+			_sequence.set(n, n);
+		}
+		_mask = capacity - 1;
+	}
+
+	/**
+	 * Adds an event, called from any thread.
+	 *
+	 * @return Whether the event has been added, <code>false</code> if the ring is full.
+	 */
+	boolean offer(CallEvent event) {
+		long pos = _tail.get();
+		while (true) {
+			int index = (int) (pos & _mask);
+			long diff = _sequence.get(index) - pos;
+			if (diff == 0) {
+				if (_tail.compareAndSet(pos, pos + 1)) {
+					_buffer[index] = event;
+					// Publishes the event to the consumer. Must not be reordered with reading the
+					// waiter, otherwise a consumer about to park could miss the event.
+					_sequence.set(index, pos + 1);
+					Thread waiter = _waiter;
+					if (waiter != null) {
+						LockSupport.unpark(waiter);
+					}
+					return true;
+				}
+				pos = _tail.get();
+			} else if (diff < 0) {
+				return false;
+			} else {
+				pos = _tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest event, must only be called from the single consumer thread.
+	 *
+	 * @return The oldest event, or <code>null</code> if the ring is empty.
+	 */
+	CallEvent poll() {
+		long pos = _head;
+		int index = (int) (pos & _mask);
+		if (_sequence.get(index) != pos + 1) {
+			return null;
+		}
+		CallEvent result = _buffer[index];
+		_buffer[index] = null;
+		// Releases the slot for the next round of producers.
+		_sequence.lazySet(index, pos + _buffer.length);
+		_head = pos + 1;
+		return result;
+	}
+
+	/**
+	 * Removes the oldest event, waiting for an event if the ring is empty. Must only be called from
+	 * the single consumer thread.
+	 *
+	 * <p>
+	 * Returns early without an event, if the consumer thread is unparked by other means.
+	 * </p>
+	 *
+	 * @param timeout
+	 *        The maximum time to wait in nanoseconds.
+	 * @return The oldest event, or <code>null</code> if the ring is still empty.
+	 */
+	CallEvent poll(long timeout) {
+		CallEvent result = poll();
+		if (result != null) {
+			return result;
+		}
+		_waiter = Thread.currentThread();
+		try {
+			// An event published before the waiter was visible to the producer.
+			result = poll();
+			if (result != null) {
+				return result;
+			}
+			LockSupport.parkNanos(this, timeout);
+			return poll();
+		} finally {
+			_waiter = null;
+		}
+	}
+
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cdr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mjsip.server.CallLogger;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link CallLogger} that exports call detail records (CDRs) without blocking the signaling path.
+ *
+ * <p>
+ * On the signaling thread, {@link #update(SipMessage)} only extracts the few values relevant for
+ * call accounting from a message and hands them over to a bounded lock-free queue. If the queue is
+ * full, the event is dropped and counted instead of delaying message processing. A single writer
+ * thread correlates the events to calls, and writes completed calls in batches to rotating
+ * gzip-compressed files in the formats selected by {@link CdrConfig#getFormat()}.
+ * </p>
+ *
+ * <p>
+ * The number of calls kept in memory is bounded by {@link CdrConfig#getMaxCalls()}. When exceeded,
+ * the oldest call is written as incomplete record.
+ * </p>
+ *
+ * <p>
+ * The logger is {@link #stop() stopped} at the latest when the JVM shuts down, so that all
+ * accepted events are written and the open files are completed.
+ * </p>
+ */
+public class CdrCallLogger implements CallLogger {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CdrCallLogger.class);
+
+	private final CallEventRing _queue;
+
+	private final List<CdrSink> _sinks = new ArrayList<>();
+
+	private final CallTable _calls;
+
+	private final long _flushInterval;
+
+	private final Thread _writer;
+
+	private final Thread _shutdownHook;
+
+	private volatile boolean _running = true;
+
+	private final AtomicBoolean _stopped = new AtomicBoolean();
+
+	private final LongAdder _offered = new LongAdder();
+
+	private final LongAdder _dropped = new LongAdder();
+
+	private volatile long _written;
+
+	private volatile int _activeCalls;
+
+	/**
+	 * Creates a {@link CdrCallLogger} and starts its writer thread.
+	 *
+	 * @param config
+	 *        The CDR configuration.
+	 */
+	public CdrCallLogger(CdrConfig config) {
+		_queue = new CallEventRing(config.getQueueSize());
+		_calls = new CallTable(config.getMaxCalls());
+		_flushInterval = config.getFlushInterval();
+
+		switch (config.getFormat()) {
+		case CSV:
+			_sinks.add(new CsvCdrSink(config));
+			break;
+		case COLUMNAR:
+			_sinks.add(new ColumnarCdrSink(config));
+			break;
+		case BOTH:
+			_sinks.add(new CsvCdrSink(config));
+			_sinks.add(new ColumnarCdrSink(config));
+			break;
+		}
+
+		_writer = new Thread(this::run, "CdrWriter");
+		_writer.setDaemon(true);
+		_writer.start();
+
+		// The writer is a daemon thread, it would be killed on exit with its files left open.
+		_shutdownHook = new Thread(this::stop, "CdrShutdown");
+		Runtime.getRuntime().addShutdownHook(_shutdownHook);
+	}
+
+	@Override
+	public void update(SipMessage msg) {
+		if (!msg.hasCSeqHeader() || !msg.hasCallIdHeader()) {
+			return;
+		}
+
+		String method = msg.getCSeqHeader().getMethod();
+		CallEvent event;
+		if (method.equalsIgnoreCase(SipMethods.INVITE)) {
+			if (msg.isRequest()) {
+				if (msg.hasToHeader() && msg.getToHeader().hasTag()) {
+					// Re-INVITE within an established dialog.
+					return;
+				}
+				event = new CallEvent(CallEvent.INVITE, System.currentTimeMillis(), msg.getCallIdHeader().getCallId(),
+						msg.getFromHeader().getNameAddress().getAddress().toString(),
+						msg.getToHeader().getNameAddress().getAddress().toString(), 0);
+			} else {
+				int code = msg.getStatusLine().getCode();
+				if (code < 200) {
+					return;
+				}
+				event = new CallEvent(CallEvent.FINAL_RESPONSE, System.currentTimeMillis(),
+						msg.getCallIdHeader().getCallId(), null, null, code);
+			}
+		} else if (method.equalsIgnoreCase(SipMethods.BYE) && msg.isRequest()) {
+			event = new CallEvent(CallEvent.BYE, System.currentTimeMillis(), msg.getCallIdHeader().getCallId(), null,
+					null, 0);
+		} else {
+			return;
+		}
+
+		_offered.increment();
+		if (!_queue.offer(event)) {
+			_dropped.increment();
+		}
+	}
+
+	/**
+	 * The number of call events passed to the writer, including dropped events.
+	 */
+	public long getOfferedEvents() {
+		return _offered.sum();
+	}
+
+	/**
+	 * The number of call events that were dropped because the writer could not keep up.
+	 */
+	public long getDroppedEvents() {
+		return _dropped.sum();
+	}
+
+	/**
+	 * The number of call detail records written so far.
+	 */
+	public long getWrittenRecords() {
+		return _written;
+	}
+
+	/**
+	 * The number of calls currently tracked by the writer.
+	 */
+	public int getActiveCalls() {
+		return _activeCalls;
+	}
+
+	/**
+	 * Stops the writer thread after processing all queued events, and completes all open files.
+	 *
+	 * <p>
+	 * Calls still in progress are written as incomplete records. Further calls have no effect.
+	 * </p>
+	 */
+	public void stop() {
+		if (!_stopped.compareAndSet(false, true)) {
+			return;
+		}
+		if (Thread.currentThread() != _shutdownHook) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(_shutdownHook);
+			} catch (IllegalStateException ex) {
+				// Already shutting down.
+			}
+		}
+		_running = false;
+		LockSupport.unpark(_writer);
+		try {
+			_writer.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		long lastFlush = System.currentTimeMillis();
+		boolean dirty = false;
+		while (true) {
+			CallEvent event = _queue.poll();
+			if (event != null) {
+				dirty |= process(event);
+				continue;
+			}
+
+			long now = System.currentTimeMillis();
+			if (!_running) {
+				break;
+			}
+			if (now - lastFlush >= _flushInterval) {
+				if (dirty) {
+					flush(now);
+					dirty = false;
+				}
+				lastFlush = now;
+			}
+
+			// Wakes up on the next event, when the next flush is due, or when stopped.
+			long wait = Math.max(1, lastFlush + _flushInterval - now);
+			event = _queue.poll(TimeUnit.MILLISECONDS.toNanos(wait));
+			if (event != null) {
+				dirty |= process(event);
+			}
+		}
+
+		long now = System.currentTimeMillis();
+		for (Call call : new ArrayList<>(_calls.values())) {
+			emit(call, now);
+		}
+		_calls.clear();
+		_activeCalls = 0;
+		for (CdrSink sink : _sinks) {
+			try {
+				sink.close();
+			} catch (IOException ex) {
+				LOG.error("Failed to close CDR file.", ex);
+			}
+		}
+	}
+
+	private boolean process(CallEvent event) {
+		boolean written = false;
+		switch (event.type) {
+		case CallEvent.INVITE: {
+			if (!_calls.containsKey(event.callId)) {
+				_calls.put(event.callId, new Call(event));
+				written = _calls.takeEvicted();
+			}
+			break;
+		}
+		case CallEvent.FINAL_RESPONSE: {
+			Call call = _calls.get(event.callId);
+			if (call == null || call.code != CdrRecord.INCOMPLETE) {
+				break;
+			}
+			call.code = event.code;
+			if (event.code < 300) {
+				call.answer = event.time;
+			} else {
+				call.end = event.time;
+				_calls.remove(event.callId);
+				emit(call, event.time);
+				written = true;
+			}
+			break;
+		}
+		case CallEvent.BYE: {
+			Call call = _calls.remove(event.callId);
+			if (call != null) {
+				call.end = event.time;
+				emit(call, event.time);
+				written = true;
+			}
+			break;
+		}
+		}
+		_activeCalls = _calls.size();
+		return written;
+	}
+
+	void emit(Call call, long now) {
+		CdrRecord record = new CdrRecord(call.callId, call.caller, call.callee, call.invite, call.answer, call.end,
+				call.code);
+		for (CdrSink sink : _sinks) {
+			try {
+				sink.write(record, now);
+			} catch (IOException ex) {
+				LOG.error("Failed to write CDR: {}", record, ex);
+			}
+		}
+		_written++;
+	}
+
+	private void flush(long now) {
+		for (CdrSink sink : _sinks) {
+			try {
+				sink.flush(now);
+			} catch (IOException ex) {
+				LOG.error("Failed to flush CDR file.", ex);
+			}
+		}
+	}
+
+	/**
+	 * State of a call tracked by the writer thread.
+	 */
+	static final class Call {
+
+		final String callId;
+
+		final String caller;
+
+		final String callee;
+
+		final long invite;
+
+		long answer;
+
+		long end;
+
+		int code = CdrRecord.INCOMPLETE;
+
+		Call(CallEvent event) {
+			callId = event.callId;
+			caller = event.caller;
+			callee = event.callee;
+			invite = event.time;
+		}
+
+	}
+
+	/**
+	 * Table of active calls in insertion order that writes the oldest call as incomplete record
+	 * when exceeding its capacity.
+	 */
+	private final class CallTable extends LinkedHashMap<String, Call> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int _maxCalls;
+
+		private boolean _evicted;
+
+		CallTable(int maxCalls) {
+			super(Math.min(maxCalls, 1 << 16) * 4 / 3 + 1);
+			_maxCalls = maxCalls;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Call> eldest) {
+			if (size() > _maxCalls) {
+				emit(eldest.getValue(), System.currentTimeMillis());
+				_evicted = true;
+				return true;
+			}
+			return false;
+		}
+
+		boolean takeEvicted() {
+			boolean result = _evicted;
+			_evicted = false;
+			return result;
+		}
+
+	}
+
+}
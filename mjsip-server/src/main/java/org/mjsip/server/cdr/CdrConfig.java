@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cdr;
+
+import java.io.File;
+
+import org.kohsuke.args4j.Option;
+import org.mjsip.config.FileHandler;
+
+/**
+ * Configuration options for the call detail record (CDR) export of the {@link CdrCallLogger}.
+ */
+public class CdrConfig {
+
+	/**
+	 * Output formats of call detail records.
+	 */
+	public enum Format {
+		/** Comma-separated values, one record per line. */
+		CSV,
+
+		/** Compact binary format storing blocks of records column by column. */
+		COLUMNAR,
+
+		/** Both {@link #CSV} and {@link #COLUMNAR}. */
+		BOTH;
+	}
+
+	@Option(name = "--cdr-dir", usage = "Directory to write call detail records to. If not set, no CDRs are written.", handler = FileHandler.class)
+	private File _directory = null;
+
+	@Option(name = "--cdr-format", usage = "Format of call detail record files.")
+	private Format _format = Format.CSV;
+
+	@Option(name = "--cdr-rotate-size", usage = "Size (in bytes of uncompressed data) after which a CDR file is rotated.")
+	private long _rotateSize = 64L * 1024 * 1024;
+
+	@Option(name = "--cdr-rotate-interval", usage = "Time (in seconds) after which a CDR file is rotated.")
+	private long _rotateInterval = 3600;
+
+	@Option(name = "--cdr-queue-size", usage = "Number of call events that can be buffered before being processed. Must be a power of two.")
+	private int _queueSize = 16384;
+
+	@Option(name = "--cdr-max-calls", usage = "Maximum number of calls kept in memory. If exceeded, the oldest call is reported incomplete.")
+	private int _maxCalls = 10000;
+
+	@Option(name = "--cdr-flush-interval", usage = "Interval (in milliseconds) in which written records are flushed to the file system.")
+	private long _flushInterval = 1000;
+
+	/**
+	 * Whether CDR export is enabled.
+	 */
+	public boolean isEnabled() {
+		return _directory != null;
+	}
+
+	/**
+	 * The directory CDR files are written to.
+	 */
+	public File getDirectory() {
+		return _directory;
+	}
+
+	/** @see #getDirectory() */
+	public void setDirectory(File directory) {
+		_directory = directory;
+	}
+
+	/**
+	 * The format of CDR files.
+	 */
+	public Format getFormat() {
+		return _format;
+	}
+
+	/** @see #getFormat() */
+	public void setFormat(Format format) {
+		_format = format;
+	}
+
+	/**
+	 * The size in bytes of uncompressed data after which a CDR file is rotated.
+	 */
+	public long getRotateSize() {
+		return _rotateSize;
+	}
+
+	/** @see #getRotateSize() */
+	public void setRotateSize(long rotateSize) {
+		_rotateSize = rotateSize;
+	}
+
+	/**
+	 * The time in seconds after which a CDR file is rotated.
+	 */
+	public long getRotateInterval() {
+		return _rotateInterval;
+	}
+
+	/** @see #getRotateInterval() */
+	public void setRotateInterval(long rotateInterval) {
+		_rotateInterval = rotateInterval;
+	}
+
+	/**
+	 * The capacity of the event queue between signaling threads and the CDR writer.
+	 */
+	public int getQueueSize() {
+		return _queueSize;
+	}
+
+	/** @see #getQueueSize() */
+	public void setQueueSize(int queueSize) {
+		_queueSize = queueSize;
+	}
+
+	/**
+	 * The maximum number of calls kept in memory.
+	 */
+	public int getMaxCalls() {
+		return _maxCalls;
+	}
+
+	/** @see #getMaxCalls() */
+	public void setMaxCalls(int maxCalls) {
+		_maxCalls = maxCalls;
+	}
+
+	/**
+	 * The interval in milliseconds in which written records are flushed.
+	 */
+	public long getFlushInterval() {
+		return _flushInterval;
+	}
+
+	/** @see #getFlushInterval() */
+	public void setFlushInterval(long flushInterval) {
+		_flushInterval = flushInterval;
+	}
+
+}
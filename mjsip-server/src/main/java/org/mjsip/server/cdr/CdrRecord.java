@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cdr;
+
+/**
+ * Call detail record of a single call.
+ */
+public final class CdrRecord {
+
+	/** Status code reported for calls that were still in progress when dropped from memory. */
+	public static final int INCOMPLETE = 0;
+
+	private final String _callId;
+
+	private final String _caller;
+
+	private final String _callee;
+
+	private final long _inviteTime;
+
+	private final long _answerTime;
+
+	private final long _endTime;
+
+	private final int _code;
+
+	/**
+	 * Creates a {@link CdrRecord}.
+	 *
+	 * @param callId
+	 *        The Call-ID of the call.
+	 * @param caller
+	 *        The address of the caller.
+	 * @param callee
+	 *        The address of the callee.
+	 * @param inviteTime
+	 *        Time of the initial INVITE in milliseconds since the epoch.
+	 * @param answerTime
+	 *        Time of the 2xx response, or <code>0</code> if the call was not answered.
+	 * @param endTime
+	 *        Time of the BYE or final error response, or <code>0</code> if unknown.
+	 * @param code
+	 *        The final response code of the INVITE, or {@link #INCOMPLETE}.
+	 */
+	public CdrRecord(String callId, String caller, String callee, long inviteTime, long answerTime, long endTime,
+			int code) {
+		_callId = callId;
+		_caller = caller;
+		_callee = callee;
+		_inviteTime = inviteTime;
+		_answerTime = answerTime;
+		_endTime = endTime;
+		_code = code;
+	}
+
+	/**
+	 * The Call-ID of the call.
+	 */
+	public String getCallId() {
+		return _callId;
+	}
+
+	/**
+	 * The address of the caller.
+	 */
+	public String getCaller() {
+		return _caller;
+	}
+
+	/**
+	 * The address of the callee.
+	 */
+	public String getCallee() {
+		return _callee;
+	}
+
+	/**
+	 * Time of the initial INVITE in milliseconds since the epoch.
+	 */
+	public long getInviteTime() {
+		return _inviteTime;
+	}
+
+	/**
+	 * Time of the 2xx response in milliseconds since the epoch, or <code>0</code> if the call was
+	 * not answered.
+	 */
+	public long getAnswerTime() {
+		return _answerTime;
+	}
+
+	/**
+	 * Time of the BYE or final error response in milliseconds since the epoch, or <code>0</code>
+	 * if unknown.
+	 */
+	public long getEndTime() {
+		return _endTime;
+	}
+
+	/**
+	 * The final response code of the INVITE, or {@link #INCOMPLETE}.
+	 */
+	public int getCode() {
+		return _code;
+	}
+
+	/**
+	 * Time in milliseconds from the INVITE to the answer, or <code>-1</code> if not answered.
+	 */
+	public long getSetupTime() {
+		return _answerTime > 0 && _inviteTime > 0 ? _answerTime - _inviteTime : -1;
+	}
+
+	/**
+	 * Time in milliseconds from the answer to the end of the call, or <code>-1</code> if not
+	 * answered or not ended.
+	 */
+	public long getCallTime() {
+		return _answerTime > 0 && _endTime > 0 ? _endTime - _answerTime : -1;
+	}
+
+	@Override
+	public String toString() {
+		return "CDR{" + _callId + ", " + _caller + " -> " + _callee + ", code=" + _code + "}";
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cdr;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Base class for writers of {@link CdrRecord}s to a sequence of gzip-compressed files.
+ *
+ * <p>
+ * A file is written under a temporary name and renamed to its final name when it is rotated, so
+ * that external collectors only ever see completed files. A file is rotated when it has received
+ * more than a configured number of uncompressed bytes or has been open for longer than a
+ * configured time.
+ * </p>
+ *
+ * <p>
+ * Instances are not thread-safe, they are only used from the single CDR writer thread.
+ * </p>
+ */
+abstract class CdrSink {
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private final File _directory;
+
+	private final String _extension;
+
+	private final long _rotateSize;
+
+	private final long _rotateInterval;
+
+	private File _file;
+
+	private OutputStream _out;
+
+	private long _opened;
+
+	private long _written;
+
+	private int _sequence;
+
+	/**
+	 * Creates a {@link CdrSink}.
+	 *
+	 * @param config
+	 *        The CDR configuration.
+	 * @param extension
+	 *        The file name extension (without the compression suffix) of written files.
+	 */
+	CdrSink(CdrConfig config, String extension) {
+		_directory = config.getDirectory();
+		_extension = extension;
+		_rotateSize = config.getRotateSize();
+		_rotateInterval = config.getRotateInterval() * 1000;
+	}
+
+	/**
+	 * Writes the given record.
+	 */
+	final void write(CdrRecord record, long now) throws IOException {
+		if (_out != null && (_written >= _rotateSize || now - _opened >= _rotateInterval)) {
+			close();
+		}
+		if (_out == null) {
+			open(now);
+		}
+		_written += append(record);
+	}
+
+	/**
+	 * Writes buffered data to the file system.
+	 *
+	 * <p>
+	 * The compressor is flushed as well, so that all records written so far can be read from the
+	 * temporary file, e.g. after a crash.
+	 * </p>
+	 */
+	final void flush(long now) throws IOException {
+		if (_out == null) {
+			return;
+		}
+		if (now - _opened >= _rotateInterval) {
+			close();
+		} else {
+			flushBuffer();
+			_out.flush();
+		}
+	}
+
+	/**
+	 * Finishes the current file, if any.
+	 */
+	final void close() throws IOException {
+		if (_out == null) {
+			return;
+		}
+		flushBuffer();
+		_out.close();
+		_out = null;
+
+		String name = _file.getName();
+		File target = new File(_directory, name.substring(0, name.length() - TMP_SUFFIX.length()));
+		Files.move(_file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		_file = null;
+	}
+
+	private void open(long now) throws IOException {
+		if (!_directory.isDirectory() && !_directory.mkdirs()) {
+			throw new IOException("Cannot create CDR directory: " + _directory);
+		}
+		String base = "cdr-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(now)) + "-" + (_sequence++);
+		_file = new File(_directory, base + "." + _extension + ".gz" + TMP_SUFFIX);
+		_out = new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(_file.toPath()), 8192, true), 65536);
+		_opened = now;
+		_written = 0;
+		writeHeader(_out);
+	}
+
+	/**
+	 * The stream of the currently open file.
+	 */
+	final OutputStream out() {
+		return _out;
+	}
+
+	/**
+	 * Hook to write a file header after a new file has been opened.
+	 */
+	void writeHeader(OutputStream out) throws IOException {
+		// No header by default.
+	}
+
+	/**
+	 * Hook to write data buffered by the concrete sink before the file is flushed or closed.
+	 */
+	void flushBuffer() throws IOException {
+		// No buffer by default.
+	}
+
+	/**
+	 * Appends the given record.
+	 *
+	 * @return The number of uncompressed bytes accounted for the record.
+	 */
+	abstract long append(CdrRecord record) throws IOException;
+
+}
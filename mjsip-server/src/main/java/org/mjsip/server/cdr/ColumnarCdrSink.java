@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cdr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link CdrSink} writing records in blocks, where each block stores its records column by column.
+ *
+ * <p>
+ * File layout (all integers are unsigned LEB128 varints, signed values are zig-zag encoded):
+ * </p>
+ *
+ * <pre>
+ * file    := "MJCDR" version block*
+ * block   := count invite* answer* end* code* call_id* caller* callee*
+ * invite  := zigzag(invite_time - previous invite_time)   (first value relative to 0)
+ * answer  := zigzag(answer_time - invite_time) + 1, or 0 if not answered
+ * end     := zigzag(end_time - invite_time) + 1, or 0 if unknown
+ * string  := length utf8-bytes
+ * </pre>
+ *
+ * <p>
+ * Grouping values of the same column keeps similar bytes together, which lets the subsequent gzip
+ * compression work much better than on row-oriented data.
+ * </p>
+ */
+final class ColumnarCdrSink extends CdrSink {
+
+	static final byte[] MAGIC = { 'M', 'J', 'C', 'D', 'R' };
+
+	static final int VERSION = 1;
+
+	static final int BLOCK_SIZE = 1024;
+
+	private final CdrRecord[] _block = new CdrRecord[BLOCK_SIZE];
+
+	private int _size;
+
+	private final ByteArrayOutputStream _buffer = new ByteArrayOutputStream(64 * 1024);
+
+	ColumnarCdrSink(CdrConfig config) {
+		super(config, "cdr");
+	}
+
+	@Override
+	void writeHeader(OutputStream out) throws IOException {
+		out.write(MAGIC);
+		writeVarint(out, VERSION);
+	}
+
+	@Override
+	long append(CdrRecord record) throws IOException {
+		_block[_size++] = record;
+		if (_size == BLOCK_SIZE) {
+			flushBuffer();
+		}
+		return 16 + length(record.getCallId()) + length(record.getCaller()) + length(record.getCallee());
+	}
+
+	private static int length(String value) {
+		return value == null ? 1 : value.length() + 1;
+	}
+
+	@Override
+	void flushBuffer() throws IOException {
+		int size = _size;
+		if (size == 0) {
+			return;
+		}
+		CdrRecord[] block = _block;
+		ByteArrayOutputStream buffer = _buffer;
+		buffer.reset();
+
+		writeVarint(buffer, size);
+		long last = 0;
+		for (int n = 0; n < size; n++) {
+			long invite = block[n].getInviteTime();
+			writeVarint(buffer, zigzag(invite - last));
+			last = invite;
+		}
+		for (int n = 0; n < size; n++) {
+			writeOffset(buffer, block[n].getInviteTime(), block[n].getAnswerTime());
+		}
+		for (int n = 0; n < size; n++) {
+			writeOffset(buffer, block[n].getInviteTime(), block[n].getEndTime());
+		}
+		for (int n = 0; n < size; n++) {
+			writeVarint(buffer, block[n].getCode());
+		}
+		for (int n = 0; n < size; n++) {
+			writeString(buffer, block[n].getCallId());
+		}
+		for (int n = 0; n < size; n++) {
+			writeString(buffer, block[n].getCaller());
+		}
+		for (int n = 0; n < size; n++) {
+			writeString(buffer, block[n].getCallee());
+		}
+
+		for (int n = 0; n < size; n++) {
+			block[n] = null;
+		}
+		_size = 0;
+
+		buffer.writeTo(out());
+	}
+
+	private static void writeOffset(OutputStream out, long base, long time) throws IOException {
+		writeVarint(out, time == 0 ? 0 : zigzag(time - base) + 1);
+	}
+
+	private static void writeString(OutputStream out, String value) throws IOException {
+		if (value == null) {
+			writeVarint(out, 0);
+			return;
+		}
+		byte[] data = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, data.length);
+		out.write(data);
+	}
+
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cdr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link CdrSink} writing one comma-separated line per record.
+ */
+final class CsvCdrSink extends CdrSink {
+
+	static final String HEADER = "call_id,caller,callee,invite_time,answer_time,end_time,code,setup_ms,duration_ms\n";
+
+	private final StringBuilder _line = new StringBuilder(256);
+
+	CsvCdrSink(CdrConfig config) {
+		super(config, "csv");
+	}
+
+	@Override
+	void writeHeader(OutputStream out) throws IOException {
+		out.write(HEADER.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Override
+	long append(CdrRecord record) throws IOException {
+		StringBuilder line = _line;
+		line.setLength(0);
+		appendField(line, record.getCallId()).append(',');
+		appendField(line, record.getCaller()).append(',');
+		appendField(line, record.getCallee()).append(',');
+		line.append(record.getInviteTime()).append(',');
+		line.append(record.getAnswerTime()).append(',');
+		line.append(record.getEndTime()).append(',');
+		line.append(record.getCode()).append(',');
+		line.append(record.getSetupTime()).append(',');
+		line.append(record.getCallTime()).append('\n');
+
+		byte[] data = line.toString().getBytes(StandardCharsets.UTF_8);
+		out().write(data);
+		return data.length;
+	}
+
+	private static StringBuilder appendField(StringBuilder line, String value) {
+		if (value == null) {
+			return line;
+		}
+		boolean quote = false;
+		for (int n = 0, cnt = value.length(); n < cnt; n++) {
+			char ch = value.charAt(n);
+			if (ch == ',' || ch == '"' || ch == '\n' || ch == '\r') {
+				quote = true;
+				break;
+			}
+		}
+		if (!quote) {
+			return line.append(value);
+		}
+		line.append('"');
+		for (int n = 0, cnt = value.length(); n < cnt; n++) {
+			char ch = value.charAt(n);
+			if (ch == '"') {
+				line.append('"');
+			}
+			line.append(ch);
+		}
+		return line.append('"');
+	}
+
+}
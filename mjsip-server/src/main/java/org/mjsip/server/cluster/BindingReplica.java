@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local replica of the user bindings of a cluster of location services.
+ *
+ * <p>
+ * Each modification creates a new {@link Binding} version that is identified by the
+ * {@link #getOrigin() origin} of the node that made the modification and a sequence number
+ * increasing with each modification of that node. Concurrent modifications of the same binding are
+ * resolved by keeping the version with the larger (hybrid logical) time stamp. Removed bindings are
+ * kept as tombstones for {@link #TOMBSTONE_TIME}, so that a removal is not undone by an older
+ * version received later.
+ * </p>
+ *
+ * <p>
+ * The replica keeps a version vector that holds for each origin the sequence number up to which
+ * all versions of that origin have been received. Replicas are synchronized by exchanging version
+ * vectors and sending back the {@link #delta(Map, int, Map) versions the other side is missing}.
+ * </p>
+ *
+ * <p>
+ * Reads do not lock, modifications are serialized.
+ * </p>
+ */
+public final class BindingReplica {
+
+	/** The URI of the entry that marks the existence of a user without binding. */
+	public static final String USER_MARKER = "";
+
+	/** Time in milliseconds after which removed bindings are forgotten. */
+	public static final long TOMBSTONE_TIME = 60 * 60 * 1000;
+
+	/** Time in milliseconds after expiration, after which expired bindings are forgotten. */
+	public static final long EXPIRED_TIME = 5 * 60 * 1000;
+
+	private final String _origin;
+
+	/** Bindings by user and URI. */
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, Binding>> _users = new ConcurrentHashMap<>();
+
+	/** Version vector, guarded by this replica. */
+	private final Map<String, Long> _versions = new HashMap<>();
+
+	/** Sequence number of the last local modification, guarded by this replica. */
+	private long _seq;
+
+	/** Hybrid logical clock, guarded by this replica. */
+	private long _clock;
+
+	/**
+	 * Creates a {@link BindingReplica}.
+	 *
+	 * @param origin
+	 *        Unique identifier of this replica, see {@link #getOrigin()}.
+	 */
+	public BindingReplica(String origin) {
+		_origin = origin;
+	}
+
+	/**
+	 * Identifier of this replica in the cluster.
+	 *
+	 * <p>
+	 * The origin must be unique for each start of a node, since sequence numbers start again with
+	 * each start.
+	 * </p>
+	 */
+	public String getOrigin() {
+		return _origin;
+	}
+
+	/**
+	 * The users with at least one binding that is not removed.
+	 */
+	public List<String> getUsers() {
+		List<String> result = new ArrayList<>();
+		for (Map.Entry<String, ConcurrentHashMap<String, Binding>> entry : _users.entrySet()) {
+			if (hasLiveBinding(entry.getValue())) {
+				result.add(entry.getKey());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Whether the given user has at least one binding that is not removed.
+	 */
+	public boolean hasUser(String user) {
+		Map<String, Binding> bindings = _users.get(user);
+		return bindings != null && hasLiveBinding(bindings);
+	}
+
+	private static boolean hasLiveBinding(Map<String, Binding> bindings) {
+		for (Binding binding : bindings.values()) {
+			if (!binding.isRemoved()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The binding of the given user and URI, <code>null</code> if it does not exist or has been
+	 * removed.
+	 */
+	public Binding get(String user, String uri) {
+		Map<String, Binding> bindings = _users.get(user);
+		if (bindings == null) {
+			return null;
+		}
+		Binding binding = bindings.get(uri);
+		return binding == null || binding.isRemoved() ? null : binding;
+	}
+
+	/**
+	 * The bindings of the given user that are not removed, excluding the {@link #USER_MARKER}.
+	 */
+	public List<Binding> getBindings(String user) {
+		Map<String, Binding> bindings = _users.get(user);
+		if (bindings == null) {
+			return Collections.emptyList();
+		}
+		List<Binding> result = new ArrayList<>(bindings.size());
+		for (Binding binding : bindings.values()) {
+			if (!binding.isRemoved() && !binding.getUri().equals(USER_MARKER)) {
+				result.add(binding);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a new local version of a binding.
+	 *
+	 * @param user
+	 *        The user name.
+	 * @param uri
+	 *        The contact URI, or {@link #USER_MARKER}.
+	 * @param name
+	 *        The display name of the contact, or <code>null</code>.
+	 * @param expires
+	 *        The expiration time in milliseconds.
+	 * @param removed
+	 *        Whether the binding is removed.
+	 * @return The new version to publish to other replicas.
+	 */
+	public synchronized Binding update(String user, String uri, String name, long expires, boolean removed) {
+		_clock = Math.max(_clock + 1, System.currentTimeMillis());
+		Binding binding = new Binding(user, uri, name, expires, removed, _clock, _origin, ++_seq);
+		_users.computeIfAbsent(user, u -> new ConcurrentHashMap<>()).put(uri, binding);
+		_versions.put(_origin, _seq);
+		return binding;
+	}
+
+	/**
+	 * Creates removed versions of all bindings of the given user.
+	 *
+	 * @return The new versions to publish to other replicas.
+	 */
+	public synchronized List<Binding> remove(String user) {
+		Map<String, Binding> bindings = _users.get(user);
+		if (bindings == null) {
+			return Collections.emptyList();
+		}
+		List<Binding> result = new ArrayList<>();
+		for (Binding binding : bindings.values()) {
+			if (!binding.isRemoved()) {
+				result.add(update(user, binding.getUri(), null, 0, true));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Applies a version received from another replica.
+	 *
+	 * @return Whether the version is newer than the local one and has been stored.
+	 */
+	public synchronized boolean apply(Binding binding) {
+		_clock = Math.max(_clock, binding.getTime());
+		String origin = binding.getOrigin();
+		long known = version(_versions, origin);
+		if (binding.getSeq() == known + 1) {
+			_versions.put(origin, binding.getSeq());
+		}
+
+		ConcurrentHashMap<String, Binding> bindings = _users.computeIfAbsent(binding.getUser(),
+				u -> new ConcurrentHashMap<>());
+		Binding existing = bindings.get(binding.getUri());
+		if (existing != null && !binding.isNewerThan(existing)) {
+			return false;
+		}
+		bindings.put(binding.getUri(), binding);
+		return true;
+	}
+
+	/**
+	 * Records that all versions of the given origin up to the given sequence number have been
+	 * received.
+	 */
+	public synchronized void complete(String origin, long seq) {
+		if (seq > version(_versions, origin)) {
+			_versions.put(origin, seq);
+		}
+	}
+
+	/**
+	 * A copy of the version vector of this replica.
+	 */
+	public synchronized Map<String, Long> getVersions() {
+		return new HashMap<>(_versions);
+	}
+
+	/**
+	 * Computes the versions another replica is missing.
+	 *
+	 * @param remote
+	 *        The version vector of the other replica.
+	 * @param max
+	 *        The maximum number of versions to return.
+	 * @param complete
+	 *        Map filled with the sequence numbers for each origin up to which the other replica is
+	 *        complete after applying the result, see {@link #complete(String, long)}.
+	 * @return The missing versions, at most the given number.
+	 */
+	public synchronized List<Binding> delta(Map<String, Long> remote, int max, Map<String, Long> complete) {
+		Map<String, List<Binding>> missing = new HashMap<>();
+		for (Map<String, Binding> bindings : _users.values()) {
+			for (Binding binding : bindings.values()) {
+				if (binding.getSeq() > version(remote, binding.getOrigin())) {
+					missing.computeIfAbsent(binding.getOrigin(), o -> new ArrayList<>()).add(binding);
+				}
+			}
+		}
+
+		List<Binding> result = new ArrayList<>();
+		for (Map.Entry<String, Long> entry : _versions.entrySet()) {
+			String origin = entry.getKey();
+			long seq = entry.getValue();
+			if (seq <= version(remote, origin)) {
+				continue;
+			}
+			List<Binding> versions = missing.getOrDefault(origin, Collections.emptyList());
+			versions.sort((a, b) -> Long.compare(a.getSeq(), b.getSeq()));
+			int room = max - result.size();
+			if (versions.size() <= room) {
+				result.addAll(versions);
+				complete.put(origin, seq);
+			} else {
+				if (room > 0) {
+					List<Binding> part = versions.subList(0, room);
+					result.addAll(part);
+					complete.put(origin, part.get(room - 1).getSeq());
+				}
+				break;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets bindings that have expired or have been removed long enough ago.
+	 *
+	 * <p>
+	 * Other origins are dropped from the version vector, when none of their versions is left, so
+	 * that the vector and the digest sent to peers do not grow with each restart of a node. A peer
+	 * that still holds versions of such an origin sends them again in the next anti-entropy round,
+	 * they are purged again like the local ones.
+	 * </p>
+	 *
+	 * @param now
+	 *        The current time in milliseconds.
+	 */
+	public void purge(long now) {
+		for (Iterator<Map.Entry<String, ConcurrentHashMap<String, Binding>>> users = _users.entrySet().iterator(); users
+				.hasNext();) {
+			Map<String, Binding> bindings = users.next().getValue();
+			synchronized (this) {
+				for (Iterator<Binding> it = bindings.values().iterator(); it.hasNext();) {
+					Binding binding = it.next();
+					if (binding.isRemoved() ? binding.getTime() < now - TOMBSTONE_TIME
+							: binding.getExpires() < now - EXPIRED_TIME) {
+						it.remove();
+					}
+				}
+				if (bindings.isEmpty()) {
+					users.remove();
+				}
+			}
+		}
+		pruneVersions();
+	}
+
+	private synchronized void pruneVersions() {
+		Set<String> origins = new HashSet<>();
+		for (Map<String, Binding> bindings : _users.values()) {
+			for (Binding binding : bindings.values()) {
+				origins.add(binding.getOrigin());
+			}
+		}
+		_versions.keySet().removeIf(origin -> !origin.equals(_origin) && !origins.contains(origin));
+	}
+
+	/**
+	 * The number of users including those with removed bindings only.
+	 */
+	public int size() {
+		return _users.size();
+	}
+
+	private static long version(Map<String, Long> versions, String origin) {
+		Long result = versions.get(origin);
+		return result == null ? 0 : result.longValue();
+	}
+
+	/**
+	 * Immutable version of a binding between a user and a contact.
+	 */
+	public static final class Binding {
+
+		private final String _user;
+
+		private final String _uri;
+
+		private final String _name;
+
+		private final long _expires;
+
+		private final boolean _removed;
+
+		private final long _time;
+
+		private final String _origin;
+
+		private final long _seq;
+
+		/**
+		 * Creates a {@link Binding}.
+		 */
+		public Binding(String user, String uri, String name, long expires, boolean removed, long time, String origin,
+				long seq) {
+			_user = user;
+			_uri = uri;
+			_name = name;
+			_expires = expires;
+			_removed = removed;
+			_time = time;
+			_origin = origin;
+			_seq = seq;
+		}
+
+		/** The user name. */
+		public String getUser() {
+			return _user;
+		}
+
+		/** The contact URI, or {@link BindingReplica#USER_MARKER}. */
+		public String getUri() {
+			return _uri;
+		}
+
+		/** The display name of the contact, or <code>null</code>. */
+		public String getName() {
+			return _name;
+		}
+
+		/** The expiration time in milliseconds. */
+		public long getExpires() {
+			return _expires;
+		}
+
+		/** Whether this version removes the binding. */
+		public boolean isRemoved() {
+			return _removed;
+		}
+
+		/** The hybrid logical time of the modification. */
+		public long getTime() {
+			return _time;
+		}
+
+		/** The replica that created this version. */
+		public String getOrigin() {
+			return _origin;
+		}
+
+		/** The sequence number of this version within its origin. */
+		public long getSeq() {
+			return _seq;
+		}
+
+		/**
+		 * Whether this version supersedes the given version of the same binding.
+		 */
+		public boolean isNewerThan(Binding other) {
+			if (_time != other._time) {
+				return _time > other._time;
+			}
+			int cmp = _origin.compareTo(other._origin);
+			return cmp != 0 ? cmp > 0 : _seq > other._seq;
+		}
+
+		@Override
+		public String toString() {
+			return _user + " -> " + (_removed ? "(removed) " : "") + _uri + " [" + _origin + ":" + _seq + "]";
+		}
+	}
+
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
+import org.mjsip.server.cluster.BindingReplica.Binding;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replicates a {@link BindingReplica} to the other nodes of a cluster over UDP.
+ *
+ * <p>
+ * Local modifications are {@link #publish(Collection) pushed} to all peers immediately. Since UDP
+ * may lose such updates, and since nodes may join or restart at any time, each node additionally
+ * sends its version vector to a random peer in each gossip interval (anti-entropy). The peer
+ * answers with the versions missing on the requesting node. An answer that does not fit into a
+ * single datagram is marked as incomplete, and the requester immediately asks again for the rest,
+ * so that a new node catches up at network speed.
+ * </p>
+ *
+ * <p>
+ * Message format (all messages start with the same header):
+ * </p>
+ *
+ * <pre>
+ * message  := magic:int version:byte type:byte origin:utf body
+ * digest   := count:short (origin:utf seq:long)*
+ * delta    := more:boolean count:short (origin:utf seq:long)* count:short binding*
+ * binding  := user:utf uri:utf has_name:boolean [name:utf] expires:long removed:boolean
+ *             time:long origin:utf seq:long
+ * </pre>
+ *
+ * <p>
+ * Datagrams from addresses other than the configured peers are ignored. The protocol has no
+ * further authentication, the cluster port must only be reachable from the cluster network.
+ * </p>
+ */
+public final class GossipService {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(GossipService.class);
+
+	private static final int MAGIC = 0x4D4A4C52; // "MJLR"
+
+	private static final int VERSION = 1;
+
+	private static final int DIGEST = 1;
+
+	private static final int DELTA = 2;
+
+	/** Maximum size of a datagram. */
+	private static final int MAX_DATAGRAM = 65507;
+
+	/** Initial buffer size for a delta. */
+	private static final int DELTA_RESERVE = 8 * 1024;
+
+	/** Maximum number of bindings sent in a single delta. */
+	private static final int MAX_BINDINGS = 128;
+
+	private static final String SENT_HELP = "Messages sent to cluster peers.";
+
+	private static final String RECEIVED_HELP = "Messages received from cluster peers.";
+
+	private static final Counter SENT_DIGEST = Metrics.global().counter("cluster_messages_sent_total", SENT_HELP,
+			"type", "digest");
+
+	private static final Counter SENT_DELTA = Metrics.global().counter("cluster_messages_sent_total", SENT_HELP,
+			"type", "delta");
+
+	private static final Counter RECEIVED_DIGEST = Metrics.global().counter("cluster_messages_received_total",
+			RECEIVED_HELP, "type", "digest");
+
+	private static final Counter RECEIVED_DELTA = Metrics.global().counter("cluster_messages_received_total",
+			RECEIVED_HELP, "type", "delta");
+
+	private static final Counter APPLIED = Metrics.global().counter("cluster_bindings_applied_total",
+			"Binding versions received from cluster peers that replaced the local version.");
+
+	private final BindingReplica _replica;
+
+	private final List<InetSocketAddress> _peers;
+
+	private final long _interval;
+
+	private final DatagramSocket _socket;
+
+	private final Thread _thread;
+
+	private volatile boolean _stopped;
+
+	/**
+	 * Creates a {@link GossipService}.
+	 *
+	 * @param replica
+	 *        The local replica.
+	 * @param address
+	 *        The local address to receive from other nodes.
+	 * @param peers
+	 *        The addresses of the other nodes.
+	 * @param interval
+	 *        The anti-entropy interval in milliseconds.
+	 */
+	public GossipService(BindingReplica replica, InetSocketAddress address, List<InetSocketAddress> peers,
+			long interval) throws SocketException {
+		_replica = replica;
+		_peers = new ArrayList<>(peers);
+		_interval = interval;
+		_socket = new DatagramSocket(address);
+		_thread = new Thread(this::run);
+		_thread.setName("Gossip-" + _socket.getLocalPort());
+		_thread.setDaemon(true);
+	}
+
+	/**
+	 * The local address other nodes send to.
+	 */
+	public InetSocketAddress getLocalAddress() {
+		return (InetSocketAddress) _socket.getLocalSocketAddress();
+	}
+
+	/**
+	 * Starts receiving from and gossiping with the peers.
+	 */
+	public void start() {
+		_thread.start();
+	}
+
+	/**
+	 * Stops the service and releases its socket.
+	 */
+	public void halt() {
+		_stopped = true;
+		_socket.close();
+	}
+
+	/**
+	 * Pushes locally created versions to all peers.
+	 */
+	public void publish(Collection<Binding> bindings) {
+		if (bindings.isEmpty() || _peers.isEmpty()) {
+			return;
+		}
+		byte[] data = delta(false, Map.of(), bindings);
+		for (InetSocketAddress peer : _peers) {
+			send(data, peer, SENT_DELTA);
+		}
+	}
+
+	/**
+	 * Sends the local version vector to a random peer.
+	 */
+	public void gossip() {
+		if (_peers.isEmpty()) {
+			return;
+		}
+		sendDigest(_peers.get(ThreadLocalRandom.current().nextInt(_peers.size())));
+	}
+
+	private void run() {
+		byte[] buf = new byte[MAX_DATAGRAM];
+		DatagramPacket packet = new DatagramPacket(buf, buf.length);
+		long next = System.currentTimeMillis();
+		while (!_stopped) {
+			try {
+				long now = System.currentTimeMillis();
+				if (now >= next) {
+					gossip();
+					_replica.purge(now);
+					next = now + _interval;
+				}
+				_socket.setSoTimeout((int) Math.max(1, next - now));
+				packet.setLength(buf.length);
+				try {
+					_socket.receive(packet);
+				} catch (SocketTimeoutException ex) {
+					continue;
+				}
+				if (!isPeer(packet.getSocketAddress())) {
+					LOG.debug("Ignoring cluster message from unknown node {}.", packet.getSocketAddress());
+					continue;
+				}
+				receive(packet);
+			} catch (IOException | UncheckedIOException ex) {
+				if (_stopped) {
+					break;
+				}
+				LOG.warn("Processing cluster message failed.", ex);
+			}
+		}
+	}
+
+	private boolean isPeer(SocketAddress address) {
+		for (InetSocketAddress peer : _peers) {
+			if (peer.equals(address)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void receive(DatagramPacket packet) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+		if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+			LOG.warn("Ignoring invalid cluster message from {}.", packet.getSocketAddress());
+			return;
+		}
+		int type = in.readUnsignedByte();
+		String sender = in.readUTF();
+		InetSocketAddress peer = (InetSocketAddress) packet.getSocketAddress();
+		switch (type) {
+		case DIGEST:
+			RECEIVED_DIGEST.inc();
+			Map<String, Long> remote = readVersions(in);
+			int max = MAX_BINDINGS;
+			while (true) {
+				Map<String, Long> complete = new HashMap<>();
+				List<Binding> missing = _replica.delta(remote, max, complete);
+				if (missing.isEmpty() && complete.isEmpty()) {
+					break;
+				}
+				byte[] data = delta(missing.size() == max, complete, missing);
+				if (data.length <= MAX_DATAGRAM || max == 1) {
+					send(data, peer, SENT_DELTA);
+					break;
+				}
+				// Send less, if bindings are exceptionally large.
+				max = max / 2;
+			}
+			break;
+		case DELTA:
+			RECEIVED_DELTA.inc();
+			boolean more = in.readBoolean();
+			Map<String, Long> completed = readVersions(in);
+			int count = in.readUnsignedShort();
+			for (int n = 0; n < count; n++) {
+				if (_replica.apply(readBinding(in))) {
+					APPLIED.inc();
+				}
+			}
+			for (Map.Entry<String, Long> entry : completed.entrySet()) {
+				_replica.complete(entry.getKey(), entry.getValue());
+			}
+			if (more) {
+				sendDigest(peer);
+			}
+			break;
+		default:
+			LOG.warn("Ignoring cluster message of unknown type {} from {}.", type, sender);
+		}
+	}
+
+	private void sendDigest(InetSocketAddress peer) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+		try (DataOutputStream out = header(buffer, DIGEST)) {
+			writeVersions(out, _replica.getVersions());
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		send(buffer.toByteArray(), peer, SENT_DIGEST);
+	}
+
+	private byte[] delta(boolean more, Map<String, Long> complete, Collection<Binding> bindings) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(DELTA_RESERVE);
+		try (DataOutputStream out = header(buffer, DELTA)) {
+			out.writeBoolean(more);
+			writeVersions(out, complete);
+			out.writeShort(bindings.size());
+			for (Binding binding : bindings) {
+				writeBinding(out, binding);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return buffer.toByteArray();
+	}
+
+	private DataOutputStream header(ByteArrayOutputStream buffer, int type) throws IOException {
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(type);
+		out.writeUTF(_replica.getOrigin());
+		return out;
+	}
+
+	private void send(byte[] data, InetSocketAddress peer, Counter counter) {
+		if (data.length > MAX_DATAGRAM) {
+			LOG.warn("Cluster message of {} bytes too large for {}.", data.length, peer);
+			return;
+		}
+		try {
+			_socket.send(new DatagramPacket(data, data.length, peer));
+			counter.inc();
+		} catch (IOException ex) {
+			if (!_stopped) {
+				LOG.debug("Sending cluster message to {} failed.", peer, ex);
+			}
+		}
+	}
+
+	private static void writeVersions(DataOutputStream out, Map<String, Long> versions) throws IOException {
+		out.writeShort(versions.size());
+		for (Map.Entry<String, Long> entry : versions.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeLong(entry.getValue().longValue());
+		}
+	}
+
+	private static Map<String, Long> readVersions(DataInputStream in) throws IOException {
+		int count = in.readUnsignedShort();
+		Map<String, Long> result = new HashMap<>();
+		for (int n = 0; n < count; n++) {
+			String origin = in.readUTF();
+			result.put(origin, in.readLong());
+		}
+		return result;
+	}
+
+	private static void writeBinding(DataOutputStream out, Binding binding) throws IOException {
+		out.writeUTF(binding.getUser());
+		out.writeUTF(binding.getUri());
+		out.writeBoolean(binding.getName() != null);
+		if (binding.getName() != null) {
+			out.writeUTF(binding.getName());
+		}
+		out.writeLong(binding.getExpires());
+		out.writeBoolean(binding.isRemoved());
+		out.writeLong(binding.getTime());
+		out.writeUTF(binding.getOrigin());
+		out.writeLong(binding.getSeq());
+	}
+
+	private static Binding readBinding(DataInputStream in) throws IOException {
+		String user = in.readUTF();
+		String uri = in.readUTF();
+		String name = in.readBoolean() ? in.readUTF() : null;
+		long expires = in.readLong();
+		boolean removed = in.readBoolean();
+		long time = in.readLong();
+		String origin = in.readUTF();
+		long seq = in.readLong();
+		return new Binding(user, uri, name, expires, removed, time, origin, seq);
+	}
+
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.overload;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import org.mjsip.server.ServerProfile;
+import org.mjsip.sip.header.ViaHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.time.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control for new requests that protects a server from overload.
+ *
+ * <p>
+ * The server load is estimated from the average time needed to process a request and from the
+ * number of received messages waiting for being processed. While overloaded, the fraction of new INVITE and
+ * REGISTER requests to reject is increased in each evaluation interval, and decreased again after
+ * the load has dropped (the "loss" algorithm of RFC 7339). Additionally, the rate of such
+ * requests from each single source address can be limited.
+ * </p>
+ *
+ * <p>
+ * Requests within a dialog, ACK and CANCEL requests, and all responses are always admitted, so
+ * that established calls survive an overload situation. If messages are processed serially per
+ * Call-ID, such messages are also processed before new requests waiting in the same backlog, see
+ * {@link org.mjsip.sip.provider.SipProvider#isPriority(SipMessage)}.
+ * </p>
+ *
+ * <p>
+ * Clients that indicate support for RFC 7339 with an <code>oc</code> parameter in their Via
+ * header receive the current reduction in the Via header of responses, see
+ * {@link #addFeedback(SipMessage)}.
+ * </p>
+ */
+public class OverloadControl {
+
+	private static final Logger LOG = LoggerFactory.getLogger(OverloadControl.class);
+
+	/** Via parameter carrying the requested reduction in percent (RFC 7339). */
+	public static final String OC = "oc";
+
+	/** Via parameter naming the overload control algorithm (RFC 7339). */
+	public static final String OC_ALGO = "oc-algo";
+
+	/** Via parameter with the validity time of the feedback in milliseconds (RFC 7339). */
+	public static final String OC_VALIDITY = "oc-validity";
+
+	/** Via parameter with the sequence number of the feedback (RFC 7339). */
+	public static final String OC_SEQ = "oc-seq";
+
+	/** The only supported algorithm. */
+	public static final String LOSS = "loss";
+
+	private static final int INCREASE = 10;
+
+	private static final int DECREASE = 5;
+
+	/** Weight of a new sample in the average processing time. */
+	private static final double ALPHA = 0.05;
+
+	private final long _latencyThreshold;
+
+	private final int _queueThreshold;
+
+	private final long _interval;
+
+	private final int _retryAfter;
+
+	private final SourceRateLimiter _sources;
+
+	private final IntSupplier _backlog;
+
+	private final ScheduledFuture<?> _task;
+
+	private final AtomicLong _latency = new AtomicLong(Double.doubleToLongBits(0));
+
+	private final LongAdder _samples = new LongAdder();
+
+	/**
+	 * Value of {@link #_samples} at the last evaluation, only accessed by the evaluation task.
+	 */
+	private long _lastSamples;
+
+	private volatile int _reduction;
+
+	private volatile String _seq = "0";
+
+	private final LongAdder _accepted = new LongAdder();
+
+	private final LongAdder _rejectedLoad = new LongAdder();
+
+	private final LongAdder _rejectedRate = new LongAdder();
+
+	/**
+	 * Creates an {@link OverloadControl} and starts periodic load evaluation.
+	 *
+	 * @param profile
+	 *        The server configuration.
+	 * @param scheduler
+	 *        The scheduler for the evaluation task.
+	 * @param backlog
+	 *        The number of received messages not yet processed, e.g.
+	 *        {@link org.mjsip.sip.provider.SipProvider#getPendingMessages()}.
+	 */
+	public OverloadControl(ServerProfile profile, Scheduler scheduler, IntSupplier backlog) {
+		_latencyThreshold = TimeUnit.MILLISECONDS.toNanos(profile.overloadLatency);
+		_queueThreshold = profile.overloadQueue;
+		_interval = profile.overloadInterval;
+		_retryAfter = Math.max(1, profile.overloadRetryAfter);
+		_sources = profile.overloadSourceRate > 0
+				? new SourceRateLimiter(profile.overloadSourceRate, profile.overloadSourceBurst, profile.overloadSources)
+				: null;
+
+		_backlog = backlog;
+		_task = scheduler.schedulerWithFixedDelay(_interval, this::evaluate);
+	}
+
+	/**
+	 * Decides whether the given request is admitted for processing.
+	 *
+	 * @param req
+	 *        A request received from the network.
+	 * @return Whether the request should be processed, <code>false</code> if it should be rejected
+	 *         with {@link #getRetryAfter()}.
+	 */
+	public boolean admit(SipMessage req) {
+		if (!isThrottled(req)) {
+			return true;
+		}
+
+		int reduction = _reduction;
+		if (reduction > 0 && (reduction >= 100 || ThreadLocalRandom.current().nextInt(100) < reduction)) {
+			_rejectedLoad.increment();
+			return false;
+		}
+
+		if (_sources != null) {
+			String address = req.getRemoteAddress();
+			if (address != null && !_sources.acquire(address, System.nanoTime())) {
+				_rejectedRate.increment();
+				return false;
+			}
+		}
+
+		_accepted.increment();
+		return true;
+	}
+
+	/**
+	 * Whether the given request is subject to admission control.
+	 *
+	 * <p>
+	 * Only new INVITE and REGISTER requests are throttled. Requests within an existing dialog are
+	 * identified by a To tag.
+	 * </p>
+	 */
+	protected boolean isThrottled(SipMessage req) {
+		if (req.isRegister()) {
+			return true;
+		}
+		if (!req.isInvite()) {
+			return false;
+		}
+		return !req.hasToHeader() || !req.getToHeader().hasTag();
+	}
+
+	/**
+	 * Records the time needed for processing a single request.
+	 *
+	 * @param nanos
+	 *        The processing time in nanoseconds.
+	 */
+	public void processed(long nanos) {
+		_samples.increment();
+		while (true) {
+			long bits = _latency.get();
+			double average = Double.longBitsToDouble(bits);
+			double update = average + ALPHA * (nanos - average);
+			if (_latency.compareAndSet(bits, Double.doubleToLongBits(update))) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Whether the client that sent the given request has announced support for RFC 7339 overload
+	 * feedback, so that responses must be passed to {@link #addFeedback(SipMessage)}.
+	 */
+	public boolean requestsFeedback(SipMessage req) {
+		ViaHeader vh = req.getViaHeader();
+		return vh != null && vh.hasParameter(OC);
+	}
+
+	/**
+	 * Adds RFC 7339 overload feedback to the top Via header of the given response, if the client
+	 * has announced support for it.
+	 */
+	public void addFeedback(SipMessage resp) {
+		ViaHeader vh = resp.getViaHeader();
+		if (vh == null || !vh.hasParameter(OC)) {
+			return;
+		}
+		String algorithms = vh.getParameter(OC_ALGO);
+		if (algorithms != null && algorithms.indexOf(LOSS) < 0) {
+			return;
+		}
+
+		int reduction = _reduction;
+		vh.setParameter(OC, Integer.toString(reduction));
+		vh.setQuotedParameter(OC_ALGO, LOSS);
+		vh.setParameter(OC_VALIDITY, Long.toString(reduction > 0 ? 2 * _interval : 0));
+		vh.setParameter(OC_SEQ, _seq);
+		resp.removeViaHeader();
+		resp.addViaHeader(vh);
+	}
+
+	/**
+	 * The value in seconds for the Retry-After header of a rejected request.
+	 *
+	 * <p>
+	 * The value is randomized to prevent rejected clients from retrying in sync.
+	 * </p>
+	 */
+	public int getRetryAfter() {
+		return _retryAfter + ThreadLocalRandom.current().nextInt(_retryAfter + 1);
+	}
+
+	/**
+	 * The percentage of new requests currently rejected due to overload.
+	 */
+	public int getReduction() {
+		return _reduction;
+	}
+
+	/**
+	 * The average request processing time in milliseconds.
+	 */
+	public double getAverageLatency() {
+		return Double.longBitsToDouble(_latency.get()) / 1e6;
+	}
+
+	/**
+	 * The number of throttled requests that were admitted.
+	 */
+	public long getAccepted() {
+		return _accepted.sum();
+	}
+
+	/**
+	 * The number of requests rejected due to server overload.
+	 */
+	public long getRejectedByLoad() {
+		return _rejectedLoad.sum();
+	}
+
+	/**
+	 * The number of requests rejected due to the per-source rate limit.
+	 */
+	public long getRejectedByRate() {
+		return _rejectedRate.sum();
+	}
+
+	/**
+	 * Stops periodic load evaluation.
+	 */
+	public void halt() {
+		_task.cancel(false);
+	}
+
+	/**
+	 * Whether the server is currently overloaded.
+	 */
+	protected boolean isOverloaded() {
+		if (Double.longBitsToDouble(_latency.get()) > _latencyThreshold) {
+			return true;
+		}
+		return _queueThreshold > 0 && _backlog.getAsInt() > _queueThreshold;
+	}
+
+	/**
+	 * Adapts the reduction to the current load, called once per evaluation interval.
+	 */
+	void evaluate() {
+		long samples = _samples.sum();
+		if (samples == _lastSamples) {
+			// No request was processed since the last evaluation, e.g. because all new requests
+			// were rejected. Let the average decay to allow recovery.
+			double average = Double.longBitsToDouble(_latency.get());
+			_latency.set(Double.doubleToLongBits(average / 2));
+		}
+		_lastSamples = samples;
+
+		int before = _reduction;
+		int after;
+		if (isOverloaded()) {
+			after = Math.min(100, before + INCREASE);
+		} else {
+			after = Math.max(0, before - DECREASE);
+		}
+		if (after != before) {
+			long now = System.currentTimeMillis();
+			_seq = String.format("%d.%03d", now / 1000, now % 1000);
+			_reduction = after;
+			if (before == 0) {
+				LOG.warn("Server overloaded (average processing time {} ms), rejecting {}% of new requests.",
+						getAverageLatency(), after);
+			} else if (after == 0) {
+				LOG.info("Server overload ended.");
+			}
+		}
+	}
+
+}
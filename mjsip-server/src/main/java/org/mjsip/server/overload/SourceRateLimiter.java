@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.overload;
+
+/**
+ * Token bucket rate limiter per source address.
+ *
+ * <p>
+ * Buckets are kept in fixed-size open addressing tables indexed by a numeric key derived from
+ * the source address, so that tracking a large number of sources does not allocate per request
+ * or per source. An IPv4 address is used as key directly; other addresses are hashed, accepting
+ * that rare collisions share a bucket.
+ * </p>
+ *
+ * <p>
+ * The sources are distributed over {@link #STRIPES} independent tables by their key, each guarded
+ * by its own lock, so that requests from different sources rarely contend.
+ * </p>
+ *
+ * <p>
+ * When all slots of a probe sequence are taken, the slot with the least recently used bucket is
+ * replaced. Since a bucket that has not been used for some time is full anyway, this only forgets
+ * sources that are idle.
+ * </p>
+ */
+public class SourceRateLimiter {
+
+	private static final int PROBES = 8;
+
+	/** Number of independently locked tables, a power of two. */
+	static final int STRIPES = 16;
+
+	private static final int STRIPE_SHIFT = 32 - Integer.numberOfTrailingZeros(STRIPES);
+
+	private static final long IPV4 = 1L << 32;
+
+	private final Stripe[] _stripes;
+
+	private final double _ratePerNano;
+
+	private final double _burst;
+
+	/**
+	 * Creates a {@link SourceRateLimiter}.
+	 *
+	 * @param rate
+	 *        The number of tokens per second added to each bucket.
+	 * @param burst
+	 *        The capacity of each bucket.
+	 * @param sources
+	 *        The maximum number of tracked sources, rounded up to a power of two.
+	 */
+	public SourceRateLimiter(double rate, int burst, int sources) {
+		int capacity = Integer.highestOneBit(Math.max(PROBES * STRIPES, sources) - 1) << 1;
+		_stripes = new Stripe[STRIPES];
+		for (int n = 0; n < STRIPES; n++) {
+			_stripes[n] = new Stripe(capacity / STRIPES);
+		}
+		_ratePerNano = rate / 1e9;
+		_burst = Math.max(1, burst);
+	}
+
+	/**
+	 * Takes a token from the bucket of the given source.
+	 *
+	 * @param address
+	 *        The source address in textual form.
+	 * @param now
+	 *        The current time in nanoseconds, see {@link System#nanoTime()}.
+	 * @return Whether a token was available.
+	 */
+	public boolean acquire(String address, long now) {
+		long key = key(address);
+		int hash = spread(key);
+		// The upper bits select the stripe, the lower bits the slot within the stripe.
+		return _stripes[hash >>> STRIPE_SHIFT].acquire(key, hash, now);
+	}
+
+	/**
+	 * The number of sources currently tracked.
+	 */
+	public int size() {
+		int result = 0;
+		for (Stripe stripe : _stripes) {
+			result += stripe.size();
+		}
+		return result;
+	}
+
+	/**
+	 * Open addressing table of buckets guarded by its own lock.
+	 */
+	private final class Stripe {
+
+		private final long[] _keys;
+
+		private final double[] _tokens;
+
+		private final long[] _stamps;
+
+		private final int _mask;
+
+		Stripe(int capacity) {
+			_keys = new long[capacity];
+			_tokens = new double[capacity];
+			_stamps = new long[capacity];
+			_mask = capacity - 1;
+		}
+
+		synchronized boolean acquire(long key, int hash, long now) {
+			int start = hash & _mask;
+			int victim = start;
+			for (int n = 0; n < PROBES; n++) {
+				int index = (start + n) & _mask;
+				long slotKey = _keys[index];
+				if (slotKey == key) {
+					return take(index, now);
+				}
+				if (slotKey == 0) {
+					victim = index;
+					break;
+				}
+				if (_stamps[index] - _stamps[victim] < 0) {
+					victim = index;
+				}
+			}
+			_keys[victim] = key;
+			_tokens[victim] = _burst;
+			_stamps[victim] = now;
+			return take(victim, now);
+		}
+
+		private boolean take(int index, long now) {
+			double tokens = Math.min(_burst, _tokens[index] + (now - _stamps[index]) * _ratePerNano);
+			_stamps[index] = now;
+			if (tokens < 1) {
+				_tokens[index] = tokens;
+				return false;
+			}
+			_tokens[index] = tokens - 1;
+			return true;
+		}
+
+		synchronized int size() {
+			int result = 0;
+			for (long key : _keys) {
+				if (key != 0) {
+					result++;
+				}
+			}
+			return result;
+		}
+
+	}
+
+	/**
+	 * Computes the non-zero table key for the given address.
+	 */
+	static long key(String address) {
+		long ipv4 = parseIPv4(address);
+		if (ipv4 >= 0) {
+			return IPV4 | ipv4;
+		}
+
+		// FNV-1a, moved out of the IPv4 key range.
+		long hash = 0xcbf29ce484222325L;
+		for (int n = 0, cnt = address.length(); n < cnt; n++) {
+			hash ^= address.charAt(n);
+			hash *= 0x100000001b3L;
+		}
+		return hash | (1L << 63);
+	}
+
+	private static long parseIPv4(String address) {
+		long result = 0;
+		int part = 0;
+		int digits = 0;
+		int dots = 0;
+		for (int n = 0, cnt = address.length(); n < cnt; n++) {
+			char ch = address.charAt(n);
+			if (ch >= '0' && ch <= '9') {
+				part = part * 10 + (ch - '0');
+				if (++digits > 3 || part > 255) {
+					return -1;
+				}
+			} else if (ch == '.' && digits > 0 && dots < 3) {
+				result = (result << 8) | part;
+				part = 0;
+				digits = 0;
+				dots++;
+			} else {
+				return -1;
+			}
+		}
+		if (dots != 3 || digits == 0) {
+			return -1;
+		}
+		return (result << 8) | part;
+	}
+
+	private static int spread(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
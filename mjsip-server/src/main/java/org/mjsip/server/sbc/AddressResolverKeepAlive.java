@@ -28,7 +28,7 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 
-import org.mjsip.sip.provider.SipKeepAlive;
+import org.mjsip.sip.provider.KeepAliveService;
 import org.mjsip.sip.provider.SipProvider;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.SocketAddress;
@@ -50,8 +50,8 @@ public class AddressResolverKeepAlive extends AddressResolver {
 	/** Keep-alive time [millisecs] */
 	long keepalive_time;
 
-	/** Sip keep-alive daemons */
-	Hashtable<String, SipKeepAlive> keepalive_daemons=null;
+	/** Sip keep-alive targets */
+	Hashtable<String, KeepAliveService.Target> keepalive_daemons=null;
 	
 	/** Costructs an empty AddressResolverKeepAlive */
 	public AddressResolverKeepAlive(SipProvider sip_provider, long refresh_time, long keepalive_time) {
@@ -68,14 +68,13 @@ public class AddressResolverKeepAlive extends AddressResolver {
 			String key=refer_soaddr.toString();
 			if (keepalive_daemons.containsKey(key)) {
 				if (!binding_table.get(key).equals(actual_soaddr)) {
-					SipKeepAlive keepalive=keepalive_daemons.get(key);
-					keepalive.setDestSoAddress(actual_soaddr);
+					keepalive_daemons.get(key).halt();
+					keepalive_daemons.put(key,startKeepAlive(actual_soaddr));
 					LOG.debug("KeepAlive: change dest: {}", actual_soaddr);
 				}
 			}
 			else {
-				SipKeepAlive keepalive=new SipKeepAlive(sip_provider,actual_soaddr,keepalive_time);
-				keepalive_daemons.put(key,keepalive);
+				keepalive_daemons.put(key,startKeepAlive(actual_soaddr));
 				LOG.debug("KeepAlive: start: {}", actual_soaddr);
 			}
 		}
@@ -83,14 +82,19 @@ public class AddressResolverKeepAlive extends AddressResolver {
 	}
 
 
+	/** Starts sending keep-alive tokens to the given address */
+	private KeepAliveService.Target startKeepAlive(SocketAddress soaddr) {
+		return sip_provider.keepAlive().start(this,sip_provider.getDefaultTransport(),soaddr,keepalive_time);
+	}
+
+
 	/** Removes a SocketAddress mapping */
 	@Override
 	public void removeBinding(SocketAddress refer_soaddr) {
 		if (refer_soaddr!=null) {
 			String key=refer_soaddr.toString();
 			if (keepalive_daemons.containsKey(key)) {
-				SipKeepAlive keepalive=keepalive_daemons.get(key);
-				keepalive_daemons.remove(key);
+				KeepAliveService.Target keepalive=keepalive_daemons.remove(key);
 				keepalive.halt();
 				LOG.debug("KeepAlive: halt: {}", keepalive.getDestSoAddress());
 			}
@@ -113,8 +117,8 @@ public class AddressResolverKeepAlive extends AddressResolver {
 		// remove expired binding
 		for (int i=0; i<aux.size(); i++) {
 			String key= aux.elementAt(i);
-			SipKeepAlive keepalive= keepalive_daemons.get(key);
-			keepalive_daemons.remove(key);
+			KeepAliveService.Target keepalive= keepalive_daemons.remove(key);
+			if (keepalive==null) continue;
 			keepalive.halt();
 			LOG.debug("KeepAlive: halt: {}", keepalive.getDestSoAddress());
 		}
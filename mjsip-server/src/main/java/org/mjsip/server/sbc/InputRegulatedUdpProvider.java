@@ -27,6 +27,7 @@ package org.mjsip.server.sbc;
 
 import java.io.InterruptedIOException;
 
+import org.mjsip.time.ServiceThreads;
 import org.zoolu.net.UdpPacket;
 import org.zoolu.net.UdpProvider;
 import org.zoolu.net.UdpProviderListener;
@@ -39,7 +40,9 @@ import org.zoolu.net.UdpSocket;
   * <p>
   * Incoming packets are read and passed to the upper layers (the provider listener)
   * with a minimum pre-defined inter-packet delay.
-  */
+  * @deprecated Not used by the SBC anymore. Regulated relays pace their output through a
+  * {@link PacedFlow} of the shared {@link MediaPacer}, instead of delaying the receiver thread. */
+@Deprecated
 public class InputRegulatedUdpProvider extends UdpProvider {
 	
 	/** Minimum inter-packet arrival time (in milliseconds) */
@@ -83,14 +86,14 @@ public class InputRegulatedUdpProvider extends UdpProvider {
 		long expire=0;
 		if (alive_time>0) expire=System.currentTimeMillis()+alive_time;
 		try    {
-			socket.setSoTimeout(socket_timeout);
+			socket.setSoTimeout(ServiceThreads.receiveTimeout(alive_time));
 			// loop
 			while(!stop) {
 				try {
 					socket.receive(packet);           
 				}
 				catch (InterruptedIOException ie) {
-					if (alive_time>0 && System.currentTimeMillis()>expire) halt();
+					if (alive_time>0 && System.currentTimeMillis()>expire) stop=true;
 					continue;
 				}
 				if (packet.getLength()>=minimum_length) {
@@ -103,7 +106,8 @@ public class InputRegulatedUdpProvider extends UdpProvider {
 			}
 		}
 		catch (Exception e) {
-			error=e;
+			// closing the socket on halt is not an error
+			if (!stop) error=e;
 			stop=true;
 		} 
 		is_running=false;
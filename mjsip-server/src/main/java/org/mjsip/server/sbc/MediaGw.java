@@ -25,12 +25,9 @@ package org.mjsip.server.sbc;
 
 import java.util.HashSet;
 import java.util.Hashtable;
-import java.util.Vector;
 
 import org.mjsip.pool.PortPool;
-import org.mjsip.sdp.MediaDescriptor;
-import org.mjsip.sdp.SdpMessage;
-import org.mjsip.sdp.field.MediaField;
+import org.mjsip.sdp.SdpView;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.time.Scheduler;
 import org.slf4j.LoggerFactory;
@@ -71,6 +68,10 @@ public class MediaGw implements SymmetricUdpRelayListener {
 
 	private Scheduler _scheduler;
 
+	private MediaPacer _pacer;
+
+	private boolean _halted;
+
 	/**
 	 * Constructs a new MediaGw.
 	 */
@@ -89,33 +90,64 @@ public class MediaGw implements SymmetricUdpRelayListener {
 		return _scheduler;
 	}
 
+	/**
+	 * The pacer regulating the media flows of all relays, created on first use.
+	 */
+	public synchronized MediaPacer pacer() {
+		if (_halted) {
+			throw new IllegalStateException("Media gateway has been halted.");
+		}
+		if (_pacer == null) {
+			_pacer = new MediaPacer(sbc_profile);
+		}
+		return _pacer;
+	}
+
+	/**
+	 * Stops the media gateway.
+	 *
+	 * <p>
+	 * The pacer thread is stopped, packets still queued in regulated relays are no longer sent, and
+	 * no further regulated relays are created.
+	 * </p>
+	 */
+	public synchronized void halt() {
+		_halted = true;
+		if (_pacer != null) {
+			_pacer.halt();
+			LOG.info("MGW halted: {}", _pacer);
+		}
+	}
+
 	/** Processes the sdp data */
 	public SipMessage processSessionDescriptor(SipMessage msg) {
+		return processSessionDescriptor(msg, msg.getSdpView());
+	}
+
+	/** Processes the sdp data of the given message available as lazily parsed view. */
+	public SipMessage processSessionDescriptor(SipMessage msg, SdpView sdp) {
 		LOG.debug("inside processSessionDescriptor()");
 		
-		SdpMessage sdp=new SdpMessage(msg.getStringBody());
-		String dest_addr=sdp.getConnection().getAddress();
+		String dest_addr=sdp.getConnectionAddress();
 		// substitute 0.0.0.0 with 127.0.0.1
-		if (dest_addr.equals("0.0.0.0")) dest_addr="127.0.0.1";
+		if (dest_addr==null || dest_addr.equals("0.0.0.0")) dest_addr="127.0.0.1";
 		
 		String masq_addr=sbc_profile.mediaAddr;
 
 		//String[] media={ "audio" };
 		//int[] masq_port=new int[media.length];                   
-		Vector<MediaDescriptor> mediaDescriptors=sdp.getMediaDescriptors();
-		String[] mediaTypes=new String[mediaDescriptors.size()];                   
-		int[] masq_port=new int[mediaDescriptors.size()];                   
+		int mediaCount=sdp.getMediaCount();
+		String[] mediaTypes=new String[mediaCount];                   
+		int[] masq_port=new int[mediaCount];                   
 			
 		String call_id=msg.getCallIdHeader().getCallId();
 		String leg=(msg.isRequest())? "caller" : "callee";
 
 		//for (int i=0; i<media.length; i++)
-		for (int i=0; i<mediaDescriptors.size(); i++) {
+		for (int i=0; i<mediaCount; i++) {
 			//int dest_port=sdp.getMediaDescriptor(media[i]).getMedia().getPort();
-			MediaDescriptor media_descriptor=mediaDescriptors.elementAt(i);
-			MediaField mediaField=media_descriptor.getMediaField();
-			mediaTypes[i]=mediaField.getMediaType();
-			int dest_port=mediaField.getPort();
+			mediaTypes[i]=sdp.getMediaType(i);
+			int dest_port=sdp.getMediaPort(i);
 						
 			String key=call_id+"-"+leg+"-"+mediaTypes[i];
 			LOG.info("media-id: {}", key);
@@ -136,7 +168,7 @@ public class MediaGw implements SymmetricUdpRelayListener {
 		for (int i=0; i<mediaTypes.length; i++) {
 			LOG.info("mangle body: media={} masq_port={}", mediaTypes[i], masq_port[i]);
 		}
-		msg=SipMangler.mangleBody(msg,masq_addr,mediaTypes,masq_port);
+		msg=SipMangler.mangleBody(msg,sdp,masq_addr,mediaTypes,masq_port);
 
 		// creates the actual media relay (SymmetricUdpRelay) when both media legs are available
 		if (mediaTypes.length>0) {
@@ -185,8 +217,8 @@ public class MediaGw implements SymmetricUdpRelayListener {
 			else
 			if (sbc_profile.interpacketTime>0) {
 				// symmetric regulated UDP relay
-				symm_relay = new SymmetricRegulatedUdpRelay(scheduler(), left_port, masq_left.getPeerSoaddr(), right_port,
-						masq_right.getPeerSoaddr(), sbc_profile.relayTimeout, sbc_profile.interpacketTime, this);
+				symm_relay = new SymmetricRegulatedUdpRelay(scheduler(), pacer(), left_port, masq_left.getPeerSoaddr(), right_port,
+						masq_right.getPeerSoaddr(), sbc_profile.relayTimeout, this);
 				LOG.debug("MGW started: {}", symm_relay);
 			}
 			else {
@@ -237,6 +269,10 @@ public class MediaGw implements SymmetricUdpRelayListener {
 	@Override
 	public void onSymmetricUdpRelayTerminated(SymmetricUdpRelay symm_relay) {
 		LOG.debug("MGW terminated: {}", symm_relay);
+		if (symm_relay instanceof SymmetricRegulatedUdpRelay) {
+			SymmetricRegulatedUdpRelay regulated=(SymmetricRegulatedUdpRelay)symm_relay;
+			LOG.info("MGW paced flows: left [{}], right [{}], {}", regulated.getLeftFlow(), regulated.getRightFlow(), _pacer);
+		}
 	}
 	
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Regulates the departure of relayed media packets for any number of {@link PacedFlow}s from a
+ * single pacer thread.
+ *
+ * <p>
+ * A packet is sent directly from the calling thread, if its flow has no backlog and the flow's
+ * policy permits. Otherwise, the packet is queued in the flow, and the pacer thread sends it when
+ * due. Flows with backlog are kept in a priority queue ordered by their next departure time, so
+ * the pacer thread sleeps exactly until the next packet is due, with the resolution of
+ * {@link LockSupport#parkNanos(Object, long)}.
+ * </p>
+ */
+public class MediaPacer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MediaPacer.class);
+
+	/**
+	 * Policies for regulating the departure of packets in a flow.
+	 */
+	public enum Policy {
+
+		/** Guarantees a minimum time between two departures. */
+		INTERVAL,
+
+		/**
+		 * Limits the average rate to one packet per inter-packet time, but allows bursts of a
+		 * configured number of packets.
+		 */
+		TOKEN_BUCKET;
+
+	}
+
+	private final Policy _policy;
+
+	private final long _interval;
+
+	private final int _burst;
+
+	private final int _queueSize;
+
+	private final ConcurrentLinkedQueue<PacedFlow> _pending = new ConcurrentLinkedQueue<>();
+
+	private final Thread _thread;
+
+	private volatile boolean _running = true;
+
+	private final LongAdder _sent = new LongAdder();
+
+	private final LongAdder _dropped = new LongAdder();
+
+	private final AtomicInteger _queued = new AtomicInteger();
+
+	/**
+	 * Creates a {@link MediaPacer} from the SBC configuration.
+	 */
+	public MediaPacer(SessionBorderControllerProfile profile) {
+		this(profile.pacingPolicy, profile.interpacketTime, profile.pacingBurst, profile.pacingQueueSize);
+	}
+
+	/**
+	 * Creates a {@link MediaPacer} and starts its pacer thread.
+	 *
+	 * @param policy
+	 *        The policy of created flows.
+	 * @param interTime
+	 *        The minimum inter-packet departure time in milliseconds.
+	 * @param burst
+	 *        The maximum burst size for {@link Policy#TOKEN_BUCKET}.
+	 * @param queueSize
+	 *        The maximum number of queued packets per flow.
+	 */
+	public MediaPacer(Policy policy, long interTime, int burst, int queueSize) {
+		_policy = policy;
+		_interval = TimeUnit.MILLISECONDS.toNanos(interTime);
+		_burst = burst;
+		_queueSize = Math.max(1, queueSize);
+
+		_thread = new Thread(this::run, "MediaPacer");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Creates a new flow regulated by this pacer.
+	 *
+	 * @param sender
+	 *        The sender that transmits packets of the flow.
+	 */
+	public PacedFlow createFlow(PacedFlow.Sender sender) {
+		return new PacedFlow(this, sender, _policy, _interval, _burst, _queueSize);
+	}
+
+	/**
+	 * The total number of packets sent through all flows.
+	 */
+	public long getSentPackets() {
+		return _sent.sum();
+	}
+
+	/**
+	 * The total number of packets dropped because a flow's queue was full.
+	 */
+	public long getDroppedPackets() {
+		return _dropped.sum();
+	}
+
+	/**
+	 * The number of packets currently waiting for departure in all flows.
+	 */
+	public int getQueuedPackets() {
+		return _queued.get();
+	}
+
+	/**
+	 * Stops the pacer thread, queued packets are no longer sent.
+	 */
+	public void halt() {
+		_running = false;
+		LockSupport.unpark(_thread);
+	}
+
+	/**
+	 * Requests the pacer thread to drain the given flow.
+	 */
+	void schedule(PacedFlow flow) {
+		_pending.add(flow);
+		LockSupport.unpark(_thread);
+	}
+
+	void onSent() {
+		_sent.increment();
+	}
+
+	void onDropped() {
+		_dropped.increment();
+	}
+
+	void onQueued() {
+		_queued.incrementAndGet();
+	}
+
+	void onDequeued(int count) {
+		if (count > 0) {
+			_queued.addAndGet(-count);
+		}
+	}
+
+	private void run() {
+		PriorityQueue<PacedFlow> flows = new PriorityQueue<>(Comparator.comparingLong((PacedFlow f) -> f._due));
+		while (_running) {
+			long now = System.nanoTime();
+
+			PacedFlow added;
+			while ((added = _pending.poll()) != null) {
+				added._due = now;
+				flows.add(added);
+			}
+
+			PacedFlow next = flows.peek();
+			if (next == null) {
+				LockSupport.park(this);
+				continue;
+			}
+
+			long delay = next._due - now;
+			if (delay > 0) {
+				LockSupport.parkNanos(this, delay);
+				continue;
+			}
+
+			flows.poll();
+			try {
+				long due = next.drain(now);
+				if (due >= 0) {
+					next._due = due;
+					flows.add(next);
+				}
+			} catch (RuntimeException ex) {
+				LOG.warn("Failed to drain media flow.", ex);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MediaPacer(" + _policy + ", sent=" + getSentPackets() + ", dropped=" + getDroppedPackets() + ", queued="
+				+ getQueuedPackets() + ")";
+	}
+
+}
@@ -26,9 +26,7 @@ package org.mjsip.server.sbc;
 
 
 import java.net.DatagramSocket;
-import java.util.Vector;
 
-import org.mjsip.time.Scheduler;
 import org.zoolu.net.IpAddress;
 import org.zoolu.net.UdpPacket;
 import org.zoolu.net.UdpSocket;
@@ -38,100 +36,73 @@ import org.zoolu.net.UdpSocket;
 /**
  * Provides a shaped UDP transport protocol. A minimum inter-packets time is guaranteed on
  * departures.
+ * <p>
+ * Departures are regulated by a {@link PacedFlow} of a shared {@link MediaPacer}.
  */
 public class OutputRegulatedUdpSocket extends UdpSocket {
 	
-	/** Minimum inter-packet departure time (in milliseconds) */
-	long inter_time=0; 
-
-	/** Last departure time */
-	long last_departure=0; 
-
-	/** Packet buffer */
-	Vector<UdpPacket> buffer=new Vector<>();
-
-	private Scheduler _scheduler; 
+	/** Flow regulating the departures */
+	PacedFlow flow;
 
 
 	/** Creates a new OutputRegulatedUdpSocket */ 
-	public OutputRegulatedUdpSocket(Scheduler scheduler, int port, long inter_time) throws java.net.SocketException {
+	public OutputRegulatedUdpSocket(MediaPacer pacer, int port, long inter_time) throws java.net.SocketException {
 		super(port);
-		_scheduler = scheduler;
-		this.inter_time=inter_time;
+		init(pacer,inter_time);
 	}
 
 
 	/** Creates a new OutputRegulatedUdpSocket */ 
-	public OutputRegulatedUdpSocket(Scheduler scheduler, int port, IpAddress ipaddr, long inter_time) throws java.net.SocketException {
+	public OutputRegulatedUdpSocket(MediaPacer pacer, int port, IpAddress ipaddr, long inter_time) throws java.net.SocketException {
 		super(port,ipaddr);
-		_scheduler = scheduler;
-		this.inter_time=inter_time;
+		init(pacer,inter_time);
 	}
  
 
 	/** Creates a new OutputRegulatedUdpSocket */ 
-	OutputRegulatedUdpSocket(DatagramSocket sock, long inter_time) {
+	OutputRegulatedUdpSocket(MediaPacer pacer, DatagramSocket sock, long inter_time) {
 		super(sock);
-		this.inter_time=inter_time;
+		init(pacer,inter_time);
+	}
+
+
+	/** Initializes the paced flow. */
+	private void init(MediaPacer pacer, long inter_time) {
+		flow=pacer.createFlow(super::send);
+		flow.setMinimumInterPacketTime(inter_time);
 	}
 
 
 	/** Sets the minimum inter-packet departure time (in milliseconds) */
-	synchronized public void setMinimumInterPacketTime(long time) {
-		inter_time=time;
+	public void setMinimumInterPacketTime(long time) {
+		flow.setMinimumInterPacketTime(time);
 	}
 
 
 	/** Gets the minimum inter-packet departure time (in milliseconds) */
-	synchronized public long getMinimumInterPacketTime() {
-		return inter_time;
+	public long getMinimumInterPacketTime() {
+		return flow.getMinimumInterPacketTime();
 	}
 
 
-	/** Sends an UDP packet from this socket. */ 
-	@Override
-	public void send(UdpPacket pkt) throws java.io.IOException {
-		sendRegulated(pkt);
+	/** Gets the flow regulating the departures of this socket. */
+	public PacedFlow getFlow() {
+		return flow;
 	}
 
-	/** When the timer exceeds */
-	private void onTimeout() {
-		try {
-			sendTop(); 
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-	}
 
 	/** Sends an UDP packet from this socket. */ 
-	synchronized private void sendRegulated(UdpPacket pkt) throws java.io.IOException {
-		long now=System.currentTimeMillis();
-		if (buffer.isEmpty() && now>=(last_departure+inter_time))  {
-			super.send(pkt);
-			last_departure=now;
-		}
-		else {
-			buffer.addElement(pkt);
-			if (buffer.size()==1) {
-				if (inter_time<=0) sendTop();
-				else
-					_scheduler.schedule(last_departure+inter_time-now, this::onTimeout);
-			}
-		}
+	@Override
+	public void send(UdpPacket pkt) throws java.io.IOException {
+		flow.send(pkt);
 	}
 
 
-	/** Sends the first UdpPacket in queue. */ 
-	synchronized private void sendTop() throws java.io.IOException {
-		UdpPacket pkt=buffer.elementAt(0);
-		buffer.removeElementAt(0);
-		super.send(pkt);
-		last_departure=System.currentTimeMillis();
-		if (buffer.size()>0) {
-			if (inter_time<=0) sendTop();
-			else
-				_scheduler.schedule(inter_time, this::onTimeout);
-		}
+	/** Closes this datagram socket and discards all queued packets. */
+	@Override
+	public void close() {
+		flow.close();
+		super.close();
 	}
 	
 }
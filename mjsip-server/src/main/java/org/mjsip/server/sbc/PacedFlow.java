@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.UdpPacket;
+
+/**
+ * A single stream of UDP packets whose departures are regulated by a {@link MediaPacer}.
+ *
+ * <p>
+ * Packets that cannot be sent immediately are copied into a fixed-size ring of reusable buffers.
+ * If the ring is full, new packets are dropped. The backlog is drained by the pacer thread as soon
+ * as the flow's {@link MediaPacer.Policy} permits.
+ * </p>
+ *
+ * @see MediaPacer#createFlow(Sender)
+ */
+public final class PacedFlow {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PacedFlow.class);
+
+	/** Initial size of a packet buffer in the ring, enough for typical RTP packets. */
+	private static final int INITIAL_BUFFER = 1500;
+
+	/**
+	 * Transmits a packet that is due for departure.
+	 */
+	public interface Sender {
+
+		/**
+		 * Sends the given packet.
+		 */
+		void send(UdpPacket packet) throws IOException;
+
+	}
+
+	private final MediaPacer _pacer;
+
+	private final Sender _sender;
+
+	private final byte[][] _data;
+
+	private final int[] _length;
+
+	private final IpAddress[] _address;
+
+	private final int[] _port;
+
+	private int _head;
+
+	private int _size;
+
+	private final MediaPacer.Policy _policy;
+
+	private long _interval;
+
+	private final double _burst;
+
+	/** Departure time of the last packet in nanoseconds. */
+	private long _last;
+
+	/** Available tokens for {@link MediaPacer.Policy#TOKEN_BUCKET}. */
+	private double _tokens;
+
+	/** Whether the flow is queued for being drained by the pacer thread. */
+	private boolean _scheduled;
+
+	private boolean _closed;
+
+	/** Time in nanoseconds when the pacer thread should drain the flow next, only accessed by the pacer thread. */
+	long _due;
+
+	private long _sent;
+
+	private long _dropped;
+
+	private int _maxQueued;
+
+	PacedFlow(MediaPacer pacer, Sender sender, MediaPacer.Policy policy, long interval, int burst, int capacity) {
+		_pacer = pacer;
+		_sender = sender;
+		_data = new byte[capacity][];
+		_length = new int[capacity];
+		_address = new IpAddress[capacity];
+		_port = new int[capacity];
+		_policy = policy;
+		_interval = interval;
+		_burst = Math.max(1, burst);
+		_tokens = _burst;
+		_last = System.nanoTime() - interval;
+	}
+
+	/**
+	 * Sends the given packet now if permitted by the policy, or queues a copy of it otherwise.
+	 *
+	 * @return Whether the packet was sent or queued, <code>false</code> if it was dropped.
+	 */
+	public boolean send(UdpPacket packet) {
+		boolean wakeup = false;
+		synchronized (this) {
+			if (_closed) {
+				return false;
+			}
+			long now = System.nanoTime();
+			if (_size == 0 && !_scheduled && consume(now)) {
+				transmit(packet);
+				return true;
+			}
+			if (_size == _data.length) {
+				_dropped++;
+				_pacer.onDropped();
+				return false;
+			}
+			enqueue(packet);
+			if (!_scheduled) {
+				_scheduled = true;
+				wakeup = true;
+			}
+		}
+		if (wakeup) {
+			_pacer.schedule(this);
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the minimum inter-packet departure time.
+	 *
+	 * @param millis
+	 *        The time in milliseconds.
+	 */
+	public synchronized void setMinimumInterPacketTime(long millis) {
+		_interval = millis * 1000000L;
+	}
+
+	/**
+	 * The minimum inter-packet departure time in milliseconds.
+	 */
+	public synchronized long getMinimumInterPacketTime() {
+		return _interval / 1000000L;
+	}
+
+	/**
+	 * The number of packets sent by this flow.
+	 */
+	public synchronized long getSentPackets() {
+		return _sent;
+	}
+
+	/**
+	 * The number of packets dropped because the flow's queue was full.
+	 */
+	public synchronized long getDroppedPackets() {
+		return _dropped;
+	}
+
+	/**
+	 * The number of packets currently waiting for departure.
+	 */
+	public synchronized int getQueuedPackets() {
+		return _size;
+	}
+
+	/**
+	 * The maximum number of packets that were waiting for departure at the same time.
+	 */
+	public synchronized int getMaxQueuedPackets() {
+		return _maxQueued;
+	}
+
+	/**
+	 * Discards all queued packets and rejects further packets.
+	 */
+	public void close() {
+		int discarded;
+		synchronized (this) {
+			discarded = _size;
+			_closed = true;
+			_size = 0;
+			for (int n = 0; n < _address.length; n++) {
+				_data[n] = null;
+				_address[n] = null;
+			}
+		}
+		_pacer.onDequeued(discarded);
+	}
+
+	/**
+	 * Sends queued packets as far as permitted by the policy, called by the pacer thread.
+	 *
+	 * @return The time in nanoseconds when the next queued packet is due, or <code>-1</code> if
+	 *         the queue is empty.
+	 */
+	long drain(long now) {
+		int sent = 0;
+		try {
+			synchronized (this) {
+				while (_size > 0) {
+					if (!consume(now)) {
+						return nextDeparture(now);
+					}
+					int index = _head;
+					UdpPacket packet = new UdpPacket(_data[index], 0, _length[index], _address[index], _port[index]);
+					_address[index] = null;
+					_head = (index + 1) % _data.length;
+					_size--;
+					sent++;
+					transmit(packet);
+				}
+				_scheduled = false;
+				return -1;
+			}
+		} finally {
+			_pacer.onDequeued(sent);
+		}
+	}
+
+	private void enqueue(UdpPacket packet) {
+		int index = (_head + _size) % _data.length;
+		int length = packet.getLength();
+		byte[] buffer = _data[index];
+		if (buffer == null || buffer.length < length) {
+			buffer = _data[index] = new byte[Math.max(INITIAL_BUFFER, length)];
+		}
+		System.arraycopy(packet.getData(), packet.getOffset(), buffer, 0, length);
+		_length[index] = length;
+		_address[index] = packet.getIpAddress();
+		_port[index] = packet.getPort();
+		_size++;
+		if (_size > _maxQueued) {
+			_maxQueued = _size;
+		}
+		_pacer.onQueued();
+	}
+
+	private void transmit(UdpPacket packet) {
+		try {
+			_sender.send(packet);
+			_sent++;
+			_pacer.onSent();
+		} catch (IOException ex) {
+			LOG.debug("Failed to send paced packet.", ex);
+		}
+	}
+
+	/**
+	 * Takes the permission to send a packet at the given time.
+	 */
+	private boolean consume(long now) {
+		switch (_policy) {
+		case TOKEN_BUCKET: {
+			if (_interval > 0) {
+				_tokens = Math.min(_burst, _tokens + (double) (now - _last) / _interval);
+			} else {
+				_tokens = _burst;
+			}
+			_last = now;
+			if (_tokens < 1) {
+				return false;
+			}
+			_tokens -= 1;
+			return true;
+		}
+		case INTERVAL:
+		default: {
+			if (now - _last < _interval) {
+				return false;
+			}
+			_last = now;
+			return true;
+		}
+		}
+	}
+
+	private long nextDeparture(long now) {
+		switch (_policy) {
+		case TOKEN_BUCKET:
+			return now + (long) ((1 - _tokens) * _interval);
+		case INTERVAL:
+		default:
+			return _last + _interval;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "sent=" + _sent + ", dropped=" + _dropped + ", queued=" + _size + ", max-queued=" + _maxQueued;
+	}
+
+}
@@ -23,14 +23,15 @@ package org.mjsip.server.sbc;
 
 
 
-import java.util.Hashtable;
 import java.util.Vector;
 
 import org.mjsip.config.MetaConfig;
 import org.mjsip.config.OptionParser;
+import org.mjsip.metrics.MetricsConfig;
+import org.mjsip.metrics.MetricsExporter;
 import org.mjsip.pool.PortConfig;
 import org.mjsip.pool.PortPool;
-import org.mjsip.sdp.SdpMessage;
+import org.mjsip.sdp.SdpView;
 import org.mjsip.server.Proxy;
 import org.mjsip.server.ServerProfile;
 import org.mjsip.sip.address.GenericURI;
@@ -44,7 +45,7 @@ import org.mjsip.sip.header.ViaHeader;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipMethods;
 import org.mjsip.sip.provider.SipConfig;
-import org.mjsip.sip.provider.SipKeepAlive;
+import org.mjsip.sip.provider.KeepAliveService;
 import org.mjsip.time.ConfiguredScheduler;
 import org.mjsip.time.SchedulerConfig;
 import org.slf4j.LoggerFactory;
@@ -97,8 +98,8 @@ public class SessionBorderController extends Proxy {
 	/** The media GW box */
 	MediaGw media_gw;
 
-	/** Sip keep-alive daemons for registered users. */
-	Hashtable<String, SipKeepAlive> keepalive_daemons=null;
+	/** Sends keep-alive tokens to registered users, <code>null</code> if disabled. */
+	KeepAliveService keepalive_service=null;
 
 	/** Maximum time between two handovers (in milliseconds). */
 	//long handover_time=5000;
@@ -114,7 +115,7 @@ public class SessionBorderController extends Proxy {
 		this.sip_provider=sip_provider;
 		this.sbc_profile=sbc_profile;
 		
-		if (sbc_profile.keepaliveTime>0 && !sbc_profile.keepaliveAggressive) keepalive_daemons=new Hashtable<>();
+		if (sbc_profile.keepaliveTime>0 && !sbc_profile.keepaliveAggressive) keepalive_service=sip_provider.keepAlive();
 		if (sbc_profile.mediaAddr==null || sbc_profile.mediaAddr.equals("0.0.0.0")) sbc_profile.mediaAddr=sip_provider.getViaAddress();
 		
 		media_gw = new MediaGw(sip_provider.scheduler(), portPool, sbc_profile);
@@ -123,6 +124,11 @@ public class SessionBorderController extends Proxy {
 		//server_profile.on_route=true;
 	}
 
+	/** Stops the media gateway of this SBC. */
+	public void halt() {
+		media_gw.halt();
+	}
+
 	/** When a new request message is received for a local user. */
 	@Override
 	public void processRequestToLocalUser(SipMessage msg) {
@@ -194,6 +200,15 @@ public class SessionBorderController extends Proxy {
 	}
 
 
+	/** Disables the stateless fast path, even if enabled in the server profile.
+	  * Requests are always mangled before being forwarded (SDP body and Contact header, see
+	  * {@link #updateProxyingRequest(SipMessage)}), which the fast path would skip. */
+	@Override
+	protected boolean isStatelessFastPathEnabled() {
+		return false;
+	}
+
+
 	/** Processes the Proxy headers of the response.
 	  * Such headers are: Via, .. */
 	@Override
@@ -208,7 +223,7 @@ public class SessionBorderController extends Proxy {
 			else resp=SipMangler.mangleContact(resp,sip_provider.getViaAddress(),sip_provider.getPort());
 		}
 		// update the SIP keep alive daemons
-		if (keepalive_daemons!=null && resp.getCSeqHeader().getMethod().equalsIgnoreCase(SipMethods.REGISTER)) updateKeepAlive(resp);
+		if (keepalive_service!=null && resp.getCSeqHeader().getMethod().equalsIgnoreCase(SipMethods.REGISTER)) updateKeepAlive(resp);
 		return resp;
 	}
 
@@ -219,7 +234,7 @@ public class SessionBorderController extends Proxy {
 	protected SipMessage updateRegistration(SipMessage msg) {
 		SipMessage resp=super.updateRegistration(msg);
 		// update the SIP keep alive daemons
-		if (keepalive_daemons!=null) updateKeepAlive(resp);
+		if (keepalive_service!=null) updateKeepAlive(resp);
 		return resp;
 	}
 
@@ -239,34 +254,14 @@ public class SessionBorderController extends Proxy {
 				if (port<=0) port=sip_provider.sipConfig().getDefaultPort();
 				SocketAddress soaddr=new SocketAddress(host,port);
 				int time=ch.getExpires();
+				String proto=sip_provider.getDefaultTransport();
 				if (time>0) {
-					SipKeepAlive keepalive;
-					String key=soaddr.toString();
-					if (keepalive_daemons.containsKey(key)) {
-						keepalive=keepalive_daemons.get(key);
-						if (!keepalive.isRunning()) {
-							keepalive_daemons.remove(key);
-							keepalive=new SipKeepAlive(sip_provider,soaddr,sbc_profile.keepaliveTime);
-							keepalive_daemons.put(key,keepalive);
-							LOG.debug("KeepAlive: restart: {} ({}secs)", soaddr, time);
-						}
-						else LOG.debug("KeepAlive: update: {} ({}secs)", soaddr, time);
-					}
-					else {
-						keepalive=new SipKeepAlive(sip_provider,soaddr,sbc_profile.keepaliveTime);
-						keepalive_daemons.put(key,keepalive);
-						LOG.debug("KeepAlive: start: {} ({}secs)", soaddr, time);
-					}
+					KeepAliveService.Target keepalive=keepalive_service.start(this,proto,soaddr,sbc_profile.keepaliveTime);
 					keepalive.setExpirationTime(((long)time)*1000);
+					LOG.debug("KeepAlive: update: {} ({}secs)", soaddr, time);
 				}
 				else {
-					String key=soaddr.toString();
-					if (keepalive_daemons.containsKey(key)) {
-						SipKeepAlive keepalive=keepalive_daemons.get(key);
-						keepalive_daemons.remove(key);
-						keepalive.halt();
-						LOG.debug("KeepAlive: halt: {}", soaddr);
-					}
+					if (keepalive_service.stop(this,proto,soaddr)) LOG.debug("KeepAlive: halt: {}", soaddr);
 				}
 			}
 		}
@@ -280,13 +275,13 @@ public class SessionBorderController extends Proxy {
 
 		String content_type=msg.getContentTypeHeader().getContentType();
 		if (content_type.equalsIgnoreCase("application/sdp")) {
-			SdpMessage sdp=msg.getSdpBody();
-			String dest_addr=sdp.getConnection().getAddress();
+			SdpView sdp=msg.getSdpView();
+			String dest_addr=sdp.getConnectionAddress();
 			// substitute 0.0.0.0 with 127.0.0.1
-			if (dest_addr.equals("0.0.0.0")) dest_addr="127.0.0.1";
+			if (dest_addr==null || dest_addr.equals("0.0.0.0")) dest_addr="127.0.0.1";
 
 			// checking whether acts as media gw
-			if (doRelay(dest_addr)) msg=media_gw.processSessionDescriptor(msg);
+			if (doRelay(dest_addr)) msg=media_gw.processSessionDescriptor(msg,sdp);
 		}
 		return msg;
 	}
@@ -355,11 +350,14 @@ public class SessionBorderController extends Proxy {
 		SessionBorderControllerProfile sbc_profile=new SessionBorderControllerProfile();
 		PortConfig portConfig = new PortConfig();
 		ServerProfile server_profile=new ServerProfile();
+		MetricsConfig metricsConfig = new MetricsConfig();
 
-		MetaConfig metaConfig = OptionParser.parseOptions(args, ".mjsip-sbc", sipConfig, schedulerConfig, sbc_profile, portConfig, server_profile);
+		MetaConfig metaConfig = OptionParser.parseOptions(args, ".mjsip-sbc", sipConfig, schedulerConfig, sbc_profile, portConfig, server_profile, metricsConfig);
 		
 		sipConfig.normalize();
 		server_profile.normalize();
+
+		MetricsExporter.startIfEnabled(metricsConfig);
 		
 		// remove outbound proxy in case of the presence of a backend proxy
 		if (sbc_profile.backendProxy!=null) {
@@ -31,9 +31,19 @@ public class SessionBorderControllerProfile {
 	// /** Whether implementing symmetric RTP for NAT traversal. */
 	// boolean symmetric_rtp=false;
 	
-	@Option(name = "--interpacket-time", usage = "Minimum inter-packet departure time.")
+	@Option(name = "--interpacket-time", usage = "Minimum inter-packet departure time (in milliseconds) of relayed media packets; 0 disables pacing.")
 	public long interpacketTime=0; 
 
+	@Option(name = "--pacing-policy", usage = "Policy for pacing relayed media packets: INTERVAL guarantees the inter-packet time between any two packets, "
+			+ "TOKEN_BUCKET only limits the average rate and allows bursts of up to pacing-burst packets.")
+	public MediaPacer.Policy pacingPolicy=MediaPacer.Policy.INTERVAL;
+
+	@Option(name = "--pacing-burst", usage = "Maximum number of media packets sent in a burst with the TOKEN_BUCKET pacing policy.")
+	public int pacingBurst=4;
+
+	@Option(name = "--pacing-queue-size", usage = "Maximum number of media packets queued per relay direction, before packets are dropped.")
+	public int pacingQueueSize=256;
+
 	@Option(name = "--do-interception", usage = "Whether to intercept media traffic.", handler = YesNoHandler.class)
 	public boolean doInterception=false;
 
@@ -23,12 +23,7 @@ package org.mjsip.server.sbc;
 
 
 
-import java.util.Vector;
-
-import org.mjsip.sdp.MediaDescriptor;
-import org.mjsip.sdp.SdpMessage;
-import org.mjsip.sdp.field.ConnectionField;
-import org.mjsip.sdp.field.MediaField;
+import org.mjsip.sdp.SdpView;
 import org.mjsip.sip.address.GenericURI;
 import org.mjsip.sip.address.NameAddress;
 import org.mjsip.sip.address.SipURI;
@@ -289,49 +284,17 @@ public class SipMangler {
 		if (!msg.hasBody()) {
 			return msg;
 		}
-	
-		SdpMessage sdp=msg.getSdpBody();
-		ConnectionField newConn = mapConnection(sdp.getConnection(), masq_addr);
-		Vector<MediaDescriptor> newDescriptors = mapMediaDescriptors(sdp.getMediaDescriptors(), mediaTypes, masq_port);
-		
-		sdp=sdp.withConnection(newConn, newDescriptors);
-		
-		msg.setSdpBody(sdp);
-		return msg;
-	}
-
-	private static ConnectionField mapConnection(ConnectionField conn, String masq_addr) {
-		ConnectionField newConn=new ConnectionField(conn.getAddressType(),masq_addr,conn.getTTL(),conn.getNum());
-		return newConn;
+		return mangleBody(msg, msg.getSdpView(), masq_addr, mediaTypes, masq_port);
 	}
 
-	private static Vector<MediaDescriptor> mapMediaDescriptors(Vector<MediaDescriptor> descriptors,
-			String[] mediaTypes, int[] masq_port) {
-		Vector<MediaDescriptor> result = new Vector<>(); 
-			  
-		for (MediaDescriptor descriptor : descriptors) {
-			MediaField mf = descriptor.getMediaField();
-			
-			MediaDescriptor newDescriptor;
-
-			createDescriptor:
-			{
-				for (int i=0; i < mediaTypes.length; i++) {
-					if (mf.getMediaType().equals(mediaTypes[i])) {
-						// Masquerade the port
-						MediaField newMedia = 
-							new MediaField(mf.getMediaType(), masq_port[i], 0, mf.getTransport(), mf.getFormats());
-						newDescriptor = new MediaDescriptor(newMedia, descriptor.getConnection(), descriptor.getAttributes());
-						break createDescriptor;
-					}
-				}
-				
-				newDescriptor = descriptor;
-			}
-
-			result.addElement(newDescriptor);
-		}
-		return result;
+	/**
+	 * Mangles the body by replacing the session connection address and the ports of the given
+	 * media types, leaving all other lines of the given SDP unchanged.
+	 */
+	public static SipMessage mangleBody(SipMessage msg, SdpView sdp, String masq_addr, String[] mediaTypes,
+			int[] masq_port) {
+		msg.setBody("application/sdp", sdp.rewrite(masq_addr, mediaTypes, masq_port));
+		return msg;
 	}
 
 }
@@ -26,50 +26,56 @@ package org.mjsip.server.sbc;
 import org.mjsip.time.Scheduler;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.SocketAddress;
+import org.zoolu.net.UdpPacket;
+import org.zoolu.net.UdpProvider;
 import org.zoolu.net.UdpSocket;
 
 
 
 /**
   * SymmetricRegulatedUdpRelay implements a shaped symmetric bidirectional UDP relay system.
+  * <p>
+  * Departures in each direction are regulated by a {@link PacedFlow} of a shared {@link MediaPacer}.
   */
 public class SymmetricRegulatedUdpRelay extends SymmetricUdpRelay {
 	
 	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(SymmetricRegulatedUdpRelay.class);
 
-	/** Minimum inter-packet departure time */
-	long inter_time=0;
+	/** Flow of packets sent through the left UDP interface */
+	PacedFlow left_flow;
+
+	/** Flow of packets sent through the right UDP interface */
+	PacedFlow right_flow;
 
 	/** Costructs a new SymmetricRegulatedUdpRelay. 
-	 * @param scheduler */
-	public SymmetricRegulatedUdpRelay(Scheduler scheduler, int left_port, SocketAddress left_soaddr, int right_port,
-			SocketAddress right_soaddr, long relay_time, long inter_time, SymmetricUdpRelayListener listener) {
+	 * @param scheduler the scheduler for the relay timeout
+	 * @param pacer the pacer regulating the packet departures */
+	public SymmetricRegulatedUdpRelay(Scheduler scheduler, MediaPacer pacer, int left_port, SocketAddress left_soaddr, int right_port,
+			SocketAddress right_soaddr, long relay_time, SymmetricUdpRelayListener listener) {
 		super(scheduler);
-		init(left_port, left_soaddr, right_port, right_soaddr, relay_time, inter_time, listener);
+		init(pacer, left_port, left_soaddr, right_port, right_soaddr, relay_time, listener);
 	}
 
 
 	/** Initializes the SymmetricUdpRelay. */
-	private void init(int left_port, SocketAddress left_soaddr, int right_port, SocketAddress right_soaddr,
-			long relay_time, long inter_time, SymmetricUdpRelayListener listener) {
+	private void init(MediaPacer pacer, int left_port, SocketAddress left_soaddr, int right_port, SocketAddress right_soaddr,
+			long relay_time, SymmetricUdpRelayListener listener) {
 		//this.left_port=left_port;
 		this.left_soaddr=left_soaddr;
 		//this.right_port=right_port;
 		this.right_soaddr=right_soaddr;
 		this.relay_time=relay_time;
 		this.listener=listener;
-		this.inter_time=inter_time;
 
 		try {
-			//left_udp=new UdpProvider(new OutputRegulatedUdpSocket(left_port,inter_time),0,this);
-			left_udp=new InputRegulatedUdpProvider(new UdpSocket(left_port),0,inter_time,this);
+			left_udp=new UdpProvider(new UdpSocket(left_port),0,this);
+			left_flow=pacer.createFlow(left_udp::send);
 			LOG.info("udp interfce: {} started", left_udp);    
-			LOG.info("udp interfce regulated with {} millisecs of minimum inter-packet departure time", inter_time);    
 	
-			//right_udp=new UdpProvider(new OutputRegulatedUdpSocket(right_port,inter_time),0,this);
-			right_udp=new InputRegulatedUdpProvider(new UdpSocket(right_port),0,inter_time,this);
+			right_udp=new UdpProvider(new UdpSocket(right_port),0,this);
+			right_flow=pacer.createFlow(right_udp::send);
 			LOG.info("udp interfce: {} started", right_udp);
-			LOG.info("udp interfce regulated with {} millisecs of minimum inter-packet departure time", inter_time);    
+			LOG.info("udp interfces regulated by {}", pacer);    
 		}   
 		catch (Exception e) {
 			LOG.info("Exception.", e);
@@ -83,4 +89,33 @@ public class SymmetricRegulatedUdpRelay extends SymmetricUdpRelay {
 		last_left_change=last_right_change=System.currentTimeMillis();
 	}
 
+
+	/** Gets the flow of packets sent to the left peer. */
+	public PacedFlow getLeftFlow() {
+		return left_flow;
+	}
+
+
+	/** Gets the flow of packets sent to the right peer. */
+	public PacedFlow getRightFlow() {
+		return right_flow;
+	}
+
+
+	/** Queues the packet in the paced flow of the given UdpProvider. */
+	@Override
+	protected void relay(UdpProvider udp, UdpPacket packet) {
+		PacedFlow flow=(udp==left_udp)? left_flow : right_flow;
+		if (flow!=null) flow.send(packet);
+	}
+
+
+	/** Stops the SymmetricUdpRelay and discards all queued packets. */
+	@Override
+	public void halt() {
+		super.halt();
+		if (left_flow!=null) left_flow.close();
+		if (right_flow!=null) right_flow.close();
+	}
+
 }
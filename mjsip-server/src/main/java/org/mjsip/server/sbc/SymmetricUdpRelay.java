@@ -226,7 +226,7 @@ public class SymmetricUdpRelay implements UdpProviderListener {
 			packet.setIpAddress(dest_soaddr.getAddress());
 			packet.setPort(dest_soaddr.getPort());
 			try {
-				udp.send(packet);
+				relay(udp,packet);
 			}
 			catch (java.io.IOException e) {
 				// noop
@@ -235,6 +235,12 @@ public class SymmetricUdpRelay implements UdpProviderListener {
 	}
 
 
+	/** Sends a packet received on one side through the UdpProvider of the other side. */
+	protected void relay(UdpProvider udp, UdpPacket packet) throws java.io.IOException {
+		udp.send(packet);
+	}
+
+
 	/** When UdpProvider stops receiving UDP datagrams. */
 	@Override
 	public void onServiceTerminated(UdpProvider udp_service, Exception error) {
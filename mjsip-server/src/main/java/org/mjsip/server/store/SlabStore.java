@@ -0,0 +1,635 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * Key-value store keeping its records and its index outside of the Java heap.
+ *
+ * <p>
+ * Records are stored in fixed-size slots allocated from slabs. Each slab serves a single slot size
+ * (64 bytes to 64 KiB in powers of two), so that the space of a removed record can be reused
+ * without fragmentation. With a file name, slabs are memory-mapped from that file, otherwise they
+ * are allocated as direct buffers. Keys are located through an open-addressing hash index in a
+ * direct buffer, which only stores the key hash and the record address. The heap footprint of the
+ * store is therefore independent of the number of records.
+ * </p>
+ *
+ * <p>
+ * File layout:
+ * </p>
+ *
+ * <pre>
+ * file   := header slab*                          (header is 64 bytes)
+ * header := "MJSS" version slab_size
+ * slab   := "SLAB" size_class padding slot*       (slab header is 64 bytes)
+ * slot   := state length sequence crc payload     (state "REC1" if used, 0 if free)
+ * payload:= key_length key value                  (key_length is 2 bytes, key is UTF-8)
+ * </pre>
+ *
+ * <p>
+ * An update writes the new record into a fresh slot and only then releases the slot of the previous
+ * version. The CRC covers sequence number and payload. When a store is opened, all slots are
+ * scanned, and the index is rebuilt from the valid records. If a crash left two versions of the
+ * same key, the one with the higher sequence number wins; torn records fail the CRC check and are
+ * discarded. {@link #sync()} forces modified slabs to disk.
+ * </p>
+ *
+ * <p>
+ * All operations are synchronized on the store.
+ * </p>
+ */
+public final class SlabStore implements Closeable {
+
+	/** Default size of a slab in bytes. */
+	public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+	static final int MAGIC = 0x4D4A5353; // "MJSS"
+
+	static final int VERSION = 1;
+
+	static final int FILE_HEADER = 64;
+
+	static final int SLAB_MAGIC = 0x534C4142; // "SLAB"
+
+	static final int SLAB_HEADER = 64;
+
+	static final int USED = 0x52454331; // "REC1"
+
+	static final int FREE = 0;
+
+	/** Record header: state, length, sequence, crc. */
+	static final int RECORD_HEADER = 20;
+
+	static final int MIN_SLOT = 64;
+
+	static final int SIZE_CLASSES = 11;
+
+	static final int MAX_SLOT = MIN_SLOT << (SIZE_CLASSES - 1);
+
+	/** Maximum size in bytes of key and value of a single record. */
+	public static final int MAX_RECORD_SIZE = MAX_SLOT - RECORD_HEADER - 2;
+
+	private static final long NONE = -1;
+
+	/** Bytes per index entry: key hash, record address. */
+	private static final int ENTRY = 16;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/** Maximum index capacity, such that index positions fit into an int buffer offset. */
+	private static final int MAX_CAPACITY = 1 << 26;
+
+	private final String _fileName;
+
+	private final FileChannel _channel;
+
+	private final int _slabSize;
+
+	private final List<ByteBuffer> _slabs = new ArrayList<>();
+
+	/** Slabs without valid header found during recovery, reused before the file is extended. */
+	private final ArrayDeque<Integer> _spare = new ArrayDeque<>();
+
+	private final BitSet _dirty = new BitSet();
+
+	/** Head of the free slot list for each size class. */
+	private final long[] _free = new long[SIZE_CLASSES];
+
+	private final CRC32 _crc = new CRC32();
+
+	private ByteBuffer _index;
+
+	private int _mask;
+
+	private int _size;
+
+	private long _sequence;
+
+	/**
+	 * Creates a {@link SlabStore} with default slab size.
+	 *
+	 * @see #SlabStore(String, int)
+	 */
+	public SlabStore(String fileName) throws IOException {
+		this(fileName, DEFAULT_SLAB_SIZE);
+	}
+
+	/**
+	 * Creates a {@link SlabStore}.
+	 *
+	 * @param fileName
+	 *        The file to map slabs from, <code>null</code> for a store that only lives in memory.
+	 *        An existing file is recovered.
+	 * @param slabSize
+	 *        The size of newly allocated slabs, ignored when opening an existing file.
+	 */
+	public SlabStore(String fileName, int slabSize) throws IOException {
+		if (slabSize < SLAB_HEADER + MAX_SLOT) {
+			throw new IllegalArgumentException("Slab size must be at least " + (SLAB_HEADER + MAX_SLOT) + ".");
+		}
+		Arrays.fill(_free, NONE);
+		initIndex(INITIAL_CAPACITY);
+		_fileName = fileName;
+		if (fileName == null) {
+			_channel = null;
+			_slabSize = slabSize;
+			return;
+		}
+
+		_channel = FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+			long length = _channel.size();
+			if (length == 0) {
+				header.putInt(MAGIC).putInt(VERSION).putInt(slabSize).clear();
+				_channel.write(header, 0);
+				_channel.force(true);
+				_slabSize = slabSize;
+			} else {
+				_channel.read(header, 0);
+				if (length < FILE_HEADER || header.getInt(0) != MAGIC) {
+					throw new IOException("Not a slab store: " + fileName);
+				}
+				if (header.getInt(4) != VERSION) {
+					throw new IOException("Unsupported slab store version " + header.getInt(4) + ": " + fileName);
+				}
+				_slabSize = header.getInt(8);
+				if (_slabSize < SLAB_HEADER + MAX_SLOT) {
+					throw new IOException("Invalid slab size " + _slabSize + ": " + fileName);
+				}
+				recover((length - FILE_HEADER) / _slabSize);
+			}
+		} catch (IOException | RuntimeException ex) {
+			_channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * The file backing this store, <code>null</code> if it only lives in memory.
+	 */
+	public String getFileName() {
+		return _fileName;
+	}
+
+	/**
+	 * The number of records in this store.
+	 */
+	public synchronized int size() {
+		return _size;
+	}
+
+	/**
+	 * Whether a record with the given key exists.
+	 */
+	public synchronized boolean contains(String key) {
+		return find(key.getBytes(StandardCharsets.UTF_8)) >= 0;
+	}
+
+	/**
+	 * The value stored for the given key, <code>null</code> if there is no such record.
+	 */
+	public synchronized byte[] get(String key) {
+		int pos = find(key.getBytes(StandardCharsets.UTF_8));
+		if (pos < 0) {
+			return null;
+		}
+		long address = _index.getLong(pos * ENTRY + 8);
+		ByteBuffer slab = slab(address);
+		int offset = offset(address);
+		int length = slab.getInt(offset + 4);
+		int keyLength = slab.getShort(offset + RECORD_HEADER) & 0xFFFF;
+		byte[] result = new byte[length - 2 - keyLength];
+		slab.duplicate().position(offset + RECORD_HEADER + 2 + keyLength).get(result);
+		return result;
+	}
+
+	/**
+	 * Stores a record, replacing a previous value for the same key.
+	 *
+	 * @throws IllegalArgumentException
+	 *         If key and value exceed {@link #MAX_RECORD_SIZE}.
+	 */
+	public synchronized void put(String key, byte[] value) throws IOException {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int length = 2 + keyBytes.length + value.length;
+		if (length - 2 > MAX_RECORD_SIZE) {
+			throw new IllegalArgumentException("Record for '" + key + "' exceeds " + MAX_RECORD_SIZE + " bytes.");
+		}
+		long address = allocate(sizeClass(RECORD_HEADER + length));
+		write(address, keyBytes, value);
+
+		int pos = find(keyBytes);
+		if (pos >= 0) {
+			long previous = _index.getLong(pos * ENTRY + 8);
+			_index.putLong(pos * ENTRY + 8, address);
+			release(previous);
+		} else {
+			insert(~pos, hash(keyBytes), address);
+		}
+	}
+
+	/**
+	 * Removes the record with the given key.
+	 *
+	 * @return Whether there was such record.
+	 */
+	public synchronized boolean remove(String key) {
+		int pos = find(key.getBytes(StandardCharsets.UTF_8));
+		if (pos < 0) {
+			return false;
+		}
+		long address = _index.getLong(pos * ENTRY + 8);
+		delete(pos);
+		release(address);
+		return true;
+	}
+
+	/**
+	 * Removes all records.
+	 */
+	public synchronized void clear() {
+		for (int pos = 0, capacity = _mask + 1; pos < capacity; pos++) {
+			if (_index.getLong(pos * ENTRY) != 0) {
+				release(_index.getLong(pos * ENTRY + 8));
+			}
+		}
+		initIndex(INITIAL_CAPACITY);
+		_size = 0;
+	}
+
+	/**
+	 * Enumerates the keys of all records.
+	 *
+	 * <p>
+	 * Keys are read lazily. If the store is modified during the enumeration, keys may be missed or
+	 * reported twice.
+	 * </p>
+	 */
+	public Enumeration<String> keys() {
+		return new Enumeration<>() {
+			private int _pos;
+
+			private String _next = advance();
+
+			private String advance() {
+				synchronized (SlabStore.this) {
+					while (_pos <= _mask) {
+						int pos = _pos++;
+						if (_index.getLong(pos * ENTRY) != 0) {
+							return key(_index.getLong(pos * ENTRY + 8));
+						}
+					}
+					return null;
+				}
+			}
+
+			@Override
+			public boolean hasMoreElements() {
+				return _next != null;
+			}
+
+			@Override
+			public String nextElement() {
+				if (_next == null) {
+					throw new NoSuchElementException();
+				}
+				String result = _next;
+				_next = advance();
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Forces all modifications to disk.
+	 */
+	public synchronized void sync() {
+		if (_channel == null) {
+			return;
+		}
+		for (int n = _dirty.nextSetBit(0); n >= 0; n = _dirty.nextSetBit(n + 1)) {
+			((MappedByteBuffer) _slabs.get(n)).force();
+		}
+		_dirty.clear();
+	}
+
+	/**
+	 * Syncs and closes the backing file, the store must no longer be used afterwards.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		sync();
+		if (_channel != null) {
+			_channel.close();
+		}
+		_slabs.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "SlabStore(" + (_fileName == null ? "memory" : _fileName) + ", size=" + size() + ")";
+	}
+
+	// Recovery.
+
+	private void recover(long slabCount) throws IOException {
+		for (int n = 0; n < slabCount; n++) {
+			ByteBuffer slab = map(n);
+			_slabs.add(slab);
+			int sizeClass = slab.getInt(4);
+			if (slab.getInt(0) != SLAB_MAGIC || sizeClass < 0 || sizeClass >= SIZE_CLASSES) {
+				_spare.add(Integer.valueOf(n));
+				continue;
+			}
+			int slotSize = MIN_SLOT << sizeClass;
+			for (int offset = slotsEnd(slotSize) - slotSize; offset >= SLAB_HEADER; offset -= slotSize) {
+				long address = address(n, offset);
+				if (isValid(slab, offset, slotSize)) {
+					_sequence = Math.max(_sequence, slab.getLong(offset + 8));
+					recoverRecord(address);
+				} else {
+					release(address);
+				}
+			}
+		}
+	}
+
+	private void recoverRecord(long address) {
+		byte[] key = key(address).getBytes(StandardCharsets.UTF_8);
+		int pos = find(key);
+		if (pos < 0) {
+			insert(~pos, hash(key), address);
+			return;
+		}
+		long other = _index.getLong(pos * ENTRY + 8);
+		if (sequence(other) < sequence(address)) {
+			_index.putLong(pos * ENTRY + 8, address);
+			release(other);
+		} else {
+			release(address);
+		}
+	}
+
+	private boolean isValid(ByteBuffer slab, int offset, int slotSize) {
+		if (slab.getInt(offset) != USED) {
+			return false;
+		}
+		int length = slab.getInt(offset + 4);
+		if (length < 2 || length > slotSize - RECORD_HEADER) {
+			return false;
+		}
+		int keyLength = slab.getShort(offset + RECORD_HEADER) & 0xFFFF;
+		if (keyLength > length - 2) {
+			return false;
+		}
+		return slab.getInt(offset + 16) == crc(slab, offset, length);
+	}
+
+	// Record access.
+
+	private void write(long address, byte[] key, byte[] value) {
+		ByteBuffer slab = slab(address);
+		int offset = offset(address);
+		int length = 2 + key.length + value.length;
+		slab.putInt(offset + 4, length);
+		slab.putLong(offset + 8, ++_sequence);
+		slab.putShort(offset + RECORD_HEADER, (short) key.length);
+		ByteBuffer out = slab.duplicate();
+		out.position(offset + RECORD_HEADER + 2);
+		out.put(key).put(value);
+		slab.putInt(offset + 16, crc(slab, offset, length));
+		// Publish the record only after it has been completely written.
+		slab.putInt(offset, USED);
+		_dirty.set(slabIndex(address));
+	}
+
+	private int crc(ByteBuffer slab, int offset, int length) {
+		CRC32 crc = _crc;
+		crc.reset();
+		ByteBuffer in = slab.duplicate();
+		in.limit(offset + 16).position(offset + 8);
+		crc.update(in);
+		in.limit(offset + RECORD_HEADER + length).position(offset + RECORD_HEADER);
+		crc.update(in);
+		return (int) crc.getValue();
+	}
+
+	private String key(long address) {
+		ByteBuffer slab = slab(address);
+		int offset = offset(address);
+		byte[] key = new byte[slab.getShort(offset + RECORD_HEADER) & 0xFFFF];
+		slab.duplicate().position(offset + RECORD_HEADER + 2).get(key);
+		return new String(key, StandardCharsets.UTF_8);
+	}
+
+	private boolean hasKey(long address, byte[] key) {
+		ByteBuffer slab = slab(address);
+		int offset = offset(address) + RECORD_HEADER;
+		if ((slab.getShort(offset) & 0xFFFF) != key.length) {
+			return false;
+		}
+		offset += 2;
+		for (int n = 0; n < key.length; n++) {
+			if (slab.get(offset + n) != key[n]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long sequence(long address) {
+		return slab(address).getLong(offset(address) + 8);
+	}
+
+	// Slot allocation.
+
+	private long allocate(int sizeClass) throws IOException {
+		if (_free[sizeClass] == NONE) {
+			addSlab(sizeClass);
+		}
+		long address = _free[sizeClass];
+		_free[sizeClass] = slab(address).getLong(offset(address) + 8);
+		return address;
+	}
+
+	private void release(long address) {
+		ByteBuffer slab = slab(address);
+		int offset = offset(address);
+		int sizeClass = slab.getInt(4);
+		slab.putInt(offset, FREE);
+		slab.putLong(offset + 8, _free[sizeClass]);
+		_free[sizeClass] = address;
+		_dirty.set(slabIndex(address));
+	}
+
+	private void addSlab(int sizeClass) throws IOException {
+		int n;
+		ByteBuffer slab;
+		if (_spare.isEmpty()) {
+			n = _slabs.size();
+			slab = _channel == null ? ByteBuffer.allocateDirect(_slabSize) : map(n);
+			_slabs.add(slab);
+		} else {
+			n = _spare.poll().intValue();
+			slab = _slabs.get(n);
+		}
+		slab.putInt(4, sizeClass);
+		slab.putInt(0, SLAB_MAGIC);
+
+		int slotSize = MIN_SLOT << sizeClass;
+		for (int offset = slotsEnd(slotSize) - slotSize; offset >= SLAB_HEADER; offset -= slotSize) {
+			release(address(n, offset));
+		}
+	}
+
+	private ByteBuffer map(int n) throws IOException {
+		return _channel.map(MapMode.READ_WRITE, FILE_HEADER + (long) n * _slabSize, _slabSize);
+	}
+
+	private int slotsEnd(int slotSize) {
+		return SLAB_HEADER + (_slabSize - SLAB_HEADER) / slotSize * slotSize;
+	}
+
+	private static int sizeClass(int size) {
+		int result = 0;
+		while ((MIN_SLOT << result) < size) {
+			result++;
+		}
+		return result;
+	}
+
+	private ByteBuffer slab(long address) {
+		return _slabs.get(slabIndex(address));
+	}
+
+	private static int slabIndex(long address) {
+		return (int) (address >>> 32);
+	}
+
+	private static int offset(long address) {
+		return (int) address;
+	}
+
+	private static long address(int slab, int offset) {
+		return ((long) slab << 32) | offset;
+	}
+
+	// Index.
+
+	private void initIndex(int capacity) {
+		_index = ByteBuffer.allocateDirect(capacity * ENTRY);
+		_mask = capacity - 1;
+	}
+
+	/**
+	 * The index position of the given key, or the complement of the position where it would be
+	 * inserted.
+	 */
+	private int find(byte[] key) {
+		long hash = hash(key);
+		for (int pos = home(hash);; pos = (pos + 1) & _mask) {
+			long entry = _index.getLong(pos * ENTRY);
+			if (entry == 0) {
+				return ~pos;
+			}
+			if (entry == hash && hasKey(_index.getLong(pos * ENTRY + 8), key)) {
+				return pos;
+			}
+		}
+	}
+
+	private void insert(int pos, long hash, long address) {
+		_index.putLong(pos * ENTRY, hash);
+		_index.putLong(pos * ENTRY + 8, address);
+		if (++_size * 2 > _mask + 1) {
+			resize();
+		}
+	}
+
+	private void resize() {
+		int capacity = _mask + 1;
+		if (capacity >= MAX_CAPACITY) {
+			throw new IllegalStateException("Slab store index is full.");
+		}
+		ByteBuffer old = _index;
+		initIndex(capacity * 2);
+		for (int pos = 0; pos < capacity; pos++) {
+			long hash = old.getLong(pos * ENTRY);
+			if (hash != 0) {
+				int target = home(hash);
+				while (_index.getLong(target * ENTRY) != 0) {
+					target = (target + 1) & _mask;
+				}
+				_index.putLong(target * ENTRY, hash);
+				_index.putLong(target * ENTRY + 8, old.getLong(pos * ENTRY + 8));
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry at the given position, and moves following entries of the same probe
+	 * sequence back, so that no tombstones are required.
+	 */
+	private void delete(int pos) {
+		int hole = pos;
+		for (int next = (hole + 1) & _mask;; next = (next + 1) & _mask) {
+			long hash = _index.getLong(next * ENTRY);
+			if (hash == 0) {
+				break;
+			}
+			int home = home(hash);
+			boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+			if (movable) {
+				_index.putLong(hole * ENTRY, hash);
+				_index.putLong(hole * ENTRY + 8, _index.getLong(next * ENTRY + 8));
+				hole = next;
+			}
+		}
+		_index.putLong(hole * ENTRY, 0);
+		_index.putLong(hole * ENTRY + 8, 0);
+		_size--;
+	}
+
+	private int home(long hash) {
+		return (int) (hash ^ (hash >>> 32)) & _mask;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash with final avalanche mixing, never 0.
+	 */
+	static long hash(byte[] key) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key) {
+			h ^= b & 0xFF;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h == 0 ? 1 : h;
+	}
+
+}
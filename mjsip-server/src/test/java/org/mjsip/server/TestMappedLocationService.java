@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.sip.address.NameAddress;
+
+/**
+ * Test for {@link MappedLocationService}.
+ */
+@SuppressWarnings("javadoc")
+class TestMappedLocationService {
+
+	private static final String CONTACT = "sip:alice@127.0.0.1:5070;transport=tcp";
+
+	@TempDir
+	Path _dir;
+
+	@Test
+	void testRefreshReplacesExpiration() throws Exception {
+		MappedLocationService service = new MappedLocationService(null);
+		long now = System.currentTimeMillis() / 1000 * 1000;
+		service.addUserContact("alice", NameAddress.parse("<" + CONTACT + ">"), new Date(now + 60000));
+		service.addUserContact("alice", NameAddress.parse("<" + CONTACT + ">"), new Date(now + 3600000));
+
+		Assertions.assertEquals(List.of(CONTACT), Collections.list(service.getUserContactURIs("alice")));
+		Assertions.assertEquals(now + 3600000, service.getUserContactExpirationDate("alice", CONTACT).getTime());
+
+		// Also a shorter expiration replaces the previous one.
+		service.addUserContact("alice", NameAddress.parse("<" + CONTACT + ">"), new Date(now));
+		Assertions.assertTrue(service.isUserContactExpired("alice", CONTACT));
+	}
+
+	@Test
+	void testDisplayName() throws Exception {
+		String file = _dir.resolve("location.db").toString();
+		MappedLocationService service = new MappedLocationService(file);
+		service.addUserStaticContact("alice", new NameAddress("Alice \"A.\" <Smith>", NameAddress.parse(CONTACT).getAddress()));
+		service.addUserStaticContact("bob", NameAddress.parse("<sip:bob@127.0.0.1>"));
+		service.sync();
+
+		MappedLocationService reopened = new MappedLocationService(file);
+		NameAddress alice = reopened.getUserContactNameAddress("alice", CONTACT);
+		Assertions.assertEquals("Alice \"A.\" <Smith>", alice.getDisplayName());
+		Assertions.assertEquals(CONTACT, alice.getAddress().toString());
+		Assertions.assertTrue(reopened.isUserContactStatic("alice", CONTACT));
+
+		NameAddress bob = reopened.getUserContactNameAddress("bob", "sip:bob@127.0.0.1");
+		Assertions.assertNull(bob.getDisplayName());
+		Assertions.assertEquals("sip:bob@127.0.0.1", bob.getAddress().toString());
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.header.ViaHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.test.Loopback;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+
+/**
+ * Test for {@link Proxy#forwardStateless(SipMessage, SipURI)}.
+ */
+@SuppressWarnings("javadoc")
+class TestProxyFastPath {
+
+	private static final String BODY = "v=0\r\n";
+
+	@TempDir
+	Path _dir;
+
+	private ConfiguredScheduler _scheduler;
+
+	private SipProvider _provider;
+
+	private Proxy _proxy;
+
+	private DatagramSocket _peer;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		ServerProfile profile = new ServerProfile();
+		profile.statelessFastPath = true;
+		profile.locationDb = _dir.resolve("users.db").toString();
+		profile.normalize();
+
+		_scheduler = new ConfiguredScheduler(new SchedulerConfig());
+		_provider = new SipProvider(Loopback.config(), _scheduler);
+		_proxy = new Proxy(_provider, profile);
+		_peer = new DatagramSocket(0);
+		_peer.setSoTimeout(5000);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_peer.close();
+		_provider.halt();
+		_scheduler.scheduler().shutdownNow();
+	}
+
+	@Test
+	void testFullVia() throws Exception {
+		checkForwarded(false);
+		checkForwarded(true);
+	}
+
+	@Test
+	void testCompactVia() throws Exception {
+		// The parsed message only knows header names in full form, the request is left to the
+		// regular path.
+		byte[] data = request("v");
+		SipMessage msg = new SipMessage(data, 0, data.length);
+		msg.keepReceivedBytes(data, 0);
+		Assertions.assertNull(msg.getViaHeader());
+		String received = msg.toString();
+		Assertions.assertFalse(_proxy.forwardStateless(msg, target()));
+		Assertions.assertEquals(received, msg.toString());
+	}
+
+	private void checkForwarded(boolean natted) throws Exception {
+		byte[] data = request("Via");
+
+		SipMessage msg = new SipMessage(data, 0, data.length);
+		Assertions.assertFalse(_proxy.forwardStateless(msg, target()), "Received bytes not kept.");
+
+		msg.keepReceivedBytes(data, 0);
+
+		if (natted) {
+			// As updated by the provider on reception from a NAT.
+			ViaHeader via = msg.getViaHeader();
+			via.setReceived("192.0.2.1");
+			via.setRport(6000);
+			msg.removeViaHeader();
+			msg.addViaHeader(via);
+		}
+
+		Assertions.assertTrue(_proxy.forwardStateless(msg, target()));
+
+		SipMessage forwarded = new SipMessage(receive());
+
+		Assertions.assertEquals(target().toString(), forwarded.getRequestLine().getAddress().toString());
+		Assertions.assertEquals(2, forwarded.getVias().size());
+
+		ViaHeader top = forwarded.getViaHeader();
+		Assertions.assertEquals(Loopback.ADDRESS, top.getHost());
+		Assertions.assertEquals(_provider.getPort(), top.getPort());
+
+		forwarded.removeViaHeader();
+		ViaHeader client = forwarded.getViaHeader();
+		Assertions.assertEquals("10.0.0.1", client.getHost());
+		if (natted) {
+			Assertions.assertEquals("192.0.2.1", client.getReceived());
+			Assertions.assertEquals(6000, client.getRport());
+		} else {
+			Assertions.assertFalse(client.hasReceived());
+		}
+		Assertions.assertEquals("z9hG4bKclient", client.getBranch());
+
+		Assertions.assertEquals(69, forwarded.getMaxForwardsHeader().getNumber());
+		Assertions.assertEquals("fast@10.0.0.1", forwarded.getCallIdHeader().getCallId());
+		Assertions.assertEquals(BODY, forwarded.getStringBody());
+	}
+
+	private static byte[] request(String viaName) {
+		return ("INVITE sip:bob@example.com SIP/2.0\r\n"
+				+ viaName + ": SIP/2.0/UDP 10.0.0.1:5060;rport;branch=z9hG4bKclient\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:alice@example.com>;tag=1\r\n"
+				+ "To: <sip:bob@example.com>\r\n"
+				+ "Call-ID: fast@10.0.0.1\r\n"
+				+ "CSeq: 1 INVITE\r\n"
+				+ "Content-Type: application/sdp\r\n"
+				+ "Content-Length: " + BODY.length() + "\r\n"
+				+ "\r\n"
+				+ BODY).getBytes();
+	}
+
+	private String receive() throws Exception {
+		byte[] buf = new byte[4096];
+		DatagramPacket packet = new DatagramPacket(buf, buf.length);
+		_peer.receive(packet);
+		return new String(packet.getData(), 0, packet.getLength());
+	}
+
+	private SipURI target() {
+		return new SipURI("bob", Loopback.ADDRESS, _peer.getLocalPort());
+	}
+
+}
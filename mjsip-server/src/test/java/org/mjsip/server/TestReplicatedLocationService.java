@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.test.Loopback;
+
+/**
+ * Test for {@link ReplicatedLocationService} with several nodes on the loopback interface.
+ */
+@SuppressWarnings("javadoc")
+class TestReplicatedLocationService {
+
+	/** Anti-entropy interval for tests that must be served by pushes alone. */
+	private static final long NO_GOSSIP = 60000;
+
+	private final List<ReplicatedLocationService> _nodes = new ArrayList<>();
+
+	private final List<LossyLink> _links = new ArrayList<>();
+
+	@AfterEach
+	void tearDown() {
+		_nodes.forEach(ReplicatedLocationService::halt);
+		_links.forEach(LossyLink::close);
+	}
+
+	@Test
+	void testPush() throws Exception {
+		InetSocketAddress a = address();
+		InetSocketAddress b = address();
+		InetSocketAddress c = address();
+		ReplicatedLocationService nodeA = node("a", a, List.of(b, c), NO_GOSSIP);
+		ReplicatedLocationService nodeB = node("b", b, List.of(a, c), NO_GOSSIP);
+		ReplicatedLocationService nodeC = node("c", c, List.of(a, b), NO_GOSSIP);
+
+		String uri = contact("alice", 5070).getAddress().toString();
+		nodeA.addUserContact("alice", contact("alice", 5070), expires(3600));
+		for (ReplicatedLocationService node : List.of(nodeB, nodeC)) {
+			await(() -> node.hasUserContact("alice", uri));
+			NameAddress found = node.getUserContactNameAddress("alice", uri);
+			Assertions.assertEquals("Alice \"A.\" <Smith>", found.getDisplayName());
+			Assertions.assertEquals(uri, found.getAddress().toString());
+			Assertions.assertFalse(node.isUserContactExpired("alice", uri));
+		}
+
+		// A refresh on another node replaces the expiration time everywhere.
+		Date refreshed = expires(7200);
+		nodeB.addUserContact("alice", contact("alice", 5070), refreshed);
+		for (ReplicatedLocationService node : List.of(nodeA, nodeC)) {
+			await(() -> node.getUserContactExpirationDate("alice", uri).equals(refreshed));
+		}
+
+		nodeC.removeUserContact("alice", uri);
+		for (ReplicatedLocationService node : List.of(nodeA, nodeB)) {
+			await(() -> !node.hasUserContact("alice", uri));
+		}
+	}
+
+	@Test
+	void testAntiEntropyRepairsLostPush() throws Exception {
+		InetSocketAddress a = address();
+		InetSocketAddress b = address();
+		LossyLink link = new LossyLink(a, b);
+		_links.add(link);
+		ReplicatedLocationService nodeA = node("a", a, List.of(link.getSideA()), 100);
+		ReplicatedLocationService nodeB = node("b", b, List.of(link.getSideB()), 100);
+
+		String uri = contact("bob", 5080).getAddress().toString();
+		link.setLossy(true);
+		nodeA.addUserContact("bob", contact("bob", 5080), expires(3600));
+		Thread.sleep(500);
+		Assertions.assertFalse(nodeB.hasUserContact("bob", uri));
+		Assertions.assertTrue(link.getDropped() >= 2, "Pushes must have been lost.");
+
+		// No further push, the next digest of node B is answered with the missing versions.
+		link.setLossy(false);
+		await(() -> nodeB.hasUserContact("bob", uri));
+	}
+
+	@Test
+	void testLateJoinerCatchesUp() throws Exception {
+		InetSocketAddress a = address();
+		InetSocketAddress c = address();
+		ReplicatedLocationService nodeA = node("a", a, List.of(c), NO_GOSSIP);
+
+		// More than fits into a single delta.
+		int count = 1000;
+		for (int n = 0; n < count; n++) {
+			nodeA.addUserContact("user" + n, contact("user" + n, 5000 + n), expires(3600));
+		}
+
+		// The joining node asks once at start, and then as long as the answer is incomplete.
+		ReplicatedLocationService nodeC = node("c", c, List.of(a), NO_GOSSIP);
+		await(() -> nodeC.size() == count);
+		for (int n = 0; n < count; n++) {
+			Assertions.assertTrue(nodeC.hasUserContact("user" + n, contact("user" + n, 5000 + n).getAddress().toString()));
+		}
+	}
+
+	private ReplicatedLocationService node(String name, InetSocketAddress address, List<InetSocketAddress> peers,
+			long interval) throws IOException {
+		ReplicatedLocationService result = new ReplicatedLocationService(name, address, peers, interval);
+		_nodes.add(result);
+		return result;
+	}
+
+	private static InetSocketAddress address() {
+		return new InetSocketAddress(Loopback.ADDRESS, Loopback.freePort());
+	}
+
+	private static NameAddress contact(String user, int port) {
+		return new NameAddress(user.equals("alice") ? "Alice \"A.\" <Smith>" : null,
+			new SipURI(user, Loopback.ADDRESS, port));
+	}
+
+	private static Date expires(int seconds) {
+		return new Date(System.currentTimeMillis() / 1000 * 1000 + seconds * 1000L);
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			Assertions.assertTrue(System.nanoTime() < deadline, "Timeout waiting for replication.");
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * UDP relay between two nodes that can drop the deltas sent from node A to node B.
+	 */
+	private static final class LossyLink {
+
+		/** Message type of a delta, see GossipService. */
+		private static final int DELTA = 2;
+
+		private final DatagramSocket _sideA;
+
+		private final DatagramSocket _sideB;
+
+		private final AtomicInteger _dropped = new AtomicInteger();
+
+		private volatile boolean _lossy;
+
+		LossyLink(InetSocketAddress a, InetSocketAddress b) throws IOException {
+			_sideA = new DatagramSocket(new InetSocketAddress(Loopback.ADDRESS, 0));
+			_sideB = new DatagramSocket(new InetSocketAddress(Loopback.ADDRESS, 0));
+			start(_sideA, _sideB, b, true);
+			start(_sideB, _sideA, a, false);
+		}
+
+		/** The address of node B as seen by node A. */
+		InetSocketAddress getSideA() {
+			return (InetSocketAddress) _sideA.getLocalSocketAddress();
+		}
+
+		/** The address of node A as seen by node B. */
+		InetSocketAddress getSideB() {
+			return (InetSocketAddress) _sideB.getLocalSocketAddress();
+		}
+
+		/** Whether to drop deltas (pushes and answers to digests) from node A. */
+		void setLossy(boolean lossy) {
+			_lossy = lossy;
+		}
+
+		int getDropped() {
+			return _dropped.get();
+		}
+
+		void close() {
+			_sideA.close();
+			_sideB.close();
+		}
+
+		private void start(DatagramSocket in, DatagramSocket out, InetSocketAddress target, boolean lossy) {
+			Thread thread = new Thread(() -> {
+				byte[] buffer = new byte[65535];
+				DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				try {
+					while (true) {
+						packet.setLength(buffer.length);
+						in.receive(packet);
+						if (lossy && _lossy && buffer[5] == DELTA) {
+							_dropped.incrementAndGet();
+							continue;
+						}
+						out.send(new DatagramPacket(buffer, packet.getLength(), target));
+					}
+				} catch (IOException ex) {
+					// Closed.
+				}
+			}, "LossyLink-" + in.getLocalPort());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+}
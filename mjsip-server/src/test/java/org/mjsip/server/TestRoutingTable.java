@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.address.SipURI;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link RoutingTable}.
+ */
+@SuppressWarnings("javadoc")
+class TestRoutingTable {
+
+	@Test
+	void testLongestPrefix() {
+		RoutingTable table = new RoutingTable();
+		table.addRule(RoutingTable.KIND_PREFIX, "00", new SocketAddress("127.0.0.1:7000"));
+		table.addRule(RoutingTable.KIND_PREFIX, "0049", new SocketAddress("127.0.0.1:7049"));
+		table.addRule(RoutingTable.KIND_PREFIX, "004930", new SocketAddress("127.0.0.1:7030"));
+		table.addRule(RoutingTable.KIND_PREFIX, "*", new SocketAddress("127.0.0.1:7999"));
+
+		Assertions.assertEquals(7030, port(table, "00493012345"));
+		Assertions.assertEquals(7049, port(table, "0049891234"));
+		Assertions.assertEquals(7000, port(table, "0033123"));
+		Assertions.assertEquals(7999, port(table, "0123"));
+
+		// A prefix that is longer than the user name does not match.
+		Assertions.assertEquals(7049, port(table, "00493"));
+
+		SipURI target = table.getPrefixTarget(uri("004930555"), false);
+		Assertions.assertEquals("004930555", target.getUserName());
+		Assertions.assertEquals("127.0.0.1", target.getHost());
+
+		RoutingTable.Route route = table.findPrefixRoute(uri("004930555"), false);
+		Assertions.assertEquals("004930", route.getKey());
+		Assertions.assertEquals(RoutingTable.KIND_PREFIX, route.getKind());
+	}
+
+	@Test
+	void testTieBreak() {
+		RoutingTable table = new RoutingTable();
+		table.addRule(RoutingTable.KIND_PREFIX, "0049", new SocketAddress("127.0.0.1:7001"));
+		table.addRule(RoutingTable.KIND_PREFIX, "0049", new SocketAddress("127.0.0.1:7002"));
+		table.addRule(RoutingTable.KIND_DOMAIN, "example.com", new SocketAddress("127.0.0.1:7003"));
+		table.addRule(RoutingTable.KIND_DOMAIN, "Example.COM", new SocketAddress("127.0.0.1:7004"));
+
+		// The first rule wins, as with the linear rule lists.
+		Assertions.assertEquals(7001, port(table, "00491"));
+		Assertions.assertEquals(7003, table.getDomainTarget(SipURI.parseSipURI("sip:alice@EXAMPLE.com"), false)
+			.getPort());
+		Assertions.assertEquals(4, table.size());
+	}
+
+	@Test
+	void testNoMatch() {
+		RoutingTable table = new RoutingTable();
+		table.addRule(RoutingTable.KIND_PREFIX, "0049", new SocketAddress("127.0.0.1:7049"));
+		table.addRule(RoutingTable.KIND_AUTH_PREFIX, "*", new SocketAddress("127.0.0.1:7999"));
+		table.addRule(RoutingTable.KIND_DOMAIN, "example.com", new SocketAddress("127.0.0.1:7003"));
+
+		long misses = table.getMisses();
+		Assertions.assertNull(table.getPrefixTarget(uri("0033123"), false));
+		Assertions.assertNull(table.getPrefixTarget(uri("004"), false));
+		Assertions.assertNull(table.getDomainTarget(SipURI.parseSipURI("sip:alice@example.org"), false));
+		Assertions.assertNull(table.getDomainTarget(SipURI.parseSipURI("sip:alice@example.com"), true));
+		Assertions.assertEquals(misses + 4, table.getMisses());
+
+		// Authenticated rules are separate from the others.
+		Assertions.assertEquals(7999, table.getPrefixTarget(uri("0033123"), true).getPort());
+
+		Assertions.assertNull(table.getPrefixTarget(SipURI.parseSipURI("sip:example.com"), false));
+		Assertions.assertThrows(IllegalArgumentException.class,
+			() -> table.addRule(RoutingTable.KIND_PREFIX, "abc", new SocketAddress("127.0.0.1:7000")));
+	}
+
+	private static int port(RoutingTable table, String number) {
+		SipURI target = table.getPrefixTarget(uri(number), false);
+		return target == null ? -1 : target.getPort();
+	}
+
+	private static SipURI uri(String number) {
+		return SipURI.parseSipURI("sip:" + number + "@example.com");
+	}
+
+}
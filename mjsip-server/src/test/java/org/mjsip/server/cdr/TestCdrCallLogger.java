@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cdr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.sip.message.SipMessage;
+
+/**
+ * Test for {@link CdrCallLogger}.
+ */
+@SuppressWarnings("javadoc")
+class TestCdrCallLogger {
+
+	@TempDir
+	Path _dir;
+
+	@Test
+	void testRotateBySize() throws Exception {
+		CdrConfig config = config();
+		config.setRotateSize(1);
+		CdrCallLogger logger = new CdrCallLogger(config);
+		for (int n = 0; n < 3; n++) {
+			call(logger, "size" + n);
+		}
+		logger.stop();
+
+		// Each record exceeds the size limit, all files are renamed after stop.
+		File[] files = files(".csv.gz");
+		Assertions.assertEquals(3, files.length);
+		Assertions.assertEquals(0, files(".tmp").length);
+		for (int n = 0; n < 3; n++) {
+			String content = read(files[n]);
+			Assertions.assertTrue(content.startsWith(CsvCdrSink.HEADER), content);
+			Assertions.assertEquals(2, content.split("\n").length, content);
+		}
+		Assertions.assertEquals(3, logger.getWrittenRecords());
+	}
+
+	@Test
+	void testFlush() throws Exception {
+		CdrConfig config = config();
+		config.setFlushInterval(10);
+		CdrCallLogger logger = new CdrCallLogger(config);
+		try {
+			call(logger, "flushed");
+
+			// The record becomes readable in the open file without rotation.
+			String content = "";
+			for (int n = 0; n < 500 && !content.contains("flushed@"); n++) {
+				Thread.sleep(10);
+				File[] open = files(".tmp");
+				if (open.length == 1) {
+					content = read(open[0]);
+				}
+			}
+			Assertions.assertTrue(content.contains("flushed@"), content);
+			Assertions.assertEquals(0, files(".csv.gz").length);
+		} finally {
+			logger.stop();
+		}
+		Assertions.assertEquals(1, files(".csv.gz").length);
+		Assertions.assertEquals(0, files(".tmp").length);
+	}
+
+	@Test
+	void testRotateByAge() throws Exception {
+		CdrConfig config = config();
+		config.setFlushInterval(10);
+		config.setRotateInterval(0);
+		CdrCallLogger logger = new CdrCallLogger(config);
+		try {
+			call(logger, "aged");
+
+			// The file is renamed by the periodic flush, not only on stop.
+			for (int n = 0; n < 500 && files(".csv.gz").length == 0; n++) {
+				Thread.sleep(10);
+			}
+			File[] files = files(".csv.gz");
+			Assertions.assertEquals(1, files.length);
+			Assertions.assertTrue(read(files[0]).contains("aged@"));
+		} finally {
+			logger.stop();
+		}
+	}
+
+	@Test
+	void testStopWritesOpenCalls() throws Exception {
+		CdrCallLogger logger = new CdrCallLogger(config());
+		logger.update(invite("open"));
+		logger.stop();
+		logger.stop();
+
+		File[] files = files(".csv.gz");
+		Assertions.assertEquals(1, files.length);
+		String[] lines = read(files[0]).split("\n");
+		Assertions.assertEquals(2, lines.length);
+		Assertions.assertTrue(lines[1].startsWith("open@"), lines[1]);
+		Assertions.assertTrue(lines[1].contains("," + CdrRecord.INCOMPLETE + ","), lines[1]);
+	}
+
+	private CdrConfig config() {
+		CdrConfig config = new CdrConfig();
+		config.setDirectory(_dir.toFile());
+		config.setQueueSize(64);
+		return config;
+	}
+
+	private File[] files(String suffix) {
+		File[] result = _dir.toFile().listFiles((dir, name) -> name.endsWith(suffix));
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Reads all data decompressed so far, also from a file that is still being written.
+	 */
+	private static String read(File file) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+			byte[] chunk = new byte[1024];
+			int len;
+			while ((len = in.read(chunk)) >= 0) {
+				buffer.write(chunk, 0, len);
+			}
+		} catch (EOFException ex) {
+			// Incomplete file.
+		}
+		return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void call(CdrCallLogger logger, String name) {
+		logger.update(invite(name));
+		logger.update(message("SIP/2.0 200 OK", name, "To: <sip:bob@example.com>;tag=2", "INVITE"));
+		logger.update(message("BYE sip:bob@example.com SIP/2.0", name, "To: <sip:bob@example.com>;tag=2", "BYE"));
+	}
+
+	private static SipMessage invite(String name) {
+		return message("INVITE sip:bob@example.com SIP/2.0", name, "To: <sip:bob@example.com>", "INVITE");
+	}
+
+	private static SipMessage message(String firstLine, String name, String to, String method) {
+		return new SipMessage(firstLine + "\r\n"
+				+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK" + name + "\r\n"
+				+ "From: <sip:alice@example.com>;tag=1\r\n"
+				+ to + "\r\n"
+				+ "Call-ID: " + name + "@127.0.0.1\r\n"
+				+ "CSeq: 1 " + method + "\r\n"
+				+ "Content-Length: 0\r\n"
+				+ "\r\n");
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.cluster;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.server.cluster.BindingReplica.Binding;
+
+/**
+ * Test for {@link BindingReplica}.
+ */
+@SuppressWarnings("javadoc")
+class TestBindingReplica {
+
+	private static final long NEVER = Long.MAX_VALUE;
+
+	@Test
+	void testDeltaPaging() {
+		BindingReplica source = new BindingReplica("a");
+		source.update("alice", "sip:alice@10.0.0.1", null, NEVER, false);
+		source.update("bob", "sip:bob@10.0.0.2", null, NEVER, false);
+		source.update("alice", "sip:alice@10.0.0.3", null, NEVER, false);
+
+		BindingReplica target = new BindingReplica("b");
+
+		// First page.
+		Map<String, Long> complete = new HashMap<>();
+		List<Binding> delta = source.delta(target.getVersions(), 2, complete);
+		Assertions.assertEquals(List.of(1L, 2L), List.of(delta.get(0).getSeq(), delta.get(1).getSeq()));
+		Assertions.assertEquals(Map.of("a", 2L), complete);
+		Assertions.assertEquals(2, transfer(delta, complete, target));
+		Assertions.assertEquals(Map.of("a", 2L), target.getVersions());
+
+		// Rest.
+		complete.clear();
+		delta = source.delta(target.getVersions(), 2, complete);
+		Assertions.assertEquals(1, delta.size());
+		Assertions.assertEquals(3L, delta.get(0).getSeq());
+		Assertions.assertEquals(Map.of("a", 3L), complete);
+		Assertions.assertEquals(1, transfer(delta, complete, target));
+
+		// In sync.
+		complete.clear();
+		Assertions.assertEquals(List.of(), source.delta(target.getVersions(), 2, complete));
+		Assertions.assertEquals(Map.of(), complete);
+		Assertions.assertEquals(List.of("sip:alice@10.0.0.1", "sip:alice@10.0.0.3"),
+			target.getBindings("alice").stream().map(Binding::getUri).sorted().collect(Collectors.toList()));
+		Assertions.assertNotNull(target.get("bob", "sip:bob@10.0.0.2"));
+	}
+
+	@Test
+	void testApplyOutOfOrder() {
+		BindingReplica source = new BindingReplica("a");
+		Binding first = source.update("alice", "sip:alice@10.0.0.1", null, NEVER, false);
+		Binding second = source.update("bob", "sip:bob@10.0.0.2", null, NEVER, false);
+
+		// A push overtaking an earlier lost one is applied, but the version vector only advances
+		// without gaps.
+		BindingReplica target = new BindingReplica("b");
+		Assertions.assertTrue(target.apply(second));
+		Assertions.assertEquals(Map.of(), target.getVersions());
+		Assertions.assertNotNull(target.get("bob", "sip:bob@10.0.0.2"));
+
+		// Anti-entropy delivers the gap.
+		Map<String, Long> complete = new HashMap<>();
+		List<Binding> delta = source.delta(target.getVersions(), 10, complete);
+		Assertions.assertEquals(2, delta.size());
+		Assertions.assertEquals(1, transfer(delta, complete, target));
+		Assertions.assertEquals(Map.of("a", 2L), target.getVersions());
+		Assertions.assertNotNull(target.get("alice", first.getUri()));
+
+		// Duplicates are ignored.
+		Assertions.assertFalse(target.apply(first));
+	}
+
+	@Test
+	void testRemoveTombstone() {
+		BindingReplica source = new BindingReplica("a");
+		Binding added = source.update("alice", "sip:alice@10.0.0.1", null, NEVER, false);
+		Binding removed = source.update("alice", "sip:alice@10.0.0.1", null, 0, true);
+
+		// A late add must not undo the removal.
+		BindingReplica target = new BindingReplica("b");
+		Assertions.assertTrue(target.apply(removed));
+		Assertions.assertFalse(target.apply(added));
+		Assertions.assertNull(target.get("alice", "sip:alice@10.0.0.1"));
+		Assertions.assertFalse(target.hasUser("alice"));
+		Assertions.assertEquals(1, target.size());
+	}
+
+	@Test
+	void testLastWriterWins() {
+		Binding older = binding("10.0.0.1", 1000, "b", 7);
+		Binding newer = binding("10.0.0.2", 1001, "a", 1);
+		Assertions.assertTrue(newer.isNewerThan(older));
+		Assertions.assertFalse(older.isNewerThan(newer));
+
+		// Same time: the larger origin wins, independent of the sequence numbers.
+		Binding low = binding("10.0.0.1", 1000, "a", 9);
+		Binding high = binding("10.0.0.2", 1000, "b", 1);
+		Assertions.assertTrue(high.isNewerThan(low));
+		Assertions.assertFalse(low.isNewerThan(high));
+
+		// Same time and origin: the larger sequence number wins.
+		Binding first = binding("10.0.0.1", 1000, "a", 1);
+		Binding second = binding("10.0.0.2", 1000, "a", 2);
+		Assertions.assertTrue(second.isNewerThan(first));
+		Assertions.assertFalse(first.isNewerThan(second));
+		Assertions.assertFalse(first.isNewerThan(first));
+
+		// All replicas decide the same, whatever the order of arrival.
+		BindingReplica r1 = new BindingReplica("r1");
+		BindingReplica r2 = new BindingReplica("r2");
+		r1.apply(low);
+		r1.apply(high);
+		r2.apply(high);
+		r2.apply(low);
+		Assertions.assertEquals("sip:alice@10.0.0.2", r1.getBindings("alice").get(0).getName());
+		Assertions.assertEquals("sip:alice@10.0.0.2", r2.getBindings("alice").get(0).getName());
+	}
+
+	@Test
+	void testLocalClockAfterRemote() {
+		BindingReplica replica = new BindingReplica("a");
+		long future = System.currentTimeMillis() + 60000;
+		replica.apply(new Binding("alice", "sip:alice@10.0.0.1", null, NEVER, false, future, "z", 1));
+
+		// A local update after receiving a version from a node with a clock running ahead
+		// supersedes it nevertheless.
+		Binding local = replica.update("alice", "sip:alice@10.0.0.1", null, 0, true);
+		Assertions.assertTrue(local.getTime() > future);
+		Assertions.assertNull(replica.get("alice", "sip:alice@10.0.0.1"));
+	}
+
+	@Test
+	void testPurgePrunesOrigins() {
+		long now = System.currentTimeMillis();
+		BindingReplica replica = new BindingReplica("local");
+		replica.update("alice", "sip:alice@10.0.0.1", null, NEVER, false);
+
+		// An expired binding and a removal of a node that has been restarted in the meantime.
+		replica.apply(new Binding("bob", "sip:bob@10.0.0.2", null, now - BindingReplica.EXPIRED_TIME - 1, false,
+			now - BindingReplica.EXPIRED_TIME - 1000, "old", 1));
+		replica.apply(new Binding("carol", "sip:carol@10.0.0.3", null, 0, true,
+			now - BindingReplica.TOMBSTONE_TIME - 1, "old", 2));
+		replica.apply(new Binding("dave", "sip:dave@10.0.0.4", null, NEVER, false, now, "other", 1));
+		Assertions.assertEquals(Map.of("local", 1L, "old", 2L, "other", 1L), replica.getVersions());
+
+		replica.purge(now);
+		Assertions.assertEquals(2, replica.size());
+		Assertions.assertEquals(Map.of("local", 1L, "other", 1L), replica.getVersions());
+
+		// The own origin is kept, even if all its versions are gone.
+		replica.update("alice", "sip:alice@10.0.0.1", null, 0, true);
+		replica.purge(now + BindingReplica.TOMBSTONE_TIME + 1000);
+		Assertions.assertEquals(Map.of("local", 2L, "other", 1L), replica.getVersions());
+	}
+
+	/**
+	 * Applies a delta as received from a peer.
+	 *
+	 * @return The number of versions that have been stored.
+	 */
+	private static int transfer(List<Binding> delta, Map<String, Long> complete, BindingReplica target) {
+		int result = 0;
+		for (Binding binding : delta) {
+			if (target.apply(binding)) {
+				result++;
+			}
+		}
+		for (Map.Entry<String, Long> entry : complete.entrySet()) {
+			target.complete(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
+	private static Binding binding(String host, long time, String origin, long seq) {
+		// The name identifies the version.
+		return new Binding("alice", "sip:alice", "sip:alice@" + host, NEVER, false, time, origin, seq);
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.overload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.server.ServerProfile;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+
+/**
+ * Test for {@link OverloadControl} and {@link SourceRateLimiter}.
+ */
+@SuppressWarnings("javadoc")
+class TestOverloadControl {
+
+	private ConfiguredScheduler _scheduler;
+
+	private final AtomicInteger _backlog = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() {
+		_scheduler = new ConfiguredScheduler(new SchedulerConfig());
+	}
+
+	@AfterEach
+	void tearDown() {
+		_scheduler.scheduler().shutdownNow();
+	}
+
+	@Test
+	void testLossAlgorithm() {
+		OverloadControl control = control(profile());
+
+		_backlog.set(11);
+		for (int n = 1; n <= 12; n++) {
+			control.evaluate();
+			Assertions.assertEquals(Math.min(100, 10 * n), control.getReduction());
+		}
+		Assertions.assertFalse(control.admit(invite("10.0.0.1", false)));
+		Assertions.assertFalse(control.admit(register("10.0.0.1")));
+		Assertions.assertEquals(2, control.getRejectedByLoad());
+
+		_backlog.set(10);
+		control.evaluate();
+		Assertions.assertEquals(95, control.getReduction());
+		for (int n = 0; n < 19; n++) {
+			control.evaluate();
+		}
+		Assertions.assertEquals(0, control.getReduction());
+		Assertions.assertTrue(control.admit(invite("10.0.0.1", false)));
+
+		// A slow request raises the average processing time above the threshold.
+		control.processed(TimeUnit.MILLISECONDS.toNanos(1000));
+		control.evaluate();
+		Assertions.assertEquals(10, control.getReduction());
+
+		// Without processed requests, the average decays until the overload ends.
+		for (int n = 0; n < 20 && control.getReduction() > 0; n++) {
+			control.evaluate();
+		}
+		Assertions.assertEquals(0, control.getReduction());
+	}
+
+	@Test
+	void testSourceLimit() {
+		ServerProfile profile = profile();
+		profile.overloadSourceRate = 0.01;
+		profile.overloadSourceBurst = 3;
+		OverloadControl control = control(profile);
+
+		for (int n = 0; n < 3; n++) {
+			Assertions.assertTrue(control.admit(invite("10.0.0.1", false)));
+		}
+		Assertions.assertFalse(control.admit(register("10.0.0.1")));
+		Assertions.assertTrue(control.admit(invite("10.0.0.2", false)));
+		Assertions.assertTrue(control.admit(invite("fe80::1", false)));
+		Assertions.assertEquals(1, control.getRejectedByRate());
+		Assertions.assertEquals(5, control.getAccepted());
+
+		// Requests within a dialog do not take tokens.
+		Assertions.assertTrue(control.admit(invite("10.0.0.1", true)));
+	}
+
+	@Test
+	void testBypass() {
+		OverloadControl control = control(profile());
+		_backlog.set(1000);
+		for (int n = 0; n < 10; n++) {
+			control.evaluate();
+		}
+		Assertions.assertEquals(100, control.getReduction());
+
+		Assertions.assertTrue(control.admit(invite("10.0.0.1", true)));
+		Assertions.assertTrue(control.admit(request("ACK", "10.0.0.1", true)));
+		Assertions.assertTrue(control.admit(request("CANCEL", "10.0.0.1", false)));
+		Assertions.assertTrue(control.admit(request("BYE", "10.0.0.1", true)));
+		Assertions.assertTrue(control.admit(request("OPTIONS", "10.0.0.1", false)));
+		Assertions.assertFalse(control.admit(invite("10.0.0.1", false)));
+		Assertions.assertEquals(1, control.getRejectedByLoad());
+	}
+
+	@Test
+	void testConcurrentSources() throws Exception {
+		int sources = 64;
+		int burst = 5;
+		SourceRateLimiter limiter = new SourceRateLimiter(0.01, burst, 1024);
+		long now = System.nanoTime();
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Callable<Integer>> tasks = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				tasks.add(() -> {
+					int granted = 0;
+					for (int n = 0; n < 10 * burst; n++) {
+						for (int s = 0; s < sources; s++) {
+							if (limiter.acquire("10.1." + (s / 256) + "." + (s % 256), now)) {
+								granted++;
+							}
+						}
+					}
+					return granted;
+				});
+			}
+			int granted = 0;
+			for (Future<Integer> result : pool.invokeAll(tasks)) {
+				granted += result.get();
+			}
+			// Each source has its own bucket, no token is granted twice.
+			Assertions.assertEquals(sources * burst, granted);
+			Assertions.assertEquals(sources, limiter.size());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private OverloadControl control(ServerProfile profile) {
+		OverloadControl result = new OverloadControl(profile, _scheduler, _backlog::get);
+		result.halt();
+		return result;
+	}
+
+	private static ServerProfile profile() {
+		ServerProfile profile = new ServerProfile();
+		profile.overloadControl = true;
+		profile.overloadLatency = 20;
+		profile.overloadQueue = 10;
+		// Evaluation is triggered by the test.
+		profile.overloadInterval = TimeUnit.HOURS.toMillis(1);
+		return profile;
+	}
+
+	private static SipMessage invite(String source, boolean inDialog) {
+		return request("INVITE", source, inDialog);
+	}
+
+	private static SipMessage register(String source) {
+		return request("REGISTER", source, false);
+	}
+
+	private static SipMessage request(String method, String source, boolean inDialog) {
+		SipMessage result = new SipMessage(method + " sip:bob@example.com SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP 127.0.0.1;branch=z9hG4bK1\r\n"
+				+ "From: <sip:alice@example.com>;tag=1\r\n"
+				+ "To: <sip:bob@example.com>" + (inDialog ? ";tag=2" : "") + "\r\n"
+				+ "Call-ID: overload@example.com\r\n"
+				+ "CSeq: 1 " + method + "\r\n"
+				+ "Content-Length: 0\r\n"
+				+ "\r\n");
+		result.setRemoteAddress(source);
+		return result;
+	}
+
+}
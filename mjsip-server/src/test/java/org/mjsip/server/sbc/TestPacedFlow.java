@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.UdpPacket;
+
+/**
+ * Test for {@link PacedFlow} and {@link MediaPacer}.
+ */
+@SuppressWarnings("javadoc")
+class TestPacedFlow {
+
+	private static final long INTERVAL = 20;
+
+	/** Tolerance for the granularity of the clock. */
+	private static final long TOLERANCE = TimeUnit.MILLISECONDS.toNanos(2);
+
+	private MediaPacer _pacer;
+
+	private final List<Long> _departures = new CopyOnWriteArrayList<>();
+
+	@AfterEach
+	void tearDown() {
+		_pacer.halt();
+	}
+
+	@Test
+	void testInterval() throws Exception {
+		_pacer = new MediaPacer(MediaPacer.Policy.INTERVAL, INTERVAL, 1, 16);
+		PacedFlow flow = _pacer.createFlow(packet -> _departures.add(System.nanoTime()));
+
+		for (int n = 0; n < 5; n++) {
+			Assertions.assertTrue(flow.send(packet(n)));
+		}
+		// Only the first packet is sent directly.
+		Assertions.assertEquals(1, flow.getSentPackets());
+		Assertions.assertEquals(4, flow.getQueuedPackets());
+
+		awaitSent(flow, 5);
+		for (int n = 1; n < 5; n++) {
+			long gap = _departures.get(n) - _departures.get(n - 1);
+			Assertions.assertTrue(gap >= TimeUnit.MILLISECONDS.toNanos(INTERVAL) - TOLERANCE, "Gap too short: " + gap);
+		}
+		Assertions.assertEquals(0, flow.getQueuedPackets());
+		Assertions.assertEquals(4, flow.getMaxQueuedPackets());
+		Assertions.assertEquals(0, _pacer.getQueuedPackets());
+		Assertions.assertEquals(5, _pacer.getSentPackets());
+	}
+
+	@Test
+	void testTokenBucket() throws Exception {
+		_pacer = new MediaPacer(MediaPacer.Policy.TOKEN_BUCKET, INTERVAL, 3, 16);
+		PacedFlow flow = _pacer.createFlow(packet -> _departures.add(System.nanoTime()));
+
+		long start = System.nanoTime();
+		for (int n = 0; n < 6; n++) {
+			Assertions.assertTrue(flow.send(packet(n)));
+		}
+		// A full bucket allows a burst.
+		Assertions.assertEquals(3, flow.getSentPackets());
+
+		awaitSent(flow, 6);
+
+		// The remaining packets depart at the average rate.
+		long elapsed = _departures.get(5) - start;
+		Assertions.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(3 * INTERVAL) - TOLERANCE,
+				"Sent too fast: " + elapsed);
+	}
+
+	@Test
+	void testDrop() throws Exception {
+		_pacer = new MediaPacer(MediaPacer.Policy.INTERVAL, INTERVAL, 1, 2);
+		PacedFlow flow = _pacer.createFlow(packet -> _departures.add(System.nanoTime()));
+
+		int accepted = 0;
+		for (int n = 0; n < 5; n++) {
+			if (flow.send(packet(n))) {
+				accepted++;
+			}
+		}
+		Assertions.assertEquals(3, accepted);
+		Assertions.assertEquals(2, flow.getDroppedPackets());
+		Assertions.assertEquals(2, _pacer.getDroppedPackets());
+
+		flow.close();
+		Assertions.assertEquals(0, _pacer.getQueuedPackets());
+		Assertions.assertFalse(flow.send(packet(5)));
+	}
+
+	@Test
+	void testGatewayHalt() {
+		MediaGw gateway = new MediaGw(null, null, new SessionBorderControllerProfile());
+		_pacer = gateway.pacer();
+		Assertions.assertSame(_pacer, gateway.pacer());
+
+		gateway.halt();
+		Assertions.assertThrows(IllegalStateException.class, gateway::pacer);
+	}
+
+	private static void awaitSent(PacedFlow flow, int count) throws InterruptedException {
+		for (int n = 0; n < 500 && flow.getSentPackets() < count; n++) {
+			Thread.sleep(5);
+		}
+		Assertions.assertEquals(count, flow.getSentPackets());
+	}
+
+	private static UdpPacket packet(int n) throws Exception {
+		return new UdpPacket(new byte[] { (byte) n }, 0, 1, IpAddress.getByName("127.0.0.1"), 5000);
+	}
+
+}
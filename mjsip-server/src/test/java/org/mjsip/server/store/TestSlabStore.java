@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test for {@link SlabStore}.
+ */
+@SuppressWarnings("javadoc")
+class TestSlabStore {
+
+	/** Smallest possible slab, holding one slot of the largest size class. */
+	private static final int SLAB_SIZE = SlabStore.SLAB_HEADER + SlabStore.MAX_SLOT;
+
+	/** Capacity of the index of a new store. */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	@TempDir
+	Path _dir;
+
+	@Test
+	void testPutReplaceRemove() throws IOException {
+		try (SlabStore store = new SlabStore(null, SLAB_SIZE)) {
+			store.put("a", bytes("1"));
+			store.put("b", bytes("2"));
+			Assertions.assertEquals(2, store.size());
+			Assertions.assertEquals("1", string(store.get("a")));
+			Assertions.assertEquals("2", string(store.get("b")));
+			Assertions.assertNull(store.get("c"));
+
+			// A value of another size class.
+			String large = "x".repeat(1000);
+			store.put("a", bytes(large));
+			Assertions.assertEquals(2, store.size());
+			Assertions.assertEquals(large, string(store.get("a")));
+
+			store.put("a", bytes(""));
+			Assertions.assertEquals("", string(store.get("a")));
+
+			Assertions.assertTrue(store.remove("a"));
+			Assertions.assertFalse(store.remove("a"));
+			Assertions.assertFalse(store.contains("a"));
+			Assertions.assertTrue(store.contains("b"));
+			Assertions.assertEquals(List.of("b"), Collections.list(store.keys()));
+
+			store.clear();
+			Assertions.assertEquals(0, store.size());
+			Assertions.assertNull(store.get("b"));
+			store.put("b", bytes("3"));
+			Assertions.assertEquals("3", string(store.get("b")));
+
+			Assertions.assertThrows(IllegalArgumentException.class,
+				() -> store.put("c", new byte[SlabStore.MAX_RECORD_SIZE]));
+		}
+	}
+
+	@Test
+	void testReopen() throws IOException {
+		String file = file();
+		try (SlabStore store = new SlabStore(file, SLAB_SIZE)) {
+			for (int n = 0; n < 100; n++) {
+				store.put("user" + n, bytes("v" + n));
+			}
+			for (int n = 0; n < 100; n += 2) {
+				store.put("user" + n, bytes("w" + n));
+			}
+			for (int n = 0; n < 100; n += 3) {
+				store.remove("user" + n);
+			}
+		}
+		long length = Files.size(Path.of(file));
+
+		try (SlabStore store = new SlabStore(file)) {
+			Assertions.assertEquals(66, store.size());
+			for (int n = 0; n < 100; n++) {
+				String expected = n % 3 == 0 ? null : (n % 2 == 0 ? "w" : "v") + n;
+				Assertions.assertEquals(expected, string(store.get("user" + n)));
+			}
+
+			// Released slots are reused after recovery.
+			for (int n = 0; n < 100; n += 3) {
+				store.put("user" + n, bytes("x" + n));
+			}
+			Assertions.assertEquals(100, store.size());
+		}
+		Assertions.assertEquals(length, Files.size(Path.of(file)));
+	}
+
+	@Test
+	void testNotAStore() throws IOException {
+		Path file = _dir.resolve("other.db");
+		Files.write(file, new byte[SlabStore.FILE_HEADER]);
+		Assertions.assertThrows(IOException.class, () -> new SlabStore(file.toString()));
+	}
+
+	@Test
+	void testTwoVersions() throws IOException {
+		String file = file();
+		try (SlabStore store = new SlabStore(file, SLAB_SIZE)) {
+			store.put("k", bytes("v1"));
+		}
+		byte[] first = read(file, slot(0));
+
+		try (SlabStore store = new SlabStore(file)) {
+			// Written to the following slot, the first slot is released.
+			store.put("k", bytes("v2"));
+		}
+		Assertions.assertEquals(SlabStore.FREE, ByteBuffer.wrap(read(file, slot(0))).getInt(0));
+
+		// Crash before the previous version was released.
+		write(file, slot(0), first);
+
+		try (SlabStore store = new SlabStore(file)) {
+			Assertions.assertEquals(1, store.size());
+			Assertions.assertEquals("v2", string(store.get("k")));
+
+			// The sequence continues after the highest recovered one.
+			store.put("k", bytes("v3"));
+		}
+		try (SlabStore store = new SlabStore(file)) {
+			Assertions.assertEquals("v3", string(store.get("k")));
+		}
+	}
+
+	@Test
+	void testCorruptedRecord() throws IOException {
+		String file = file();
+		try (SlabStore store = new SlabStore(file, SLAB_SIZE)) {
+			store.put("a", bytes("value-a"));
+			store.put("b", bytes("value-b"));
+		}
+
+		// A torn write of the value of the record in the first slot.
+		byte[] slot = read(file, slot(0));
+		slot[SlabStore.RECORD_HEADER + 2 + 1] ^= 0x01;
+		write(file, slot(0), slot);
+
+		try (SlabStore store = new SlabStore(file)) {
+			Assertions.assertEquals(1, store.size());
+			Assertions.assertFalse(store.contains("a"));
+			Assertions.assertEquals("value-b", string(store.get("b")));
+
+			// The slot of the broken record is free again.
+			store.put("c", bytes("value-c"));
+		}
+		Assertions.assertEquals("c", key(read(file, slot(0))));
+	}
+
+	@Test
+	void testFreeList() throws IOException {
+		String file = file();
+		try (SlabStore store = new SlabStore(file, SLAB_SIZE)) {
+			store.put("a", bytes("1"));
+			store.put("b", bytes("2"));
+			store.put("c", bytes("3"));
+			store.remove("b");
+			store.remove("a");
+		}
+
+		// The sequence field of a free slot links to the next free slot of its size class.
+		ByteBuffer a = ByteBuffer.wrap(read(file, slot(0)));
+		ByteBuffer b = ByteBuffer.wrap(read(file, slot(1)));
+		Assertions.assertEquals(SlabStore.FREE, a.getInt(0));
+		Assertions.assertEquals(SlabStore.FREE, b.getInt(0));
+		Assertions.assertEquals(slot(1), a.getLong(8));
+		Assertions.assertEquals(slot(3), b.getLong(8));
+		Assertions.assertEquals(SlabStore.USED, ByteBuffer.wrap(read(file, slot(2))).getInt(0));
+
+		// Recovery rebuilds the free list in address order.
+		try (SlabStore store = new SlabStore(file)) {
+			store.put("d", bytes("4"));
+			store.put("e", bytes("5"));
+			store.put("f", bytes("6"));
+		}
+		Assertions.assertEquals("d", key(read(file, slot(0))));
+		Assertions.assertEquals("e", key(read(file, slot(1))));
+		Assertions.assertEquals("c", key(read(file, slot(2))));
+		Assertions.assertEquals("f", key(read(file, slot(3))));
+	}
+
+	@Test
+	void testDeleteShiftsCollisions() throws IOException {
+		// A cluster wrapping around the end of the index: three keys with the home position of
+		// the last but one entry, and a key with home position 0 that is displaced behind them.
+		List<String> colliding = keysWithHome(INITIAL_CAPACITY - 2, 3);
+		String displaced = keysWithHome(0, 1).get(0);
+
+		try (SlabStore store = new SlabStore(null, SLAB_SIZE)) {
+			for (String key : colliding) {
+				store.put(key, bytes(key));
+			}
+			store.put(displaced, bytes(displaced));
+
+			// Removing the head of the cluster must move all following entries back, otherwise
+			// the lookup of a later entry stops at the hole.
+			Assertions.assertTrue(store.remove(colliding.get(0)));
+			Assertions.assertEquals(colliding.get(1), string(store.get(colliding.get(1))));
+			Assertions.assertEquals(colliding.get(2), string(store.get(colliding.get(2))));
+			Assertions.assertEquals(displaced, string(store.get(displaced)));
+
+			// An entry at its home position must not be moved before it.
+			Assertions.assertTrue(store.remove(colliding.get(2)));
+			Assertions.assertEquals(colliding.get(1), string(store.get(colliding.get(1))));
+			Assertions.assertEquals(displaced, string(store.get(displaced)));
+
+			Assertions.assertTrue(store.remove(colliding.get(1)));
+			Assertions.assertEquals(displaced, string(store.get(displaced)));
+			Assertions.assertEquals(1, store.size());
+			Assertions.assertEquals(List.of(displaced), Collections.list(store.keys()));
+		}
+	}
+
+	@Test
+	void testIndexResize() throws IOException {
+		int count = 10 * INITIAL_CAPACITY;
+		try (SlabStore store = new SlabStore(null, SLAB_SIZE)) {
+			for (int n = 0; n < count; n++) {
+				store.put("user" + n, bytes(Integer.toString(n)));
+			}
+			Assertions.assertEquals(count, store.size());
+			for (int n = 0; n < count; n++) {
+				Assertions.assertEquals(Integer.toString(n), string(store.get("user" + n)));
+			}
+			Set<String> keys = new HashSet<>(Collections.list(store.keys()));
+			Assertions.assertEquals(count, keys.size());
+
+			for (int n = 0; n < count; n += 2) {
+				Assertions.assertTrue(store.remove("user" + n));
+			}
+			Assertions.assertEquals(count / 2, store.size());
+			for (int n = 0; n < count; n++) {
+				Assertions.assertEquals(n % 2 == 0 ? null : Integer.toString(n), string(store.get("user" + n)));
+			}
+		}
+	}
+
+	private String file() {
+		return _dir.resolve("store.db").toString();
+	}
+
+	/**
+	 * The address of the given slot of the smallest size class in the first slab.
+	 */
+	private static long slot(int n) {
+		return SlabStore.SLAB_HEADER + n * SlabStore.MIN_SLOT;
+	}
+
+	private static byte[] read(String file, long address) throws IOException {
+		try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(SlabStore.MIN_SLOT);
+			channel.read(buffer, SlabStore.FILE_HEADER + address);
+			return buffer.array();
+		}
+	}
+
+	private static void write(String file, long address, byte[] slot) throws IOException {
+		try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(slot), SlabStore.FILE_HEADER + address);
+		}
+	}
+
+	private static String key(byte[] slot) {
+		ByteBuffer buffer = ByteBuffer.wrap(slot);
+		int length = buffer.getShort(SlabStore.RECORD_HEADER);
+		return new String(slot, SlabStore.RECORD_HEADER + 2, length, StandardCharsets.UTF_8);
+	}
+
+	private static List<String> keysWithHome(int home, int count) {
+		List<String> result = new ArrayList<>();
+		for (int n = 0; result.size() < count; n++) {
+			String key = "key" + n;
+			long hash = SlabStore.hash(bytes(key));
+			if (((int) (hash ^ (hash >>> 32)) & (INITIAL_CAPACITY - 1)) == home) {
+				result.add(key);
+			}
+		}
+		return result;
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String string(byte[] value) {
+		return value == null ? null : new String(value, StandardCharsets.UTF_8);
+	}
+
+}
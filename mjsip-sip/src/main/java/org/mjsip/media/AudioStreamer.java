@@ -24,27 +24,24 @@ package org.mjsip.media;
 
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.concurrent.Executor;
-import java.util.stream.Collectors;
 
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioFormat.Encoding;
-import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
 import org.mjsip.media.rx.AudioReceiver;
 import org.mjsip.media.rx.AudioRxHandle;
 import org.mjsip.media.tx.AudioTXHandle;
 import org.mjsip.media.tx.AudioTransmitter;
+import org.mjsip.pool.RtpSocketPair;
 import org.mjsip.rtp.AmrRtpPayloadFormat;
 import org.mjsip.rtp.RtpControl;
 import org.mjsip.sound.Codec;
+import org.mjsip.sound.CodecRegistry;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.SocketAddress;
 import org.zoolu.net.UdpSocket;
 import org.zoolu.sound.CodecType;
-import org.zoolu.sound.SimpleAudioSystem;
 import org.zoolu.util.Encoder;
 
 
@@ -103,6 +100,9 @@ public class AudioStreamer implements MediaStreamer, RtpStreamSenderListener, Rt
 	/** UDP socket */
 	private final UdpSocket udp_socket;
 
+	/** Whether the sockets are owned by a pool and must not be closed. */
+	private final boolean _pooledSockets;
+
 	private AudioTXHandle _txHandle;
 
 	/** RtpStreamReceiver */
@@ -150,15 +150,16 @@ public class AudioStreamer implements MediaStreamer, RtpStreamSenderListener, Rt
 			packet_size = frame_rate * frame_size * DEFAULT_PACKET_TIME / 1000;
 		}
 	
-		final AudioFormat baseFormat = SimpleAudioSystem.getBaseAudioFormat(sample_rate, channels);
+		CodecRegistry.Format format = CodecRegistry.getFormat(codec, sample_rate, channels);
+		final AudioFormat baseFormat = format.getBaseFormat();
 		LOG.info("Base format: {}", baseFormat);
 
-		AudioFormat.Encoding encoding = getEncoding(baseFormat, codec);
+		AudioFormat.Encoding encoding = format.getEncoding();
 		if (encoding == null) {
 			throw new RuntimeException("Encoding " + codec.getEncoding() + " not found for: " + baseFormat);
 		}
 
-		AudioFormat targetFormat = getTargetFormat(baseFormat, encoding);
+		AudioFormat targetFormat = format.getTargetFormat();
 		if (targetFormat == null) {
 			throw new RuntimeException("No target fomat with encoding " + encoding + " found for: " + baseFormat);
 		}
@@ -174,7 +175,9 @@ public class AudioStreamer implements MediaStreamer, RtpStreamSenderListener, Rt
 		
 		try {
 			// 5) udp socket
-			udp_socket = new UdpSocket(flow_spec.getLocalPort());
+			RtpSocketPair sockets = flow_spec.getSockets();
+			_pooledSockets = sockets != null;
+			udp_socket = _pooledSockets ? sockets.getRtpSocket() : new UdpSocket(flow_spec.getLocalPort());
 			
 			// 6) sender
 			String remote_addr = flow_spec.getRemoteAddress();
@@ -195,7 +198,13 @@ public class AudioStreamer implements MediaStreamer, RtpStreamSenderListener, Rt
 
 			// RTCP
 			if (options.rtp()) {
-				rtp_control = new RtpControl(null, udp_socket.getLocalPort() + 1, remote_addr, remote_port + 1);
+				rtp_control = _pooledSockets
+						? new RtpControl(null, sockets.getRtcpSocket(), remote_addr, remote_port + 1)
+						: new RtpControl(null, udp_socket.getLocalPort() + 1, remote_addr, remote_port + 1);
+				// RTP payload plus RTP, UDP and IP headers, in octets per second.
+				if (packet_time > 0) {
+					rtp_control.setSessionBandwidth((int) ((packet_size + 12 + 28) * 1000 / packet_time));
+				}
 			} else {
 				rtp_control = null;
 			}
@@ -212,6 +221,7 @@ public class AudioStreamer implements MediaStreamer, RtpStreamSenderListener, Rt
 			if (dir.doReceive()) {
 				_rxHandle = rx.createReceiver(options, udp_socket, targetFormat, codec, payload_type, payloadFormat,
 						sample_rate, channels, additional_decoder, this);
+				_rxHandle.setSocketBorrowed(_pooledSockets);
 			} else {
 				_rxHandle = null;
 			}
@@ -231,30 +241,6 @@ public class AudioStreamer implements MediaStreamer, RtpStreamSenderListener, Rt
 		LOG.debug("Packet size:   {} B", packet_size);
 	}
 
-	private static AudioFormat getTargetFormat(final AudioFormat baseFormat, AudioFormat.Encoding encoding) {
-		AudioFormat[] formats = AudioSystem.getTargetFormats(encoding, baseFormat);
-		for (AudioFormat format : formats) {
-			if (format.getEncoding().equals(encoding)) {
-				return format;
-			}
-		}
-		return null;
-	}
-
-	private static AudioFormat.Encoding getEncoding(final AudioFormat format, CodecType codec) {
-		String encodingName = codec.getEncoding();
-		// get the proper audio format encoding
-		AudioFormat.Encoding[] supportedEncodings = AudioSystem.getTargetEncodings(format);
-		LOG.info("Supported codecs: "
-				+ Arrays.stream(supportedEncodings).map(Object::toString).collect(Collectors.joining(", ")));
-		for (Encoding supportedEncoding : supportedEncodings) {
-			if (supportedEncoding.toString().equalsIgnoreCase(encodingName)) {
-				return supportedEncoding;
-			}
-		}
-		return null;
-	}
-
 	/** Starts media streams. */
 	@Override
 	public boolean start() {
@@ -287,13 +273,9 @@ public class AudioStreamer implements MediaStreamer, RtpStreamSenderListener, Rt
 			LOG.debug("receiver halted");
 		}      
 
-		// try to take into account the resilience of RtpStreamSender
-		try {
-			Thread.sleep(RtpStreamReceiver.SO_TIMEOUT);
-		} catch (Exception e) {
-			// Ignore.
+		if (!_pooledSockets) {
+			udp_socket.close();
 		}
-		udp_socket.close();
 		if (rtp_control!=null) rtp_control.halt();
 		return true;
 	}
@@ -2,6 +2,8 @@ package org.mjsip.media;
 
 import java.util.NoSuchElementException;
 
+import org.mjsip.pool.RtpSocketPair;
+
 /** Flow(s) specification.
   */
 public class FlowSpec {
@@ -78,6 +80,8 @@ public class FlowSpec {
 	private final Direction direction;
 
 	private String _mediaType;
+
+	private RtpSocketPair _sockets;
 	
 	/**
 	 * Creates a new {@link FlowSpec}.
@@ -113,6 +117,20 @@ public class FlowSpec {
 		return _mediaType;
 	}
 
+	/**
+	 * Pre-bound sockets to use for this flow, or <code>null</code> if the streamer must bind
+	 * {@link #getLocalPort()} itself.
+	 */
+	public RtpSocketPair getSockets() {
+		return _sockets;
+	}
+
+	/** @see #getSockets() */
+	public FlowSpec setSockets(RtpSocketPair sockets) {
+		_sockets = sockets;
+		return this;
+	}
+
 	/** Gets media specification. */
 	public MediaSpec getMediaSpec() {
 		return media_spec;
@@ -3,6 +3,7 @@ package org.mjsip.media;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.mjsip.sound.CodecRegistry;
 import org.zoolu.sound.CodecType;
 import org.zoolu.util.Parser;
 
@@ -71,6 +72,9 @@ public class MediaSpec {
 
 	/** Packet size [bytes] */
 	private final int packet_size;
+
+	/** The resolved {@link CodecType}, <code>null</code> before first access. */
+	private CodecType _codecType;
 	
 	/**
 	 * Creates a new MediaSpec.
@@ -130,11 +134,15 @@ public class MediaSpec {
 	 * {@link CodecType} used.
 	 */
 	public CodecType getCodecType() {
-		String codecName = getCodec();
-		if (codecName == null) {
-			codecName = AudioStreamer.DEFAULT_CODEC_NAME;
+		CodecType result = _codecType;
+		if (result == null) {
+			String codecName = getCodec();
+			if (codecName == null) {
+				codecName = AudioStreamer.DEFAULT_CODEC_NAME;
+			}
+			result = _codecType = CodecRegistry.getCodecType(codecName);
 		}
-		return CodecType.getByName(codecName.toUpperCase());
+		return result;
 	}
 
 	/** Parses a string and gets a new MediaSpec. */
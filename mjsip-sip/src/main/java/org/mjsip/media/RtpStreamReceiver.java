@@ -24,13 +24,18 @@ package org.mjsip.media;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.InetAddress;
 
 import org.mjsip.media.rx.RtpReceiverOptions;
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
 import org.mjsip.rtp.RtpPacket;
 import org.mjsip.rtp.RtpPayloadFormat;
 import org.mjsip.rtp.RtpSocket;
 import org.slf4j.LoggerFactory;
+import org.zoolu.net.IpAddress;
 import org.zoolu.net.SocketAddress;
+import org.zoolu.net.UdpPacket;
 import org.zoolu.net.UdpSocket;
 import org.zoolu.util.Encoder;
 
@@ -41,6 +46,15 @@ import org.zoolu.util.Encoder;
 public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 	
 	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RtpStreamReceiver.class);
+
+	private static final Counter PACKETS_RECEIVED = Metrics.global().counter("rtp_packets_received_total",
+			"RTP packets received by all streams.");
+
+	private static final Counter BYTES_RECEIVED = Metrics.global().counter("rtp_bytes_received_total",
+			"RTP bytes received by all streams, including RTP headers.");
+
+	private static final Counter PACKETS_DISCARDED = Metrics.global().counter("rtp_packets_discarded_total",
+			"Received RTP packets discarded for a wrong SSRC, as duplicates, or out of sequence.");
 	
 	/** Whether working in debug mode. */
 	public static final boolean DEBUG = LOG.isDebugEnabled();
@@ -54,7 +68,9 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 	/** Size of the receiver buffer (including the RTP header) */
 	public static final int BUFFER_SIZE=32768;
 
-	/** Maximum blocking time, spent waiting for reading new bytes [milliseconds] */
+	/** Maximum blocking time, spent waiting for reading new bytes [milliseconds]
+	  * @deprecated {@link #halt()} terminates a pending receive, there is no timeout to wait for. */
+	@Deprecated
 	public static final int SO_TIMEOUT=200;
 
 	/** Integer value 2^16 */
@@ -81,6 +97,12 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 	/** Whether it is running */
 	private volatile boolean running = false;
 
+	/** Whether it has been halted */
+	private volatile boolean halted = false;
+
+	/** Whether the socket is borrowed, e.g. from a socket pool, and must not be closed on halt */
+	private volatile boolean socket_borrowed = false;
+
 	/** Packet counter (incremented only if packet_drop_rate>0) */
 	private long packet_counter = 0;
 
@@ -201,9 +223,37 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 	}
 
 
-	/** Stops running */
+	/** Sets whether the UDP socket is borrowed from its owner, e.g. a socket pool.
+	  * A borrowed socket stays open when this receiver is halted. */
+	public void setSocketBorrowed(boolean borrowed) {
+		socket_borrowed=borrowed;
+	}
+
+
+	/** Stops running.
+	  * <p> The UDP socket is closed to terminate a pending receive.
+	  * A borrowed socket is not closed, instead, the pending receive is woken up with an empty packet. */
 	public void halt() {
+		halted=true;
 		running=false;
+		RtpSocket rtp_socket=this.rtp_socket;
+		if (rtp_socket!=null) {
+			UdpSocket udp_socket=rtp_socket.getUdpSocket();
+			if (socket_borrowed) wakeUp(udp_socket);
+			else udp_socket.close();
+		}
+	}
+
+
+	/** Terminates a pending receive on the given socket by sending an empty packet to it.
+	  * Such packets are discarded by the socket pool before the socket is reused. */
+	private static void wakeUp(UdpSocket udp_socket) {
+		try {
+			udp_socket.send(new UdpPacket(new byte[0],0,new IpAddress(InetAddress.getLoopbackAddress()),udp_socket.getLocalPort()));
+		}
+		catch (IOException e) {
+			LOG.debug("Waking up RTP receiver on port {} failed: {}", udp_socket.getLocalPort(), e.getMessage());
+		}
 	}
 
 
@@ -221,6 +271,8 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 		RtpPacket rtp_packet=new RtpPacket(buffer,0);
 
 		running=true;    
+		// halted before started
+		if (halted) running=false;
 
 		if (DEBUG)
 			LOG.debug("RTP: localhost:{} <-- remotesocket", rtp_socket.getUdpSocket().getLocalPort());
@@ -229,7 +281,7 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 
 		Exception error=null;
 		try {
-			rtp_socket.getUdpSocket().setSoTimeout(SO_TIMEOUT);
+			rtp_socket.getUdpSocket().setSoTimeout(0);
 			long early_drop_to=(EARLY_DROP_TIME>0)? System.currentTimeMillis()+EARLY_DROP_TIME : -1;
 
 			long ssrc=-1;
@@ -242,6 +294,10 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 				try {
 					// read a block of data from the rtp socket
 					rtp_socket.receive(rtp_packet);
+					// woken up by halt()
+					if (!running) break;
+					PACKETS_RECEIVED.inc();
+					BYTES_RECEIVED.add(rtp_packet.getPacketLength());
 					// drop the first packets in order to reduce the effect of an eventual initial packet burst
 					if (early_drop_to>0 && System.currentTimeMillis()<early_drop_to) continue;
 					else early_drop_to=-1;
@@ -253,17 +309,29 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 							// discard packets with wrong SSRC (i.e. when the SSRC differs from the one in the first received packet)
 							long pkt_ssrc=rtp_packet.getSsrc();
 							if (ssrc==-1) ssrc=pkt_ssrc;
-							else if (pkt_ssrc!=ssrc) continue; // discarded packet with wrong SSRC
+							else if (pkt_ssrc!=ssrc) {
+								// discarded packet with wrong SSRC
+								PACKETS_DISCARDED.inc();
+								continue;
+							}
 						}
 						if (sequence_check) {
 							// discard out of sequence and duplicated packets
 							int sqn=rtp_packet.getSequenceNumber();
-							if (sqn==last_sqn) continue; // discarded duplicated packet
+							if (sqn==last_sqn) {
+								// discarded duplicated packet
+								PACKETS_DISCARDED.inc();
+								continue;
+							}
 							// else
 							if (last_sqn<0) last_sqn=sqn;
 							if (sqn<last_sqn) sqn+=TWO_16;
 							int sqn_diff=sqn-last_sqn;
-							if (sqn_diff>TWO_16/2) continue; // discarded out of sequence packet
+							if (sqn_diff>TWO_16/2) {
+								// discarded out of sequence packet
+								PACKETS_DISCARDED.inc();
+								continue;
+							}
 							// else
 							last_sqn=sqn&0xffff;
 
@@ -318,8 +386,9 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 			}
 		}
 		catch (Exception e) {
+			// closing the socket on halt is not an error
+			if (running) error=e;
 			running=false;
-			error=e;
 			if (DEBUG)
 				LOG.debug("Exception.", e);
 		}
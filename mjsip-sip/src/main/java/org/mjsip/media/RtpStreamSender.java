@@ -25,6 +25,8 @@ package org.mjsip.media;
 import java.io.InputStream;
 
 import org.mjsip.media.tx.RtpSenderOptions;
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
 import org.mjsip.rtp.RtpControl;
 import org.mjsip.rtp.RtpPacket;
 import org.mjsip.rtp.RtpPayloadFormat;
@@ -44,8 +46,11 @@ public class RtpStreamSender implements Runnable, RtpControlledSender {
 	
 	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RtpStreamSender.class);
 
-	/** Inter-time of RTCP Sending Report (SR) packets [millisecs]. */
-	public static long RTCP_SR_TIME=5000;
+	private static final Counter PACKETS_SENT = Metrics.global().counter("rtp_packets_sent_total",
+			"RTP packets sent by all streams.");
+
+	private static final Counter BYTES_SENT = Metrics.global().counter("rtp_bytes_sent_total",
+			"RTP bytes sent by all streams, including RTP headers.");
 
 	/** Size of the input buffer (that must fit the RTP header plus the input data) */
 	public static final int BUFFER_SIZE=1472; // 1500 (Etherent MTU) - 20 (IPH) - 8 (UDPH)
@@ -293,11 +298,6 @@ public class RtpStreamSender implements Runnable, RtpControlledSender {
 		long start_time=System.currentTimeMillis();
 		//long byte_rate=payload_size*1000/packet_time;
 		
-		// sending report counters
-		//long packet_count=0;
-		//long octect_count=0;
-		long next_report_time=0;
-
 		if (DEBUG)
 			LOG.debug("RTP: localhost:{} --> {}", rtp_socket.getUdpSocket().getLocalPort(), remote_soaddr);
 		if (DEBUG)
@@ -309,11 +309,6 @@ public class RtpStreamSender implements Runnable, RtpControlledSender {
 		Exception error=null;
 		try {
 			while (!_shouldStop) {
-				if (time>=next_report_time) {
-					//if (rtp_control!=null) rtp_control.send(new local.net.SrRtcpPacket(rtp_packet.getSsrc(),System.currentTimeMillis(),timestamp,packet_count,octect_count));
-					if (rtp_control!=null) rtp_control.sendReport();
-					next_report_time+=RTCP_SR_TIME;
-				}
 				//java.util.Arrays.fill(packet_buffer,RTPH_LEN,formatted_len,(byte)0);
 				int len=input_stream.read(packet_buffer,RTPH_LEN,payload_size);
 				if (len < 0) {
@@ -342,6 +337,8 @@ public class RtpStreamSender implements Runnable, RtpControlledSender {
 					//rtp_socket.send(rtp_packet);
 					if (debug_drop_count==0) {
 						rtp_socket.send(rtp_packet);
+						PACKETS_SENT.inc();
+						BYTES_SENT.add(rtp_packet.getPacketLength());
 						if (DEBUG_DROP_RATE>0 && Random.nextInt(DEBUG_DROP_RATE)==0) debug_drop_count=DEBUG_DROP_TIME;
 					}
 					else debug_drop_count--;
@@ -380,8 +377,11 @@ public class RtpStreamSender implements Runnable, RtpControlledSender {
 			}
 		}
 		catch (Exception e) {
-			error=e;
-			if (DEBUG) e.printStackTrace();
+			// the socket may have been closed on halt
+			if (!_shouldStop) {
+				error=e;
+				if (DEBUG) e.printStackTrace();
+			}
 		} finally {
 			synchronized (this) {
 				_running = false;
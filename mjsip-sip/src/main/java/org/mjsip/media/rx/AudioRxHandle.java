@@ -24,4 +24,12 @@ public interface AudioRxHandle {
 	 */
 	void halt();
 
+	/**
+	 * Tells the receiver that its socket is borrowed, e.g. from a socket pool, and must stay open
+	 * when the receiver is halted.
+	 */
+	default void setSocketBorrowed(boolean borrowed) {
+		// Receivers that never close their socket ignore this.
+	}
+
 }
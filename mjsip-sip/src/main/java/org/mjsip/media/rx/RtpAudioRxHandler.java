@@ -31,4 +31,9 @@ public class RtpAudioRxHandler implements AudioRxHandle {
 		_rtpReceiver.halt();
 	}
 
+	@Override
+	public void setSocketBorrowed(boolean borrowed) {
+		_rtpReceiver.setSocketBorrowed(borrowed);
+	}
+
 }
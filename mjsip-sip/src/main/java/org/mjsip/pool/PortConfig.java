@@ -4,6 +4,7 @@
 package org.mjsip.pool;
 
 import org.kohsuke.args4j.Option;
+import org.mjsip.config.YesNoHandler;
 
 /**
  * Configuration options for specifying a port range to serve RTP streams.
@@ -16,6 +17,12 @@ public class PortConfig implements PortOptions {
 	@Option(name = "--port-count", usage = "The number of ports used for RTP media streaming.")
 	private int _portCount = 100;
 
+	@Option(name = "--media-socket-pool", handler = YesNoHandler.class, usage = "Whether to keep pre-bound RTP/RTCP sockets for all media ports.")
+	private boolean _socketPool = false;
+
+	@Option(name = "--media-receive-buffer", usage = "The receive buffer size of pooled media sockets, 0 for the system default.")
+	private int _receiveBuffer = 0;
+
 	@Override
 	public int getMediaPort() {
 		return _mediaPort;
@@ -36,10 +43,35 @@ public class PortConfig implements PortOptions {
 		_portCount = portCount;
 	}
 
+	@Override
+	public boolean useSocketPool() {
+		return _socketPool;
+	}
+
+	/** @see #useSocketPool() */
+	public void setSocketPool(boolean socketPool) {
+		_socketPool = socketPool;
+	}
+
+	@Override
+	public int getReceiveBuffer() {
+		return _receiveBuffer;
+	}
+
+	/** @see #getReceiveBuffer() */
+	public void setReceiveBuffer(int receiveBuffer) {
+		_receiveBuffer = receiveBuffer;
+	}
+
 	/** 
 	 * Creates a {@link PortPool} with this configuration.
+	 * 
+	 * @see #useSocketPool()
 	 */
 	public PortPool createPool() {
+		if (useSocketPool()) {
+			return new SocketPool(getMediaPort(), getPortCount(), getReceiveBuffer());
+		}
 		return new PortPool(getMediaPort(), getPortCount());
 	}
 
@@ -27,4 +27,19 @@ public interface PortOptions {
 	 */
 	int getPortCount();
 
+	/**
+	 * Whether RTP/RTCP sockets for all media ports are bound in advance and reused across calls.
+	 * 
+	 * @see SocketPool
+	 */
+	boolean useSocketPool();
+
+	/**
+	 * The receive buffer size (<code>SO_RCVBUF</code>) of pooled media sockets, or <code>0</code>
+	 * for the system default.
+	 * 
+	 * @see #useSocketPool()
+	 */
+	int getReceiveBuffer();
+
 }
@@ -6,10 +6,17 @@ package org.mjsip.pool;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
+
 /**
  * Pool of host ports to e.g. serve RTP media streams.
  */
 public class PortPool {
+
+	/** Failed allocations from any pool. */
+	protected static final Counter EXHAUSTED = Metrics.global().counter("media_port_pool_exhausted_total",
+			"Media port allocations that failed because the pool was exhausted.");
 	
 	/**
 	 * Exception thrown, when allocating from an exhausted/empty pool.
@@ -88,6 +95,7 @@ public class PortPool {
 	 */
 	public synchronized int allocate() {
 		if (!isAvailable()) {
+			EXHAUSTED.inc();
 			throw new Exhausted("No more ports available.");
 		}
 		int port = _ports[_next];
@@ -120,6 +128,19 @@ public class PortPool {
 		_next = last;
 	}
 
+	/**
+	 * The pre-bound sockets for an allocated port.
+	 *
+	 * @param port
+	 *        A port allocated from this pool.
+	 * @return The sockets to use for the given port, or <code>null</code> if this pool only manages
+	 *         port numbers and the sockets must be bound by the user.
+	 * @see SocketPool
+	 */
+	public RtpSocketPair getSockets(int port) {
+		return null;
+	}
+
 	private boolean canRelease(int port) {
 		Integer releasedPort = Integer.valueOf(port);
 		assert _allPorts.contains(releasedPort) : "The released port is not among the ports of this pool: " + port;
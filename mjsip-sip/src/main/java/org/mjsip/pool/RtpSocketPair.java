@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.pool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import org.zoolu.net.UdpSocket;
+
+/**
+ * Pre-bound pair of UDP sockets for a RTP stream and its RTCP control stream on the next port.
+ *
+ * <p>
+ * The sockets are owned by a {@link SocketPool} and must not be closed by their users.
+ * </p>
+ *
+ * @see SocketPool#getSockets(int)
+ */
+public final class RtpSocketPair {
+
+	private final int _port;
+
+	private final DatagramChannel _rtpChannel;
+
+	private final DatagramChannel _rtcpChannel;
+
+	private final UdpSocket _rtpSocket;
+
+	private final UdpSocket _rtcpSocket;
+
+	private RtpSocketPair(int port, DatagramChannel rtpChannel, DatagramChannel rtcpChannel) {
+		_port = port;
+		_rtpChannel = rtpChannel;
+		_rtcpChannel = rtcpChannel;
+		_rtpSocket = new UdpSocket(rtpChannel.socket());
+		_rtcpSocket = new UdpSocket(rtcpChannel.socket());
+	}
+
+	/**
+	 * Binds a new {@link RtpSocketPair}.
+	 *
+	 * @param port
+	 *        The RTP port, RTCP uses the port <code>port + 1</code>.
+	 * @param receiveBuffer
+	 *        The receive buffer size of both sockets, or <code>0</code> for the system default.
+	 * @return The bound sockets.
+	 * @throws IOException
+	 *         If one of the ports cannot be bound.
+	 */
+	public static RtpSocketPair bind(int port, int receiveBuffer) throws IOException {
+		DatagramChannel rtp = open(port, receiveBuffer);
+		try {
+			return new RtpSocketPair(port, rtp, open(port + 1, receiveBuffer));
+		} catch (IOException ex) {
+			rtp.close();
+			throw ex;
+		}
+	}
+
+	private static DatagramChannel open(int port, int receiveBuffer) throws IOException {
+		DatagramChannel channel = DatagramChannel.open();
+		try {
+			if (receiveBuffer > 0) {
+				channel.setOption(StandardSocketOptions.SO_RCVBUF, Integer.valueOf(receiveBuffer));
+			}
+			channel.bind(new InetSocketAddress(port));
+			return channel;
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * The RTP port.
+	 */
+	public int getPort() {
+		return _port;
+	}
+
+	/**
+	 * The socket for RTP packets.
+	 */
+	public UdpSocket getRtpSocket() {
+		return _rtpSocket;
+	}
+
+	/**
+	 * The socket for RTCP packets bound to {@link #getPort()} + 1.
+	 */
+	public UdpSocket getRtcpSocket() {
+		return _rtcpSocket;
+	}
+
+	/**
+	 * Whether both sockets are still open.
+	 */
+	boolean isOpen() {
+		return _rtpChannel.isOpen() && _rtcpChannel.isOpen();
+	}
+
+	/**
+	 * Discards packets that have arrived after the last use, and resets the socket timeouts.
+	 *
+	 * @param buffer
+	 *        A buffer for reading discarded packets.
+	 */
+	void reset(ByteBuffer buffer) throws IOException {
+		drain(_rtpChannel, buffer);
+		drain(_rtcpChannel, buffer);
+		_rtpSocket.setSoTimeout(0);
+		_rtcpSocket.setSoTimeout(0);
+	}
+
+	private static void drain(DatagramChannel channel, ByteBuffer buffer) throws IOException {
+		channel.configureBlocking(false);
+		try {
+			do {
+				buffer.clear();
+			} while (channel.receive(buffer) != null);
+		} finally {
+			channel.configureBlocking(true);
+		}
+	}
+
+	/**
+	 * Closes both sockets.
+	 */
+	void close() {
+		try {
+			_rtpChannel.close();
+		} catch (IOException ex) {
+			// Ignore.
+		}
+		try {
+			_rtcpChannel.close();
+		} catch (IOException ex) {
+			// Ignore.
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "rtp:" + _port + "/rtcp:" + (_port + 1);
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.pool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link PortPool} that keeps pre-bound RTP/RTCP socket pairs and recycles them across calls.
+ *
+ * <p>
+ * Each allocated port is the (even) RTP port of a {@link RtpSocketPair} whose RTCP socket is bound
+ * to the next port. This removes binding and closing sockets from call setup and hangup. Ports
+ * that cannot be bound, e.g. because they are in use by another process, are skipped.
+ * </p>
+ *
+ * <p>
+ * Released ports are appended to the end of the free list, so that a socket is reused as late as
+ * possible. Packets that still arrive for a former call are discarded before the socket is
+ * handed out again.
+ * </p>
+ */
+public class SocketPool extends PortPool {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SocketPool.class);
+
+	/** Size of the buffer for discarding stale packets. */
+	private static final int DRAIN_BUFFER = 2048;
+
+	private final int _receiveBuffer;
+
+	private final Map<Integer, RtpSocketPair> _sockets = new HashMap<>();
+
+	private final ArrayDeque<RtpSocketPair> _free = new ArrayDeque<>();
+
+	private final ByteBuffer _drainBuffer = ByteBuffer.allocate(DRAIN_BUFFER);
+
+	/**
+	 * Creates a {@link SocketPool} and binds all its sockets.
+	 *
+	 * @param firstPort
+	 *        The first port of the range, rounded up to an even port.
+	 * @param portCnt
+	 *        The number of ports in the range, each socket pair uses two of them.
+	 * @param receiveBuffer
+	 *        The receive buffer size of the sockets, or <code>0</code> for the system default.
+	 */
+	public SocketPool(int firstPort, int portCnt, int receiveBuffer) {
+		// Ports are managed by this pool, not by the super class.
+		super(firstPort, 0);
+		_receiveBuffer = receiveBuffer;
+
+		int end = firstPort + portCnt;
+		int skipped = 0;
+		for (int port = (firstPort + 1) & ~1; port + 1 < end; port += 2) {
+			try {
+				RtpSocketPair pair = RtpSocketPair.bind(port, receiveBuffer);
+				_sockets.put(Integer.valueOf(port), pair);
+				_free.add(pair);
+			} catch (IOException ex) {
+				LOG.debug("Skipping media port {}: {}", port, ex.getMessage());
+				skipped++;
+			}
+		}
+		if (skipped > 0) {
+			LOG.warn("Skipped {} media ports in range {}-{} that could not be bound.", skipped, firstPort, end - 1);
+		}
+	}
+
+	@Override
+	public synchronized boolean isAvailable() {
+		return !_free.isEmpty();
+	}
+
+	@Override
+	public synchronized int allocate() {
+		while (true) {
+			RtpSocketPair pair = _free.poll();
+			if (pair == null) {
+				EXHAUSTED.inc();
+				throw new Exhausted("No more media sockets available.");
+			}
+
+			if (!pair.isOpen()) {
+				// Closed by its former user, bind again.
+				pair.close();
+				pair = rebind(pair.getPort());
+				if (pair == null) {
+					continue;
+				}
+			}
+
+			try {
+				pair.reset(_drainBuffer);
+			} catch (IOException ex) {
+				LOG.warn("Dropping media sockets {}: {}", pair, ex.getMessage());
+				pair.close();
+				_sockets.remove(Integer.valueOf(pair.getPort()));
+				continue;
+			}
+			return pair.getPort();
+		}
+	}
+
+	private RtpSocketPair rebind(int port) {
+		Integer key = Integer.valueOf(port);
+		try {
+			RtpSocketPair result = RtpSocketPair.bind(port, _receiveBuffer);
+			_sockets.put(key, result);
+			return result;
+		} catch (IOException ex) {
+			LOG.warn("Dropping media port {} that can no longer be bound: {}", port, ex.getMessage());
+			_sockets.remove(key);
+			return null;
+		}
+	}
+
+	@Override
+	public synchronized void release(int port) {
+		RtpSocketPair pair = _sockets.get(Integer.valueOf(port));
+		if (pair == null) {
+			throw new IllegalStateException("The released port is not among the ports of this pool: " + port);
+		}
+		assert !_free.contains(pair) : "The released port is available from this pool: " + port;
+		_free.add(pair);
+	}
+
+	@Override
+	public synchronized RtpSocketPair getSockets(int port) {
+		return _sockets.get(Integer.valueOf(port));
+	}
+
+	/**
+	 * The number of socket pairs managed by this pool.
+	 */
+	public synchronized int getSize() {
+		return _sockets.size();
+	}
+
+	/**
+	 * Closes all sockets of this pool.
+	 */
+	public synchronized void close() {
+		for (RtpSocketPair pair : _sockets.values()) {
+			pair.close();
+		}
+		_sockets.clear();
+		_free.clear();
+	}
+
+}
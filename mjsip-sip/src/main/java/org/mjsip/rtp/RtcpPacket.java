@@ -139,13 +139,13 @@ public class RtcpPacket {
 	/** Gets the RTCP packet length.
 	  * @return the RTCP packet length including the header and any padding */   
 	public int getPacketLength() {
-		return (BufferUtil.getInt(buffer,2,4)+1)*4;
+		return (BufferUtil.getInt(buffer,offset+2,offset+4)+1)*4;
 	}
 
 	/** Sets the RTCP packet length.
 	  * @param len the RTCP packet length including the header and any padding */   
 	public void setPacketLength(int len) {
-		BufferUtil.setInt(len/4-1,buffer,2,4);
+		BufferUtil.setInt(len/4-1,buffer,offset+2,offset+4);
 	}
 
 }
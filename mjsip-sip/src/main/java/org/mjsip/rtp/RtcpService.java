@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.rtp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives and schedules RTCP for many {@link RtpControl}s in a single thread.
+ *
+ * <p>
+ * The RTCP channels of all registered controls are served by one {@link Selector}. The same thread
+ * acts as timer for sending reports: Each control computes its next report time according to RFC
+ * 3550, section 6.3, and the service waits in the selector until the earliest report is due. This
+ * replaces the receiver thread per call, and the report sending from within the RTP sender loop.
+ * </p>
+ *
+ * @see #getDefault()
+ */
+public final class RtcpService {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RtcpService.class);
+
+	private static final Counter RECEIVED = Metrics.global().counter("rtcp_packets_received_total",
+			"RTCP compound packets received.");
+
+	/** Maximum time in milliseconds to wait for the service thread to release a channel. */
+	private static final long RELEASE_TIMEOUT = 2000;
+
+	private static RtcpService _default;
+
+	private final Selector _selector;
+
+	private final Thread _thread;
+
+	/** Tasks to execute in the service thread. */
+	private final ConcurrentLinkedQueue<Runnable> _tasks = new ConcurrentLinkedQueue<>();
+
+	/** Registered controls ordered by their next report time, only accessed by the service thread. */
+	private final PriorityQueue<RtpControl> _schedule = new PriorityQueue<>(
+			(a, b) -> Long.compare(a.next_report, b.next_report));
+
+	private final ByteBuffer _buffer = ByteBuffer.allocate(2048);
+
+	private volatile boolean _stopped;
+
+	/**
+	 * Creates and starts a {@link RtcpService}.
+	 */
+	public RtcpService() throws IOException {
+		_selector = Selector.open();
+		_thread = new Thread(this::run);
+		_thread.setName("RTCP");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * The service shared by all {@link RtpControl}s that are not explicitly assigned to another
+	 * service.
+	 *
+	 * <p>
+	 * If the service thread of the current default service has ended, a new service is started.
+	 * </p>
+	 */
+	public static synchronized RtcpService getDefault() throws IOException {
+		if (_default == null || !_default.isRunning()) {
+			_default = new RtcpService();
+		}
+		return _default;
+	}
+
+	private static synchronized void clearDefault(RtcpService service) {
+		if (_default == service) {
+			_default = null;
+		}
+	}
+
+	/**
+	 * Whether the service thread accepts new controls.
+	 */
+	public boolean isRunning() {
+		return !_stopped && _thread.isAlive();
+	}
+
+	/**
+	 * Starts receiving on the channel of the given control, if it has one, and schedules its
+	 * reports.
+	 */
+	void register(RtpControl control) {
+		execute(() -> {
+			if (control.channel != null) {
+				try {
+					control.channel.configureBlocking(false);
+					control.channel.register(_selector, SelectionKey.OP_READ, control);
+				} catch (IOException ex) {
+					LOG.warn("Cannot receive RTCP on {}.", control.channel, ex);
+				}
+			}
+			control.scheduleReport(System.nanoTime());
+			_schedule.add(control);
+		});
+	}
+
+	/**
+	 * Stops serving the given control.
+	 *
+	 * <p>
+	 * When this method returns, the channel is no longer registered with the selector and is in
+	 * blocking mode again, so that it can be reused, e.g. by a socket pool.
+	 * </p>
+	 */
+	void unregister(RtpControl control) {
+		if (Thread.currentThread() == _thread) {
+			release(control);
+			return;
+		}
+		if (!_thread.isAlive()) {
+			// Closing the selector has already deregistered the channel.
+			try {
+				if (control.channel != null && control.channel.isOpen()) {
+					control.channel.configureBlocking(true);
+				}
+			} catch (IOException ex) {
+				LOG.warn("Cannot release RTCP channel {}.", control.channel, ex);
+			}
+			return;
+		}
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		execute(() -> {
+			release(control);
+			done.complete(null);
+		});
+		try {
+			done.get(RELEASE_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException ex) {
+			LOG.warn("RTCP channel {} not released.", control.channel, ex);
+		}
+	}
+
+	/**
+	 * Stops the service thread.
+	 */
+	public void halt() {
+		_stopped = true;
+		_selector.wakeup();
+	}
+
+	private void execute(Runnable task) {
+		_tasks.add(task);
+		_selector.wakeup();
+	}
+
+	private void release(RtpControl control) {
+		_schedule.remove(control);
+		if (control.channel == null) {
+			return;
+		}
+		SelectionKey key = control.channel.keyFor(_selector);
+		if (key == null) {
+			return;
+		}
+		key.cancel();
+		try {
+			// Completes the deregistration of the cancelled key.
+			_selector.selectNow();
+			if (control.channel.isOpen()) {
+				control.channel.configureBlocking(true);
+			}
+		} catch (IOException ex) {
+			LOG.warn("Cannot release RTCP channel {}.", control.channel, ex);
+		}
+	}
+
+	private void run() {
+		try {
+			while (!_stopped) {
+				for (Runnable task; (task = _tasks.poll()) != null;) {
+					try {
+						task.run();
+					} catch (RuntimeException ex) {
+						LOG.warn("RTCP task failed.", ex);
+					}
+				}
+
+				long now = System.nanoTime();
+				for (RtpControl next; (next = _schedule.peek()) != null && next.next_report - now <= 0;) {
+					_schedule.poll();
+					try {
+						next.onReportTime(now);
+					} catch (RuntimeException ex) {
+						LOG.warn("Sending RTCP report failed.", ex);
+					}
+					_schedule.add(next);
+				}
+
+				RtpControl next = _schedule.peek();
+				long timeout = next == null ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.next_report - now));
+				if (_selector.select(timeout) > 0) {
+					receive();
+				}
+			}
+		} catch (IOException | ClosedSelectorException ex) {
+			LOG.error("RTCP service terminated.", ex);
+		} finally {
+			_stopped = true;
+			clearDefault(this);
+			try {
+				_selector.close();
+			} catch (IOException ex) {
+				// Ignore.
+			}
+		}
+	}
+
+	private void receive() {
+		ByteBuffer buffer = _buffer;
+		for (Iterator<SelectionKey> it = _selector.selectedKeys().iterator(); it.hasNext();) {
+			SelectionKey key = it.next();
+			it.remove();
+			RtpControl control = (RtpControl) key.attachment();
+			if (!key.isValid()) {
+				continue;
+			}
+			try {
+				while (true) {
+					buffer.clear();
+					InetSocketAddress source = (InetSocketAddress) control.channel.receive(buffer);
+					if (source == null) {
+						break;
+					}
+					RECEIVED.inc();
+					control.onReceivedDatagram(buffer.array(), buffer.position(), source);
+				}
+			} catch (IOException ex) {
+				LOG.debug("Receiving RTCP on {} failed.", control.channel, ex);
+			} catch (RuntimeException ex) {
+				LOG.warn("Processing RTCP on {} failed.", control.channel, ex);
+			}
+		}
+	}
+
+}
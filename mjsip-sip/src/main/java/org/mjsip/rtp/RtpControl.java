@@ -23,9 +23,19 @@ package org.mjsip.rtp;
 
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import org.mjsip.media.RtpControlledReceiver;
 import org.mjsip.media.RtpControlledSender;
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
+import org.slf4j.LoggerFactory;
 import org.zoolu.net.IpAddress;
 import org.zoolu.net.SocketAddress;
 import org.zoolu.net.UdpSocket;
@@ -34,42 +44,116 @@ import org.zoolu.util.ByteUtils;
 
 /**
  * RtpControl sends and receives RTP control (RTCP) packets.
+ * <p>
+ * Incoming packets are received and reports are sent by the shared {@link RtcpService}, which serves
+ * the RTCP sockets of all calls from a single thread. Reports are sent in randomized intervals
+ * scaled by the session bandwidth and the number of participants, as defined in RFC 3550.
+ * SR/RR and SDES packets are built into a buffer that is reused for each report.
  */
 public class RtpControl implements RtcpProviderListener {
 	
-	/** Debug mode */
-	public static final boolean DEBUG=true;
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RtpControl.class);
+
+	private static final Counter REPORTS = Metrics.global().counter("rtcp_reports_sent_total",
+			"RTCP compound reports sent.");
 
 	/** In case of no sender RTP stream, whether the SSRC of RR packets is set equal to the SSRC of the received RTP stream */
 	public static final boolean DEBUG_RR_SSRC_SYMMETRIC=true;
 
-	/** RTCP */
-	RtcpProvider rtcp;
+	/** Default session bandwidth in bytes per second (64 kbit/s) */
+	public static final int DEFAULT_SESSION_BANDWIDTH=8000;
+
+	/** Fraction of the session bandwidth used for RTCP (RFC 3550, section 6.2) */
+	static final double RTCP_BANDWIDTH_FRACTION=0.05;
+
+	/** Fraction of the RTCP bandwidth shared by active senders (RFC 3550, section 6.2) */
+	static final double RTCP_SENDER_BANDWIDTH_FRACTION=0.25;
+
+	/** Minimum report interval in seconds (RFC 3550, section 6.2) */
+	static final double RTCP_MIN_TIME=5;
+
+	/** Compensation for the randomized interval converging below the average (RFC 3550, section 6.3.1) */
+	static final double COMPENSATION=Math.E-1.5;
+
+	/** Size of the UDP and IP headers that count for the average RTCP packet size */
+	static final int UDP_IP_HEADER_LEN=28;
+
+	/** RTCP header length */
+	private static final int HDR_LEN=8;
+
+	/** Sender info length */
+	private static final int SENDER_INFO_LEN=20;
+
+	/** Report block length */
+	private static final int REPORT_BLOCK_LEN=24;
+
+	/** RTCP service receiving packets and scheduling reports */
+	RtcpService service;
+
+	/** RTCP channel served by the RTCP service, or <i>null</i> if a RTCP provider is used */
+	DatagramChannel channel=null;
+
+	/** RTCP provider for a socket that is not backed by a channel */
+	RtcpProvider rtcp=null;
 
 	/** Whether the UDP socket has been created here */
 	boolean udp_socket_is_local;   
 
+	/** Remote destination socket address */
+	volatile InetSocketAddress remote_dest_soaddr;
+
+	/** Whether outgoing RTCP packets are sent to the source address of incoming RTCP packets */
+	volatile boolean symmetric_rtcp=false;
+
 	/** Start timestamp */
 	long start_timestamp=-1;
 
 	/** RTP sender */
-	RtpControlledSender rtp_sender=null;
+	volatile RtpControlledSender rtp_sender=null;
 
 	/** RTP receiver */
-	RtpControlledReceiver rtp_receiver=null;
+	volatile RtpControlledReceiver rtp_receiver=null;
 
 	/** Canonical end-point identifier (CNAME) */
 	String cname;
-	
+
+	/** Encoded CNAME, or <i>null</i> */
+	byte[] cname_bytes;
+
+	/** Buffer for building reports, reused for each report */
+	byte[] report_buffer;
+
+	/** Session bandwidth in bytes per second */
+	volatile int session_bandwidth=DEFAULT_SESSION_BANDWIDTH;
+
+	/** Time (System.nanoTime()) of the next report, managed by the RTCP service */
+	long next_report;
+
+	/** Average compound RTCP packet size including UDP and IP headers, 0 before the first packet */
+	double avg_rtcp_size=0;
+
+	/** Whether no report has been sent yet */
+	boolean initial=true;
+
+	/** Whether RTCP packets have been received from the remote participant */
+	volatile boolean remote_member=false;
+
+	/** Whether a SR has been received since the last report */
+	volatile boolean remote_sender=false;
+
+	/** Packet count of the RTP sender at the last report */
+	long last_packet_count=0;
+
+	/** Highest sequence number of the RTP receiver at the last report */
+	long last_highest_sqn=0;
+
 
 	/** Creates a new RtpControl.
 	  * @param cname canonical end-point identifier (CNAME)
 	  * @param local_port local RTCP port */
 	public RtpControl(String cname, int local_port) throws IOException {
-		if (DEBUG) System.out.println("DEBUG: RtpControl: RtpControl("+local_port+")");
-		this.cname=cname;
-		rtcp=new RtcpProvider(new UdpSocket(local_port),this);
-		udp_socket_is_local=true;
+		LOG.debug("RtpControl({})", local_port);
+		init(cname,openChannel(local_port),true,null);
 	}
 
 
@@ -79,21 +163,17 @@ public class RtpControl implements RtcpProviderListener {
 	  * @param remote_addr the remote RTCP address
 	  * @param remote_port the remote RTCP port */
 	public RtpControl(String cname, int local_port, String remote_addr, int remote_port) throws IOException {
-		if (DEBUG) System.out.println("DEBUG: RtpControl: RtpControl("+local_port+","+remote_addr+":"+remote_port+")");
-		this.cname=cname;
-		rtcp=new RtcpProvider(new UdpSocket(local_port),new SocketAddress(IpAddress.getByName(remote_addr),remote_port),this);
-		udp_socket_is_local=true;
+		LOG.debug("RtpControl({},{}:{})", local_port, remote_addr, remote_port);
+		init(cname,openChannel(local_port),true,new InetSocketAddress(InetAddress.getByName(remote_addr),remote_port));
 	}
 
 
 	/** Creates a new RtpControl.
 	  * @param cname canonical end-point identifier (CNAME)
 	  * @param local_socket local UDP socket for RTCP */
-	public RtpControl(String cname, UdpSocket local_socket) {
-		if (DEBUG) System.out.println("DEBUG: RtpControl: RtpControl("+local_socket+")");
-		this.cname=cname;
-		rtcp=new RtcpProvider(local_socket,this);
-		udp_socket_is_local=false;
+	public RtpControl(String cname, UdpSocket local_socket) throws IOException {
+		LOG.debug("RtpControl({})", local_socket);
+		init(cname,local_socket,null);
 	}
 
 
@@ -102,11 +182,58 @@ public class RtpControl implements RtcpProviderListener {
 	  * @param local_socket local UDP socket for RTCP
 	  * @param remote_addr the remote RTCP address
 	  * @param remote_port the remote RTCP port */
-	public RtpControl(String cname, UdpSocket local_socket, String remote_addr, int remote_port) throws java.net.UnknownHostException {
-		if (DEBUG) System.out.println("DEBUG: RtpControl: RtpControl("+local_socket+","+remote_addr+":"+remote_port+")");
+	public RtpControl(String cname, UdpSocket local_socket, String remote_addr, int remote_port) throws IOException {
+		LOG.debug("RtpControl({},{}:{})", local_socket, remote_addr, remote_port);
+		init(cname,local_socket,new InetSocketAddress(InetAddress.getByName(remote_addr),remote_port));
+	}
+
+
+	/** Inits the RtpControl for a given socket.
+	  * Sockets that are not backed by a channel are served by a RTCP provider with its own receiver thread. */
+	private void init(String cname, UdpSocket local_socket, InetSocketAddress remote_soaddr) throws IOException {
+		DatagramChannel channel=local_socket.getChannel();
+		if (channel!=null) {
+			init(cname,channel,false,remote_soaddr);
+		}
+		else {
+			SocketAddress remote_dest=(remote_soaddr!=null)? new SocketAddress(new IpAddress(remote_soaddr.getAddress()),remote_soaddr.getPort()) : null;
+			rtcp=new RtcpProvider(local_socket,remote_dest,this);
+			init(cname,null,false,remote_soaddr);
+		}
+	}
+
+
+	/** Inits the RtpControl. */
+	private void init(String cname, DatagramChannel channel, boolean udp_socket_is_local, InetSocketAddress remote_soaddr) throws IOException {
 		this.cname=cname;
-		rtcp=new RtcpProvider(local_socket,new SocketAddress(IpAddress.getByName(remote_addr),remote_port),this);
-		udp_socket_is_local=false;
+		this.cname_bytes=(cname!=null)? cname.getBytes(StandardCharsets.UTF_8) : null;
+		int sdes_len=(cname_bytes!=null)? HDR_LEN+((2+cname_bytes.length+1+3)&~3) : 0;
+		this.report_buffer=new byte[HDR_LEN+SENDER_INFO_LEN+REPORT_BLOCK_LEN+sdes_len];
+		this.channel=channel;
+		this.udp_socket_is_local=udp_socket_is_local;
+		this.remote_dest_soaddr=remote_soaddr;
+		try {
+			service=RtcpService.getDefault();
+		}
+		catch (IOException e) {
+			if (udp_socket_is_local) channel.close();
+			throw e;
+		}
+		service.register(this);
+	}
+
+
+	/** Opens a RTCP channel bound to the given local port. */
+	private static DatagramChannel openChannel(int local_port) throws IOException {
+		DatagramChannel channel=DatagramChannel.open();
+		try {
+			channel.bind(new InetSocketAddress(local_port));
+			return channel;
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
 	}
 
 
@@ -126,7 +253,14 @@ public class RtpControl implements RtcpProviderListener {
 	  * In symmetric RTCP mode outgoing RTCP packets are sent to the source address of the incoming RTCP packets. 
 	  * @param symmetric_rtcp whether working in symmetric RTCP mode */
 	public void setSymmetricRtcpMode(boolean symmetric_rtcp) {
-		rtcp.setSymmetricRtcpMode(symmetric_rtcp);
+		this.symmetric_rtcp=symmetric_rtcp;
+		if (rtcp!=null) rtcp.setSymmetricRtcpMode(symmetric_rtcp);
+	}
+
+	/** Sets the session bandwidth used for computing the report interval.
+	  * @param session_bandwidth the bandwidth of the RTP session in bytes per second */
+	public void setSessionBandwidth(int session_bandwidth) {
+		this.session_bandwidth=session_bandwidth;
 	}
 
 	/** Sets the RTP sender. */
@@ -144,17 +278,42 @@ public class RtpControl implements RtcpProviderListener {
 	/** From RtcpProviderListener. When a new RTCP packet is received. */
 	@Override
 	public void onReceivedPacket(RtcpProvider rtcp, RtcpPacket rtcp_packet) {
-		if (DEBUG) System.out.println("\nDEBUG: RtpControl: new RTCP packet received: "+rtcp_packet.getPacketLength()+"B");
-		if (DEBUG) System.out.println("DEBUG: RtpControl: bytes: "+ByteUtils.asHex(rtcp_packet.getPacketBuffer(),rtcp_packet.getPacketOffset(),rtcp_packet.getPacketLength()));
-		if (DEBUG) System.out.println("DEBUG: RtpControl: type: "+rtcp_packet.getPayloadType());
+		remote_member=true;
+		processPacket(rtcp_packet);
+	}
+
+
+	/** When a compound RTCP packet is received by the RTCP service.
+	  * @param buf buffer containing the packet
+	  * @param len the packet length
+	  * @param source_soaddr the address the packet was sent from */
+	void onReceivedDatagram(byte[] buf, int len, InetSocketAddress source_soaddr) {
+		remote_member=true;
+		if (symmetric_rtcp) remote_dest_soaddr=source_soaddr;
+		updateAverageSize(len);
+		for (int off=0; off+HDR_LEN<=len; ) {
+			RtcpPacket rtcp_packet=new RtcpPacket(buf,off);
+			int packet_len=rtcp_packet.getPacketLength();
+			if (off+packet_len>len) break;
+			processPacket(rtcp_packet);
+			off+=packet_len;
+		}
+	}
+
+
+	/** Processes a received RTCP packet. */
+	private void processPacket(RtcpPacket rtcp_packet) {
+		if (LOG.isTraceEnabled()) {
+			LOG.trace("RTCP packet received: {}B, type {}: {}", rtcp_packet.getPacketLength(), rtcp_packet.getPayloadType(),
+					ByteUtils.asHex(rtcp_packet.getPacketBuffer(),rtcp_packet.getPacketOffset(),rtcp_packet.getPacketLength()));
+		}
 		if (rtcp_packet.getPayloadType()==RtcpPacket.PT_SR) {
+			remote_sender=true;
 			SrRtcpPacket sr_packet=new SrRtcpPacket(rtcp_packet);
 			SrRtcpPacket.SenderInfo si=sr_packet.getSenderInfo();
-			if (DEBUG) System.out.println("DEBUG: RtpControl: SR: packet count: "+si.getPacketCount());
-			if (DEBUG) System.out.println("DEBUG: RtpControl: SR: octect count: "+si.getOctectCount());
 			long timestamp=si.getRtpTimestamp();
 			if (start_timestamp<0) start_timestamp=timestamp;
-			if (DEBUG) System.out.println("DEBUG: RtpControl: SR: timestamp: "+timestamp+" ("+(timestamp-start_timestamp)+")");
+			LOG.debug("SR: packet count: {}, octect count: {}, timestamp: {} ({})", si.getPacketCount(), si.getOctectCount(), timestamp, timestamp-start_timestamp);
 		}
 	}
 
@@ -169,58 +328,212 @@ public class RtpControl implements RtcpProviderListener {
 	/** Sends a RTCP packet. */
 	public void send(RtcpPacket rtcp_packet) {
 		try {
-			rtcp.send(rtcp_packet);
+			send(rtcp_packet.getPacketBuffer(),rtcp_packet.getPacketOffset(),rtcp_packet.getPacketLength());
 		}
 		catch (IOException e) {
-			e.printStackTrace();
+			LOG.info("Sending RTCP packet failed.", e);
 		}
 	}
 
 
-	/** Sends a RTCP report (SR or RR). */
+	/** Sends a RTCP report (SR or RR) immediately.
+	  * Reports are sent periodically by the RTCP service, this method is only needed for sending additional reports. */
 	public void sendReport() {
-		if (DEBUG) System.out.println("DEBUG: sendReport()");
 		try {
-			long ssrc=(rtp_sender!=null)? rtp_sender.getSSRC() : 0;
-			SrRtcpPacket.SenderInfo si=(rtp_sender!=null)? new SrRtcpPacket.SenderInfo(System.currentTimeMillis(),rtp_sender.getRtpTimestamp(),rtp_sender.getPacketCounter(),rtp_sender.getOctectCounter()) : null;
-			if (DEBUG) System.out.println("DEBUG: sendReport(): sender info: "+si);
-			RrRtcpPacket.ReportBlock rb=(rtp_receiver!=null)? new RrRtcpPacket.ReportBlock(rtp_receiver.getSSRC(),rtp_receiver.getFractionLost(),rtp_receiver.getCumulativePacketLost(),rtp_receiver.getHighestSqnReceived(),rtp_receiver.getInterarrivalJitter(),rtp_receiver.getLSR(),rtp_receiver.getDLSR()) : null;
-			
-			if (si!=null) {
-				SrRtcpPacket sr=(rb!=null)? new SrRtcpPacket(ssrc,si,new RrRtcpPacket.ReportBlock[]{rb}) : new SrRtcpPacket(ssrc,si);
-				if (cname==null) rtcp.send(sr);
-				else {
-					SdesRtcpPacket sdes=new SdesRtcpPacket(ssrc,cname);
-					RtcpCompoundPacket cp=new RtcpCompoundPacket(new RtcpPacket[]{ sr, sdes });
-					rtcp.send(cp);
-				}
-			}
-			else
-			if (rb!=null) {
-				long rr_ssrc=(DEBUG_RR_SSRC_SYMMETRIC)? rb.getSSRC(): 0;
-				RrRtcpPacket rr=new RrRtcpPacket(rr_ssrc,new RrRtcpPacket.ReportBlock[]{rb});
-				if (cname==null) rtcp.send(rr);
-				else {
-					SdesRtcpPacket sdes=new SdesRtcpPacket(rr_ssrc,cname);
-					RtcpCompoundPacket cp=new RtcpCompoundPacket(new RtcpPacket[]{ rr, sdes });
-					rtcp.send(cp);
-				}
+			report();
+		}
+		catch (IOException e) {
+			LOG.info("Sending RTCP report failed.", e);
+		}
+	}
+
+
+	/** Sends a RTCP report (SR or RR, followed by SDES, if a CNAME is set).
+	  * @return the length of the sent compound packet, or 0 if there was nothing to report */
+	private synchronized int report() throws IOException {
+		int len=buildReport(report_buffer);
+		if (len>0) {
+			send(report_buffer,0,len);
+			REPORTS.inc();
+		}
+		return len;
+	}
+
+
+	/** Builds a compound RTCP report in the given buffer.
+	  * @return the report length, or 0 if there is neither a RTP sender nor a RTP receiver */
+	int buildReport(byte[] buf) {
+		RtpControlledSender sender=rtp_sender;
+		RtpControlledReceiver receiver=rtp_receiver;
+		if (sender==null && receiver==null) return 0;
+
+		int rc=(receiver!=null)? 1 : 0;
+		long ssrc;
+		int len;
+		if (sender!=null) {
+			ssrc=sender.getSSRC();
+			len=HDR_LEN+SENDER_INFO_LEN+REPORT_BLOCK_LEN*rc;
+			setHeader(buf,0,rc,RtcpPacket.PT_SR,len,ssrc);
+			long ntp_millis=System.currentTimeMillis()-NtpTimeStamp.NTP_TIME_0;
+			BufferUtil.setLong((ntp_millis/1000)&0xffffffffL,buf,8,12);
+			BufferUtil.setLong(((ntp_millis%1000)<<32)/1000,buf,12,16);
+			BufferUtil.setLong(sender.getRtpTimestamp(),buf,16,20);
+			BufferUtil.setLong(sender.getPacketCounter(),buf,20,24);
+			BufferUtil.setLong(sender.getOctectCounter(),buf,24,28);
+		}
+		else {
+			ssrc=(DEBUG_RR_SSRC_SYMMETRIC)? receiver.getSSRC() : 0;
+			len=HDR_LEN+REPORT_BLOCK_LEN;
+			setHeader(buf,0,rc,RtcpPacket.PT_RR,len,ssrc);
+		}
+		if (receiver!=null) {
+			int off=len-REPORT_BLOCK_LEN;
+			BufferUtil.setLong(receiver.getSSRC(),buf,off,off+4);
+			BufferUtil.setInt(receiver.getFractionLost(),buf,off+4,off+5);
+			BufferUtil.setLong(receiver.getCumulativePacketLost(),buf,off+5,off+8);
+			BufferUtil.setLong(receiver.getHighestSqnReceived(),buf,off+8,off+12);
+			BufferUtil.setLong(receiver.getInterarrivalJitter(),buf,off+12,off+16);
+			BufferUtil.setLong(receiver.getLSR(),buf,off+16,off+20);
+			BufferUtil.setLong(receiver.getDLSR(),buf,off+20,off+24);
+		}
+		if (cname_bytes!=null) {
+			// SDES with a single chunk containing the CNAME item, terminated and padded with null octets
+			int off=len;
+			int sdes_len=HDR_LEN+((2+cname_bytes.length+1+3)&~3);
+			setHeader(buf,off,1,RtcpPacket.PT_SDES,sdes_len,ssrc);
+			buf[off+8]=(byte)SdesRtcpPacket.ITEM_CNAME;
+			buf[off+9]=(byte)cname_bytes.length;
+			System.arraycopy(cname_bytes,0,buf,off+10,cname_bytes.length);
+			for (int i=off+10+cname_bytes.length; i<off+sdes_len; i++) buf[i]=0;
+			len+=sdes_len;
+		}
+		return len;
+	}
+
+
+	/** Sets the common RTCP header followed by the SSRC. */
+	private static void setHeader(byte[] buf, int off, int count, int pt, int len, long ssrc) {
+		buf[off]=(byte)(0x80 | count);
+		buf[off+1]=(byte)pt;
+		BufferUtil.setInt(len/4-1,buf,off+2,off+4);
+		BufferUtil.setLong(ssrc,buf,off+4,off+8);
+	}
+
+
+	/** Sends a RTCP packet from the RTCP socket. */
+	private void send(byte[] buf, int off, int len) throws IOException {
+		if (rtcp!=null) {
+			rtcp.send(new RtcpCompoundPacket(buf,off,len));
+			return;
+		}
+		InetSocketAddress dest_soaddr=remote_dest_soaddr;
+		if (dest_soaddr==null) {
+			if (!symmetric_rtcp) throw new IOException("Null destination address");
+			return;
+		}
+		channel.send(ByteBuffer.wrap(buf,off,len),dest_soaddr);
+	}
+
+
+	/** Updates the average RTCP packet size (RFC 3550, section 6.3.3). */
+	private synchronized void updateAverageSize(int len) {
+		int size=len+UDP_IP_HEADER_LEN;
+		avg_rtcp_size=(avg_rtcp_size==0)? size : size/16.0+avg_rtcp_size*15/16.0;
+	}
+
+
+	/** Schedules the first report, called by the RTCP service. */
+	void scheduleReport(long now) {
+		next_report=now+nextInterval();
+	}
+
+
+	/** Sends a report and schedules the next one, called by the RTCP service when the report is due. */
+	void onReportTime(long now) {
+		try {
+			int len=report();
+			if (len>0) {
+				updateAverageSize(len);
+				initial=false;
 			}
-			
 		}
 		catch (IOException e) {
-			e.printStackTrace();
+			LOG.debug("Sending RTCP report failed.", e);
+		}
+		next_report=now+nextInterval();
+	}
+
+
+	/** Computes the time in nanoseconds until the next report. */
+	private long nextInterval() {
+		RtpControlledSender sender=rtp_sender;
+		RtpControlledReceiver receiver=rtp_receiver;
+		boolean we_sent=false;
+		if (sender!=null) {
+			long packet_count=sender.getPacketCounter();
+			we_sent=packet_count!=last_packet_count;
+			last_packet_count=packet_count;
+		}
+		boolean they_sent=remote_sender;
+		remote_sender=false;
+		if (receiver!=null) {
+			long highest_sqn=receiver.getHighestSqnReceived();
+			they_sent|=highest_sqn!=last_highest_sqn;
+			last_highest_sqn=highest_sqn;
 		}
+		int members=(remote_member || they_sent)? 2 : 1;
+		int senders=(we_sent? 1 : 0)+(they_sent? 1 : 0);
+		double avg_size=avg_rtcp_size;
+		if (avg_size==0) avg_size=UDP_IP_HEADER_LEN+report_buffer.length;
+		double interval=rtcpInterval(members,senders,session_bandwidth*RTCP_BANDWIDTH_FRACTION,we_sent,avg_size,initial,ThreadLocalRandom.current().nextDouble());
+		return (long)(interval*TimeUnit.SECONDS.toNanos(1));
+	}
+
+
+	/** Computes the RTCP report interval (RFC 3550, appendix A.7).
+	  * @param members the number of session members including this one
+	  * @param senders the number of active senders
+	  * @param rtcp_bw the target RTCP bandwidth in bytes per second
+	  * @param we_sent whether this participant has sent RTP packets since the last report
+	  * @param avg_rtcp_size the average compound RTCP packet size in bytes including UDP and IP headers
+	  * @param initial whether no report has been sent yet
+	  * @param random a random value in the range [0,1)
+	  * @return the interval in seconds */
+	static double rtcpInterval(int members, int senders, double rtcp_bw, boolean we_sent, double avg_rtcp_size, boolean initial, double random) {
+		double rtcp_min_time=initial? RTCP_MIN_TIME/2 : RTCP_MIN_TIME;
+		int n=members;
+		if (senders<=members*RTCP_SENDER_BANDWIDTH_FRACTION) {
+			if (we_sent) {
+				rtcp_bw*=RTCP_SENDER_BANDWIDTH_FRACTION;
+				n=senders;
+			}
+			else {
+				rtcp_bw*=1-RTCP_SENDER_BANDWIDTH_FRACTION;
+				n-=senders;
+			}
+		}
+		double t=avg_rtcp_size*n/rtcp_bw;
+		if (t<rtcp_min_time) t=rtcp_min_time;
+		// randomize to the range [0.5,1.5] times the calculated interval to avoid synchronization
+		t=t*(random+0.5);
+		return t/COMPENSATION;
 	}
 
 
 	/** Closes RTCP. */
 	public void halt() {
-		rtcp.halt();
+		service.unregister(this);
+		if (rtcp!=null) rtcp.halt();
+		if (channel!=null && udp_socket_is_local) {
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+				// Ignore.
+			}
+		}
 		rtp_sender=null;
 		rtp_receiver=null;
 	}
 
 }
-
-
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sdp;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.mjsip.sdp.field.MediaField;
+
+/**
+ * Memoizes the media product of {@link OfferAnswerModel#matchMedia(Vector, Vector)} for repeated
+ * offers.
+ *
+ * <p>
+ * The cache key is a normalized form of the local media and the offered media that contains only
+ * what the answer depends on: media types, transports, formats and the local <code>rtpmap</code>
+ * attributes. Ports are not part of the key, since they usually differ for each call. On a hit,
+ * the cached answer is patched with the ports of the current local media.
+ * </p>
+ *
+ * <p>
+ * Since {@link MediaDescriptor}s are mutable, the cache keeps a private copy of each answer and
+ * hands out a fresh copy on each lookup.
+ * </p>
+ */
+public class OfferAnswerCache {
+
+	/** Default maximum number of cached answers. */
+	public static final int DEFAULT_SIZE = 256;
+
+	private final Map<String, CachedAnswer> _entries;
+
+	private long _hits;
+
+	private long _misses;
+
+	/**
+	 * Creates an {@link OfferAnswerCache}.
+	 *
+	 * @param size
+	 *        The maximum number of cached answers, the least recently used answer is dropped if the
+	 *        cache is full.
+	 */
+	public OfferAnswerCache(int size) {
+		_entries = new LinkedHashMap<String, CachedAnswer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedAnswer> eldest) {
+				return size() > size;
+			}
+		};
+	}
+
+	/**
+	 * Computes the answer media for the given offer, or looks it up from a previous identical offer.
+	 *
+	 * @param localDescriptors
+	 *        The local media capabilities.
+	 * @param remoteDescriptors
+	 *        The offered media.
+	 * @return The answered media, owned by the caller.
+	 */
+	public Vector<MediaDescriptor> matchMedia(Vector<MediaDescriptor> localDescriptors,
+			Vector<MediaDescriptor> remoteDescriptors) {
+		String key = key(localDescriptors, remoteDescriptors);
+
+		CachedAnswer entry;
+		synchronized (this) {
+			entry = _entries.get(key);
+			if (entry != null) {
+				_hits++;
+			} else {
+				_misses++;
+			}
+		}
+		if (entry == null) {
+			entry = new CachedAnswer(localDescriptors, OfferAnswerModel.matchMedia(localDescriptors, remoteDescriptors));
+			synchronized (this) {
+				_entries.put(key, entry);
+			}
+		}
+		return entry.withPorts(localDescriptors);
+	}
+
+	/**
+	 * The number of answers served from the cache.
+	 */
+	public synchronized long getHits() {
+		return _hits;
+	}
+
+	/**
+	 * The number of answers that had to be computed.
+	 */
+	public synchronized long getMisses() {
+		return _misses;
+	}
+
+	/**
+	 * Drops all cached answers.
+	 */
+	public synchronized void clear() {
+		_entries.clear();
+	}
+
+	private static String key(List<MediaDescriptor> local, List<MediaDescriptor> remote) {
+		StringBuilder result = new StringBuilder(128);
+		for (MediaDescriptor descriptor : local) {
+			appendMedia(result, descriptor.getMediaField());
+			for (AttributeField attribute : descriptor.getAttributes("rtpmap")) {
+				result.append(';').append(attribute.getAttributeValue());
+			}
+			result.append('\n');
+		}
+		result.append('\n');
+		for (MediaDescriptor descriptor : remote) {
+			appendMedia(result, descriptor.getMediaField());
+			result.append('\n');
+		}
+		return result.toString();
+	}
+
+	private static void appendMedia(StringBuilder out, MediaField media) {
+		out.append(media.getMediaType()).append(' ').append(media.getTransport());
+		for (String format : media.getFormatList()) {
+			out.append(' ').append(format);
+		}
+	}
+
+	/**
+	 * A cached answer together with the local media each answered media was taken from.
+	 */
+	private static final class CachedAnswer {
+
+		private final Vector<MediaDescriptor> _answer;
+
+		/** Index of the local media for each answered media. */
+		private final int[] _local;
+
+		/** Local ports the answer was computed with. */
+		private final int[] _ports;
+
+		CachedAnswer(List<MediaDescriptor> local, Vector<MediaDescriptor> answer) {
+			_answer = copy(answer);
+			_local = new int[answer.size()];
+			_ports = new int[answer.size()];
+
+			// Answered media are taken from the local media of the same type in local order.
+			boolean[] used = new boolean[local.size()];
+			for (int n = 0; n < answer.size(); n++) {
+				String type = answer.get(n).getMediaField().getMediaType();
+				for (int k = 0; k < local.size(); k++) {
+					if (!used[k] && local.get(k).getMediaField().getMediaType().equals(type)) {
+						used[k] = true;
+						_local[n] = k;
+						_ports[n] = local.get(k).getMediaField().getPort();
+						break;
+					}
+				}
+			}
+		}
+
+		Vector<MediaDescriptor> withPorts(List<MediaDescriptor> local) {
+			Vector<MediaDescriptor> result = copy(_answer);
+			for (int n = 0; n < result.size(); n++) {
+				int port = local.get(_local[n]).getMediaField().getPort();
+				if (port != _ports[n]) {
+					MediaDescriptor answer = result.get(n);
+					MediaField media = answer.getMediaField();
+					result.set(n, new MediaDescriptor(
+						new MediaField(media.getMediaType(), port, 0, media.getTransport(), media.getFormatList()),
+						answer.getConnection(), answer.getAttributes()));
+				}
+			}
+			return result;
+		}
+
+		private static Vector<MediaDescriptor> copy(List<MediaDescriptor> descriptors) {
+			Vector<MediaDescriptor> result = new Vector<>(descriptors.size());
+			for (MediaDescriptor descriptor : descriptors) {
+				result.add(MediaDescriptor.copy(descriptor));
+			}
+			return result;
+		}
+	}
+
+}
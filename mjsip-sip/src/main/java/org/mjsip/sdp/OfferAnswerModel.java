@@ -39,6 +39,9 @@ import org.zoolu.util.VectorUtils;
   */
 public class OfferAnswerModel {
 	
+	/** Answers to repeated offers, see {@link #matchSdp(SdpMessage, SdpMessage)}. */
+	private static final OfferAnswerCache ANSWERS = new OfferAnswerCache(OfferAnswerCache.DEFAULT_SIZE);
+	
 	/** Costructs a new SessionDescriptor from a given SessionDescriptor
 	  * with olny media types and attribute values specified by a MediaDescriptor Vector.
 	  * <p> If no attribute is specified for a particular media, all present attributes are kept.
@@ -109,7 +112,8 @@ public class OfferAnswerModel {
 	/**
 	 * Calculates a SDP product of a starting SDP and an offered SDP.
 	 * <p>
-	 * The product is calculated as answer of a SDP offer, according to RFC3264.
+	 * The product is calculated as answer of a SDP offer, according to RFC3264. The media product
+	 * of identical offers is computed only once, see {@link OfferAnswerCache}.
 	 * 
 	 * @param localSdp
 	 *        the starting SDP (SessionDescriptor)
@@ -118,7 +122,7 @@ public class OfferAnswerModel {
 	 * @return the answered SDP (SessionDescriptor)
 	 */
 	public static SdpMessage matchSdp(SdpMessage localSdp, SdpMessage remoteSdp) {
-		Vector<MediaDescriptor> matchingDescriptors = matchMedia(localSdp.getMediaDescriptors(), remoteSdp.getMediaDescriptors());
+		Vector<MediaDescriptor> matchingDescriptors = ANSWERS.matchMedia(localSdp.getMediaDescriptors(), remoteSdp.getMediaDescriptors());
 	
 		return new SdpMessage(localSdp.getOrigin(), remoteSdp.getSessionName(), localSdp.getConnection(),
 				localSdp.getTime(), matchingDescriptors);
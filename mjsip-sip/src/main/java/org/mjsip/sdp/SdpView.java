@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sdp;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.mjsip.sdp.field.ConnectionField;
+
+/**
+ * Read-only view of a raw SDP body that locates fields on demand without building an
+ * {@link SdpMessage}.
+ *
+ * <p>
+ * Only the line structure is indexed on first access. Values are extracted from the raw bytes when
+ * requested, so that relaying a session description that only needs the connection address and
+ * media ports does not pay for parsing all fields and attributes. A full {@link SdpMessage} is
+ * created lazily with {@link #toSdpMessage()}.
+ * </p>
+ *
+ * <p>
+ * With {@link #rewrite(String, String[], int[])}, the connection address and media ports can be
+ * replaced while all other lines are copied unchanged.
+ * </p>
+ */
+public final class SdpView {
+
+	private static final int NONE = -1;
+
+	private final byte[] _body;
+
+	/** Start offsets of all lines, <code>null</code> before indexing. */
+	private int[] _starts;
+
+	/** End offsets (exclusive, without line terminator) of all lines. */
+	private int[] _ends;
+
+	/** Index of the session-level <code>c=</code> line. */
+	private int _connection = NONE;
+
+	/** Indexes of the <code>m=</code> lines. */
+	private int[] _media;
+
+	/** Index of the media-level <code>c=</code> line for each media. */
+	private int[] _mediaConnection;
+
+	private int _mediaCount;
+
+	private SdpMessage _message;
+
+	/**
+	 * Creates a {@link SdpView}.
+	 *
+	 * @param body
+	 *        The raw SDP body, must not be modified while this view is in use.
+	 */
+	public SdpView(byte[] body) {
+		_body = body;
+	}
+
+	/**
+	 * Creates a {@link SdpView} of the given SDP text.
+	 */
+	public SdpView(String sdp) {
+		this(sdp.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * The raw bytes this view is based on.
+	 */
+	public byte[] getBytes() {
+		return _body;
+	}
+
+	/**
+	 * The address of the session-level connection (<code>c=</code>) line, without TTL and number of
+	 * addresses, or <code>null</code> if there is none.
+	 */
+	public String getConnectionAddress() {
+		index();
+		return connectionAddress(_connection);
+	}
+
+	/**
+	 * The number of media descriptions (<code>m=</code> lines).
+	 */
+	public int getMediaCount() {
+		index();
+		return _mediaCount;
+	}
+
+	/**
+	 * The media type of the media description with the given index, e.g. <code>audio</code>.
+	 */
+	public String getMediaType(int media) {
+		index();
+		int line = mediaLine(media);
+		int start = valueStart(line);
+		return text(start, tokenEnd(start, _ends[line]));
+	}
+
+	/**
+	 * The port of the media description with the given index.
+	 */
+	public int getMediaPort(int media) {
+		index();
+		int line = mediaLine(media);
+		int start = skipToken(valueStart(line), _ends[line]);
+		int end = tokenEnd(start, _ends[line]);
+		int result = 0;
+		for (int n = start; n < end && _body[n] != '/'; n++) {
+			result = result * 10 + (_body[n] - '0');
+		}
+		return result;
+	}
+
+	/**
+	 * The connection address that applies to the media description with the given index, either
+	 * from a media-level <code>c=</code> line or from the session level.
+	 */
+	public String getMediaConnectionAddress(int media) {
+		index();
+		mediaLine(media);
+		int line = _mediaConnection[media];
+		return connectionAddress(line != NONE ? line : _connection);
+	}
+
+	/**
+	 * The fully parsed {@link SdpMessage}, created on first access.
+	 */
+	public SdpMessage toSdpMessage() {
+		if (_message == null) {
+			_message = new SdpMessage(toString());
+		}
+		return _message;
+	}
+
+	/**
+	 * Creates a new SDP body with replaced session-level connection address and media ports.
+	 *
+	 * <p>
+	 * All other lines are copied unchanged. If there is no session-level connection line, one is
+	 * inserted.
+	 * </p>
+	 *
+	 * @param address
+	 *        The new session-level connection address, <code>null</code> to keep the address.
+	 * @param mediaTypes
+	 *        The media types whose ports are replaced.
+	 * @param ports
+	 *        The new ports, the port at index <code>i</code> is used for all media of type
+	 *        <code>mediaTypes[i]</code>.
+	 * @return The new SDP body.
+	 */
+	public byte[] rewrite(String address, String[] mediaTypes, int[] ports) {
+		index();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(_body.length + 16);
+		int pos = 0;
+
+		if (address != null) {
+			if (_connection != NONE) {
+				int start = skipToken(skipToken(valueStart(_connection), _ends[_connection]), _ends[_connection]);
+				int end = addressEnd(start, _ends[_connection]);
+				out.write(_body, pos, start - pos);
+				write(out, address);
+				pos = end;
+			} else {
+				int before = connectionPosition();
+				out.write(_body, pos, before - pos);
+				write(out, new ConnectionField(ConnectionField.addressType(address), address).toString());
+				pos = before;
+			}
+		}
+
+		for (int media = 0; media < _mediaCount; media++) {
+			int port = portFor(getMediaType(media), mediaTypes, ports);
+			if (port < 0) {
+				continue;
+			}
+			int line = _media[media];
+			int start = skipToken(valueStart(line), _ends[line]);
+			int end = start;
+			while (end < _ends[line] && _body[end] != ' ' && _body[end] != '/') {
+				end++;
+			}
+			out.write(_body, pos, start - pos);
+			write(out, Integer.toString(port));
+			pos = end;
+		}
+		out.write(_body, pos, _body.length - pos);
+		return out.toByteArray();
+	}
+
+	@Override
+	public String toString() {
+		return new String(_body, StandardCharsets.ISO_8859_1);
+	}
+
+	private static int portFor(String mediaType, String[] mediaTypes, int[] ports) {
+		for (int n = 0; n < mediaTypes.length; n++) {
+			if (mediaTypes[n].equals(mediaType)) {
+				return ports[n];
+			}
+		}
+		return NONE;
+	}
+
+	private static void write(ByteArrayOutputStream out, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * The offset where a missing session-level connection line is inserted.
+	 */
+	private int connectionPosition() {
+		for (int line = 0; line < _starts.length; line++) {
+			switch (type(line)) {
+				case 'b':
+				case 't':
+				case 'r':
+				case 'z':
+				case 'k':
+				case 'a':
+				case 'm':
+					return _starts[line];
+				default:
+			}
+		}
+		return _body.length;
+	}
+
+	private String connectionAddress(int line) {
+		if (line == NONE) {
+			return null;
+		}
+		int start = skipToken(skipToken(valueStart(line), _ends[line]), _ends[line]);
+		return text(start, addressEnd(start, _ends[line]));
+	}
+
+	private int addressEnd(int start, int end) {
+		int n = start;
+		while (n < end && _body[n] != ' ' && _body[n] != '/') {
+			n++;
+		}
+		return n;
+	}
+
+	private int mediaLine(int media) {
+		if (media < 0 || media >= _mediaCount) {
+			throw new IndexOutOfBoundsException("No media description " + media + ", count: " + _mediaCount);
+		}
+		return _media[media];
+	}
+
+	private int valueStart(int line) {
+		return Math.min(_starts[line] + 2, _ends[line]);
+	}
+
+	private char type(int line) {
+		return _ends[line] > _starts[line] ? (char) _body[_starts[line]] : 0;
+	}
+
+	private int tokenEnd(int start, int end) {
+		int n = start;
+		while (n < end && _body[n] != ' ') {
+			n++;
+		}
+		return n;
+	}
+
+	private int skipToken(int start, int end) {
+		int n = tokenEnd(start, end);
+		while (n < end && _body[n] == ' ') {
+			n++;
+		}
+		return n;
+	}
+
+	private String text(int start, int end) {
+		return new String(_body, start, end - start, StandardCharsets.ISO_8859_1);
+	}
+
+	private void index() {
+		if (_starts != null) {
+			return;
+		}
+
+		int lines = 0;
+		for (int n = 0; n < _body.length; n++) {
+			if (_body[n] == '\n') {
+				lines++;
+			}
+		}
+		if (_body.length > 0 && _body[_body.length - 1] != '\n') {
+			lines++;
+		}
+
+		int[] starts = new int[lines];
+		int[] ends = new int[lines];
+		int mediaCount = 0;
+		int line = 0;
+		int start = 0;
+		for (int n = 0; n <= _body.length && line < lines; n++) {
+			if (n == _body.length || _body[n] == '\n') {
+				int end = n > start && _body[n - 1] == '\r' ? n - 1 : n;
+				starts[line] = start;
+				ends[line] = end;
+				if (end > start && _body[start] == 'm') {
+					mediaCount++;
+				}
+				line++;
+				start = n + 1;
+			}
+		}
+
+		int[] media = new int[mediaCount];
+		int[] mediaConnection = new int[mediaCount];
+		int current = NONE;
+		for (int n = 0; n < lines; n++) {
+			if (ends[n] == starts[n]) {
+				continue;
+			}
+			byte type = _body[starts[n]];
+			if (type == 'm') {
+				current++;
+				media[current] = n;
+				mediaConnection[current] = NONE;
+			} else if (type == 'c') {
+				if (current == NONE) {
+					_connection = n;
+				} else {
+					mediaConnection[current] = n;
+				}
+			}
+		}
+
+		_ends = ends;
+		_media = media;
+		_mediaConnection = mediaConnection;
+		_mediaCount = mediaCount;
+		_starts = starts;
+	}
+
+}
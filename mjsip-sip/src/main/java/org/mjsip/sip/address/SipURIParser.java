@@ -6,6 +6,8 @@ package org.mjsip.sip.address;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import org.mjsip.sip.header.InternPool;
+
 /**
  * Parser for {@link SipURI}s.
  */
@@ -273,13 +275,14 @@ public class SipURIParser {
 	}
 
 	private void parseKeyValue(Map<String, String> map, int limit) {
+		InternPool pool = InternPool.global();
 		int index = nextLimit(limit, '=');
 		if (index < 0) {
-			String key = consume(limit);
+			String key = pool.intern(consume(limit));
 			map.put(key, null);
 		} else {
-			String key = consume(index);
-			String value = consume(limit);
+			String key = pool.intern(consume(index));
+			String value = pool.intern(consume(limit));
 			map.put(key, value);
 		}
 	}
@@ -323,7 +326,7 @@ public class SipURIParser {
 	}
 
 	private SipURI uri() {
-		return new SipURI(user, password, host, ipv6, port, secure, params, headers);
+		return new SipURI(user, password, InternPool.global().intern(host), ipv6, port, secure, params, headers);
 	}
 
 	private String remaining() {
@@ -24,6 +24,9 @@
 package org.mjsip.sip.call;
 
 
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Histogram;
+import org.mjsip.metrics.Metrics;
 import org.mjsip.sdp.SdpMessage;
 import org.mjsip.sip.address.GenericURI;
 import org.mjsip.sip.address.NameAddress;
@@ -53,6 +56,21 @@ public class Call/* extends org.zoolu.util.MonitoredObject*/ {
 	
 	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(Call.class);
 
+	private static final Counter CALLS_STARTED = Metrics.global().counter("sip_calls_started_total",
+			"Outgoing calls started.");
+
+	private static final Histogram RINGING_LATENCY = Metrics.global().histogram("sip_call_ringing_seconds",
+			"Time from sending an INVITE to the first provisional response other than 100 Trying.");
+
+	private static final Histogram ANSWER_LATENCY = Metrics.global().histogram("sip_call_answer_seconds",
+			"Time from sending an INVITE to the 2xx response.");
+
+	private static final Counter CALLS_REFUSED = setupFailures("refused");
+
+	private static final Counter CALLS_REDIRECTED = setupFailures("redirected");
+
+	private static final Counter CALLS_TIMED_OUT = setupFailures("timeout");
+
 	/** The SipProvider used for the call */
 	protected final SipProvider sip_provider;
 	
@@ -82,6 +100,12 @@ public class Call/* extends org.zoolu.util.MonitoredObject*/ {
 
 	/** Invite dialog listener */
 	private final InviteDialogListener dialogListener;
+
+	/** {@link System#nanoTime()} when the last outgoing INVITE was sent, <code>0</code> if none is pending. */
+	private long _inviteTime;
+
+	/** Whether the ringing latency of the pending INVITE has already been recorded. */
+	private boolean _ringing;
 	
 	/**
 	 * Creates a new Call for a caller.
@@ -108,6 +132,11 @@ public class Call/* extends org.zoolu.util.MonitoredObject*/ {
 		dialogListener=new InviteDialogListenerAdapter(this);
 	}
 
+	private static Counter setupFailures(String reason) {
+		return Metrics.global().counter("sip_call_setup_failures_total", "Outgoing calls that were not answered.",
+				"reason", reason);
+	}
+
 	private static CallListener nonNull(CallListener callListener) {
 		if (callListener == null) {
 			return new CallListenerAdapter();
@@ -197,9 +226,13 @@ public class Call/* extends org.zoolu.util.MonitoredObject*/ {
 				: AddressType.DEFAULT;
 		NameAddress caller_contact=getContactAddress(SipNameAddress.isSIPS(callee), addressType);
 		if (sdp!=null) local_sdp=sdp;
+		CALLS_STARTED.inc();
+		_inviteTime = System.nanoTime();
+		_ringing = false;
+		// change state before sending, the response may be processed before invite() returns
+		changeState(CallState.C_OUTGOING);
 		if (local_sdp!=null) dialog.invite(callee,caller,caller_contact,local_sdp);
 		else dialog.inviteWithoutOffer(callee,caller,caller_contact);
-		changeState(CallState.C_OUTGOING);
 	}
 
 	/** Confirms the 2xx with an answer.
@@ -372,6 +405,7 @@ public class Call/* extends org.zoolu.util.MonitoredObject*/ {
 	private void processDlgInviteProvisionalResponse(InviteDialog d, int code, String reason, String sdp, SipMessage resp) {
 		if (d!=dialog) {  LOG.info("NOT the current dialog");  return;  }
 		// else
+		recordRinging(code);
 		if (code == 183)
 			listener.onCallProgress(this, resp);
 		if (code == 180)
@@ -383,9 +417,30 @@ public class Call/* extends org.zoolu.util.MonitoredObject*/ {
 	private void processDlgInviteReliableProvisionalResponse(InviteDialog dialog, int code, String reason, String content_type, byte[] body, SipMessage resp) {
 		if (dialog!=this.dialog) {  LOG.info("NOT the current dialog");  return;  }
 		// else
+		recordRinging(code);
 		listener.onCallConfirmableProgress(this, resp);
 	}
 	
+	private void recordRinging(int code) {
+		if (_inviteTime != 0 && !_ringing && code > 100) {
+			_ringing = true;
+			RINGING_LATENCY.recordSince(_inviteTime);
+		}
+	}
+
+	/** Records the outcome of a pending outgoing INVITE. */
+	private void recordSetup(Counter failures) {
+		if (_inviteTime == 0) {
+			return;
+		}
+		if (failures == null) {
+			ANSWER_LATENCY.recordSince(_inviteTime);
+		} else {
+			failures.inc();
+		}
+		_inviteTime = 0;
+	}
+
 	/** When a reliable 1xx response has been confirmed by the reception of a corresponding PRACK request. */
 	private void processDlgInviteReliableProvisionalResponseConfirmed(InviteDialog dialog, int code, SipMessage resp, String content_type, byte[] body, SipMessage prack) {
 		if (dialog!=this.dialog) {  LOG.info("NOT the current dialog");  return;  }
@@ -407,6 +462,7 @@ public class Call/* extends org.zoolu.util.MonitoredObject*/ {
 	private void processDlgInviteSuccessResponse(InviteDialog d, int code, String reason, SdpMessage sdp,
 			SipMessage msg) {
 		if (d!=dialog) {  LOG.info("NOT the current dialog");  return;  }
+		recordSetup(null);
 		// check if the call has been already cancelled or closed
 		if (call_state.isClosed()) {
 			LOG.info("call already closed");
@@ -423,6 +479,7 @@ public class Call/* extends org.zoolu.util.MonitoredObject*/ {
 	/** When a 3xx redirection response is received for an INVITE transaction. */ 
 	private void processDlgInviteRedirectResponse(InviteDialog d, int code, String reason, MultipleHeader contacts, SipMessage msg) {
 		if (d!=dialog) {  LOG.info("NOT the current dialog");  return;  }
+		recordSetup(CALLS_REDIRECTED);
 		changeState(CallState.C_CLOSED);
 		listener.onCallRedirected(this, reason, contacts.getValues(), msg);
 	}
@@ -430,6 +487,7 @@ public class Call/* extends org.zoolu.util.MonitoredObject*/ {
 	/** When a 400-699 failure response is received for an INVITE transaction. */ 
 	private void processDlgInviteFailureResponse(InviteDialog d, int code, String reason, SipMessage msg) {
 		if (d!=dialog) {  LOG.info("NOT the current dialog");  return;  }
+		recordSetup(CALLS_REFUSED);
 		changeState(CallState.C_CLOSED);
 		listener.onCallRefused(this, reason, msg);
 	}
@@ -437,6 +495,7 @@ public class Call/* extends org.zoolu.util.MonitoredObject*/ {
 	/** When INVITE transaction expires */ 
 	private void processDlgInviteTimeout(InviteDialog d) {
 		if (d!=dialog) {  LOG.info("NOT the current dialog");  return;  }
+		recordSetup(CALLS_TIMED_OUT);
 		changeState(CallState.C_CLOSED);
 		listener.onCallTimeout(this);
 	}
@@ -131,9 +131,10 @@ public class ExtendedCall extends Call {
 				: AddressType.DEFAULT;
 
 		NameAddress caller_contact = getContactAddress(SipNameAddress.isSIPS(callee), addressType);
+		// change state before sending, the response may be processed before invite() returns
+		changeState(CallState.C_OUTGOING);
 		if (local_sdp!=null) dialog.invite(callee,caller,caller_contact,local_sdp);
 		else dialog.inviteWithoutOffer(callee,caller,caller_contact);
-		changeState(CallState.C_OUTGOING);
 	} 
 	
 	/** Requests a call transfer. */
@@ -1010,7 +1010,9 @@ public class InviteDialog extends Dialog implements TransactionClientListener, I
 				ts.respondWith(sipMessageFactory.createResponse(msg, SipResponses.METHOD_NOT_ALLOWED, null, null));
 			}
 		} else if (msg.isResponse()) {
-			if (!verifyStatus("Response method requires CALL state.", statusIs(DialogStatus.D_CALL))) {
+			// a 2xx retransmission must be acknowledged even if the BYE is already on its way
+			if (!verifyStatus("Response method requires CALL or BYEING state.",
+					statusIs(DialogStatus.D_CALL) || statusIs(DialogStatus.D_BYEING))) {
 				return;
 			}
 			int code=msg.getStatusLine().getCode();
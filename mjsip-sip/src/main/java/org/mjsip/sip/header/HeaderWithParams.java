@@ -24,6 +24,7 @@
 package org.mjsip.sip.header;
 
 
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -35,6 +36,9 @@ public abstract class HeaderWithParams extends Header {
 
 	private final Map<String, String> _parameters = new LinkedHashMap<>();
 
+	/** Names of parameters whose values are always written as quoted string, or null if none. */
+	private Set<String> _quoted;
+
 	/** Creates a new ParametricHeader. */
 	protected HeaderWithParams(String hname) {
 		super(hname);
@@ -44,7 +48,11 @@ public abstract class HeaderWithParams extends Header {
 	protected HeaderWithParams(Header hd) {
 		super(hd);
 		if (hd instanceof HeaderWithParams) {
-			_parameters.putAll(((HeaderWithParams) hd)._parameters);
+			HeaderWithParams other = (HeaderWithParams) hd;
+			_parameters.putAll(other._parameters);
+			if (other._quoted != null) {
+				_quoted = new HashSet<>(other._quoted);
+			}
 		}
 	}
 
@@ -73,17 +81,28 @@ public abstract class HeaderWithParams extends Header {
 	/** Removes all parameters (if any) */
 	public void removeParameters()  {
 		_parameters.clear();
+		_quoted = null;
 	}
 
 	/** Removes specified parameter (if present) */
 	public void removeParameter(String pname)  {
 		_parameters.remove(pname);
+		if (_quoted != null) _quoted.remove(pname);
 	}
 
 	/** Sets the value of a specified parameter.
 	  * Zero-length String is returned in case of flag parameter (without value). */
 	public void setParameter(String pname, String pvalue)  {
 		_parameters.put(pname, pvalue);
+		if (_quoted != null) _quoted.remove(pname);
+	}
+
+	/** Sets the value of a specified parameter that must be written as quoted string,
+	  * even if its value is a token (e.g. the "oc-algo" Via parameter of RFC 7339). */
+	public void setQuotedParameter(String pname, String pvalue)  {
+		_parameters.put(pname, pvalue);
+		if (_quoted == null) _quoted = new HashSet<>();
+		_quoted.add(pname);
 	}
 
 	/**
@@ -96,6 +115,7 @@ public abstract class HeaderWithParams extends Header {
 			in.skipWSPCRLF();
 
 			String pValue;
+			boolean quoted = false;
 			if (in.currentChar() == ';' || in.eof()) {
 				pValue = null;
 			} else {
@@ -107,26 +127,31 @@ public abstract class HeaderWithParams extends Header {
 					StringBuilder contents = new StringBuilder();
 					while (true) {
 						in.findChars("\\\"");
+						contents.append(in.stringBefore());
 						if (in.currentChar() == '"' || in.eof()) {
-							contents.append(in.stringBefore());
-							in.skipWSPCRLF();
+							in.skip().skipWSPCRLF();
 							break;
 						} else {
 							in.skip();
 							if (in.eof()) {
 								break;
 							}
-							contents.append(in.getChar());
+							contents.append((char) in.getChar());
 						}
 					}
 					pValue = contents.toString();
+					quoted = true;
 				} else {
 					pValue = in.findChars(" \t\r\n;,").stringBefore();
 					in.skipWSPCRLF();
 				}
 			}
 
-			setParameter(pName, pValue);
+			if (quoted) {
+				setQuotedParameter(pName, pValue);
+			} else {
+				setParameter(pName, pValue);
+			}
 		}
 	}
 
@@ -138,7 +163,7 @@ public abstract class HeaderWithParams extends Header {
 			String value = entry.getValue();
 			if (value != null) {
 				buffer.append('=');
-				if (mustQuote(value)) {
+				if ((_quoted != null && _quoted.contains(entry.getKey())) || mustQuote(value)) {
 					appendQuoted(buffer, value);
 				} else {
 					buffer.append(value);
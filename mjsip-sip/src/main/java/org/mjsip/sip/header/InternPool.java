@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.header;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
+
+/**
+ * Bounded pool of shared strings for header names and short, frequently repeated header values.
+ *
+ * <p>
+ * Most messages processed by a proxy repeat the same header names and many identical values, e.g.
+ * <code>Max-Forwards: 70</code>, <code>Allow</code>, <code>Supported</code> and
+ * <code>User-Agent</code> lists or the local domain in URIs. Parsing allocates a new string for each
+ * of them, and each dialog and transaction keeps its own copies. Replacing a parsed string by an
+ * equal instance from this pool lets all of them share a single copy.
+ * </p>
+ *
+ * <p>
+ * The pool is a direct-mapped table of fixed size: A string is looked up in the slot selected by its
+ * hash code. If the slot contains an equal string, that one is returned. Otherwise, the given string
+ * replaces the slot contents. Frequently repeated values therefore stay in the pool, while rare
+ * values are displaced again. Lookups and updates do not lock, the size of the pool never grows,
+ * and strings that are longer than {@link #getMaxLength()} are never pooled.
+ * </p>
+ *
+ * <p>
+ * Hits and misses are counted in the metrics <code>sip_intern_lookups_total</code>.
+ * </p>
+ *
+ * @see #global()
+ */
+public final class InternPool {
+
+	/** Default number of slots of the {@link #global() global} pool. */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/** Default maximum length of pooled strings. */
+	public static final int DEFAULT_MAX_LENGTH = 96;
+
+	private static final Counter HITS = Metrics.global().counter("sip_intern_lookups_total",
+			"Lookups in the header intern pool.", "result", "hit");
+
+	private static final Counter MISSES = Metrics.global().counter("sip_intern_lookups_total",
+			"Lookups in the header intern pool.", "result", "miss");
+
+	private static final InternPool GLOBAL = new InternPool(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+
+	private final AtomicReferenceArray<String> _table;
+
+	private final int _mask;
+
+	private final int _maxLength;
+
+	/**
+	 * Creates an {@link InternPool}.
+	 *
+	 * @param capacity
+	 *        The number of slots, rounded up to the next power of two.
+	 * @param maxLength
+	 *        The maximum length of strings to pool.
+	 */
+	public InternPool(int capacity, int maxLength) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		_table = new AtomicReferenceArray<>(size);
+		_mask = size - 1;
+		_maxLength = maxLength;
+	}
+
+	/**
+	 * The pool used by the SIP parser.
+	 */
+	public static InternPool global() {
+		return GLOBAL;
+	}
+
+	/**
+	 * The number of slots in this pool.
+	 */
+	public int getCapacity() {
+		return _table.length();
+	}
+
+	/**
+	 * The maximum length of strings that are pooled.
+	 */
+	public int getMaxLength() {
+		return _maxLength;
+	}
+
+	/**
+	 * Looks up a shared instance of the given string.
+	 *
+	 * @param value
+	 *        The string to look up, may be <code>null</code>.
+	 * @return A string equal to the given one, either from the pool or the given string itself.
+	 */
+	public String intern(String value) {
+		if (value == null || value.length() > _maxLength) {
+			return value;
+		}
+		int index = spread(value.hashCode()) & _mask;
+		String pooled = _table.get(index);
+		if (pooled != null && pooled.equals(value)) {
+			HITS.inc();
+			return pooled;
+		}
+		_table.lazySet(index, value);
+		MISSES.inc();
+		return value;
+	}
+
+	/**
+	 * Removes all strings from the pool.
+	 */
+	public void clear() {
+		for (int n = 0, cnt = _table.length(); n < cnt; n++) {
+			_table.set(n, null);
+		}
+	}
+
+	/**
+	 * The number of lookups of all pools that returned a pooled instance.
+	 */
+	public static long getHits() {
+		return HITS.get();
+	}
+
+	/**
+	 * The number of lookups of all pools that did not find an equal string.
+	 */
+	public static long getMisses() {
+		return MISSES.get();
+	}
+
+	/**
+	 * The fraction of lookups that returned a pooled instance, <code>0</code> before the first
+	 * lookup.
+	 */
+	public static double getHitRate() {
+		long hits = getHits();
+		long total = hits + getMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+}
@@ -25,6 +25,7 @@ package org.mjsip.sip.message;
 import java.util.Vector;
 
 import org.mjsip.sdp.SdpMessage;
+import org.mjsip.sdp.SdpView;
 import org.mjsip.sip.header.ContentDispositionHeader;
 import org.mjsip.sip.header.ContentLengthHeader;
 import org.mjsip.sip.header.ContentTypeHeader;
@@ -96,6 +97,12 @@ public abstract class BasicSipMessage {
 	/** Message body */
 	protected byte[] body=null;
 
+	/** The bytes this message has been parsed from, or <code>null</code> if not kept, see {@link #keepReceivedBytes(byte[], int)} */
+	private byte[] received_bytes=null;
+
+	/** The number of bytes this message has been parsed from, <code>0</code> if not parsed from a byte array */
+	private int received_length=0;
+
 	/** Costructs a new empty Message. */
 	public BasicSipMessage() {
 		//headers=new Vector();
@@ -261,6 +268,8 @@ public abstract class BasicSipMessage {
 			if (clh!=null) body_len=clh.getContentLength();
 			else if (getContentTypeHeader()!=null) body_len=len-siph_len;
 			body=(body_len>0)? ByteUtils.copy(buf,off+siph_len,body_len) : null;
+			received_bytes=null;
+			received_length=siph_len+body_len;
 			
 			return /*skip_len+*/siph_len+body_len;
 		}
@@ -313,6 +322,28 @@ public abstract class BasicSipMessage {
 	}
 
 
+	/** Gets the bytes this message has been parsed from.
+	  * <p>
+	  * The returned array is the original wire image of a received message. It is not updated when
+	  * the message is modified afterwards, and it is not copied to new messages created from this one.
+	  * It can be edited with a {@link SipMessageSplicer} to forward the message without serializing it again.
+	  * @return the received bytes, or <code>null</code> if this message has not been parsed from a byte array
+	  *         or the bytes have not been kept */
+	public byte[] getReceivedBytes() {
+		return received_bytes;
+	}
+
+	/** Keeps a copy of the bytes this message has been parsed from, see {@link #getReceivedBytes()}.
+	  * <p>
+	  * The bytes are not kept by default, since only messages forwarded on the stateless fast path
+	  * need them. Must be called with the buffer and offset this message has been parsed from, before
+	  * the buffer is reused for the next message.
+	  * @param buf the buffer passed to {@link #setMessage(byte[], int, int)}
+	  * @param off the offset passed to {@link #setMessage(byte[], int, int)} */
+	public void keepReceivedBytes(byte[] buf, int off) {
+		if (received_length>0) received_bytes=ByteUtils.copy(buf,off,received_length);
+	}
+
 	/** Gets remote ip address. */
 	public String getRemoteAddress() {
 		return remote_addr;
@@ -752,6 +783,13 @@ public abstract class BasicSipMessage {
 		return body == null ? null : new SdpMessage(new String(body));
 	}  
 
+	/**
+	 * The body as lazily parsed {@link SdpView}.
+	 */
+	public SdpView getSdpView() {
+		return body == null ? null : new SdpView(body);
+	}
+
 	//**************************** Specific Headers ****************************/
   
 	/** Whether Message has ContentDispositionHeader. */
@@ -274,11 +274,19 @@ public abstract class BasicSipMessageFactory {
 	 */
 	public SipMessage createResponse(SipMessage req, int code, String reason, NameAddress contact) {
 		//String reason=SipResponses.reasonOf(code);
-		String localtag=null;
-		if (req.createsDialog() && !req.getToHeader().hasTag()) {
-			if ((sipConfig.isEarlyDialog() && code!=100) || (code>=200 && code<300)) localtag=SipProvider.pickTag(req);
+		return createResponse(req,code,reason,pickResponseTag(req,code),contact,null,null);
+	}
+
+
+	/** Picks the local tag for a response, as done by {@link #createResponse(SipMessage, int, String, NameAddress)}.
+	  * @param req the request message
+	  * @param code the response code
+	  * @return the tag for the <i>To</i> header field, or <i>null</i>, if the response gets no new tag */
+	public String pickResponseTag(SipMessage req, int code) {
+		if ((sipConfig.isEarlyDialog() && code!=100) || (code>=200 && code<300)) {
+			if (req.createsDialog() && !req.getToHeader().hasTag()) return SipProvider.pickTag(req);
 		}
-		return createResponse(req,code,reason,localtag,contact,null,null);
+		return null;
 	}
 
 }  
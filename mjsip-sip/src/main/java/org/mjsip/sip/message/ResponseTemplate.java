@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.message;
+
+import java.nio.charset.StandardCharsets;
+
+import org.mjsip.sip.header.Header;
+import org.mjsip.sip.header.SipHeaders;
+import org.mjsip.sip.header.ToHeader;
+
+/**
+ * Pre-serialized response without body for sending stateless replies.
+ *
+ * <p>
+ * A {@link ResponseTemplate} holds the constant parts of a response (status line, constant headers
+ * such as <code>Server</code>, and the terminating <code>Content-Length: 0</code>) in serialized
+ * form. {@link #render(SipMessage, String, Header, byte[]) Rendering} a response for a request
+ * only copies the <code>Via</code>, <code>From</code>, <code>To</code>, <code>Call-ID</code> and
+ * <code>CSeq</code> headers (and <code>Record-Route</code> for 18x and 2xx responses) of the
+ * request into a buffer provided by the caller, optionally adding a <code>To</code> tag and a single
+ * request specific header, e.g. a challenge or <code>Retry-After</code>.
+ * </p>
+ *
+ * <p>
+ * The rendered response is equivalent to the one created by
+ * {@link BasicSipMessageFactory#createResponse(SipMessage, int, String, String, org.mjsip.sip.address.NameAddress, String, byte[])}
+ * without contact and body, but avoids creating a {@link SipMessage} with typed headers for each
+ * reply. This makes rejecting request floods (e.g. from scanners) cheap.
+ * </p>
+ *
+ * @see SipMessageFactory#getResponseTemplate(int)
+ */
+public final class ResponseTemplate {
+
+	private static final String TAG_PARAM = ";tag=";
+
+	private final int _code;
+
+	/** The status line including CRLF. */
+	private final byte[] _statusLine;
+
+	/** Constant headers and the header terminating CRLF. */
+	private final byte[] _trailer;
+
+	/**
+	 * Creates a {@link ResponseTemplate}.
+	 *
+	 * @param code
+	 *        The response code.
+	 * @param reason
+	 *        The reason phrase, <code>null</code> for the default phrase of the code.
+	 * @param headers
+	 *        Headers to add to each response.
+	 */
+	public ResponseTemplate(int code, String reason, Header... headers) {
+		_code = code;
+		if (reason == null) {
+			reason = SipResponses.reasonOf(code);
+		}
+		_statusLine = ("SIP/2.0 " + code + " " + reason + "\r\n").getBytes(StandardCharsets.UTF_8);
+		StringBuilder trailer = new StringBuilder();
+		for (Header header : headers) {
+			if (header != null) {
+				trailer.append(header.toString());
+			}
+		}
+		trailer.append(SipHeaders.Content_Length).append(": 0\r\n\r\n");
+		_trailer = trailer.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The response code.
+	 */
+	public int getCode() {
+		return _code;
+	}
+
+	/**
+	 * Serializes a response to the given request.
+	 *
+	 * @param req
+	 *        The request to respond to.
+	 * @param local_tag
+	 *        The tag to add to the <code>To</code> header, if it has no tag yet, or
+	 *        <code>null</code>.
+	 * @param extra
+	 *        Additional header specific to this response, or <code>null</code>.
+	 * @param buf
+	 *        The buffer to write to.
+	 * @return The length of the response, or <code>-1</code>, if the response does not fit into the
+	 *         buffer.
+	 */
+	public int render(SipMessage req, String local_tag, Header extra, byte[] buf) {
+		boolean record_route = _code >= 180 && _code < 300;
+		int pos = copy(_statusLine, buf, 0);
+		for (int n = 0, cnt = req.headers.size(); n < cnt; n++) {
+			Header header = req.headers.get(n);
+			String name = header.getName();
+			if (is(name, SipHeaders.Via, SipHeaders.Via_short)
+					|| (record_route && name.equalsIgnoreCase(SipHeaders.Record_Route))) {
+				pos = header(name, header.getValue(), null, buf, pos);
+			}
+		}
+		Header to = find(req, SipHeaders.To, SipHeaders.To_short);
+		if (to != null) {
+			String tag = local_tag != null && !new ToHeader(to).hasTag() ? local_tag : null;
+			pos = header(to.getName(), to.getValue(), tag, buf, pos);
+		}
+		pos = copy(find(req, SipHeaders.From, SipHeaders.From_short), buf, pos);
+		pos = copy(find(req, SipHeaders.Call_ID, SipHeaders.Call_ID_short), buf, pos);
+		pos = copy(find(req, SipHeaders.CSeq, SipHeaders.CSeq), buf, pos);
+		pos = copy(extra, buf, pos);
+		return pos < 0 ? -1 : copy(_trailer, buf, pos);
+	}
+
+	/**
+	 * The first header of the request with the given full or compact name, same as
+	 * {@link BasicSipMessage#getHeader(String)}.
+	 */
+	private static Header find(SipMessage req, String full, String compact) {
+		for (int n = 0, cnt = req.headers.size(); n < cnt; n++) {
+			Header header = req.headers.get(n);
+			if (is(header.getName(), full, compact)) {
+				return header;
+			}
+		}
+		return null;
+	}
+
+	private static int copy(Header header, byte[] buf, int pos) {
+		return header == null ? pos : header(header.getName(), header.getValue(), null, buf, pos);
+	}
+
+	private static boolean is(String name, String full, String compact) {
+		return name.equalsIgnoreCase(full) || name.equalsIgnoreCase(compact);
+	}
+
+	private static int header(String name, String value, String tag, byte[] buf, int pos) {
+		pos = append(name, buf, pos);
+		pos = append(": ", buf, pos);
+		pos = append(value, buf, pos);
+		if (tag != null) {
+			pos = append(TAG_PARAM, buf, pos);
+			pos = append(tag, buf, pos);
+		}
+		return append("\r\n", buf, pos);
+	}
+
+	private static int copy(byte[] data, byte[] buf, int pos) {
+		if (pos < 0 || pos + data.length > buf.length) {
+			return -1;
+		}
+		System.arraycopy(data, 0, buf, pos, data.length);
+		return pos + data.length;
+	}
+
+	/**
+	 * Appends the UTF-8 encoding of the given string, without allocating for ASCII strings.
+	 */
+	private static int append(String str, byte[] buf, int pos) {
+		if (pos < 0) {
+			return -1;
+		}
+		int len = str.length();
+		if (pos + len > buf.length) {
+			return -1;
+		}
+		for (int n = 0; n < len; n++) {
+			char c = str.charAt(n);
+			if (c >= 0x80) {
+				return copy(str.substring(n).getBytes(StandardCharsets.UTF_8), buf, pos + n);
+			}
+			buf[pos + n] = (byte) c;
+		}
+		return pos + len;
+	}
+
+}
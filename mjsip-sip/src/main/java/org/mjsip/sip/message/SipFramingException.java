@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.message;
+
+/**
+ * {@link MalformedSipMessageException} signaling that the boundaries of a message in a byte stream
+ * cannot be determined, e.g. because the message exceeds the maximum message size.
+ *
+ * <p>
+ * In contrast to other parse errors, the stream cannot be resynchronized after this error.
+ * </p>
+ *
+ * @see SipMessageBuffer#parseSipMessage()
+ */
+public class SipFramingException extends MalformedSipMessageException {
+
+	/**
+	 * Creates a {@link SipFramingException}.
+	 *
+	 * @param error
+	 *        The error message.
+	 */
+	public SipFramingException(String error) {
+		super(error);
+	}
+
+}
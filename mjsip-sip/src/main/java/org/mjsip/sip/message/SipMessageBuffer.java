@@ -23,10 +23,26 @@
 
 package org.mjsip.sip.message;
 
-/** Class SipMessageBuffer provides methods for extracting SIP messages from a byte buffer.
+/** Class SipMessageBuffer provides methods for extracting SIP messages from a byte stream.
+  * <p>
+  * Received bytes are appended to a growable buffer that is compacted in place, so that the
+  * total copying effort is linear in the number of received bytes. The end of the message
+  * header and the Content-Length value are searched incrementally, continuing where the
+  * previous search stopped. A message is parsed only when all of its bytes are available.
+  * <p>
+  * Messages that exceed the {@link #getMaxMessageSize() maximum message size} are rejected
+  * as soon as this is known, before the remaining bytes are buffered.
   */
 public class SipMessageBuffer {
 	
+	/** Default maximum size of a single message in bytes */
+	public static final int DEFAULT_MAX_MESSAGE_SIZE=65536;
+
+	/** Initial buffer size */
+	private static final int INITIAL_SIZE=4096;
+
+	/** Lower case name of the Content-Length header field */
+	private static final byte[] CONTENT_LENGTH="content-length".getBytes();
 
 	/** Buffer */
 	byte[] buffer=null;
@@ -34,8 +50,20 @@ public class SipMessageBuffer {
 	/** Current data offset within the buffer */
 	int offset=0;
 	
-	/** Current data length */
-	//int length=0;
+	/** End of the current data within the buffer */
+	int limit=0;
+
+	/** Maximum size of a single message */
+	int max_size=DEFAULT_MAX_MESSAGE_SIZE;
+
+	/** Number of bytes after the offset already searched for the end of the header */
+	int scanned=0;
+
+	/** Length of the header (including the empty line) of the current message, or -1 if not yet known */
+	int header_len=-1;
+
+	/** Length of the body of the current message, valid if the header length is known */
+	int body_len=0;
 
 	
 	
@@ -44,20 +72,30 @@ public class SipMessageBuffer {
 		
 	}
 
+	/** Gets the maximum size of a single message in bytes. */
+	public synchronized int getMaxMessageSize() {
+		return max_size;
+	}
+
+	/** Sets the maximum size of a single message.
+	  * @param max_size the maximum number of bytes of a single message, 0 for no limit */
+	public synchronized void setMaxMessageSize(int max_size) {
+		this.max_size=max_size>0? max_size : Integer.MAX_VALUE;
+	}
+
 	/** Gets the current buffer.
-	  * @return the offset */
+	  * @return the buffer, containing {@link #getLength()} bytes of data starting at {@link #getOffset()} */
 	public synchronized byte[] getBuffer() {
 		return buffer;
 	}
 
-	/** Gets the current offset of the data within the buffer.
+	/** Gets the current length of the data within the buffer.
 	  * @return the length */
 	public synchronized int getLength() {
-		//return length;
-		return buffer==null? 0 : buffer.length-offset;
+		return limit-offset;
 	}
 
-	/** Gets the current length of the data within the buffer.
+	/** Gets the current offset of the data within the buffer.
 	  * @return the offset */
 	public synchronized int getOffset() {
 		return offset;
@@ -67,6 +105,7 @@ public class SipMessageBuffer {
 	  * @param i the position of the byte, starting from the current offset
 	  * @return the value of the byte */
 	public synchronized byte byteAt(int i) {
+		if (i<0 || offset+i>=limit) throw new IndexOutOfBoundsException("Position "+i+" exceeds the data length "+(limit-offset));
 		return buffer[offset+i];
 	}
 
@@ -74,8 +113,10 @@ public class SipMessageBuffer {
 	  * @param n the number of bytes to be skipped
 	  * @return this SipMessageBuffer */
 	public synchronized SipMessageBuffer skip(int n) {
+		if (n<0 || offset+n>limit) throw new RuntimeException("Exceeded the buffer length: "+(offset+n)+">"+limit);
 		offset+=n;
-		if (buffer==null || offset>buffer.length) throw new RuntimeException("Exceeded the buffer length: "+offset+">"+(buffer==null? 0 : buffer.length));
+		resetScan();
+		if (offset==limit) offset=limit=0;
 		return this;
 	}
 
@@ -92,32 +133,160 @@ public class SipMessageBuffer {
 	  * @param len number of bytes
 	  * @return this object */
 	public synchronized SipMessageBuffer append(byte[] buf, int off, int len) {
-		byte[] new_buffer=new byte[buffer==null? len : buffer.length-offset+len];
-		int index=0;
-		// copy old bytes from the previous buffer
-		if (buffer!=null) while (offset<buffer.length) new_buffer[index++]=buffer[offset++];
-		// copy new bytes
-		for (int i=0; i<len; i++) new_buffer[index++]=buf[off+i];
-		buffer=new_buffer;
-		offset=0;
+		ensureCapacity(len);
+		System.arraycopy(buf,off,buffer,limit,len);
+		limit+=len;
 		return this;
 	}
 
+	/** Makes room for <i>len</i> additional bytes after the current data. */
+	private void ensureCapacity(int len) {
+		int data_len=limit-offset;
+		if (buffer==null) {
+			buffer=new byte[Math.max(INITIAL_SIZE,len)];
+		}
+		else
+		if (limit+len>buffer.length) {
+			int required=data_len+len;
+			if (required<=buffer.length/2) {
+				// compact, leaves at least half of the buffer free
+				System.arraycopy(buffer,offset,buffer,0,data_len);
+			}
+			else {
+				// grow
+				byte[] new_buffer=new byte[Math.max(required,2*buffer.length)];
+				System.arraycopy(buffer,offset,new_buffer,0,data_len);
+				buffer=new_buffer;
+			}
+			offset=0;
+			limit=data_len;
+		}
+	}
+
 	/** Tries to get a new SIP message from the buffer.
-	  * @return a new SIP message or null */
+	  * <p>
+	  * Leading CRLF sequences (e.g. keep-alive tokens) are skipped.
+	  * @return a new SIP message, or <code>null</code> if the buffer does not yet contain a complete message
+	  * @exception SipFramingException if the message exceeds the maximum message size or has an invalid Content-Length,
+	  * the stream cannot be resynchronized in that case
+	  * @exception MalformedSipMessageException if the message cannot be parsed, the message is skipped in that case */
 	public synchronized SipMessage parseSipMessage() throws MalformedSipMessageException {
+		if (header_len<0) {
+			if (scanned==0) skipCRLF();
+			boolean complete;
+			try {
+				complete=scanHeader();
+			}
+			catch (NumberFormatException e) {
+				throw new SipFramingException(e.getMessage());
+			}
+			if (!complete) {
+				if (limit-offset>max_size) throw new SipFramingException("Message header exceeds maximum message size of "+max_size+" bytes.");
+				return null;
+			}
+			if ((long)header_len+body_len>max_size) throw new SipFramingException("Message of "+((long)header_len+body_len)+" bytes exceeds maximum message size of "+max_size+" bytes.");
+		}
+		int msg_len=header_len+body_len;
+		if (limit-offset<msg_len) return null;
+		// else
 		SipMessage msg=new SipMessage();
-		offset+=msg.setMessage(buffer,offset,buffer.length-offset);
-		// DEBUG:
-		/*try {
-			offset+=msg.setMessage(buffer,offset,buffer.length-offset);
-			System.out.println("DEBUG: SipMessageBuffer: parseSipMessage(): "+offset+"/"+buffer.length);
+		try {
+			msg.setMessage(buffer,offset,msg_len);
+		}
+		finally {
+			// drop the message also if it cannot be parsed, the next message starts after its body
+			offset+=msg_len;
+			resetScan();
+			if (offset==limit) release();
 		}
-		catch (MalformedSipMessageException e) {
-			System.out.println("DEBUG: SipMessageBuffer: parseSipMessage(): "+offset+"/"+buffer.length);
-			throw e;
-		}*/
 		return msg;
 	}
+
+	/** Skips leading CR and LF bytes. */
+	private void skipCRLF() {
+		while (offset<limit && (buffer[offset]=='\r' || buffer[offset]=='\n')) offset++;
+		if (offset==limit) release();
+	}
+
+	/** Continues searching for the end of the message header.
+	  * @return whether the complete header is available */
+	private boolean scanHeader() {
+		int pos=offset+scanned;
+		while (pos<limit) {
+			if (buffer[pos]=='\n' && pos>offset) {
+				// header ends with an empty line (CRLF CRLF, or LF LF)
+				byte b=buffer[pos-1];
+				if (b=='\n' || (b=='\r' && pos-1>offset && buffer[pos-2]=='\n')) {
+					header_len=pos+1-offset;
+					body_len=parseContentLength();
+					return true;
+				}
+			}
+			pos++;
+		}
+		scanned=pos-offset;
+		return false;
+	}
+
+	/** Gets the value of the Content-Length header field of the current header.
+	  * @return the content length, or 0 if not present
+	  * @exception NumberFormatException if the value is not a valid length */
+	private int parseContentLength() {
+		int end=offset+header_len;
+		int line=offset;
+		while (line<end) {
+			int colon=matchContentLength(line,end);
+			if (colon>=0) {
+				long value=0;
+				int digits=0;
+				int i=colon+1;
+				while (i<end && (buffer[i]==' ' || buffer[i]=='\t')) i++;
+				for (; i<end && buffer[i]>='0' && buffer[i]<='9'; i++, digits++) {
+					value=value*10+(buffer[i]-'0');
+					if (value>Integer.MAX_VALUE) throw new NumberFormatException("Content-Length too large.");
+				}
+				if (digits==0) throw new NumberFormatException("Invalid Content-Length.");
+				return (int)value;
+			}
+			// next line
+			while (line<end && buffer[line]!='\n') line++;
+			line++;
+		}
+		return 0;
+	}
+
+	/** Checks whether a Content-Length header field (or its compact form) starts at the given position.
+	  * @return the position of the colon, or -1 */
+	private int matchContentLength(int pos, int end) {
+		int name_end=pos;
+		while (name_end<end && buffer[name_end]!=':' && buffer[name_end]!=' ' && buffer[name_end]!='\t' && buffer[name_end]!='\r' && buffer[name_end]!='\n') name_end++;
+		int name_len=name_end-pos;
+		boolean match;
+		if (name_len==1) match=(buffer[pos]|0x20)=='l';
+		else
+		if (name_len==CONTENT_LENGTH.length) {
+			match=true;
+			for (int i=0; i<name_len && match; i++) match=(buffer[pos+i]|0x20)==CONTENT_LENGTH[i];
+		}
+		else match=false;
+		if (!match) return -1;
+		// else
+		int colon=name_end;
+		while (colon<end && (buffer[colon]==' ' || buffer[colon]=='\t')) colon++;
+		return colon<end && buffer[colon]==':'? colon : -1;
+	}
+
+	/** Resets the incremental header search. */
+	private void resetScan() {
+		scanned=0;
+		header_len=-1;
+		body_len=0;
+	}
+
+	/** Drops a large buffer when all data has been consumed. */
+	private void release() {
+		offset=limit=0;
+		if (buffer!=null && buffer.length>INITIAL_SIZE) buffer=null;
+	}
 	
 }
@@ -26,6 +26,7 @@ package org.mjsip.sip.message;
 
 
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mjsip.sip.address.GenericURI;
 import org.mjsip.sip.address.NameAddress;
@@ -42,6 +43,7 @@ import org.mjsip.sip.header.Header;
 import org.mjsip.sip.header.MultipleHeader;
 import org.mjsip.sip.header.RAckHeader;
 import org.mjsip.sip.header.RecordRouteHeader;
+import org.mjsip.sip.header.ServerHeader;
 import org.mjsip.sip.header.ReferToHeader;
 import org.mjsip.sip.header.ReferredByHeader;
 import org.mjsip.sip.header.SipHeaders;
@@ -71,7 +73,8 @@ import org.mjsip.sip.provider.SipProvider;
   */
 public class SipMessageFactory extends BasicSipMessageFactory {
 
-	
+	/** Pre-serialized stateless responses by response code. */
+	private final ConcurrentHashMap<Integer, ResponseTemplate> _templates = new ConcurrentHashMap<>();
 
 	//*************************** Basic (RFC 3261) ****************************
 
@@ -82,6 +85,24 @@ public class SipMessageFactory extends BasicSipMessageFactory {
 		super(sipConfig);
 	}
 
+	/**
+	 * The {@link ResponseTemplate} for stateless responses with the given code and its default
+	 * reason phrase.
+	 *
+	 * <p>
+	 * The template contains the <code>Server</code> header, if configured.
+	 * </p>
+	 */
+	public ResponseTemplate getResponseTemplate(int code) {
+		ResponseTemplate result = _templates.get(code);
+		if (result == null) {
+			String server = sipConfig.getServerInfo();
+			result = _templates.computeIfAbsent(code,
+					c -> new ResponseTemplate(c, null, server == null ? null : new ServerHeader(server)));
+		}
+		return result;
+	}
+
 	/** Creates a new INVITE request out of any pre-existing dialogs.
 	  * @param request_uri the request URI
 	  * @param to name address in the <i>To</i> header field
@@ -0,0 +1,462 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mjsip.sip.header.Header;
+
+/**
+ * Byte-level editor for the wire image of a received {@link SipMessage}.
+ *
+ * <p>
+ * A {@link SipMessageSplicer} allows to apply the typical modifications of a stateless proxy
+ * (prepend a header, replace the first line, replace or remove a header, pop the first value of a
+ * multi-valued header) directly to the bytes of a received message without serializing the
+ * complete message from its parsed header objects. Edits are recorded relative to the original
+ * bytes and applied in a single copy pass by {@link #getBytes()}.
+ * </p>
+ *
+ * <p>
+ * Each header line of the original message can be edited at most once. Header names are matched
+ * case-insensitively in their full form (as in {@link BasicSipMessage#getHeader(String)}).
+ * </p>
+ *
+ * @see BasicSipMessage#getReceivedBytes()
+ */
+public class SipMessageSplicer {
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private static final byte[] EMPTY = {};
+
+	/**
+	 * The original wire image.
+	 */
+	private final byte[] _data;
+
+	/**
+	 * End offset (exclusive, including line terminator) of the first line.
+	 */
+	private final int _firstLineEnd;
+
+	/**
+	 * Start offsets of the header lines (including folded continuation lines).
+	 */
+	private final int[] _lineStart;
+
+	/**
+	 * End offsets (exclusive, including line terminator) of the header lines.
+	 */
+	private final int[] _lineEnd;
+
+	/**
+	 * Offsets of the colon in the header lines.
+	 */
+	private final int[] _colon;
+
+	/**
+	 * Number of header lines.
+	 */
+	private final int _lineCnt;
+
+	/**
+	 * Whether a header line has been edited (or removed).
+	 */
+	private final boolean[] _edited;
+
+	/**
+	 * Whether the first line has been replaced.
+	 */
+	private boolean _firstLineEdited;
+
+	/**
+	 * Recorded edits in order of creation.
+	 */
+	private final List<Edit> _edits = new ArrayList<>();
+
+	/**
+	 * Change in length of the resulting message compared to the original.
+	 */
+	private int _delta;
+
+	private static final class Edit {
+		final int offset;
+
+		final int removeLength;
+
+		final byte[] insert;
+
+		Edit(int offset, int removeLength, byte[] insert) {
+			this.offset = offset;
+			this.removeLength = removeLength;
+			this.insert = insert;
+		}
+	}
+
+	/**
+	 * Creates a {@link SipMessageSplicer} for the bytes a message was received with.
+	 *
+	 * @param msg
+	 *        The received message.
+	 * @throws IllegalArgumentException
+	 *         If the given message was not parsed from bytes.
+	 * @throws MalformedSipMessageException
+	 *         If the received bytes do not start with a SIP message header.
+	 */
+	public SipMessageSplicer(SipMessage msg) throws MalformedSipMessageException {
+		this(requireReceivedBytes(msg));
+	}
+
+	/**
+	 * Creates a {@link SipMessageSplicer} for the given wire image of a SIP message.
+	 *
+	 * @throws MalformedSipMessageException
+	 *         If the given bytes do not start with a SIP message header.
+	 */
+	public SipMessageSplicer(byte[] data) throws MalformedSipMessageException {
+		_data = data;
+
+		int len = data.length;
+		int pos = endOfLine(data, 0, len);
+		if (pos < 0) {
+			throw new MalformedSipMessageException("No first line found.");
+		}
+		_firstLineEnd = pos;
+
+		int capacity = 16;
+		int[] lineStart = new int[capacity];
+		int[] lineEnd = new int[capacity];
+		int[] colon = new int[capacity];
+		int cnt = 0;
+		while (true) {
+			if (pos >= len) {
+				throw new MalformedSipMessageException("No end of header found.");
+			}
+			if (data[pos] == '\n' || (data[pos] == '\r' && pos + 1 < len && data[pos + 1] == '\n')) {
+				// Empty line, end of header.
+				break;
+			}
+
+			int start = pos;
+			int end = endOfLine(data, pos, len);
+			if (end < 0) {
+				throw new MalformedSipMessageException("Unterminated header line.");
+			}
+			// Folded continuation lines.
+			while (end < len && (data[end] == ' ' || data[end] == '\t')) {
+				end = endOfLine(data, end, len);
+				if (end < 0) {
+					throw new MalformedSipMessageException("Unterminated header line.");
+				}
+			}
+
+			int colonPos = indexOf(data, start, end, (byte) ':');
+			if (colonPos >= 0) {
+				if (cnt == capacity) {
+					capacity *= 2;
+					lineStart = grow(lineStart, capacity);
+					lineEnd = grow(lineEnd, capacity);
+					colon = grow(colon, capacity);
+				}
+				lineStart[cnt] = start;
+				lineEnd[cnt] = end;
+				colon[cnt] = colonPos;
+				cnt++;
+			}
+			pos = end;
+		}
+		_lineStart = lineStart;
+		_lineEnd = lineEnd;
+		_colon = colon;
+		_lineCnt = cnt;
+		_edited = new boolean[cnt];
+	}
+
+	private static byte[] requireReceivedBytes(SipMessage msg) {
+		byte[] result = msg.getReceivedBytes();
+		if (result == null) {
+			throw new IllegalArgumentException("Message was not received from the wire.");
+		}
+		return result;
+	}
+
+	/**
+	 * The first line (request or status line) of the original message without line terminator.
+	 */
+	public String getFirstLine() {
+		int end = _firstLineEnd;
+		while (end > 0 && isWhiteSpace(_data[end - 1])) {
+			end--;
+		}
+		return new String(_data, 0, end, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * The number of header lines in the original message.
+	 */
+	public int getHeaderCount() {
+		return _lineCnt;
+	}
+
+	/**
+	 * The index of the first header line with the given name, or <code>-1</code> if there is no
+	 * such header.
+	 */
+	public int indexOfHeader(String hname) {
+		return indexOfHeader(hname, 0);
+	}
+
+	/**
+	 * The index of the first header line with the given full or compact name (e.g.
+	 * <code>Via</code> or <code>v</code>), or <code>-1</code> if there is no such header.
+	 */
+	public int indexOfHeader(String hname, String shortName) {
+		for (int n = 0; n < _lineCnt; n++) {
+			if (matchesName(n, hname) || matchesName(n, shortName)) {
+				return n;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The index of the first header line with the given name starting at the given index, or
+	 * <code>-1</code> if there is no such header.
+	 */
+	public int indexOfHeader(String hname, int fromIndex) {
+		for (int n = fromIndex; n < _lineCnt; n++) {
+			if (matchesName(n, hname)) {
+				return n;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The value of the header line with the given index as in the original message.
+	 */
+	public String getHeaderValue(int index) {
+		int start = _colon[index] + 1;
+		int end = _lineEnd[index];
+		while (start < end && isWhiteSpace(_data[start])) {
+			start++;
+		}
+		while (end > start && isWhiteSpace(_data[end - 1])) {
+			end--;
+		}
+		return new String(_data, start, end - start, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Replaces the first line (request or status line).
+	 *
+	 * @param firstLine
+	 *        The new first line without line terminator.
+	 */
+	public SipMessageSplicer setFirstLine(String firstLine) {
+		if (_firstLineEdited) {
+			throw new IllegalStateException("First line has already been replaced.");
+		}
+		_firstLineEdited = true;
+		addEdit(0, _firstLineEnd, line(firstLine));
+		return this;
+	}
+
+	/**
+	 * Inserts the given header before all other headers.
+	 */
+	public SipMessageSplicer addHeaderTop(Header header) {
+		addEdit(_firstLineEnd, 0, header.toString().getBytes(StandardCharsets.ISO_8859_1));
+		return this;
+	}
+
+	/**
+	 * Replaces the header line with the given index.
+	 */
+	public SipMessageSplicer replaceHeader(int index, Header header) {
+		markEdited(index);
+		addEdit(_lineStart[index], _lineEnd[index] - _lineStart[index],
+				header.toString().getBytes(StandardCharsets.ISO_8859_1));
+		return this;
+	}
+
+	/**
+	 * Removes the header line with the given index.
+	 */
+	public SipMessageSplicer removeHeader(int index) {
+		markEdited(index);
+		addEdit(_lineStart[index], _lineEnd[index] - _lineStart[index], EMPTY);
+		return this;
+	}
+
+	/**
+	 * Removes the first value of the header line with the given index.
+	 *
+	 * <p>
+	 * If the header line contains a comma-separated list of values (e.g. a <code>Route</code>
+	 * header with multiple addresses), only the first value is removed. Otherwise, the complete
+	 * header line is removed.
+	 * </p>
+	 */
+	public SipMessageSplicer removeFirstValue(int index) {
+		int start = _colon[index] + 1;
+		int end = _lineEnd[index];
+		int comma = indexOfSeparator(_data, start, end);
+		if (comma < 0) {
+			return removeHeader(index);
+		}
+		markEdited(index);
+		int rest = comma + 1;
+		while (rest < end && isWhiteSpace(_data[rest])) {
+			rest++;
+		}
+		// Keep the header name and colon, drop the first value.
+		addEdit(start, rest - start, new byte[] { ' ' });
+		return this;
+	}
+
+	/**
+	 * The size of the resulting message in bytes.
+	 */
+	public int getLength() {
+		return _data.length + _delta;
+	}
+
+	/**
+	 * Applies all edits and returns the resulting wire image.
+	 */
+	public byte[] getBytes() {
+		byte[] result = new byte[getLength()];
+		int srcPos = 0;
+		int dstPos = 0;
+		for (Edit edit : sortedEdits()) {
+			int copy = edit.offset - srcPos;
+			System.arraycopy(_data, srcPos, result, dstPos, copy);
+			dstPos += copy;
+			System.arraycopy(edit.insert, 0, result, dstPos, edit.insert.length);
+			dstPos += edit.insert.length;
+			srcPos = edit.offset + edit.removeLength;
+		}
+		System.arraycopy(_data, srcPos, result, dstPos, _data.length - srcPos);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return new String(getBytes(), StandardCharsets.ISO_8859_1);
+	}
+
+	private List<Edit> sortedEdits() {
+		if (_edits.size() <= 1) {
+			return _edits;
+		}
+		List<Edit> result = new ArrayList<>(_edits);
+		// Pure insertions go before a replacement at the same offset, the stable sort keeps the
+		// order of insertions at the same offset.
+		result.sort((e1, e2) -> {
+			int cmp = Integer.compare(e1.offset, e2.offset);
+			if (cmp != 0) {
+				return cmp;
+			}
+			return Boolean.compare(e1.removeLength > 0, e2.removeLength > 0);
+		});
+		return result;
+	}
+
+	private void addEdit(int offset, int removeLength, byte[] insert) {
+		_edits.add(new Edit(offset, removeLength, insert));
+		_delta += insert.length - removeLength;
+	}
+
+	private void markEdited(int index) {
+		if (_edited[index]) {
+			throw new IllegalStateException("Header line " + index + " has already been edited.");
+		}
+		_edited[index] = true;
+	}
+
+	private boolean matchesName(int index, String hname) {
+		int start = _lineStart[index];
+		int end = _colon[index];
+		while (end > start && isWhiteSpace(_data[end - 1])) {
+			end--;
+		}
+		int len = hname.length();
+		if (end - start != len) {
+			return false;
+		}
+		for (int n = 0; n < len; n++) {
+			char c1 = (char) (_data[start + n] & 0xFF);
+			char c2 = hname.charAt(n);
+			if (c1 != c2 && Character.toLowerCase(c1) != Character.toLowerCase(c2)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] line(String str) {
+		byte[] text = str.getBytes(StandardCharsets.ISO_8859_1);
+		byte[] result = new byte[text.length + CRLF.length];
+		System.arraycopy(text, 0, result, 0, text.length);
+		System.arraycopy(CRLF, 0, result, text.length, CRLF.length);
+		return result;
+	}
+
+	/**
+	 * Index of the first comma that separates two values, i.e. that is not enclosed in quotes or
+	 * angle brackets.
+	 */
+	private static int indexOfSeparator(byte[] data, int start, int end) {
+		boolean quoted = false;
+		boolean bracket = false;
+		for (int n = start; n < end; n++) {
+			byte b = data[n];
+			if (quoted) {
+				if (b == '\\') {
+					n++;
+				} else if (b == '"') {
+					quoted = false;
+				}
+			} else if (b == '"') {
+				quoted = true;
+			} else if (b == '<') {
+				bracket = true;
+			} else if (b == '>') {
+				bracket = false;
+			} else if (b == ',' && !bracket) {
+				return n;
+			}
+		}
+		return -1;
+	}
+
+	private static int endOfLine(byte[] data, int pos, int len) {
+		int lf = indexOf(data, pos, len, (byte) '\n');
+		return lf < 0 ? -1 : lf + 1;
+	}
+
+	private static int indexOf(byte[] data, int start, int end, byte b) {
+		for (int n = start; n < end; n++) {
+			if (data[n] == b) {
+				return n;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isWhiteSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] result = new int[capacity];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+}
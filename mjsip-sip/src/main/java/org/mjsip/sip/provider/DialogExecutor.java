@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes tasks on a shared thread pool, but serially for each Call-ID.
+ *
+ * <p>
+ * Each Call-ID with pending tasks has its own mailbox. Tasks submitted for the same Call-ID run
+ * one after another in submission order, and never concurrently, while tasks of different
+ * Call-IDs run in parallel on the pool. Therefore, the state of dialogs, transactions, and calls
+ * belonging to a single Call-ID is only accessed by one thread at a time, without any lock shared
+ * between calls.
+ * </p>
+ *
+ * <p>
+ * A mailbox exists only as long as it has pending tasks, so that idle calls do not occupy memory.
+ * A mailbox processes at most {@link #BATCH} tasks before yielding its pool thread to other
+ * mailboxes.
+ * </p>
+ *
+ * <p>
+ * Mailboxes with urgent tasks are run before all other mailboxes waiting for a pool thread. This
+ * lets messages of established calls overtake new calls, if the pool is backlogged. A mailbox
+ * that is already waiting keeps its position, if an urgent task is added later on.
+ * </p>
+ */
+public class DialogExecutor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DialogExecutor.class);
+
+	/** Maximum number of tasks a mailbox runs before re-submitting itself to the pool. */
+	static final int BATCH = 16;
+
+	private final Executor _pool;
+
+	private final ConcurrentHashMap<String, Mailbox> _mailboxes = new ConcurrentHashMap<>();
+
+	/** Mailboxes with urgent tasks waiting for a pool thread. */
+	private final ConcurrentLinkedQueue<Mailbox> _urgent = new ConcurrentLinkedQueue<>();
+
+	/** Other mailboxes waiting for a pool thread. */
+	private final ConcurrentLinkedQueue<Mailbox> _normal = new ConcurrentLinkedQueue<>();
+
+	/** Runs the next waiting mailbox, submitted to the pool once for each waiting mailbox. */
+	private final Runnable _next = this::runNext;
+
+	private final LongAdder _executed = new LongAdder();
+
+	/**
+	 * Creates a {@link DialogExecutor}.
+	 *
+	 * @param pool
+	 *        The shared pool that runs the mailboxes.
+	 */
+	public DialogExecutor(Executor pool) {
+		_pool = pool;
+	}
+
+	/**
+	 * Runs the given task after all tasks previously submitted for the same Call-ID.
+	 *
+	 * @param callId
+	 *        The Call-ID the task belongs to.
+	 * @param task
+	 *        The task to run.
+	 */
+	public void execute(String callId, Runnable task) {
+		execute(callId, task, false);
+	}
+
+	/**
+	 * Runs the given task after all tasks previously submitted for the same Call-ID.
+	 *
+	 * @param callId
+	 *        The Call-ID the task belongs to.
+	 * @param task
+	 *        The task to run.
+	 * @param urgent
+	 *        Whether the call of the task is run before calls without urgent tasks.
+	 */
+	public void execute(String callId, Runnable task, boolean urgent) {
+		while (true) {
+			Mailbox mailbox = _mailboxes.computeIfAbsent(callId, Mailbox::new);
+			if (mailbox.offer(urgent ? new Urgent(task) : task)) {
+				return;
+			}
+			// The mailbox has just been drained and retired, retry with a fresh one.
+			_mailboxes.remove(callId, mailbox);
+		}
+	}
+
+	/**
+	 * The number of Call-IDs with pending tasks.
+	 */
+	public int getActiveMailboxes() {
+		return _mailboxes.size();
+	}
+
+	/**
+	 * The number of tasks executed so far.
+	 */
+	public long getExecutedTasks() {
+		return _executed.sum();
+	}
+
+	/**
+	 * Enqueues a mailbox that waits for a pool thread.
+	 */
+	private void submit(Mailbox mailbox, boolean urgent) {
+		ConcurrentLinkedQueue<Mailbox> queue = urgent ? _urgent : _normal;
+		queue.add(mailbox);
+		try {
+			_pool.execute(_next);
+		} catch (RejectedExecutionException ex) {
+			queue.remove(mailbox);
+			throw ex;
+		}
+	}
+
+	private void runNext() {
+		Mailbox mailbox = _urgent.poll();
+		if (mailbox == null) {
+			mailbox = _normal.poll();
+		}
+		mailbox.run();
+	}
+
+	/**
+	 * A task that is run before tasks of other calls.
+	 */
+	private static final class Urgent implements Runnable {
+
+		private final Runnable _task;
+
+		Urgent(Runnable task) {
+			_task = task;
+		}
+
+		@Override
+		public void run() {
+			_task.run();
+		}
+
+	}
+
+	/**
+	 * Queue of pending tasks for a single Call-ID.
+	 */
+	private final class Mailbox implements Runnable {
+
+		private final String _callId;
+
+		private final ArrayDeque<Runnable> _tasks = new ArrayDeque<>(4);
+
+		/** Whether the mailbox is currently submitted to the pool. */
+		private boolean _running;
+
+		/** The number of {@link Urgent} tasks in {@link #_tasks}. */
+		private int _urgentCnt;
+
+		/** Whether the mailbox has been removed from the table and accepts no more tasks. */
+		private boolean _retired;
+
+		Mailbox(String callId) {
+			_callId = callId;
+		}
+
+		synchronized boolean offer(Runnable task) {
+			if (_retired) {
+				return false;
+			}
+			_tasks.add(task);
+			if (task instanceof Urgent) {
+				_urgentCnt++;
+			}
+			if (!_running) {
+				_running = true;
+				submit(this, _urgentCnt > 0);
+			}
+			return true;
+		}
+
+		@Override
+		public void run() {
+			for (int n = 0; n < BATCH; n++) {
+				Runnable task;
+				synchronized (this) {
+					task = _tasks.poll();
+					if (task == null) {
+						_running = false;
+						_retired = true;
+						_mailboxes.remove(_callId, this);
+						return;
+					}
+					if (task instanceof Urgent) {
+						_urgentCnt--;
+					}
+				}
+				try {
+					task.run();
+				} catch (RuntimeException ex) {
+					LOG.warn("Task for call '{}' failed.", _callId, ex);
+				}
+				_executed.increment();
+			}
+
+			// Give other mailboxes a chance, the mailbox is still marked running.
+			boolean urgent;
+			synchronized (this) {
+				urgent = _urgentCnt > 0;
+			}
+			submit(this, urgent);
+		}
+
+	}
+
+}
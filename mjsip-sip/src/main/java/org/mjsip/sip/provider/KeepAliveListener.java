@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Listener for failures detected by a {@link KeepAliveService}.
+ */
+public interface KeepAliveListener {
+
+	/**
+	 * When a target did not answer the configured number of RFC 5626 pings, or keep-alive tokens
+	 * could not be sent to it. The target has already been removed from the service.
+	 *
+	 * @param service
+	 *        The service that detected the failure.
+	 * @param proto
+	 *        The transport protocol used for the target.
+	 * @param target
+	 *        The address of the failed target.
+	 */
+	void onKeepAliveFailure(KeepAliveService service, String proto, SocketAddress target);
+
+}
@@ -0,0 +1,529 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
+import org.mjsip.sip.message.SipMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Service keeping up NAT bindings and connections toward many targets (e.g. registered user
+ * agents behind NATs, or the serving proxy).
+ *
+ * <p>
+ * In contrast to {@link SipKeepAlive}, that uses a thread per target, all targets of a
+ * {@link SipProvider} are kept in a single timing wheel. A single periodic task collects the
+ * targets that are due in the current tick and sends their tokens in one batch per transport.
+ * Adding, updating and removing a target is done in constant time.
+ * </p>
+ *
+ * <p>
+ * A target either receives plain CRLF tokens that only refresh the NAT binding, or RFC 5626 CRLFCRLF
+ * pings. For pings, a CRLF pong is expected before the next ping is due. If
+ * {@link #getMaxMissedPongs()} pongs in a row are missing, or the token cannot be sent, the target
+ * is removed and the {@link KeepAliveListener}s are notified. Pings are only supported over UDP,
+ * since pongs are not reported by connection-oriented transports.
+ * </p>
+ *
+ * <p>
+ * Each target belongs to an owner, e.g. the component that has learned about the target address.
+ * Different owners keeping alive the same address have separate targets, so that one owner
+ * stopping its target does not affect the other.
+ * </p>
+ *
+ * @see SipProvider#keepAlive()
+ */
+public class KeepAliveService {
+
+	private static final Logger LOG = LoggerFactory.getLogger(KeepAliveService.class);
+
+	private static final Counter SENT_TOKENS = Metrics.global().counter("sip_keepalive_sent_total",
+			"Keep-alive tokens and pings sent.");
+
+	private static final Counter FAILED_TARGETS = Metrics.global().counter("sip_keepalive_failures_total",
+			"Keep-alive targets removed because of missing pongs or send failures.");
+
+	/** Default resolution of the timing wheel in milliseconds. */
+	public static final long DEFAULT_TICK = 100;
+
+	/** Default number of missing pongs after which a target is considered failed. */
+	public static final int DEFAULT_MAX_MISSED_PONGS = 2;
+
+	/** Number of slots in the timing wheel. */
+	private static final int WHEEL_SIZE = 512;
+
+	/** Plain keep-alive token. */
+	static final byte[] CRLF = UdpTransport.PONG;
+
+	/** RFC 5626 ping. */
+	static final byte[] CRLFCRLF = UdpTransport.PING;
+
+	private static final SipMessage CRLF_TOKEN = new Token(CRLF);
+
+	private static final SipMessage CRLFCRLF_TOKEN = new Token(CRLFCRLF);
+
+	private final SipProvider _sipProvider;
+
+	private final long _tickNanos;
+
+	private final List<List<Target>> _wheel = new ArrayList<>(WHEEL_SIZE);
+
+	/** Targets by transport and address, one for each owner. */
+	private final Map<String, List<Target>> _targets = new HashMap<>();
+
+	private int _size;
+
+	private final List<KeepAliveListener> _listeners = new CopyOnWriteArrayList<>();
+
+	private final ScheduledFuture<?> _task;
+
+	private int _cursor;
+
+	private long _nextTick;
+
+	private int _maxMissedPongs = DEFAULT_MAX_MISSED_PONGS;
+
+	/**
+	 * Creates a {@link KeepAliveService} with the {@link #DEFAULT_TICK}.
+	 */
+	public KeepAliveService(SipProvider sipProvider) {
+		this(sipProvider, DEFAULT_TICK);
+	}
+
+	/**
+	 * Creates a {@link KeepAliveService}.
+	 *
+	 * @param sipProvider
+	 *        The provider to send tokens with.
+	 * @param tick
+	 *        The resolution of keep-alive intervals in milliseconds.
+	 */
+	public KeepAliveService(SipProvider sipProvider, long tick) {
+		if (tick < 1) {
+			throw new IllegalArgumentException("Tick must be at least 1ms: " + tick);
+		}
+		_sipProvider = sipProvider;
+		_tickNanos = TimeUnit.MILLISECONDS.toNanos(tick);
+		for (int n = 0; n < WHEEL_SIZE; n++) {
+			_wheel.add(new ArrayList<>());
+		}
+		_nextTick = System.nanoTime() + _tickNanos;
+		_task = sipProvider.scheduler().schedulerWithFixedDelay(tick, this::tick);
+	}
+
+	/**
+	 * Adds a listener for failed targets.
+	 */
+	public void addListener(KeepAliveListener listener) {
+		_listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener added with {@link #addListener(KeepAliveListener)}.
+	 */
+	public void removeListener(KeepAliveListener listener) {
+		_listeners.remove(listener);
+	}
+
+	/**
+	 * The number of consecutive missing pongs after which a pinged target is considered failed.
+	 */
+	public synchronized int getMaxMissedPongs() {
+		return _maxMissedPongs;
+	}
+
+	/** @see #getMaxMissedPongs() */
+	public synchronized void setMaxMissedPongs(int maxMissedPongs) {
+		_maxMissedPongs = Math.max(1, maxMissedPongs);
+	}
+
+	/**
+	 * Starts sending CRLF keep-alive tokens to the given target.
+	 *
+	 * @see #start(Object, String, SocketAddress, long, boolean)
+	 */
+	public Target start(Object owner, String proto, SocketAddress target, long interval) {
+		return start(owner, proto, target, interval, false);
+	}
+
+	/**
+	 * Starts sending keep-alive tokens to the given target.
+	 *
+	 * <p>
+	 * If the target is already active for the given owner, only its interval and ping mode are
+	 * updated, which takes effect after the next token.
+	 * </p>
+	 *
+	 * @param owner
+	 *        The component the target belongs to.
+	 * @param proto
+	 *        The transport protocol to send tokens with.
+	 * @param target
+	 *        The address to send tokens to.
+	 * @param interval
+	 *        The time between two tokens in milliseconds.
+	 * @param ping
+	 *        Whether to send RFC 5626 CRLFCRLF pings and to expect pongs, instead of plain CRLF
+	 *        tokens. Only supported for UDP.
+	 * @return Handle to update or stop sending tokens.
+	 */
+	public synchronized Target start(Object owner, String proto, SocketAddress target, long interval, boolean ping) {
+		if (ping && !SipProvider.PROTO_UDP.equalsIgnoreCase(proto)) {
+			throw new IllegalArgumentException("Pings are only supported over UDP, not over: " + proto);
+		}
+		Target result = lookup(owner, proto, target);
+		if (result == null) {
+			String key = key(proto, target.getAddress(), target.getPort());
+			result = new Target(owner, key, proto.toLowerCase(), target);
+			_targets.computeIfAbsent(key, k -> new ArrayList<>(1)).add(result);
+			_size++;
+			// Send the first token with the next tick.
+			insert(result, 0);
+		}
+		result._interval = interval;
+		result._ping = ping;
+		return result;
+	}
+
+	/**
+	 * The active target of the given owner for the given address, or <code>null</code>.
+	 */
+	public synchronized Target get(Object owner, String proto, SocketAddress target) {
+		return lookup(owner, proto, target);
+	}
+
+	private Target lookup(Object owner, String proto, SocketAddress target) {
+		List<Target> targets = _targets.get(key(proto, target.getAddress(), target.getPort()));
+		if (targets != null) {
+			for (Target candidate : targets) {
+				if (candidate._owner == owner) {
+					return candidate;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stops sending tokens to the target of the given owner.
+	 *
+	 * @return Whether the target was active.
+	 */
+	public boolean stop(Object owner, String proto, SocketAddress target) {
+		Target handle = get(owner, proto, target);
+		if (handle == null) {
+			return false;
+		}
+		handle.halt();
+		return true;
+	}
+
+	/**
+	 * The number of active targets.
+	 */
+	public synchronized int size() {
+		return _size;
+	}
+
+	/**
+	 * Stops sending tokens to all targets.
+	 */
+	public synchronized void halt() {
+		_task.cancel(false);
+		for (List<Target> targets : _targets.values()) {
+			for (Target target : targets) {
+				target._active = false;
+			}
+		}
+		_targets.clear();
+		_size = 0;
+		for (List<Target> slot : _wheel) {
+			slot.clear();
+		}
+	}
+
+	/**
+	 * Called by the {@link UdpTransport} when a RFC 5626 pong has been received.
+	 */
+	synchronized void onPong(IpAddress address, int port) {
+		List<Target> targets = _targets.get(key(SipProvider.PROTO_UDP, address, port));
+		if (targets != null) {
+			for (Target target : targets) {
+				target._awaitingPong = false;
+				target._missed = 0;
+			}
+		}
+	}
+
+	private static String key(String proto, IpAddress address, int port) {
+		return proto.toLowerCase() + ':' + address + ':' + port;
+	}
+
+	/**
+	 * Schedules the given target to be processed after the given delay.
+	 */
+	private void insert(Target target, long delay) {
+		long ticks = Math.max(1, (TimeUnit.MILLISECONDS.toNanos(delay) + _tickNanos - 1) / _tickNanos);
+		target._rounds = (ticks - 1) / WHEEL_SIZE;
+		_wheel.get((int) ((_cursor + ticks) % WHEEL_SIZE)).add(target);
+	}
+
+	private void remove(Target target) {
+		if (target._active) {
+			target._active = false;
+			List<Target> targets = _targets.get(target._key);
+			targets.remove(target);
+			if (targets.isEmpty()) {
+				_targets.remove(target._key);
+			}
+			_size--;
+			// Removed from its wheel slot when the slot is processed next time.
+		}
+	}
+
+	/**
+	 * Advances the wheel and sends tokens to all targets that are due.
+	 */
+	private void tick() {
+		Map<String, List<Target>> batches = new LinkedHashMap<>();
+		List<Target> failed = new ArrayList<>();
+		synchronized (this) {
+			long now = System.nanoTime();
+			long time = System.currentTimeMillis();
+			while (now - _nextTick >= 0) {
+				_nextTick += _tickNanos;
+				_cursor = (_cursor + 1) % WHEEL_SIZE;
+
+				List<Target> slot = _wheel.get(_cursor);
+				if (slot.isEmpty()) {
+					continue;
+				}
+				List<Target> remaining = new ArrayList<>();
+				_wheel.set(_cursor, remaining);
+				for (Target target : slot) {
+					if (!target._active) {
+						continue;
+					}
+					if (target._rounds > 0) {
+						target._rounds--;
+						remaining.add(target);
+						continue;
+					}
+					if (target._expire > 0 && time > target._expire) {
+						LOG.debug("Keep-alive expired: {}", target);
+						remove(target);
+						continue;
+					}
+					if (target._ping && target._awaitingPong && ++target._missed >= _maxMissedPongs) {
+						remove(target);
+						failed.add(target);
+						continue;
+					}
+					target._awaitingPong = target._ping;
+					batches.computeIfAbsent(target._proto, p -> new ArrayList<>()).add(target);
+					insert(target, target._interval);
+				}
+			}
+		}
+
+		for (Map.Entry<String, List<Target>> batch : batches.entrySet()) {
+			send(batch.getKey(), batch.getValue(), failed);
+		}
+
+		for (Target target : failed) {
+			fail(target);
+		}
+	}
+
+	/**
+	 * Sends the tokens of a single tick for all targets using the same transport.
+	 */
+	private void send(String proto, List<Target> batch, List<Target> failed) {
+		SipTransport transport = _sipProvider.getTransport(proto);
+		if (transport == null) {
+			LOG.warn("Transport {} not available, dropping {} keep-alive targets.", proto, batch.size());
+			failed.addAll(batch);
+			return;
+		}
+		if (transport instanceof UdpTransport) {
+			UdpTransport udp = (UdpTransport) transport;
+			for (Target target : batch) {
+				try {
+					udp.sendBytes(target._ping ? CRLFCRLF : CRLF, target._soaddr.getAddress(), target._soaddr.getPort());
+					SENT_TOKENS.inc();
+				} catch (IOException ex) {
+					LOG.debug("Keep-alive to {} failed: {}", target, ex.getMessage());
+					failed.add(target);
+				}
+			}
+		} else {
+			for (Target target : batch) {
+				ConnectionId connection = _sipProvider.sendRawMessage(target._ping ? CRLFCRLF_TOKEN : CRLF_TOKEN,
+					proto, target._soaddr.getAddress(), target._soaddr.getPort(), 127);
+				if (connection == null) {
+					failed.add(target);
+				} else {
+					SENT_TOKENS.inc();
+				}
+			}
+		}
+	}
+
+	private void fail(Target target) {
+		synchronized (this) {
+			remove(target);
+		}
+		LOG.info("Keep-alive target failed: {}", target);
+		FAILED_TARGETS.inc();
+		for (KeepAliveListener listener : _listeners) {
+			listener.onKeepAliveFailure(this, target._proto, target._soaddr);
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "KeepAliveService(" + _size + " targets)";
+	}
+
+	/**
+	 * Handle of a target of a {@link KeepAliveService}.
+	 */
+	public final class Target {
+
+		private final Object _owner;
+
+		private final String _key;
+
+		private final String _proto;
+
+		private final SocketAddress _soaddr;
+
+		private long _interval;
+
+		private boolean _ping;
+
+		private long _expire;
+
+		private long _rounds;
+
+		private boolean _awaitingPong;
+
+		private int _missed;
+
+		private boolean _active = true;
+
+		Target(Object owner, String key, String proto, SocketAddress soaddr) {
+			_owner = owner;
+			_key = key;
+			_proto = proto;
+			_soaddr = soaddr;
+		}
+
+		/**
+		 * The transport protocol tokens are sent with.
+		 */
+		public String getProtocol() {
+			return _proto;
+		}
+
+		/**
+		 * The address tokens are sent to.
+		 */
+		public SocketAddress getDestSoAddress() {
+			return _soaddr;
+		}
+
+		/**
+		 * The time in milliseconds between two tokens.
+		 */
+		public long getDeltaTime() {
+			synchronized (KeepAliveService.this) {
+				return _interval;
+			}
+		}
+
+		/**
+		 * The number of consecutive pings without pong.
+		 */
+		public int getMissedPongs() {
+			synchronized (KeepAliveService.this) {
+				return _missed;
+			}
+		}
+
+		/**
+		 * Whether tokens are still sent to this target.
+		 */
+		public boolean isRunning() {
+			synchronized (KeepAliveService.this) {
+				return _active;
+			}
+		}
+
+		/**
+		 * Stops sending tokens after the given time in milliseconds, or never if <code>0</code>.
+		 */
+		public void setExpirationTime(long time) {
+			synchronized (KeepAliveService.this) {
+				_expire = time == 0 ? 0 : System.currentTimeMillis() + time;
+			}
+		}
+
+		/**
+		 * Stops sending tokens to this target.
+		 */
+		public void halt() {
+			synchronized (KeepAliveService.this) {
+				remove(this);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return _proto + ":" + _soaddr;
+		}
+	}
+
+	/**
+	 * Raw token sent over connection-oriented transports.
+	 */
+	private static final class Token extends SipMessage {
+
+		private final byte[] _data;
+
+		Token(byte[] data) {
+			_data = data;
+		}
+
+		@Override
+		public byte[] getBytes() {
+			return _data;
+		}
+
+		@Override
+		public int getLength() {
+			return _data.length;
+		}
+
+		@Override
+		public String toString() {
+			return new String(_data);
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+
+/**
+ * Counters for SIP messages in one direction, requests per method and responses per method and
+ * status code.
+ *
+ * <p>
+ * Methods not known to the stack are counted as {@link #OTHER}, so that messages from the network
+ * cannot create an unbounded number of metrics.
+ * </p>
+ */
+final class MessageMetrics {
+
+	/** Label value for methods not known to the stack. */
+	static final String OTHER = "other";
+
+	private static final String[] METHODS = { SipMethods.ACK, SipMethods.BYE, SipMethods.CANCEL, SipMethods.INFO,
+			SipMethods.INVITE, SipMethods.MESSAGE, SipMethods.NOTIFY, SipMethods.OPTIONS, SipMethods.PRACK,
+			SipMethods.PUBLISH, SipMethods.REFER, SipMethods.REGISTER, SipMethods.SUBSCRIBE, SipMethods.UPDATE };
+
+	private final String _direction;
+
+	/** Request counters by method, not modified after construction. */
+	private final Map<String, Counter> _requests = new HashMap<>();
+
+	private final Counter _otherRequests;
+
+	/** Response counters by method and status code. */
+	private final ConcurrentHashMap<String, Counter> _responses = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates {@link MessageMetrics}.
+	 *
+	 * @param direction
+	 *        Either <code>received</code> or <code>sent</code>.
+	 */
+	MessageMetrics(String direction) {
+		_direction = direction;
+		for (String method : METHODS) {
+			_requests.put(method, requestCounter(method));
+		}
+		_otherRequests = requestCounter(OTHER);
+	}
+
+	private Counter requestCounter(String method) {
+		return Metrics.global().counter("sip_requests_" + _direction + "_total", "SIP requests " + _direction + ".",
+				"method", method);
+	}
+
+	/**
+	 * Counts the given message.
+	 */
+	void count(SipMessage msg) {
+		if (msg.isRequest()) {
+			Counter counter = _requests.get(msg.getRequestLine().getMethod());
+			(counter == null ? _otherRequests : counter).inc();
+		} else if (msg.isResponse()) {
+			countResponse(msg.hasCSeqHeader() ? msg.getCSeqHeader().getMethod() : OTHER, msg.getStatusLine().getCode());
+		}
+	}
+
+	/**
+	 * Counts a response that is not available as {@link SipMessage}.
+	 *
+	 * @param method
+	 *        The method of the request that is answered.
+	 * @param code
+	 *        The response code.
+	 */
+	void countResponse(String method, int code) {
+		if (!_requests.containsKey(method)) {
+			method = OTHER;
+		}
+		String status = code >= 100 && code < 700 ? Integer.toString(code) : OTHER;
+		String key = method + ' ' + status;
+		Counter counter = _responses.get(key);
+		if (counter == null) {
+			String label = method;
+			counter = _responses.computeIfAbsent(key,
+					k -> Metrics.global().counter("sip_responses_" + _direction + "_total",
+							"SIP responses " + _direction + ".", "method", label, "status", status));
+		}
+		counter.inc();
+	}
+
+}
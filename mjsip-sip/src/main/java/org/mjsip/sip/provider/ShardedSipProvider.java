@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.time.Scheduler;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Front-end distributing the SIP traffic of one set of transports to several independent
+ * {@link SipProvider} shards.
+ *
+ * <p>
+ * A single {@link SipProvider} serializes all message dispatching on its listener table and runs
+ * all timers of its transactions and dialogs on one {@link Scheduler}. With many concurrent calls,
+ * these shared structures limit the throughput long before all cores of a machine are used.
+ * </p>
+ *
+ * <p>
+ * A {@link ShardedSipProvider} owns the transports (sockets) and creates one {@link SipProvider}
+ * per given {@link Scheduler}. Each shard has its own listener table, dialog executor and
+ * scheduler, but sends through the shared transports. Each received message is dispatched to
+ * the shard selected by the {@link #shardOf(String, int) hash of its Call-ID}, and is processed
+ * there in the executor of the shard's scheduler. Messages of the same Call-ID are processed in
+ * the order received. Since all messages of a dialog share the Call-ID, each call is handled
+ * completely by a single shard. New calls created by a shard pick a Call-ID that hashes back to
+ * this shard, see {@link SipProvider#pickCallId()}.
+ * </p>
+ *
+ * <p>
+ * Existing components (user agents, server engines) are attached to each shard like to a plain
+ * {@link SipProvider}. Note that state shared between calls, e.g. the location service of a
+ * registrar, must be shared between the instances attached to the shards.
+ * </p>
+ *
+ * <p>
+ * Events of transport connections are reported to all shards. All shards share the
+ * {@link SipProvider#keepAlive() keep-alive service} of the first shard.
+ * </p>
+ */
+public class ShardedSipProvider implements SipTransportListener {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ShardedSipProvider.class);
+
+	private final SipProvider[] _shards;
+
+	/** Per-shard executors processing messages in order of reception per Call-ID. */
+	private final DialogExecutor[] _receivers;
+
+	/**
+	 * Creates a {@link ShardedSipProvider}.
+	 *
+	 * @param sipConfig
+	 *        The configuration of the transports and all shards.
+	 * @param schedulers
+	 *        One scheduler for each shard. For independent shards, each scheduler should have its
+	 *        own worker threads.
+	 */
+	public ShardedSipProvider(SipOptions sipConfig, Scheduler... schedulers) {
+		if (schedulers.length == 0) {
+			throw new IllegalArgumentException("At least one shard is required.");
+		}
+		_shards = new SipProvider[schedulers.length];
+		_receivers = new DialogExecutor[schedulers.length];
+		_shards[0] = new SipProvider(sipConfig, schedulers[0], schedulers.length);
+		for (int n = 1; n < schedulers.length; n++) {
+			_shards[n] = new SipProvider(_shards[0], schedulers[n], n);
+		}
+		for (int n = 0; n < schedulers.length; n++) {
+			_receivers[n] = new DialogExecutor(schedulers[n].executor());
+		}
+		attachTransports();
+		LOG.info("SIP traffic distributed to {} shards.", _shards.length);
+	}
+
+	/**
+	 * Directs all transports of the first shard to this front-end.
+	 */
+	private void attachTransports() {
+		Iterable<SipTransport> transports = _shards[0].sip_transports == null ? Collections.emptyList()
+				: _shards[0].sip_transports.values();
+		for (SipTransport transport : transports) {
+			transport.setListener(this);
+		}
+	}
+
+	/**
+	 * The number of shards.
+	 */
+	public int size() {
+		return _shards.length;
+	}
+
+	/**
+	 * The shard with the given index.
+	 */
+	public SipProvider getShard(int index) {
+		return _shards[index];
+	}
+
+	/**
+	 * All shards in the order of their index.
+	 */
+	public List<SipProvider> getShards() {
+		return Collections.unmodifiableList(Arrays.asList(_shards));
+	}
+
+	/**
+	 * The shard that processes the given message.
+	 */
+	public SipProvider shardOf(SipMessage msg) {
+		return _shards[indexOf(msg)];
+	}
+
+	/**
+	 * The index of the shard processing messages with the given Call-ID.
+	 *
+	 * @param call_id
+	 *        The Call-ID.
+	 * @param count
+	 *        The number of shards.
+	 * @return The shard index between <code>0</code> (inclusive) and the given count
+	 *         (exclusive).
+	 */
+	public static int shardOf(String call_id, int count) {
+		int hash = call_id.hashCode();
+		return Math.floorMod(hash ^ (hash >>> 16), count);
+	}
+
+	private int indexOf(SipMessage msg) {
+		String call_id = callIdOf(msg);
+		return call_id == null ? 0 : shardOf(call_id, _shards.length);
+	}
+
+	private static boolean isPriority(SipMessage msg) {
+		try {
+			return SipProvider.isPriority(msg);
+		} catch (RuntimeException ex) {
+			// Invalid message, rejected by the shard.
+			return false;
+		}
+	}
+
+	private static String callIdOf(SipMessage msg) {
+		try {
+			return msg.hasCallIdHeader() ? msg.getCallIdHeader().getCallId() : null;
+		} catch (RuntimeException ex) {
+			// Invalid message, rejected by the shard.
+			return null;
+		}
+	}
+
+	/**
+	 * Stops all shards and the shared transports.
+	 */
+	public void halt() {
+		for (int n = _shards.length - 1; n >= 0; n--) {
+			_shards[n].halt();
+		}
+	}
+
+	@Override
+	public void onReceivedMessage(SipTransport transport, SipMessage msg) {
+		String call_id = callIdOf(msg);
+		int index = call_id == null ? 0 : shardOf(call_id, _shards.length);
+		SipProvider shard = _shards[index];
+		try {
+			shard.enqueued();
+			Runnable task = () -> {
+				shard.dequeued();
+				shard.onReceivedMessage(transport, msg);
+			};
+			if (call_id == null) {
+				shard.scheduler().execute(task);
+			} else {
+				_receivers[index].execute(call_id, task, isPriority(msg));
+			}
+		} catch (RejectedExecutionException ex) {
+			shard.dequeued();
+			LOG.warn("Shard {} does not accept messages, discarded: {}", index, msg.getFirstLine());
+		}
+	}
+
+	@Override
+	public void onTransportTerminated(SipTransport transport, Exception error) {
+		// Only the first shard owns and restarts the transports.
+		_shards[0].onTransportTerminated(transport, error);
+
+		// A restarted transport must deliver to the front-end again.
+		attachTransports();
+	}
+
+	@Override
+	public void onIncomingTransportConnection(SipTransport transport, SocketAddress remote_soaddr) {
+		// Any shard may use the connection, e.g. to track its clients.
+		for (SipProvider shard : _shards) {
+			shard.onIncomingTransportConnection(transport, remote_soaddr);
+		}
+	}
+
+	@Override
+	public void onMessageNotSent(SipTransport transport, SipMessage msg, Exception error) {
+		// The transaction of the message lives in the shard of its Call-ID.
+		shardOf(msg).onMessageNotSent(transport, msg, error);
+	}
+
+	@Override
+	public void onTransportConnectionTerminated(SipTransport transport, SocketAddress remote_soaddr,
+			Exception error) {
+		for (SipProvider shard : _shards) {
+			shard.onTransportConnectionTerminated(transport, remote_soaddr, error);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ShardedSipProvider(" + _shards[0] + ", shards=" + _shards.length + ")";
+	}
+
+}
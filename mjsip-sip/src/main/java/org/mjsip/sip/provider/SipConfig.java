@@ -27,10 +27,12 @@ import org.mjsip.config.YesNoHandler;
 import org.mjsip.sip.address.SipURI;
 import org.mjsip.sip.config.IpAddressHandler;
 import org.mjsip.sip.config.SipURIHandler;
+import org.mjsip.sip.message.SipMessageBuffer;
 import org.mjsip.sip.message.SipMethods;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.AddressType;
 import org.zoolu.net.IpAddress;
+import org.zoolu.net.TlsHandshaker;
 import org.zoolu.util.Configure;
 
 /**
@@ -102,6 +104,9 @@ public class SipConfig implements SipOptions {
 	@Option(name = "--auto-prack", handler = YesNoHandler.class)
 	private boolean _autoPrack=false;
 
+	@Option(name = "--serial-dialogs", handler = YesNoHandler.class, usage = "Whether received messages and transaction timeouts are processed serially per Call-ID on a shared thread pool.")
+	private boolean _serialDialogs=false;
+
 	@Option(name = "--default-expires")
 	private int _defaultExpires=3600;
 
@@ -158,6 +163,42 @@ public class SipConfig implements SipOptions {
 	@Option(name = "--max-connections")
 	private int _maxConnections = 0;
 
+	/** @see #getConnectTimeout() */
+	@Option(name = "--connect-timeout", usage = "Timeout in milliseconds for establishing an outgoing TCP or TLS connection.")
+	private long _connectTimeout = 10000;
+
+	/** @see #getConnectionIdleTimeout() */
+	@Option(name = "--connection-idle-timeout", usage = "Time in milliseconds after which an unused TCP or TLS connection is closed, 0 to keep connections open.")
+	private long _connectionIdleTimeout = 0;
+
+	/** @see #getMaxMessageSize() */
+	@Option(name = "--max-message-size", usage = "Maximum size in bytes of a message received over TCP or TLS, 0 for no limit.")
+	private int _maxMessageSize = SipMessageBuffer.DEFAULT_MAX_MESSAGE_SIZE;
+
+	/** @see #getTlsSessionCacheSize() */
+	@Option(name = "--tls-session-cache-size", usage = "Maximum number of cached TLS sessions available for resumption, 0 for no limit.")
+	private int _tlsSessionCacheSize = 20480;
+
+	/** @see #getTlsSessionTimeout() */
+	@Option(name = "--tls-session-timeout", usage = "Time in seconds a cached TLS session can be resumed, 0 for no limit.")
+	private int _tlsSessionTimeout = 86400;
+
+	/** @see #useTlsSessionTickets() */
+	@Option(name = "--tls-session-tickets", handler = YesNoHandler.class, usage = "Whether to resume TLS sessions using stateless session tickets.")
+	private boolean _tlsSessionTickets = true;
+
+	/** @see #getTlsHandshakeTimeout() */
+	@Option(name = "--tls-handshake-timeout", usage = "Time in milliseconds to wait for the peer during a TLS handshake, 0 for no limit.")
+	private int _tlsHandshakeTimeout = TlsTransport.DEFAULT_HANDSHAKE_TIMEOUT;
+
+	/** @see #getTlsHandshakeThreads() */
+	@Option(name = "--tls-handshake-threads", usage = "Maximum number of concurrent TLS handshakes, 0 for the number of processors.")
+	private int _tlsHandshakeThreads = 0;
+
+	/** @see #getTlsHandshakeQueue() */
+	@Option(name = "--tls-handshake-queue", usage = "Maximum number of TLS handshakes waiting for a thread, further connections are rejected.")
+	private int _tlsHandshakeQueue = TlsHandshaker.DEFAULT_QUEUE_SIZE;
+
 	@Option(name = "--outbound-proxy", handler = SipURIHandler.class, usage = "Use the given outbound proxy.")
 	private SipURI _outboundProxy = null;
 
@@ -343,6 +384,16 @@ public class SipConfig implements SipOptions {
 		this._autoPrack = autoPrack;
 	}
 
+	@Override
+	public boolean isSerialDialogs() {
+		return _serialDialogs;
+	}
+
+	/** @see #isSerialDialogs() */
+	public void setSerialDialogs(boolean serialDialogs) {
+		this._serialDialogs = serialDialogs;
+	}
+
 	@Override
 	public int getDefaultExpires() {
 		return _defaultExpires;
@@ -542,6 +593,96 @@ public class SipConfig implements SipOptions {
 		this._maxConnections = maxConnections;
 	}
 
+	@Override
+	public long getConnectTimeout() {
+		return _connectTimeout;
+	}
+
+	/** @see #getConnectTimeout() */
+	public void setConnectTimeout(long connectTimeout) {
+		_connectTimeout = connectTimeout;
+	}
+
+	@Override
+	public long getConnectionIdleTimeout() {
+		return _connectionIdleTimeout;
+	}
+
+	/** @see #getConnectionIdleTimeout() */
+	public void setConnectionIdleTimeout(long connectionIdleTimeout) {
+		_connectionIdleTimeout = connectionIdleTimeout;
+	}
+
+	@Override
+	public int getMaxMessageSize() {
+		return _maxMessageSize;
+	}
+
+	/** @see #getMaxMessageSize() */
+	public void setMaxMessageSize(int maxMessageSize) {
+		_maxMessageSize = maxMessageSize;
+	}
+
+	@Override
+	public int getTlsSessionCacheSize() {
+		return _tlsSessionCacheSize;
+	}
+
+	/** @see #getTlsSessionCacheSize() */
+	public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+		_tlsSessionCacheSize = tlsSessionCacheSize;
+	}
+
+	@Override
+	public int getTlsSessionTimeout() {
+		return _tlsSessionTimeout;
+	}
+
+	/** @see #getTlsSessionTimeout() */
+	public void setTlsSessionTimeout(int tlsSessionTimeout) {
+		_tlsSessionTimeout = tlsSessionTimeout;
+	}
+
+	@Override
+	public boolean useTlsSessionTickets() {
+		return _tlsSessionTickets;
+	}
+
+	/** @see #useTlsSessionTickets() */
+	public void setTlsSessionTickets(boolean tlsSessionTickets) {
+		_tlsSessionTickets = tlsSessionTickets;
+	}
+
+	@Override
+	public int getTlsHandshakeTimeout() {
+		return _tlsHandshakeTimeout;
+	}
+
+	/** @see #getTlsHandshakeTimeout() */
+	public void setTlsHandshakeTimeout(int tlsHandshakeTimeout) {
+		_tlsHandshakeTimeout = tlsHandshakeTimeout;
+	}
+
+	@Override
+	public int getTlsHandshakeThreads() {
+		return _tlsHandshakeThreads;
+	}
+
+	/** @see #getTlsHandshakeThreads() */
+	public void setTlsHandshakeThreads(int tlsHandshakeThreads) {
+		_tlsHandshakeThreads = tlsHandshakeThreads;
+	}
+
+	@Override
+	public int getTlsHandshakeQueue() {
+		return _tlsHandshakeQueue;
+	}
+
+	/** @see #getTlsHandshakeQueue() */
+	public void setTlsHandshakeQueue(int tlsHandshakeQueue) {
+		_tlsHandshakeQueue = tlsHandshakeQueue;
+	}
+
 	@Override
 	public SipURI getOutboundProxy() {
 		return _outboundProxy;
@@ -22,21 +22,55 @@
  */
 package org.mjsip.sip.provider;
 
+import java.util.Objects;
+
 import org.mjsip.sip.header.CSeqHeader;
 import org.mjsip.sip.header.ViaHeader;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipMethods;
-import org.zoolu.util.Identifier;
 
 /** SipId is the abstract identifier for addressing a dialog, a transaction, or a given method.
+  * <p>
+  * A SipId is a compact immutable key that keeps the identifying header values as they are and
+  * caches its hash code. No string representation is built, unless requested for debugging with
+  * {@link #toString()}.
   */
-public final class SipId extends Identifier {
+public final class SipId {
 	
+	/** Kind of identifier for methods. */
+	private static final byte METHOD = 0;
+
+	/** Kind of identifier for dialogs. */
+	private static final byte DIALOG = 1;
+
+	/** Kind of identifier for client transactions. */
+	private static final byte CLIENT = 2;
+
+	/** Kind of identifier for server transactions. */
+	private static final byte SERVER = 3;
+
 	/** Identifier for ANY messages (regardless their method). */
-	public static final SipId ANY_METHOD = new SipId("ANY");
+	public static final SipId ANY_METHOD = new SipId(METHOD, null, 0, "ANY", null);
+
+	/** One of {@link #METHOD}, {@link #DIALOG}, {@link #CLIENT}, {@link #SERVER}. */
+	private final byte _kind;
+
+	/** The call-id, <code>null</code> for method identifiers. */
+	private final String _callId;
+
+	/** The CSeq sequence number of transactions. */
+	private final long _seqn;
+
+	/** The method of method and transaction identifiers, the local tag of dialog identifiers. */
+	private final String _first;
+
+	/** The Via branch (or sent-by) of transaction identifiers, the remote tag of dialog identifiers. */
+	private final String _second;
+
+	private final int _hash;
 
 	public static SipId createDialogId(String call_id, String local_tag, String remote_tag) {
-		return new SipId(dialodId(call_id, local_tag, remote_tag));
+		return new SipId(DIALOG, call_id, 0, local_tag, remote_tag);
 	}
 
 	public static SipId createDialogId(SipMessage msg) {
@@ -51,15 +85,11 @@ public final class SipId extends Identifier {
 			remote_tag = msg.getToHeader().getTag();
 		}
 
-		return new SipId(dialodId(call_id, local_tag, remote_tag));
-	}
-
-	private static String dialodId(String call_id, String local_tag, String remote_tag) {
-		return call_id + "-" + local_tag + "-" + remote_tag;
+		return createDialogId(call_id, local_tag, remote_tag);
 	}
 
 	public static SipId createTransactionServerId(String method) {
-		return new SipId(method);
+		return createMethodId(method);
 	}
 
 	public static SipId createTransactionServerId(String call_id, long seqn, String method,
@@ -79,21 +109,17 @@ public final class SipId extends Identifier {
 		if (top_via != null) {
 			if (top_via.hasBranch())
 				branch = top_via.getBranch();
-			sent_by = top_via.getSentBy();
+			else
+				sent_by = top_via.getSentBy();
 		}
 		CSeqHeader cseqh = msg.getCSeqHeader();
 		long seqn = cseqh.getSequenceNumber();
 		String method = cseqh.getMethod();
-		return new SipId(transactionId(uac, call_id, seqn, method, sent_by, branch));
-	}
-
-	public static SipId createTransactionId(boolean uac, String call_id, long seqn, String method,
-			String sent_by, String branch) {
-		return new SipId(transactionId(uac, call_id, seqn, method, sent_by, branch));
+		return createTransactionId(uac, call_id, seqn, method, sent_by, branch);
 	}
 
 	/**
-	 * Gets the string value of the transaction identifier.
+	 * Creates a transaction identifier.
 	 * 
 	 * @param uac
 	 *        whether it is a UAC side (true=UAC, false=UAS)
@@ -101,20 +127,19 @@ public final class SipId extends Identifier {
 	 *        the call-id
 	 * @param seqn
 	 *        the CSeq sequence number
+	 * @param method
+	 *        the CSeq method, ACK is matched to the INVITE transaction
 	 * @param sent_by
-	 *        the Via sent-by address
+	 *        the Via sent-by address, only used if there is no branch
 	 * @param branch
 	 *        the Via branch
-	 * @return the string value for a transaction identifier
+	 * @return the transaction identifier
 	 */
-	private static String transactionId(boolean uac, String call_id, long seqn, String method, String sent_by,
-			String branch) {
+	public static SipId createTransactionId(boolean uac, String call_id, long seqn, String method,
+			String sent_by, String branch) {
 		if (method.equals(SipMethods.ACK))
 			method = SipMethods.INVITE;
-		String type = (uac) ? "client" : "server";
-		if (branch == null)
-			branch = sent_by;
-		return call_id + "-" + seqn + "-" + method + "-" + type + "-" + branch;
+		return new SipId(uac ? CLIENT : SERVER, call_id, seqn, method, branch == null ? sent_by : branch);
 	}
 
 	public static SipId createTransactionClientId(SipMessage msg) {
@@ -122,22 +147,60 @@ public final class SipId extends Identifier {
 	}
 
 	public static SipId createMethodId(String method) {
-		return new SipId(method);
+		return new SipId(METHOD, null, 0, method, null);
 	}
 
 	public static SipId createMethodId(SipMessage msg) {
-		return new SipId(msg.getCSeqHeader().getMethod());
+		return createMethodId(msg.getCSeqHeader().getMethod());
 	}
 
-	/** Creates a new SipId.
-	  * @param str_id the string value of the identifier */
-	private SipId(String str_id) {
-		super(str_id);
+	/** Creates a new SipId. */
+	private SipId(byte kind, String callId, long seqn, String first, String second) {
+		_kind = kind;
+		_callId = callId;
+		_seqn = seqn;
+		_first = first;
+		_second = second;
+
+		int hash = kind;
+		hash = 31 * hash + Objects.hashCode(callId);
+		hash = 31 * hash + Long.hashCode(seqn);
+		hash = 31 * hash + Objects.hashCode(first);
+		hash = 31 * hash + Objects.hashCode(second);
+		_hash = hash;
 	}
 
-	/** Creates a new SipId
-	  * @param id a SIP identifier */
-	private SipId(SipId id) {
-		super(id);
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof SipId)) {
+			return false;
+		}
+		SipId other = (SipId) obj;
+		return _hash == other._hash && _kind == other._kind && _seqn == other._seqn
+				&& Objects.equals(_callId, other._callId) && Objects.equals(_first, other._first)
+				&& Objects.equals(_second, other._second);
+	}
+
+	@Override
+	public int hashCode() {
+		return _hash;
+	}
+
+	/** Gets a string value for debugging. */
+	@Override
+	public String toString() {
+		switch (_kind) {
+			case DIALOG:
+				return _callId + "-" + _first + "-" + _second;
+			case CLIENT:
+				return _callId + "-" + _seqn + "-" + _first + "-client-" + _second;
+			case SERVER:
+				return _callId + "-" + _seqn + "-" + _first + "-server-" + _second;
+			default:
+				return _first;
+		}
 	}
 }
@@ -33,6 +33,9 @@ import org.zoolu.net.SocketAddress;
   * <p>
   * It periodically sends keep-alive tokens in order to refresh TCP connection timeouts
   * and/or NAT timeouts (for the TCP and/or UDP sessions).
+  * <p>
+  * Each SipKeepAlive uses its own thread. For keeping up many targets, use the
+  * {@link KeepAliveService} of the {@link SipProvider} instead.
   */
 public class SipKeepAlive extends UdpKeepAlive {
 	
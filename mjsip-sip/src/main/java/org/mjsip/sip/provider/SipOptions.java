@@ -43,6 +43,48 @@ public interface SipOptions {
 	/** Max number of (contemporary) open connections */
 	int getMaxConnections();
 
+	/** Timeout (milliseconds) for establishing an outgoing connection-oriented transport connection. */
+	long getConnectTimeout();
+
+	/**
+	 * Time (milliseconds) after which a transport connection without traffic is closed, 0 for
+	 * keeping connections open until the maximum number of connections is reached.
+	 */
+	long getConnectionIdleTimeout();
+
+	/**
+	 * Maximum size (bytes) of a message received over a connection-oriented transport, 0 for no
+	 * limit. A connection is closed when a larger message is received.
+	 */
+	int getMaxMessageSize();
+
+	/** Maximum number of TLS sessions cached for resumption, 0 for no limit. */
+	int getTlsSessionCacheSize();
+
+	/** Time (seconds) a cached TLS session can be resumed, 0 for no limit. */
+	int getTlsSessionTimeout();
+
+	/**
+	 * Whether TLS sessions are resumed using stateless session tickets (RFC 5077, RFC 8446). Since
+	 * this is a JVM-wide setting, it is applied by the first {@link SipProvider} creating a TLS
+	 * transport, see {@link TlsTransport#configure(SipOptions)}.
+	 */
+	boolean useTlsSessionTickets();
+
+	/**
+	 * Maximum time (milliseconds) to wait for the peer during a TLS handshake, 0 for no limit.
+	 */
+	int getTlsHandshakeTimeout();
+
+	/** Maximum number of concurrent TLS handshakes, 0 for the number of available processors. */
+	int getTlsHandshakeThreads();
+
+	/**
+	 * Maximum number of TLS handshakes waiting for a handshake thread. Further incoming connections
+	 * are closed.
+	 */
+	int getTlsHandshakeQueue();
+
 	/**
 	 * Outbound proxy URI ([sip:]host_addr[:host_port][;transport=proto]). Use 'NONE' for not using
 	 * an outbound proxy (or let it undefined).
@@ -220,6 +262,14 @@ public interface SipOptions {
 	/** Whether logging all packets (including non-SIP keepalive tokens). */
 	boolean isLogAllPackets();
 
+	/**
+	 * Whether received messages and transaction timeouts are processed serially per Call-ID on the
+	 * scheduler's thread pool, instead of on the transport and timer threads.
+	 * 
+	 * @see DialogExecutor
+	 */
+	boolean isSerialDialogs();
+
 	/**
 	 * Whether forcing this node to stay within the dialog route as peer, by means of the insertion
 	 * of a RecordRoute header. This is a non-standard behaviour and is normally not necessary.
@@ -33,8 +33,10 @@ import org.mjsip.sip.address.GenericURIImpl;
 import org.mjsip.sip.address.NameAddress;
 import org.mjsip.sip.address.SipURI;
 import org.mjsip.sip.header.Header;
+import org.mjsip.sip.header.InternPool;
 import org.mjsip.sip.header.LegacyHeader;
 import org.mjsip.sip.header.RequestLine;
+import org.mjsip.sip.header.SipHeaders;
 import org.mjsip.sip.header.StatusLine;
 import org.zoolu.util.DateFormat;
 import org.zoolu.util.Parser;
@@ -171,9 +173,11 @@ public class SipParser extends Parser {
 		goToNextLine();
 		int colon=header_str.indexOf(':');
 		if (colon<0) return null;
-		String hname=header_str.substring(0,colon).trim();
+		InternPool pool=InternPool.global();
+		String hname=pool.intern(header_str.substring(0,colon).trim());
 		String hvalue=header_str.substring(++colon).trim();
-		return new LegacyHeader(hname,hvalue);       
+		if (!isUniqueValue(hname)) hvalue=pool.intern(hvalue);
+		return new LegacyHeader(hname,hvalue);
 	}
 
 	/** Returns the first occurence of Header <i>hname</i>. */
@@ -185,16 +189,27 @@ public class SipParser extends Parser {
 		int end=par.indexOfEOH();
 		if (begin>end) return null;
 		String hvalue=str.substring(begin,end).trim();
+		if (!isUniqueValue(hname)) hvalue=InternPool.global().intern(hvalue);
 		index=end;
 		return new LegacyHeader(hname,hvalue);
 	}
+
+	/** Whether the values of the given header differ in each message or dialog.
+	  * Such values are not put into the intern pool, since they would only displace values that repeat. */
+	private static boolean isUniqueValue(String hname) {
+		return hname.equalsIgnoreCase(SipHeaders.Via) || hname.equalsIgnoreCase(SipHeaders.Via_short)
+			|| hname.equalsIgnoreCase(SipHeaders.Call_ID) || hname.equalsIgnoreCase(SipHeaders.Call_ID_short)
+			|| hname.equalsIgnoreCase(SipHeaders.From) || hname.equalsIgnoreCase(SipHeaders.From_short)
+			|| hname.equalsIgnoreCase(SipHeaders.To) || hname.equalsIgnoreCase(SipHeaders.To_short)
+			|| hname.equalsIgnoreCase(SipHeaders.Authorization) || hname.equalsIgnoreCase(SipHeaders.Proxy_Authorization);
+	}
 	
 
 	//************************ first-line ************************
 
 	/** Returns the request-line. */
 	public RequestLine getRequestLine()     {
-		String method=getString();
+		String method=InternPool.global().intern(getString());
 		skipWSP();
 		GenericURI uri=(new SipParser(getString(indexOfEOH()-getPos()))).getURI();
 		goToNextLine();
@@ -207,7 +222,7 @@ public class SipParser extends Parser {
 		if (!version.equalsIgnoreCase("SIP/")) {  index=str.length(); return null;  } 
 		skipString().skipWSP(); // "SIP/2.0 "
 		int code=getInt();
-		String reason=getString(indexOfEOH()-getPos()).trim();
+		String reason=InternPool.global().intern(getString(indexOfEOH()-getPos()).trim());
 		goToNextLine();
 		return new StatusLine(code,reason);
 	}
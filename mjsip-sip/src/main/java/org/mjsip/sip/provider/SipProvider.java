@@ -30,14 +30,21 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
 import org.mjsip.sip.address.GenericURI;
 import org.mjsip.sip.address.NameAddress;
 import org.mjsip.sip.address.SipURI;
 import org.mjsip.sip.address.UnexpectedUriSchemeException;
+import org.mjsip.sip.header.Header;
 import org.mjsip.sip.header.ViaHeader;
+import org.mjsip.sip.message.ResponseTemplate;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipMessageFactory;
+import org.mjsip.sip.message.SipResponses;
 import org.mjsip.time.Scheduler;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.AddressType;
@@ -95,6 +102,22 @@ public class SipProvider implements SipTransportListener {
 	
 	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(SipProvider.class);
 
+	private static final MessageMetrics RECEIVED_MESSAGES = new MessageMetrics("received");
+
+	private static final MessageMetrics SENT_MESSAGES = new MessageMetrics("sent");
+
+	private static final Counter INVALID_MESSAGES = Metrics.global().counter("sip_messages_invalid_total",
+			"Received messages discarded because they could not be parsed or are not valid SIP messages.");
+
+	private static final Counter UNMATCHED_MESSAGES = Metrics.global().counter("sip_messages_unmatched_total",
+			"Received messages discarded because no transaction, dialog or listener matches.");
+
+	private static final Counter SEND_FAILURES = Metrics.global().counter("sip_send_failures_total",
+			"Messages that could not be passed to the transport.");
+
+	/** Buffer for rendering stateless responses, see {@link #sendStatelessResponse(SipMessage, int, Header)}. */
+	private static final ThreadLocal<byte[]> RESPONSE_BUFFER = ThreadLocal.withInitial(() -> new byte[4096]);
+
 	// **************************** Constants ****************************
 
 	/** UDP protocol type */
@@ -142,15 +165,85 @@ public class SipProvider implements SipTransportListener {
 
 	private final SipMessageFactory _sipMessageFactory;
 
+	private final DialogExecutor _dialogExecutor;
+
+	/** Messages received but not yet passed to their listener. */
+	private final LongAdder _pendingMessages = new LongAdder();
+
+	/** Periodic check for idle transport connections, <code>null</code> if connections are not closed when idle. */
+	private final ScheduledFuture<?> _idleCheck;
+
+	/** Keep-alive service, created on first use. */
+	private KeepAliveService _keepAlive;
+
+	/** Whether messages received over UDP keep their wire image. */
+	private boolean _keepReceivedBytes;
+
+	/** The provider that created the transports and stops them when halted, this provider if not a further shard. */
+	private final SipProvider _transportOwner;
+
+	/** Index of this provider in its {@link ShardedSipProvider}, <code>0</code> if not sharded. */
+	private final int _shard;
+
+	/** Number of shards of the {@link ShardedSipProvider} this provider belongs to, <code>1</code> if not sharded. */
+	private final int _shardCount;
+
 	/**
 	 * Creates a new {@link SipProvider}.
 	 */
 	public SipProvider(SipOptions sipConfig, Scheduler scheduler) {
+		this(sipConfig, scheduler, 1);
+	}
+
+	/**
+	 * Creates the first shard of a {@link ShardedSipProvider} that creates the transports shared
+	 * by all shards.
+	 */
+	SipProvider(SipOptions sipConfig, Scheduler scheduler, int shardCount) {
 		this._sipConfig = sipConfig;
 		_scheduler = scheduler;
 		_sipMessageFactory = new SipMessageFactory(sipConfig);
+		_dialogExecutor = sipConfig.isSerialDialogs() ? new DialogExecutor(scheduler.executor()) : null;
+		_transportOwner = this;
+		_shard = 0;
+		_shardCount = shardCount;
 		initLog();
 		initSipTrasport(sipConfig.getTransportProtocols(),sipConfig.getTransportPorts());
+
+		long idleTimeout = sipConfig.getConnectionIdleTimeout();
+		_idleCheck = idleTimeout > 0
+				? scheduler.schedulerWithFixedDelay(Math.max(1, idleTimeout / 2), this::closeIdleConnections)
+				: null;
+	}
+
+	/**
+	 * Creates a further shard of a {@link ShardedSipProvider} that sends through the transports of
+	 * the given first shard.
+	 */
+	SipProvider(SipProvider owner, Scheduler scheduler, int shard) {
+		this._sipConfig = owner._sipConfig;
+		_scheduler = scheduler;
+		_sipMessageFactory = owner._sipMessageFactory;
+		_dialogExecutor = _sipConfig.isSerialDialogs() ? new DialogExecutor(scheduler.executor()) : null;
+		_transportOwner = owner;
+		_shard = shard;
+		_shardCount = owner._shardCount;
+		sip_transports = owner.sip_transports;
+		default_transport = owner.default_transport;
+		_idleCheck = null;
+	}
+
+	/**
+	 * Closes transport connections that had no traffic for the configured idle timeout.
+	 * 
+	 * @see SipOptions#getConnectionIdleTimeout()
+	 */
+	private void closeIdleConnections() {
+		for (SipTransport transport : sip_transports.values()) {
+			if (transport instanceof SipTransportCO) {
+				((SipTransportCO) transport).closeIdleConnections();
+			}
+		}
 	}
 
 	/** Inits logs. */ 
@@ -173,6 +266,154 @@ public class SipProvider implements SipTransportListener {
 		return _scheduler;
 	}
 
+	/**
+	 * The service sending keep-alive tokens and RFC 5626 pings for this provider.
+	 *
+	 * <p>
+	 * The service is created on first use and stopped together with this provider. All shards of a
+	 * {@link ShardedSipProvider} share the service of the first shard, since pongs are received
+	 * by the shared transports.
+	 * </p>
+	 */
+	public synchronized KeepAliveService keepAlive() {
+		if (_transportOwner != this) {
+			return _transportOwner.keepAlive();
+		}
+		if (_keepAlive == null) {
+			_keepAlive = new KeepAliveService(this);
+			for (SipTransport transport : sip_transports.values()) {
+				if (transport instanceof UdpTransport) {
+					((UdpTransport) transport).setKeepAliveService(_keepAlive);
+				}
+			}
+		}
+		return _keepAlive;
+	}
+
+	/**
+	 * Sets whether messages received over UDP keep the bytes they have been parsed from.
+	 *
+	 * <p>
+	 * Only required for forwarding messages without serializing them again, see
+	 * {@link SipMessage#getReceivedBytes()}. The setting applies to the transports, and therefore
+	 * to all shards sharing them.
+	 * </p>
+	 */
+	public synchronized void setKeepReceivedBytes(boolean keep) {
+		_keepReceivedBytes = keep;
+		if (sip_transports == null) {
+			return;
+		}
+		for (SipTransport transport : sip_transports.values()) {
+			if (transport instanceof UdpTransport) {
+				((UdpTransport) transport).setKeepReceivedBytes(keep);
+			}
+		}
+	}
+
+	/**
+	 * The executor that processes messages and timeouts serially per Call-ID, or <code>null</code>
+	 * if {@link SipOptions#isSerialDialogs()} is not set.
+	 */
+	public DialogExecutor dialogExecutor() {
+		return _dialogExecutor;
+	}
+
+	/**
+	 * The number of received messages that wait for being passed to their listener.
+	 *
+	 * <p>
+	 * Messages only wait if {@link SipOptions#isSerialDialogs()} is set, otherwise they are
+	 * processed directly in the receiving thread and wait in the socket buffer instead.
+	 * </p>
+	 */
+	public int getPendingMessages() {
+		return (int) _pendingMessages.sum();
+	}
+
+	/**
+	 * Accounts for a message that is queued for this provider, before it is passed to
+	 * {@link #onReceivedMessage(SipTransport, SipMessage)}.
+	 */
+	void enqueued() {
+		_pendingMessages.increment();
+	}
+
+	/**
+	 * Accounts for a message that has left the queue, see {@link #enqueued()}.
+	 */
+	void dequeued() {
+		_pendingMessages.decrement();
+	}
+
+	/**
+	 * Runs the given task in the context of the call the given message belongs to.
+	 * 
+	 * <p>
+	 * If {@link SipOptions#isSerialDialogs()} is set, the task is executed after all messages
+	 * and timeouts of the same Call-ID that are already pending. Otherwise, the task runs
+	 * directly in the calling thread.
+	 * </p>
+	 */
+	public void execute(SipMessage msg, Runnable task) {
+		String callId=callIdOf(msg);
+		if (callId!=null) {
+			_dialogExecutor.execute(callId, task);
+		} else {
+			task.run();
+		}
+	}
+
+	/**
+	 * Schedules a timeout task in the context of the call the given message belongs to.
+	 * 
+	 * <p>
+	 * If {@link SipOptions#isSerialDialogs()} is set, the task is not run on the timer thread,
+	 * but is passed to the {@link #dialogExecutor()} when it fires.
+	 * </p>
+	 * 
+	 * @param msg
+	 *        The message whose Call-ID determines the context of the task.
+	 * @param delay
+	 *        The delay in milliseconds.
+	 * @param task
+	 *        The task to run.
+	 * @return The {@link ScheduledFuture} to cancel the timeout.
+	 */
+	public ScheduledFuture<?> schedule(SipMessage msg, long delay, Runnable task) {
+		String callId=callIdOf(msg);
+		if (callId!=null) {
+			DialogExecutor executor=_dialogExecutor;
+			return _scheduler.schedule(delay, () -> executor.execute(callId, task));
+		}
+		return _scheduler.schedule(delay, task);
+	}
+
+	/**
+	 * Whether the given received message continues an existing dialog or transaction.
+	 *
+	 * <p>
+	 * These are all responses, ACK and CANCEL requests, and requests with a To tag. If messages
+	 * wait for being processed, such messages are processed before new requests, so that
+	 * established calls are not delayed by a flood of new ones, see
+	 * {@link DialogExecutor#execute(String, Runnable, boolean)}.
+	 * </p>
+	 */
+	public static boolean isPriority(SipMessage msg) {
+		if (msg.isResponse() || msg.isAck() || msg.isCancel()) {
+			return true;
+		}
+		return msg.hasToHeader() && msg.getToHeader().hasTag();
+	}
+
+	/**
+	 * The Call-ID of the given message, if messages are processed serially per Call-ID.
+	 */
+	private String callIdOf(SipMessage msg) {
+		if (_dialogExecutor==null || msg==null || !msg.hasCallIdHeader()) return null;
+		return msg.getCallIdHeader().getCallId();
+	}
+
 	/**
 	 * The {@link SipMessageFactory} in use.
 	 */
@@ -221,6 +462,7 @@ public class SipProvider implements SipTransportListener {
 						port = (_sipConfig.getHostPort() == _sipConfig.getDefaultPort())
 								? _sipConfig.getDefaultTlsPort()
 								: _sipConfig.getHostPort() + 1;
+					TlsTransport.configure(_sipConfig);
 					if (_sipConfig.isTrustAll())
 						transp = new TlsTransport(port, _sipConfig.getBindingIpAddr(), _sipConfig.getMaxConnections(),
 								_sipConfig.getKeyFile(), _sipConfig.getCertFile());
@@ -234,6 +476,10 @@ public class SipProvider implements SipTransportListener {
 									_sipConfig.getMaxConnections(), _sipConfig.getKeyFile(), _sipConfig.getCertFile(),
 									_sipConfig.getTrustFolder());
 					}
+					TlsTransport tls = (TlsTransport) transp;
+					tls.setSessionCache(_sipConfig.getTlsSessionCacheSize(), _sipConfig.getTlsSessionTimeout());
+					tls.setHandshakeTimeout(_sipConfig.getTlsHandshakeTimeout());
+					tls.setHandshakeExecutor(_sipConfig.getTlsHandshakeThreads(), _sipConfig.getTlsHandshakeQueue());
 				}
 				else
 				if (proto.equals(PROTO_DTLS)) {
@@ -259,6 +505,13 @@ public class SipProvider implements SipTransportListener {
 					}
 				}
 				
+				if (transp instanceof SipTransportCO) {
+					SipTransportCO transpCO = (SipTransportCO) transp;
+					transpCO.setConnectTimeout(_sipConfig.getConnectTimeout());
+					transpCO.setIdleTimeout(_sipConfig.getConnectionIdleTimeout());
+					transpCO.setMaxMessageSize(_sipConfig.getMaxMessageSize());
+					transpCO.setThreadFactory(_scheduler.serviceThreads());
+				}
 				if (transp!=null)  {
 					setTransport(transp);
 				}
@@ -286,12 +539,21 @@ public class SipProvider implements SipTransportListener {
 	}
 
 
+	/** Gets the transport for the given protocol, or <code>null</code> if not supported. */ 
+	SipTransport getTransport(String proto) {
+		Hashtable<String, SipTransport> transports=sip_transports;
+		return (transports==null || proto==null)? null : transports.get(proto.toLowerCase());
+	}
+
+
 	/** Sets a specific transport protocol. */ 
 	public void setTransport(SipTransport transport) {
 		String proto=transport.getProtocol();
 		removeSipTransport(proto);
 		sip_transports.put(proto,transport);
 		transport.setListener(this);
+		if (_keepAlive!=null && transport instanceof UdpTransport) ((UdpTransport)transport).setKeepAliveService(_keepAlive);
+		if (_keepReceivedBytes && transport instanceof UdpTransport) ((UdpTransport)transport).setKeepReceivedBytes(true);
 		if (default_transport==null) default_transport=proto;
 		LOG.info("{} is up at port {}", proto, transport.getLocalPort());
 	}
@@ -312,7 +574,17 @@ public class SipProvider implements SipTransportListener {
 	/** Stops the SipProviders. */ 
 	public synchronized void halt() {
 		LOG.debug("halt: SipProvider is going down");
-		stopSipTrasport();
+		if (_idleCheck != null) {
+			_idleCheck.cancel(false);
+		}
+		if (_keepAlive != null) {
+			_keepAlive.halt();
+		}
+		if (_transportOwner == this) {
+			stopSipTrasport();
+		} else {
+			sip_transports=null;
+		}
 		sip_listeners.clear();
 		promisquousListeners.clear();
 		exceptionListeners.clear();
@@ -813,9 +1085,81 @@ public class SipProvider implements SipTransportListener {
 	}
 
 
+	/** Sends an already serialized message (e.g. created with a {@link org.mjsip.sip.message.SipMessageSplicer}) 
+	  * to the given nexthop address and port.
+	  * <p>
+	  * This is a low level method that is only supported for connection-less transports (UDP).
+	  * The message is sent as it is, without any header processing.
+	  * @return whether the data has been passed to the transport */
+	public boolean sendRawBytes(byte[] data, String proto, String dest_addr, int dest_port) {
+		SipTransport sip_transport=(proto==null)? null : sip_transports.get(proto.toLowerCase());
+		if (!(sip_transport instanceof UdpTransport)) {
+			LOG.debug("Raw sending not supported for protocol {}.", proto);
+			return false;
+		}
+		// else
+		try {
+			IpAddress dest_ipaddr=IpAddress.getByName(dest_addr);
+			((UdpTransport)sip_transport).sendBytes(data,dest_ipaddr,dest_port);
+			if (_sipConfig.isLogAllPackets()) {
+				LOG.info("Sent message to: {}:{}/{} ({} bytes)\n-----Begin-of-message-----\n{}\n-----End-of-message-----", dest_addr,
+						dest_port, proto, data.length, new String(data));
+			}
+			return true;
+		}
+		catch (IOException e) {
+			LOG.warn("Exception", e);
+			return false;
+		}
+	}
+
+
+	/** Sends a response without body to the given request, without creating a transaction.
+	  * <p>
+	  * For requests received over UDP, the response is rendered from a pre-serialized
+	  * {@link ResponseTemplate} into a per-thread buffer, without creating a response message.
+	  * Otherwise, the response is created and sent as with {@link #sendMessage(SipMessage)}.
+	  * @param req the request to respond to
+	  * @param code the response code
+	  * @param extra additional header for the response, or <i>null</i> */
+	public void sendStatelessResponse(SipMessage req, int code, Header extra) {
+		SipTransport sip_transport=(req.getConnectionId()==null)? sip_transports.get(PROTO_UDP) : null;
+		ViaHeader via=req.getViaHeader();
+		if (sip_transport instanceof UdpTransport && via!=null && PROTO_UDP.equalsIgnoreCase(via.getTransport())) {
+			SipURI uri=via.getSipURI();
+			String dest_addr=(via.hasReceived())? via.getReceived() : uri.getHost();
+			int dest_port=(via.hasRport())? via.getRport() : -1;
+			if (dest_port<=0) dest_port=uri.getPort();
+			if (dest_port<=0) dest_port=_sipConfig.getDefaultPort();
+
+			byte[] buf=RESPONSE_BUFFER.get();
+			int len=_sipMessageFactory.getResponseTemplate(code).render(req,_sipMessageFactory.pickResponseTag(req,code),extra,buf);
+			if (len>=0) {
+				try {
+					((UdpTransport)sip_transport).sendBytes(buf,len,IpAddress.getByName(dest_addr),dest_port);
+					SENT_MESSAGES.countResponse(req.getRequestLine().getMethod(),code);
+					if (_sipConfig.isLogAllPackets()) {
+						LOG.info("Sent message to: {}:{}/{} ({} bytes)\n-----Begin-of-message-----\n{}\n-----End-of-message-----", dest_addr,
+								dest_port, PROTO_UDP, len, new String(buf,0,len));
+					}
+				}
+				catch (IOException e) {
+					LOG.warn("Exception", e);
+					SEND_FAILURES.inc();
+				}
+				return;
+			}
+		}
+		// else
+		SipMessage resp=_sipMessageFactory.createResponse(req,code,null,null);
+		if (extra!=null) resp.setHeader(extra);
+		sendMessage(resp);
+	}
+
+
 	/** Sends the <i>msg</i> message, specifing the transport protocol, nexthop address and port.
 	  * For request messages, no via address is added. */
-	private ConnectionId sendRawMessage(SipMessage msg, String proto, IpAddress dest_ipaddr, int dest_port, int ttl) {
+	ConnectionId sendRawMessage(SipMessage msg, String proto, IpAddress dest_ipaddr, int dest_port, int ttl) {
 		if (proto==null) {
 			LOG.warn("No protocol, message discarded.");
 			return null;
@@ -829,6 +1173,7 @@ public class SipProvider implements SipTransportListener {
 		// else
 		try {
 			ConnectionId connection_id=sip_transport.sendMessage(msg,dest_ipaddr,dest_port,ttl);
+			SENT_MESSAGES.count(msg);
 
 			logMessage("Sent message to: ", proto, dest_ipaddr.toString(), dest_port, msg);
 
@@ -836,6 +1181,7 @@ public class SipProvider implements SipTransportListener {
 		}
 		catch (IOException e) {
 			LOG.warn("Exception", e);
+			SEND_FAILURES.inc();
 			return null;
 		}
 	}
@@ -883,6 +1229,7 @@ public class SipProvider implements SipTransportListener {
 			String first_line=msg.getFirstLine();
 			if (first_line==null || first_line.toUpperCase().indexOf("SIP/2.0")<0) {
 				LOG.warn("NOT a SIP message: discarded.");
+				INVALID_MESSAGES.inc();
 				return;
 			}
 			
@@ -891,6 +1238,7 @@ public class SipProvider implements SipTransportListener {
 				ViaHeader vh=msg.getViaHeader();
 				if (vh == null) {
 					LOG.info("Message without via header discarded.");
+					INVALID_MESSAGES.inc();
 					return;
 				}
 				
@@ -925,15 +1273,48 @@ public class SipProvider implements SipTransportListener {
 			// check if the message is still valid
 			if (!msg.isRequest() && !msg.isResponse()) {
 				LOG.info("No valid SIP message, discarded.");
+				INVALID_MESSAGES.inc();
 				return;
 			}
+			RECEIVED_MESSAGES.count(msg);
 
+			dispatchMessage(msg);
+		}
+		catch (Exception exception) {
+			LOG.warn("Error handling a new incoming message", exception);
+			INVALID_MESSAGES.inc();
+			exceptionListeners.notify(new MessageProblem(msg, exception));
+		}
+	}
+
+	/** Passes a message to the matching listener in the context of its call. */
+	private void dispatchMessage(SipMessage msg) {
+		String callId=callIdOf(msg);
+		if (callId!=null) {
+			// the listener is looked up in the context of the call, since processing of a previous message may have added it
+			enqueued();
+			_dialogExecutor.execute(callId, () -> {
+				try {
+					deliverMessage(msg);
+				} finally {
+					dequeued();
+				}
+			}, isPriority(msg));
+		} else {
+			deliverMessage(msg);
+		}
+	}
+
+	/** Passes a received message to the matching listener. */
+	private void deliverMessage(SipMessage msg) {
+		try {
 			// look for a specific listener
 			SipProviderListener listener=getListener(msg);
 			if (listener != null) {
 				listener.onReceivedMessage(this, msg);
 			} else {
 				LOG.info("No listener found for message, discarded.");
+				UNMATCHED_MESSAGES.inc();
 			}
 		}
 		catch (Exception exception) {
@@ -1010,6 +1391,27 @@ public class SipProvider implements SipTransportListener {
 	}
 
 
+	/** When a message could not be sent through a CO transport.
+	  * As required by RFC 3261 section 8.1.3.1, a transport error for a request is reported to its client transaction as
+	  * a locally generated 503 (Service Unavailable) response, so that the transaction fails without waiting for its timeout. */
+	@Override
+	public void onMessageNotSent(SipTransport transport, SipMessage msg, Exception error) {
+		SEND_FAILURES.inc();
+		if (!msg.isRequest() || msg.isAck()) {
+			LOG.debug("message not sent through {}: {}", transport, msg.getFirstLine(), error);
+			return;
+		}
+		// else
+		LOG.info("request not sent through {}, reporting 503: {}", transport, msg.getFirstLine());
+		try {
+			dispatchMessage(_sipMessageFactory.createResponse(msg,SipResponses.SERVICE_UNAVAILABLE,null,null,null,null,null));
+		}
+		catch (Exception exception) {
+			LOG.warn("Error reporting a transport failure", exception);
+		}
+	}
+
+
 	/** When a transport connection terminates. */
 	@Override
 	public void onTransportConnectionTerminated(SipTransport transport, SocketAddress remote_soaddr, Exception error) {
@@ -1035,8 +1437,14 @@ public class SipProvider implements SipTransportListener {
 	/** Picks an unique branch value based on a SIP message.
 	  * This value could also be used as transaction ID */
 	public String pickBranch(SipMessage msg) {
+		return pickBranch(msg,msg.getRequestLine().getAddress());
+	}  
+
+	/** Picks an unique branch value based on a SIP message that is forwarded to the given request-uri.
+	  * This value could also be used as transaction ID */
+	public String pickBranch(SipMessage msg, GenericURI request_uri) {
 		StringBuilder sb=new StringBuilder();
-		sb.append(msg.getRequestLine().getAddress().toString());
+		sb.append(request_uri.toString());
 		sb.append(getViaAddress()+getPort());
 		ViaHeader top_via=msg.getViaHeader();
 		if (top_via.hasBranch())
@@ -1084,9 +1492,15 @@ public class SipProvider implements SipTransportListener {
 	/** Picks a new call-id.
 	  * The call-id is a globally unique identifier over space and time.
 	  * It is implemented in the form "localid@host".
-	  * Call-id must be considered case-sensitive and is compared byte-by-byte. */
+	  * Call-id must be considered case-sensitive and is compared byte-by-byte.
+	  * <p>
+	  * For a shard of a {@link ShardedSipProvider}, the call-id is chosen so that messages
+	  * of the new call are dispatched to this shard. */
 	public String pickCallId() {
-		return pickCallId(getViaAddress(false));
+		String hostaddr=getViaAddress(false);
+		String call_id=pickCallId(hostaddr);
+		while (_shardCount>1 && ShardedSipProvider.shardOf(call_id,_shardCount)!=_shard) call_id=pickCallId(hostaddr);
+		return call_id;
 	}   
 
 
@@ -26,11 +26,24 @@ package org.mjsip.sip.provider;
 
 
 import java.io.IOException;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMessageBuffer;
+import org.mjsip.time.ServiceThreads;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.IpAddress;
 import org.zoolu.net.SocketAddress;
@@ -38,13 +51,31 @@ import org.zoolu.net.SocketAddress;
 
 
 /** SipTransportCO is a generic Connection Oriented (CO) transport service for SIP.
+  * <p>
+  * Outgoing connections are established in the background. Messages sent to a destination while
+  * its connection is being established are queued and sent in order as soon as the connection is
+  * ready, so that an unreachable peer does not block sending to other destinations. Connections are
+  * established by a bounded pool of connector threads, see {@link #setMaxConnectors(int)}. If a
+  * connection cannot be established, the listener is informed about each queued message with
+  * {@link SipTransportListener#onMessageNotSent(SipTransport, SipMessage, Exception)}.
+  * <p>
+  * Each connection records the time of its last traffic. If the maximum number of connections
+  * is reached, the least recently used connection is closed. With an idle timeout, connections
+  * without traffic are closed by {@link #closeIdleConnections()}. Receiving a message does not
+  * access the connection table, so receiving connections do not contend for its lock.
   */
 public abstract class SipTransportCO implements SipTransport/*, SipTransportConnectionListener*/ {
 
 	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(SipTransportCO.class);
 
-	/** Table of active connections (Hashtable of <code>ConnectionId</code>,<code>SipTransportConnection</code>) */
-	protected Hashtable<ConnectionId, SipTransportConnection> connections;
+	/** Default maximum number of outgoing connections established at the same time */
+	public static final int DEFAULT_MAX_CONNECTORS=16;
+
+	/** Table of active connections. The table is guarded by itself, no I/O is done while holding its lock. */
+	protected final Hashtable<ConnectionId, SipTransportConnection> connections=new Hashtable<>();
+
+	/** Outgoing connections currently being established, guarded by {@link #connections}. */
+	private final Map<ConnectionId, PendingConnection> pending=new HashMap<>();
 
 	/** SipTransport listener */
 	protected SipTransportListener listener=null;
@@ -61,6 +92,21 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 	/** Whether changing the Via protocol, sent-by, and port values of sending messages according to the transport connection */
 	boolean force_sent_by=false;   
 
+	/** Timeout for establishing an outgoing connection in milliseconds, 0 for no timeout */
+	int connect_timeout=0;
+
+	/** Time in milliseconds after which a connection without traffic is closed, 0 for no limit */
+	long idle_timeout=0;
+
+	/** Maximum size of a received message in bytes, 0 for no limit */
+	int max_message_size=SipMessageBuffer.DEFAULT_MAX_MESSAGE_SIZE;
+
+	/** Threads establishing outgoing connections, further connects wait for a free thread */
+	private final ThreadPoolExecutor connector;
+
+	/** Factory for connector threads */
+	private volatile ThreadFactory thread_factory=ServiceThreads.PLATFORM;
+
 
 
 
@@ -68,7 +114,14 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 	public SipTransportCO(int local_port, int nmax_connections)
 			throws IOException {
 		this.nmax_connections=nmax_connections;
-		connections=new Hashtable<>();
+		AtomicInteger connector_count=new AtomicInteger();
+		connector=new ThreadPoolExecutor(DEFAULT_MAX_CONNECTORS,DEFAULT_MAX_CONNECTORS,60,TimeUnit.SECONDS,new LinkedBlockingQueue<>(),task -> {
+			Thread thread=thread_factory.newThread(task);
+			thread.setName("SIP-" + getProtocol() + "-connect-" + connector_count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		connector.allowCoreThreadTimeOut(true);
 		this_conn_listener=new SipTransportConnectionListener() {
 			@Override
 			public void onReceivedMessage(SipTransportConnection conn, SipMessage msg) {
@@ -104,15 +157,109 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 	}
 
 
+	/** Sets the timeout for establishing outgoing connections.
+	  * @param connect_timeout timeout in milliseconds, 0 for no timeout */ 
+	public void setConnectTimeout(long connect_timeout) {
+		this.connect_timeout=(int)Math.min(Integer.MAX_VALUE,Math.max(0,connect_timeout));
+	}
+
+
+	/** Gets the timeout in milliseconds for establishing outgoing connections, 0 for no timeout. */ 
+	public int getConnectTimeout() {
+		return connect_timeout;
+	}
+
+
+	/** Sets the maximum number of outgoing connections that are established at the same time.
+	  * Further connections are established as soon as a previous attempt has completed.
+	  * @param max_connectors the number of connector threads, at least 1 */ 
+	public void setMaxConnectors(int max_connectors) {
+		int size=Math.max(1,max_connectors);
+		if (size>connector.getMaximumPoolSize()) {
+			connector.setMaximumPoolSize(size);
+			connector.setCorePoolSize(size);
+		}
+		else {
+			connector.setCorePoolSize(size);
+			connector.setMaximumPoolSize(size);
+		}
+	}
+
+
+	/** Gets the maximum number of outgoing connections that are established at the same time. */ 
+	public int getMaxConnectors() {
+		return connector.getMaximumPoolSize();
+	}
+
+
+	/** Sets the factory for threads establishing outgoing connections.
+	  * @param thread_factory the factory, e.g. the {@link org.mjsip.time.Scheduler#serviceThreads() service threads} of the scheduler */ 
+	public void setThreadFactory(ThreadFactory thread_factory) {
+		this.thread_factory=thread_factory;
+	}
+
+
+	/** Gets the factory for threads establishing outgoing connections. */ 
+	public ThreadFactory getThreadFactory() {
+		return thread_factory;
+	}
+
+
+	/** Sets the time after which connections without traffic are closed.
+	  * @param idle_timeout time in milliseconds, 0 for keeping connections open
+	  * @see #closeIdleConnections() */ 
+	public void setIdleTimeout(long idle_timeout) {
+		this.idle_timeout=idle_timeout;
+	}
+
+
+	/** Gets the time in milliseconds after which connections without traffic are closed, 0 if connections are kept open. */ 
+	public long getIdleTimeout() {
+		return idle_timeout;
+	}
+
+
+	/** Sets the maximum size of a received message, a connection receiving a larger message is closed.
+	  * @param max_message_size size in bytes, 0 for no limit */ 
+	public void setMaxMessageSize(int max_message_size) {
+		this.max_message_size=Math.max(0,max_message_size);
+	}
+
+
+	/** Gets the maximum size in bytes of a received message, 0 for no limit. */ 
+	public int getMaxMessageSize() {
+		return max_message_size;
+	}
+
+
 	/** Gets protocol type */ 
 	@Override
 	abstract public String getProtocol();
 
 
-	/** Creates a proper transport connection to the remote end-point. */
+	/** Creates a proper transport connection to the remote end-point.
+	  * Implementations should wait at most {@link #getConnectTimeout()} for the connection to be established. */
 	abstract protected SipTransportConnection createTransportConnection(SocketAddress remote_soaddr) throws IOException;
 
 
+	/** Establishes a transport connection to the remote end-point, called in a connector thread.
+	  * <p>
+	  * Implementations may complete the connection asynchronously to release the connector thread early, e.g. while
+	  * a TLS handshake is in progress. By default, {@link #createTransportConnection(SocketAddress)} is called.
+	  * @return a future completed with the connection, or completed exceptionally if no connection can be established */
+	protected CompletableFuture<SipTransportConnection> connectTransportConnection(SocketAddress remote_soaddr) {
+		try {
+			SipTransportConnection conn=createTransportConnection(remote_soaddr);
+			if (conn==null) return CompletableFuture.failedFuture(new IOException("No connection has been opened to: "+remote_soaddr));
+			// else
+			return CompletableFuture.completedFuture(conn);
+		}
+		catch (Exception e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+
 	/** Creates a proper transport connection to the remote end-point. */
 	//abstract protected SipTransportConnection createTransportConnection(int local_port, SocketAddress remote_soaddr)  throws IOException;
 
@@ -131,59 +278,88 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 	/** From SipTransport. Sends a SipMessage to the given remote address and port, with a given TTL.
 	  * <p>
 	  * If the transport protocol is Connection Oriented (CO), this method first looks for a proper active
-	  * connection; if no active connection is found, a new connection is opened.
+	  * connection; if no active connection is found, a new connection is opened in the background and
+	  * the message is sent as soon as the connection is established. If the connection cannot be
+	  * established, the message is reported to {@link SipTransportListener#onMessageNotSent(SipTransport, SipMessage, Exception)}.
 	  * <p>
 	  * If the transport protocol is Connection Less (CL) the message is simply sent to the remote point.
 	  * @return Returns the id of the used connection for CO transport, or null for CL transport. */      
 	@Override
 	public ConnectionId sendMessage(SipMessage msg, IpAddress dest_ipaddr, int dest_port, int ttl) throws IOException {
 		ConnectionId connection_id=new ConnectionId(getProtocol(),dest_ipaddr,dest_port);
+		SipTransportConnection conn;
+		PendingConnection connect=null;
+		boolean start=false;
 		// BEGIN SYNCHRONIZATION
 		synchronized (connections) {
-			
-			if (connections.containsKey(connection_id))
+			conn=connections.get(connection_id);
+			if (conn==null) {
+				if (manual) {
+					// MANUAL CONN MODE
+					LOG.debug("only manual connections: message has not been sent");
+					return null;
+				}
+				// AUTOMATIC CONN MODE
+				connect=pending.get(connection_id);
+				if (connect==null) {
+					connect=new PendingConnection(connection_id,new SocketAddress(dest_ipaddr,dest_port));
+					pending.put(connection_id,connect);
+					start=true;
+				}
+			}
+		}
+		// END SYNCHRONIZATION      
+
+		if (conn!=null) {
 			try {
-				LOG.debug("already active connection found for connection-id {}", connection_id);
-				SipTransportConnection conn=connections.get(connection_id);
 				LOG.debug("sending data through already active connection {}", conn);
-				//conn.sendMessage(msg);
 				sendMessage(conn,msg);
 				return connection_id;
 			}
 			catch (Exception e) {
 				LOG.warn("error using previous connection with connection-id {}", connection_id, e);
-				removeConnection(connection_id);
-			}
-			// no active connection
-			LOG.debug("no active connection for {}", connection_id);
-			if (!manual) {
-				// AUTOMATIC CONN MODE
-				LOG.debug("open " + getProtocol() + " connection to {}:{}", dest_ipaddr, dest_port);
-				try {
-					SipTransportConnection conn=addConnection(dest_ipaddr,dest_port);
-					if (conn!=null) {
-						LOG.debug("sending data through connection {}", conn);
-						//conn.sendMessage(msg);
-						sendMessage(conn,msg);
-						return new ConnectionId(conn);
-					}
-					else {
-						LOG.debug("null connection: message has not been sent");
-						return null;
-					}
-				}
-				catch (Exception e) {
-					LOG.warn("Exception", e);
-					return null;
-				}
-			}
-			else {
-				// MANUAL CONN MODE
-				LOG.debug("only manual connections: message has not been sent");
-				return null;
+				removeConnection(connection_id,conn);
+				return sendMessage(msg,dest_ipaddr,dest_port,ttl);
 			}
 		}
+
+		connect.send(msg);
+		if (start) {
+			LOG.debug("open " + getProtocol() + " connection to {}:{}", dest_ipaddr, dest_port);
+			startConnect(connect);
+		}
+		return connection_id;
+	}
+
+
+	/** Gets the connection to the given remote end-point, establishing a new connection in the background, if there is none.
+	  * @return a future completed with the connection, or completed exceptionally if the connection cannot be established */
+	public CompletableFuture<SipTransportConnection> connect(IpAddress dest_ipaddr, int dest_port) {
+		ConnectionId connection_id=new ConnectionId(getProtocol(),dest_ipaddr,dest_port);
+		PendingConnection connect;
+		// BEGIN SYNCHRONIZATION
+		synchronized (connections) {
+			SipTransportConnection conn=connections.get(connection_id);
+			if (conn!=null) return CompletableFuture.completedFuture(conn);
+			connect=pending.get(connection_id);
+			if (connect!=null) return connect.future;
+			connect=new PendingConnection(connection_id,new SocketAddress(dest_ipaddr,dest_port));
+			pending.put(connection_id,connect);
+		}
 		// END SYNCHRONIZATION      
+		startConnect(connect);
+		return connect.future;
+	}
+
+
+	/** Establishes the given connection with a connector thread. */
+	private void startConnect(PendingConnection connect) {
+		try {
+			connector.execute(connect);
+		}
+		catch (RejectedExecutionException e) {
+			connect.fail(new IOException("Transport halted, no connection to: "+connect.remote_soaddr));
+		}
 	}
 
 
@@ -197,20 +373,19 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 			throw new IOException("null connection-id");
 		}
 		// else
+		SipTransportConnection conn;
 		// BEGIN SYNCHRONIZATION
 		synchronized (connections) {
-			
-			if (!connections.containsKey(connection_id)) {
-				throw new IOException("no active connection found matching connection-id "+connection_id);
-			}
-			// else
-			LOG.debug("active connection found matching {}", connection_id);
-			SipTransportConnection conn=connections.get(connection_id);
-			//conn.sendMessage(msg);
-			sendMessage(conn,msg);
-			return conn;
+			conn=connections.get(connection_id);
 		}
 		// END SYNCHRONIZATION      
+		if (conn==null) {
+			throw new IOException("no active connection found matching connection-id "+connection_id);
+		}
+		// else
+		LOG.debug("active connection found matching {}", connection_id);
+		sendMessage(conn,msg);
+		return conn;
 	}
 
 
@@ -230,20 +405,60 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 	@Override
 	public void halt() {
 		// close all connections
-		if (connections!=null) {
-			LOG.trace("connections are going down");
-			for (Enumeration<SipTransportConnection> e=connections.elements(); e.hasMoreElements(); ) {
-				SipTransportConnection c=e.nextElement();
-				c.halt();
-			}
-			//connections=null;
+		LOG.trace("connections are going down");
+		List<SipTransportConnection> closed;
+		// BEGIN SYNCHRONIZATION
+		synchronized (connections) {
+			closed=new ArrayList<>(connections.values());
+			connections.clear();
+		}
+		// END SYNCHRONIZATION      
+		for (SipTransportConnection c : closed) {
+			c.halt();
+		}
+		connector.shutdownNow();
+		List<PendingConnection> aborted;
+		// BEGIN SYNCHRONIZATION
+		synchronized (connections) {
+			aborted=new ArrayList<>(pending.values());
+		}
+		// END SYNCHRONIZATION      
+		for (PendingConnection connect : aborted) {
+			connect.fail(new IOException("Transport halted, no connection to: "+connect.remote_soaddr));
 		}
 		listener=null;
 	}
 
 
+	/** Closes all connections without traffic for the idle timeout.
+	  * @return the number of closed connections */
+	public int closeIdleConnections() {
+		if (idle_timeout<=0) return 0;
+		// else
+		long limit=System.currentTimeMillis()-idle_timeout;
+		List<SipTransportConnection> idle=new ArrayList<>();
+		// BEGIN SYNCHRONIZATION
+		synchronized (connections) {
+			for (Iterator<SipTransportConnection> it=connections.values().iterator(); it.hasNext(); ) {
+				SipTransportConnection conn=it.next();
+				if (conn.getLastTimeMillis()<limit) {
+					it.remove();
+					idle.add(conn);
+				}
+			}
+		}
+		// END SYNCHRONIZATION      
+		for (SipTransportConnection conn : idle) {
+			LOG.debug("closing idle connection {}", conn);
+			conn.halt();
+		}
+		return idle.size();
+	}
+
+
 	/** When a new SIP message is received. */
 	protected void processReceivedMessage(SipTransportConnection conn, SipMessage msg) {
+		// The connection has already updated its last time, see getLastTimeMillis().
 		if (listener!=null) listener.onReceivedMessage(this,msg);
 	}
 	
@@ -252,7 +467,7 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 	protected void processConnectionTerminated(SipTransportConnection conn, Exception error) {
 		//System.out.println("DEBUG: SipTransportCO: connection terminated");
 		ConnectionId connection_id=new ConnectionId(conn);
-		removeConnection(connection_id);
+		removeConnection(connection_id,conn);
 		LOG.debug("connection {} terminated", conn, error);
 		if (listener!=null) listener.onTransportConnectionTerminated(this,new SocketAddress(conn.getRemoteAddress(),conn.getRemotePort()),error);
 	}
@@ -273,33 +488,34 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 
 	/** Adds a new transport connection. */ 
 	public void addConnection(SipTransportConnection conn) {
+		if (conn instanceof TcpTransportConnection) ((TcpTransportConnection)conn).setMaxMessageSize(max_message_size);
 		ConnectionId connection_id=new ConnectionId(conn);
+		SipTransportConnection old_conn;
+		SipTransportConnection evicted=null;
 		// BEGIN SYNCHRONIZATION
 		synchronized (connections) {
-			
-			if (connections.containsKey(connection_id)) {
+			old_conn=connections.remove(connection_id);
+			if (old_conn!=null) {
 				// remove the previous connection
 				LOG.info("Adding already established connection, replacing ID: {}", connection_id);
-				SipTransportConnection old_conn=connections.get(connection_id);
-				old_conn.halt();
-				connections.remove(connection_id);
 			}
 			else
-			if (connections.size()>=nmax_connections) {
-				// remove the older unused connection
-				LOG.info("Reached maximum number of connections, removing unused connections.");
-				long older_time=System.currentTimeMillis();
-				ConnectionId older_id=null;
-				for (Enumeration<SipTransportConnection> e=connections.elements(); e.hasMoreElements(); ) {
-					SipTransportConnection co= e.nextElement();
-					if (co.getLastTimeMillis()<older_time) older_id=new ConnectionId(co);
+			if (nmax_connections>0 && connections.size()>=nmax_connections) {
+				// remove the least recently used connection
+				LOG.info("Reached maximum number of connections, removing least recently used connection.");
+				ConnectionId oldest_id=null;
+				long oldest_time=Long.MAX_VALUE;
+				for (Map.Entry<ConnectionId, SipTransportConnection> e : connections.entrySet()) {
+					long time=e.getValue().getLastTimeMillis();
+					if (time<oldest_time) {
+						oldest_id=e.getKey();
+						oldest_time=time;
+					}
 				}
-				if (older_id!=null) removeConnection(older_id);
+				evicted=connections.remove(oldest_id);
 			}
 			connections.put(connection_id,conn);
 			conn.setListener(this_conn_listener);
-			//connection_id=new ConnectionId(conn);
-			//conn=(SipTransportConnection)connections.get(connection_id);
 			// DEBUG log:
 			if(LOG.isTraceEnabled()) {
 				LOG.trace("active connenctions:");
@@ -310,28 +526,147 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 			}
 		}
 		// END SYNCHRONIZATION      
+		if (old_conn!=null && old_conn!=conn) old_conn.halt();
+		if (evicted!=null) evicted.halt();
 	}
 
  
 	/** Removes a transport connection */ 
 	public void removeConnection(ConnectionId connection_id) {
+		SipTransportConnection conn;
+		// BEGIN SYNCHRONIZATION
+		synchronized (connections) {
+			conn=connections.remove(connection_id);
+		}
+		// END SYNCHRONIZATION
+		if (conn!=null) conn.halt();
+	}
+
+
+	/** Removes a transport connection, if it is still registered for the given connection-id */ 
+	private void removeConnection(ConnectionId connection_id, SipTransportConnection conn) {
+		boolean removed;
 		// BEGIN SYNCHRONIZATION
 		synchronized (connections) {
-			
-			if (connections.containsKey(connection_id)) {
-				SipTransportConnection conn=connections.get(connection_id);
-				connections.remove(connection_id);
-				conn.halt();
-				// DEBUG log:
-				if(LOG.isTraceEnabled()) {
-					LOG.trace("active connenctions:");
-					for (Enumeration<SipTransportConnection> e=connections.elements(); e.hasMoreElements(); ) {
-						SipTransportConnection co= e.nextElement();
-						LOG.trace("conn {}", co);
+			removed=connections.remove(connection_id,conn);
+		}
+		// END SYNCHRONIZATION
+		if (removed) conn.halt();
+	}
+
+
+	/** Outgoing connection being established, with the messages waiting for it. */
+	private final class PendingConnection implements Runnable {
+
+		/** The id of the connection */
+		final ConnectionId connection_id;
+
+		/** The remote end-point */
+		final SocketAddress remote_soaddr;
+
+		/** Completed when the connection is established or has failed */
+		final CompletableFuture<SipTransportConnection> future=new CompletableFuture<>();
+
+		/** Messages waiting for the connection, guarded by this object */
+		private final List<SipMessage> queue=new ArrayList<>();
+
+		PendingConnection(ConnectionId connection_id, SocketAddress remote_soaddr) {
+			this.connection_id=connection_id;
+			this.remote_soaddr=remote_soaddr;
+		}
+
+		/** Sends the given message as soon as the connection is established. */
+		void send(SipMessage msg) {
+			SipTransportConnection conn;
+			synchronized (this) {
+				if (!future.isDone()) {
+					queue.add(msg);
+					return;
+				}
+				conn=future.getNow(null);
+			}
+			if (conn==null) {
+				LOG.debug("connection to {} failed: message has not been sent", remote_soaddr);
+				notSent(msg,new IOException("No connection to: "+remote_soaddr));
+				return;
+			}
+			send(conn,msg);
+		}
+
+		private void send(SipTransportConnection conn, SipMessage msg) {
+			try {
+				sendMessage(conn,msg);
+			}
+			catch (IOException e) {
+				LOG.warn("error sending message through connection {}", conn, e);
+				notSent(msg,e);
+			}
+		}
+
+		private void notSent(SipMessage msg, Exception error) {
+			SipTransportListener l=listener;
+			if (l!=null) l.onMessageNotSent(SipTransportCO.this,msg,error);
+		}
+
+		/** Drops the queued messages and reports them to the listener, if the connection cannot be established.
+		  * @return whether the connection has failed with this call */
+		boolean fail(Exception error) {
+			List<SipMessage> dropped;
+			synchronized (this) {
+				if (future.isDone()) return false;
+				dropped=new ArrayList<>(queue);
+				queue.clear();
+				future.completeExceptionally(error);
+			}
+			LOG.info("Connection to {} failed, {} message(s) not sent: {}", remote_soaddr, dropped.size(), error.getMessage());
+			// BEGIN SYNCHRONIZATION
+			synchronized (connections) {
+				pending.remove(connection_id,this);
+			}
+			// END SYNCHRONIZATION
+			for (SipMessage msg : dropped) notSent(msg,error);
+			return true;
+		}
+
+		/** Establishes the connection. */
+		@Override
+		public void run() {
+			connectTransportConnection(remote_soaddr).whenComplete(this::onConnected);
+		}
+
+		/** When the connection has been established, or has failed. */
+		private void onConnected(SipTransportConnection conn, Throwable failure) {
+			Exception error=null;
+			if (failure!=null) {
+				Throwable cause=failure instanceof CompletionException && failure.getCause()!=null? failure.getCause() : failure;
+				error=cause instanceof Exception? (Exception)cause : new IOException(cause);
+			}
+
+			if (conn!=null) {
+				LOG.debug("connection {} opened", conn);
+				synchronized (this) {
+					if (future.isDone()) {
+						// The transport has been halted in the meantime.
+						conn.halt();
+						return;
 					}
+					// Send queued messages before the connection becomes visible to other senders.
+					LOG.debug("sending {} queued messages through connection {}", queue.size(), conn);
+					for (SipMessage msg : queue) send(conn,msg);
+					queue.clear();
+					addConnection(conn);
+					future.complete(conn);
+				}
+				// BEGIN SYNCHRONIZATION
+				synchronized (connections) {
+					pending.remove(connection_id,this);
 				}
+				// END SYNCHRONIZATION
+			}
+			else if (fail(error)) {
+				SipTransportListener l=listener;
+				if (l!=null) l.onTransportConnectionTerminated(SipTransportCO.this,remote_soaddr,error);
 			}
 		}
-		// END SYNCHRONIZATION
 	}
-}
\ No newline at end of file
+}
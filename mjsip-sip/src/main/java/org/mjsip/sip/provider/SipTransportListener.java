@@ -40,6 +40,13 @@ public interface SipTransportListener {
 	/** When a new incoming transport connection is established. It is called only for CO transport portocols. */ 
 	public void onIncomingTransportConnection(SipTransport transport, SocketAddress remote_soaddr);
 
+	/** When a message could not be sent, e.g. since no connection could be established to the destination.
+	  * It is called only for CO transport protocols, for messages that have been accepted for sending before the failure was known.
+	  * By default, the message is dropped silently. */
+	default void onMessageNotSent(SipTransport transport, SipMessage msg, Exception error) {
+		// Ignore.
+	}
+
 	/** When a transport connection terminates. It is called only for CO transport portocols. */
 	public void onTransportConnectionTerminated(SipTransport transport, SocketAddress remote_soaddr, Exception error);
 
@@ -135,7 +135,7 @@ public class TcpTransport extends SipTransportCO/* implements TcpServerListener*
 	/** Creates a transport connection to the remote end-point. */
 	@Override
 	protected SipTransportConnection createTransportConnection(SocketAddress remote_soaddr) throws IOException {
-		TcpSocket tcp_socket=new TcpSocket(remote_soaddr.getAddress(),remote_soaddr.getPort());
+		TcpSocket tcp_socket=new TcpSocket(remote_soaddr.getAddress(),remote_soaddr.getPort(),getConnectTimeout());
 		return new TcpTransportConnection(tcp_socket,this_conn_listener);
 	}
 
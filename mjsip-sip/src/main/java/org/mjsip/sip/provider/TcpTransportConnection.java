@@ -28,6 +28,8 @@ package org.mjsip.sip.provider;
 import java.io.IOException;
 
 import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.MalformedSipMessageException;
+import org.mjsip.sip.message.SipFramingException;
 import org.mjsip.sip.message.SipMessageBuffer;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.IpAddress;
@@ -53,7 +55,7 @@ public class TcpTransportConnection implements SipTransportConnection/*, TcpConn
 	ConnectionId connection_id;  
 
 	/** The last time that has been used (in milliseconds) */
-	long last_time;
+	volatile long last_time;
 	
 	/** Receiver buffer. */
 	SipMessageBuffer buffer=new SipMessageBuffer();
@@ -108,6 +110,13 @@ public class TcpTransportConnection implements SipTransportConnection/*, TcpConn
 	}
 
 
+	/** Sets the maximum size of a received message, larger messages close the connection.
+	  * @param max_size the maximum number of bytes of a single message, 0 for no limit */      
+	public void setMaxMessageSize(int max_size) {
+		buffer.setMaxMessageSize(max_size);
+	}
+
+
 	/** Sets the SipTransportConnection listener. */      
 	@Override
 	public void setListener(SipTransportConnectionListener listener) {
@@ -226,15 +235,23 @@ public class TcpTransportConnection implements SipTransportConnection/*, TcpConn
 	}
 
 
-	/** Tries to get a SIP message from the receiver buffer. */
+	/** Tries to get a SIP message from the receiver buffer.
+	  * @return the next complete message, or <code>null</code> if more data is required or the connection has been halted */
 	private SipMessage getSipMessage()   {
-		SipMessage msg=null;
-		// skip possible leading CRLF
-		byte b;
-		while (buffer.getLength()>0 && ((b=buffer.byteAt(0))=='\r' || b=='\n')) buffer.skip(1);
-		// try to get a SIP message
-		try {  msg=buffer.parseSipMessage();  } catch (Exception e) {}
-		return msg;
+		while (true) {
+			try {
+				return buffer.parseSipMessage();
+			}
+			catch (SipFramingException e) {
+				LOG.warn("Closing connection {}: {}", this, e.getMessage());
+				halt();
+				return null;
+			}
+			catch (MalformedSipMessageException e) {
+				// the malformed message has been skipped
+				LOG.info("Discarding malformed message from {}: {}", this, e.getMessage());
+			}
+		}
 	}
 
 }
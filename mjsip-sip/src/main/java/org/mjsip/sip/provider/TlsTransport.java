@@ -26,6 +26,9 @@ package org.mjsip.sip.provider;
 
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.IpAddress;
@@ -34,6 +37,7 @@ import org.zoolu.net.TcpServer;
 import org.zoolu.net.TcpServerListener;
 import org.zoolu.net.TcpSocket;
 import org.zoolu.net.TlsContext;
+import org.zoolu.net.TlsHandshaker;
 import org.zoolu.net.TlsServerFactory;
 import org.zoolu.net.TlsSocketFactory;
 
@@ -47,13 +51,25 @@ public class TlsTransport extends SipTransportCO/* implements TcpServerListener*
 
 	/** TLS protocol type */
 	public static final String PROTO_TLS="tls";
+
+	/** Default maximum time in milliseconds to wait for the peer during a TLS handshake */
+	public static final int DEFAULT_HANDSHAKE_TIMEOUT=10000;
 	
 	/** TLS server */
 	TcpServer tls_server=null;
 
+	/** TLS server factory */
+	TlsServerFactory tls_server_factory=null;
+
 	/** TLS socket factory */
 	TlsSocketFactory tls_socket_factory=null;
 
+	/** Executor for TLS handshakes, <code>null</code> for handshaking in the connecting or receiving thread */
+	TlsHandshaker handshaker=null;
+
+	/** Maximum time in milliseconds to wait for the peer during a TLS handshake, 0 for no limit */
+	int handshake_timeout=DEFAULT_HANDSHAKE_TIMEOUT;
+
 
 
 	/** Creates a new TLS transport. 
@@ -122,7 +138,7 @@ public class TlsTransport extends SipTransportCO/* implements TcpServerListener*
 				if (trust_folder!=null) tls_context.addTrustFolder(trust_folder);
 			}
 			// tls server
-			TlsServerFactory tls_server_factory=new TlsServerFactory(tls_context);
+			tls_server_factory=new TlsServerFactory(tls_context);
 			TcpServerListener this_tls_server_listener=new TcpServerListener() {
 				@Override
 				public void onIncomingConnection(TcpServer tcp_server, TcpSocket socket) {
@@ -150,6 +166,54 @@ public class TlsTransport extends SipTransportCO/* implements TcpServerListener*
 	}
 
 
+	/** Configures the caches of client and server sessions that can be resumed by later connections.
+	  * @param cache_size maximum number of cached sessions (for each side), 0 for no limit
+	  * @param timeout lifetime of a cached session in seconds, 0 for no limit */ 
+	public void setSessionCache(int cache_size, int timeout) {
+		tls_socket_factory.getSessionContext().setSessionCacheSize(cache_size);
+		tls_socket_factory.getSessionContext().setSessionTimeout(timeout);
+		tls_server_factory.getSessionContext().setSessionCacheSize(cache_size);
+		tls_server_factory.getSessionContext().setSessionTimeout(timeout);
+	}
+
+
+	/** Performs TLS handshakes of incoming and outgoing connections on a bounded pool of threads.
+	  * Handshake threads are created by the {@link #getThreadFactory() thread factory} of this transport.
+	  * @param threads maximum number of concurrent handshakes, 0 for the number of available processors
+	  * @param queue_size maximum number of handshakes waiting for a thread, further connections are closed */ 
+	public void setHandshakeExecutor(int threads, int queue_size) {
+		if (handshaker!=null) handshaker.halt();
+		handshaker=new TlsHandshaker(threads,queue_size,task -> getThreadFactory().newThread(task));
+	}
+
+
+	/** Sets the maximum time to wait for the peer during a TLS handshake.
+	  * In contrast to the connect timeout, this also limits the handshakes of incoming connections.
+	  * @param handshake_timeout timeout in milliseconds, 0 for no limit */ 
+	public void setHandshakeTimeout(int handshake_timeout) {
+		this.handshake_timeout=Math.max(0,handshake_timeout);
+	}
+
+
+	/** Gets the maximum time in milliseconds to wait for the peer during a TLS handshake, 0 for no limit. */ 
+	public int getHandshakeTimeout() {
+		return handshake_timeout;
+	}
+
+
+	/** Applies the JVM-wide TLS settings of the given configuration, if it uses the TLS transport.
+	  * <p>
+	  * Called by the {@link SipProvider} before creating its TLS transport. Since the settings are JVM-wide,
+	  * only the first configuration applied before the first TLS connection is effective.
+	  * @see SipOptions#useTlsSessionTickets() */ 
+	public static void configure(SipOptions sip_config) {
+		String[] protocols=sip_config.getTransportProtocols();
+		if (protocols!=null && Arrays.asList(protocols).contains(PROTO_TLS)) {
+			TlsContext.setSessionTickets(sip_config.useTlsSessionTickets());
+		}
+	}
+
+
 	/** Gets protocol type */ 
 	@Override
 	public String getProtocol() {
@@ -170,6 +234,7 @@ public class TlsTransport extends SipTransportCO/* implements TcpServerListener*
 	public void halt() {
 		super.halt();
 		if (tls_server!=null) tls_server.halt();
+		if (handshaker!=null) handshaker.halt();
 	}
 
 
@@ -177,16 +242,29 @@ public class TlsTransport extends SipTransportCO/* implements TcpServerListener*
 	private void processIncomingConnection(TcpServer tcp_server, TcpSocket socket) {
 		LOG.debug("incoming connection from {}:{}", socket.getAddress(), socket.getPort());
 		if (tcp_server==this.tls_server) {
-			try {
-				SipTransportConnection conn = new TlsTransportConnection(socket, this_conn_listener);
-				LOG.debug("tls connection {} opened", conn);
-				addConnection(conn);
-				if (listener != null)
-					listener.onIncomingTransportConnection(this,
-							new SocketAddress(socket.getAddress(), socket.getPort()));
-			} catch (IOException ex) {
-				LOG.info("Handling incoming connection failed: {}", ex.getMessage());
+			if (handshaker!=null) {
+				// do not block the server while handshaking
+				handshaker.handshake(socket,handshake_timeout).whenComplete((s,error) -> {
+					if (error!=null) LOG.info("TLS handshake with {}:{} failed: {}", socket.getAddress(), socket.getPort(), error.getMessage());
+					else addIncomingConnection(socket);
+				});
 			}
+			else addIncomingConnection(socket);
+		}
+	}
+
+
+	/** Adds an incoming connection. */
+	private void addIncomingConnection(TcpSocket socket) {
+		try {
+			SipTransportConnection conn = new TlsTransportConnection(socket, this_conn_listener);
+			LOG.debug("tls connection {} opened", conn);
+			addConnection(conn);
+			if (listener != null)
+				listener.onIncomingTransportConnection(this,
+						new SocketAddress(socket.getAddress(), socket.getPort()));
+		} catch (IOException ex) {
+			LOG.info("Handling incoming connection failed: {}", ex.getMessage());
 		}
 	}
 
@@ -200,11 +278,41 @@ public class TlsTransport extends SipTransportCO/* implements TcpServerListener*
 	/** Creates a transport connection to the remote end-point. */
 	@Override
 	protected SipTransportConnection createTransportConnection(SocketAddress remote_soaddr) throws IOException {
-		TcpSocket tls_socket=tls_socket_factory.createTlsSocket(remote_soaddr.getAddress(),remote_soaddr.getPort());
+		TcpSocket tls_socket;
+		if (handshaker!=null) {
+			tls_socket=tls_socket_factory.connectTlsSocket(remote_soaddr.getAddress(),remote_soaddr.getPort(),getConnectTimeout());
+			TlsHandshaker.handshakeNow(tls_socket,handshake_timeout);
+		}
+		else tls_socket=tls_socket_factory.createTlsSocket(remote_soaddr.getAddress(),remote_soaddr.getPort(),getConnectTimeout());
 		return new TlsTransportConnection(tls_socket,this_conn_listener);
 	}
 
 
+	/** Establishes a transport connection to the remote end-point.
+	  * With a handshake executor, the connector thread is released as soon as the TCP connection is established,
+	  * the connection completes when the handshake has finished. */
+	@Override
+	protected CompletableFuture<SipTransportConnection> connectTransportConnection(SocketAddress remote_soaddr) {
+		if (handshaker==null) return super.connectTransportConnection(remote_soaddr);
+		// else
+		TcpSocket tls_socket;
+		try {
+			tls_socket=tls_socket_factory.connectTlsSocket(remote_soaddr.getAddress(),remote_soaddr.getPort(),getConnectTimeout());
+		}
+		catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return handshaker.handshake(tls_socket,handshake_timeout).thenApply(socket -> {
+			try {
+				return new TlsTransportConnection(socket,this_conn_listener);
+			}
+			catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+
 	/** Creates a transport connection to the remote end-point. */
 	/*protected SipTransportConnection createTransportConnection(int local_port, SocketAddress remote_soaddr) throws IOException {
 		TcpSocket tls_socket=tls_socket_factory.createTlsSocket(remote_soaddr.getAddress(),remote_soaddr.getPort(),null,local_port);
@@ -22,6 +22,7 @@
 package org.mjsip.sip.provider;
 
 
+import java.util.concurrent.locks.LockSupport;
 
 import org.zoolu.net.SocketAddress;
 import org.zoolu.net.UdpPacket;
@@ -58,7 +59,7 @@ public class UdpKeepAlive extends Thread {
 	protected long expire=0; 
 
 	/** Whether it is running */
-	protected transient boolean stop = false;
+	protected transient volatile boolean stop = false;
 
 
 	/** Creates a new UdpKeepAlive daemon */
@@ -143,6 +144,8 @@ public class UdpKeepAlive extends Thread {
 	/** Stops sending keep-alive tokens */
 	public void halt() {
 		stop=true;
+		// wake up the sender instead of interrupting it, since the socket may be shared
+		LockSupport.unpark(this);
 	}
 
 
@@ -161,7 +164,9 @@ public class UdpKeepAlive extends Thread {
 		try    {
 			while(!stop) {
 				sendToken();
-				Thread.sleep(delta_time);
+				long wakeup=System.nanoTime()+delta_time*1000000L;
+				long delay;
+				while (!stop && (delay=wakeup-System.nanoTime())>0) LockSupport.parkNanos(this,delay);
 				if (expire>0 && System.currentTimeMillis()>expire) halt(); 
 			}
 		}
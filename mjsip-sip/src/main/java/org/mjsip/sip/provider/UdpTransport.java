@@ -52,6 +52,12 @@ public class UdpTransport implements SipTransport/*, UdpProviderListener*/ {
 	/** SipTransport listener */
 	SipTransportListener listener = null;
 
+	/** Service receiving RFC 5626 pongs */
+	private volatile KeepAliveService keep_alive = null;
+
+	/** Whether received messages keep the bytes they have been parsed from */
+	private volatile boolean keep_received_bytes = false;
+
 	/** Creates a new UdpTransport */ 
 	public UdpTransport(UdpSocket socket) {
 		init(socket);
@@ -127,15 +133,38 @@ public class UdpTransport implements SipTransport/*, UdpProviderListener*/ {
 	  * @return Returns the id of the used connection for CO transport, or null for CL transport. */      
 	@Override
 	public ConnectionId sendMessage(SipMessage msg, IpAddress dest_ipaddr, int dest_port, int ttl) throws IOException {
+		// if (ttl>0 && multicast_address) do something?
+		sendBytes(msg.getBytes(),dest_ipaddr,dest_port);
+		return null;
+	}
+
+
+	/** Sends an already serialized SIP message to the given remote address and port. */      
+	public void sendBytes(byte[] data, IpAddress dest_ipaddr, int dest_port) throws IOException {
+		sendBytes(data,data.length,dest_ipaddr,dest_port);
+	}
+
+
+	/** Sends an already serialized SIP message, given by the first <i>len</i> bytes of <i>data</i>, to the given remote address and port. */      
+	public void sendBytes(byte[] data, int len, IpAddress dest_ipaddr, int dest_port) throws IOException {
 		if (udp_provider!=null) {
-			byte[] data=msg.getBytes();
-			UdpPacket packet=new UdpPacket(data,data.length);
-			// if (ttl>0 && multicast_address) do something?
+			UdpPacket packet=new UdpPacket(data,len);
 			packet.setIpAddress(dest_ipaddr);
 			packet.setPort(dest_port);
 			udp_provider.send(packet);
 		}
-		return null;
+	}
+
+
+	/** Sets the service that is notified about received RFC 5626 pongs. */
+	void setKeepAliveService(KeepAliveService keep_alive) {
+		this.keep_alive=keep_alive;
+	}
+
+
+	/** Sets whether received messages keep the bytes they have been parsed from, see {@link SipMessage#getReceivedBytes()}. */
+	void setKeepReceivedBytes(boolean keep_received_bytes) {
+		this.keep_received_bytes=keep_received_bytes;
 	}
 
 
@@ -164,10 +193,13 @@ public class UdpTransport implements SipTransport/*, UdpProviderListener*/ {
 		}
 		else
 		if (ByteUtils.match(packet.getData(),packet.getOffset(),packet.getLength(),PONG,0,PONG.length)) {
-			// do something..
+			KeepAliveService keep_alive=this.keep_alive;
+			if (keep_alive!=null) keep_alive.onPong(packet.getIpAddress(),packet.getPort());
 		}
 		else {
 			SipMessage msg=new SipMessage(packet.getData(),packet.getOffset(),packet.getLength());
+			// The receive buffer is reused for the next datagram.
+			if (keep_received_bytes) msg.keepReceivedBytes(packet.getData(),packet.getOffset());
 			msg.setRemoteAddress(packet.getIpAddress().toString());
 			msg.setRemotePort(packet.getPort());
 			msg.setTransportProtocol(PROTO_UDP);
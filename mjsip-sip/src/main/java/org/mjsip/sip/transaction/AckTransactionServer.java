@@ -109,7 +109,7 @@ public class AckTransactionServer extends Transaction {
 		sip_provider.addSelectiveListener(transaction_id,this);
 		//transaction_id=null; // it is not required since no SipProviderListener is implemented 
 		// (CHANGE-040905) now timeouts are started when method respond() is called
-		transaction_to = sip_provider.scheduler().schedule(sip_provider.sipConfig().getTransactionTimeout(),
+		transaction_to = sip_provider.schedule(response, sip_provider.sipConfig().getTransactionTimeout(),
 				this::onTransactionTimeout);
 
 		if (connection_id == null) {
@@ -140,6 +140,7 @@ public class AckTransactionServer extends Transaction {
 
 	private void onTransactionTimeout() {
 		LOG.info("Transaction timeout expired");
+		SERVER_TIMEOUTS.inc();
 		doTerminate();
 		// retransmission_to=null;
 		// transaction_to=null;
@@ -154,11 +155,12 @@ public class AckTransactionServer extends Transaction {
 		scheduleRetransmission(sip_provider.retransmissionSlowdown(retransmissionTimeout));
 
 		sip_provider.sendMessage(response);
+		RESPONSE_RETRANSMISSIONS.inc();
 	}
 
 	private void scheduleRetransmission(long timeout) {
 		retransmissionTimeout = timeout;
-		retransmission_to = sip_provider.scheduler().schedule(timeout, this::onRetransmissionTimeout);
+		retransmission_to = sip_provider.schedule(response, timeout, this::onRetransmissionTimeout);
 	}
 
 	/** Method used to drop an active transaction. */
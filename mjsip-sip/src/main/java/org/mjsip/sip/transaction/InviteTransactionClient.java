@@ -82,11 +82,12 @@ public class InviteTransactionClient extends TransactionClient {
 	public void request() {
 		LOG.trace("start");
 		changeStatus(STATE_TRYING); 
-		transaction_to = sip_provider.scheduler().schedule(sip_provider.sipConfig().getTransactionTimeout(),
+		transaction_to = sip_provider.schedule(request, sip_provider.sipConfig().getTransactionTimeout(),
 				this::onTransaction);
+		// schedule before sending, a fast response must find the timer to cancel
+		scheduleRetransmission(sip_provider.sipConfig().getRetransmissionTimeout());
 		sip_provider.addSelectiveListener(transaction_id,this); 
 		connection_id=sip_provider.sendMessage(request);
-		scheduleRetransmission(sip_provider.sipConfig().getRetransmissionTimeout());
 	}  
 		
 	/** Method derived from interface SipListener.
@@ -115,7 +116,7 @@ public class InviteTransactionClient extends TransactionClient {
 					if (invite_tc_listener!=null) invite_tc_listener.onTransFailureResponse(this,msg);
 					invite_tc_listener=null;
 					if (connection_id==null) {
-						end_to = sip_provider.scheduler().schedule(sip_provider.sipConfig().getTransactionTimeout(),
+						end_to = sip_provider.schedule(request, sip_provider.sipConfig().getTransactionTimeout(),
 								this::onEnd);
 					}
 					else {
@@ -146,6 +147,7 @@ public class InviteTransactionClient extends TransactionClient {
 
 	private void onTransaction() {
 		LOG.info("Transaction timeout expired");
+		CLIENT_TIMEOUTS.inc();
 		doTerminate();
 		if (invite_tc_listener!=null) invite_tc_listener.onTransTimeout(this);
 		invite_tc_listener=null;
@@ -156,6 +158,7 @@ public class InviteTransactionClient extends TransactionClient {
 		// retransmission only in case of unreliable transport 
 		if (connection_id==null) {
 			sip_provider.sendMessage(request);
+			REQUEST_RETRANSMISSIONS.inc();
 
 			scheduleRetransmission(sip_provider.sipConfig().getRetransmissionTimeout());
 		}
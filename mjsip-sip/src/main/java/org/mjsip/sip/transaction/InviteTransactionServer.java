@@ -167,7 +167,7 @@ public class InviteTransactionServer extends TransactionServer {
 				LOG.trace("No retransmissions for reliable transport ({})", connection_id);
 				//onTimeout(end_to);
 			}
-			end_to = sip_provider.scheduler().schedule(sip_provider.sipConfig().getTransactionTimeout(),
+			end_to = sip_provider.schedule(request, sip_provider.sipConfig().getTransactionTimeout(),
 					this::onEndTimeout);
 		}
 	}
@@ -201,6 +201,7 @@ public class InviteTransactionServer extends TransactionServer {
 				if (statusIs(STATE_PROCEEDING) || statusIs(STATE_COMPLETED)) {
 					// retransmission of the last response
 					sip_provider.sendMessage(response);
+					RESPONSE_RETRANSMISSIONS.inc();
 					return;
 				}
 			}
@@ -211,7 +212,7 @@ public class InviteTransactionServer extends TransactionServer {
 				end_to.cancel(false);
 				changeStatus(STATE_CONFIRMED);
 				if (invite_ts_listener!=null) invite_ts_listener.onTransFailureAck(this,msg);
-				clearing_to = sip_provider.scheduler().schedule(sip_provider.sipConfig().getClearingTimeout(),
+				clearing_to = sip_provider.schedule(request, sip_provider.sipConfig().getClearingTimeout(),
 						this::onClearingTimeout);
 				return;
 			}
@@ -223,17 +224,19 @@ public class InviteTransactionServer extends TransactionServer {
 			LOG.debug("Retransmission timeout expired");
 			scheduleRetransmission(sip_provider.retransmissionSlowdown(_retransmissionTimeout));
 			sip_provider.sendMessage(response);
+			RESPONSE_RETRANSMISSIONS.inc();
 		}
 	}
 
 	private void scheduleRetransmission(long timeout) {
 		_retransmissionTimeout = timeout;
-		retransmission_to = sip_provider.scheduler().schedule(timeout, this::onRetransmissionTimeout);
+		retransmission_to = sip_provider.schedule(request, timeout, this::onRetransmissionTimeout);
 	}
 
 	private void onEndTimeout() {
 		if (statusIs(STATE_COMPLETED)) {
 			LOG.debug("End timeout expired");
+			SERVER_TIMEOUTS.inc();
 			doTerminate();
 			invite_ts_listener = null;
 		}
@@ -156,7 +156,7 @@ public class ReliableProvisionalResponder {
 
 	/** Sends the head-of-line response. */
 	private synchronized void sendNextResponse() {
-		transaction_to = sip_provider.scheduler().schedule(sipConfig.getTransactionTimeout(),
+		transaction_to = sip_provider.schedule(invite_ts.getRequestMessage(), sipConfig.getTransactionTimeout(),
 				this::onTransactionTimeout);
 
 		scheduleRetransmission(sipConfig.getRetransmissionTimeout());
@@ -166,6 +166,7 @@ public class ReliableProvisionalResponder {
 
 	private synchronized void onTransactionTimeout() {
 		LOG.info("Transaction timeout expired");
+		Transaction.SERVER_TIMEOUTS.inc();
 		stopResponseRetransmission();
 		SipMessage resp=responses.elementAt(0);
 		responses.removeElementAt(0);
@@ -180,11 +181,12 @@ public class ReliableProvisionalResponder {
 
 		SipMessage resp=responses.elementAt(0);
 		invite_ts.respondWith(resp);
+		Transaction.RESPONSE_RETRANSMISSIONS.inc();
 	}
 
 	private void scheduleRetransmission(long timeout) {
 		retransmissionTimeout = timeout;
-		retransmission_to = sip_provider.scheduler().schedule(timeout, this::onRetransmissionTimeout);
+		retransmission_to = sip_provider.schedule(invite_ts.getRequestMessage(), timeout, this::onRetransmissionTimeout);
 	}   
 
 
@@ -25,6 +25,8 @@ package org.mjsip.sip.transaction;
 
 
 
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.provider.ConnectionId;
 import org.mjsip.sip.provider.SipId;
@@ -47,6 +49,18 @@ public abstract class Transaction/* extends org.zoolu.util.MonitoredObject */ im
 	
 	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(Transaction.class);
 
+	/** Requests sent again by client transactions. */
+	protected static final Counter REQUEST_RETRANSMISSIONS = retransmissions("request");
+
+	/** Responses sent again by server transactions. */
+	protected static final Counter RESPONSE_RETRANSMISSIONS = retransmissions("response");
+
+	/** Client transactions terminated without final response. */
+	protected static final Counter CLIENT_TIMEOUTS = timeouts("client");
+
+	/** Server transactions terminated without ACK or PRACK. */
+	protected static final Counter SERVER_TIMEOUTS = timeouts("server");
+
 	/** Transactions counter */
 	protected static int transaction_counter=0;
 
@@ -82,6 +96,16 @@ public abstract class Transaction/* extends org.zoolu.util.MonitoredObject */ im
 		}
 	}
 
+	private static Counter retransmissions(String type) {
+		return Metrics.global().counter("sip_retransmissions_total", "SIP messages retransmitted by transactions.",
+				"type", type);
+	}
+
+	private static Counter timeouts(String role) {
+		return Metrics.global().counter("sip_transaction_timeouts_total", "SIP transactions terminated by timeout.",
+				"role", role);
+	}
+
 
 	/** Transaction sequence number */
 	int transaction_sqn;
@@ -146,6 +146,7 @@ public class TransactionClient extends Transaction {
 			LOG.debug("Retransmission timeout expired");
 
 			sip_provider.sendMessage(request);
+			REQUEST_RETRANSMISSIONS.inc();
 
 			scheduleRetransmission(sip_provider.retransmissionSlowdown(retransmissionTimeout));
 		}
@@ -153,14 +154,14 @@ public class TransactionClient extends Transaction {
 	
 	protected final void scheduleRetransmission(long timeout) {
 		retransmissionTimeout = timeout;
-		retransmission_to = sip_provider.scheduler().schedule(timeout, this::onRetransmissionTimeout);
+		retransmission_to = sip_provider.schedule(request, timeout, this::onRetransmissionTimeout);
 	}
 
 	private void startTransactionTimeout() {
 		long timeout = sip_provider.sipConfig().getTransactionTimeout();
 		LOG.debug("Starting transaction timeout: {}ms", timeout);
 
-		transaction_to = sip_provider.scheduler().schedule(timeout, this::onTransactionTimeout);
+		transaction_to = sip_provider.schedule(request, timeout, this::onTransactionTimeout);
 	}
 
 	/**
@@ -168,6 +169,7 @@ public class TransactionClient extends Transaction {
 	 */
 	protected void onTransactionTimeout() {
 		LOG.debug("Transaction timeout expired.");
+		CLIENT_TIMEOUTS.inc();
 		doTerminate();
 
 		if (transaction_listener != null) {
@@ -179,7 +181,7 @@ public class TransactionClient extends Transaction {
 	private void startClearingTimeout() {
 		long timeout = sip_provider.sipConfig().getClearingTimeout();
 		LOG.debug("Starting clearing timeout: {}ms", timeout);
-		clearing_to = sip_provider.scheduler().schedule(timeout, this::onClearingTimeout);
+		clearing_to = sip_provider.schedule(request, timeout, this::onClearingTimeout);
 	}
 
 	/**
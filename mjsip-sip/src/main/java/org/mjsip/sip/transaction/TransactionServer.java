@@ -133,7 +133,7 @@ public class TransactionServer extends Transaction {
 			if (code>=200 && code<700) {
 				changeStatus(STATE_COMPLETED);
 				if (connection_id==null) {
-					clearing_to = sip_provider.scheduler().schedule(sip_provider.sipConfig().getRetransmissionTimeout(),
+					clearing_to = sip_provider.schedule(request, sip_provider.sipConfig().getRetransmissionTimeout(),
 							this::onClearingTimeout);
 				} else {
 					// Reliable transport
@@ -175,6 +175,7 @@ public class TransactionServer extends Transaction {
 				// retransmission of the last response
 				LOG.trace("response retransmission");
 				sip_provider.sendMessage(response);
+				RESPONSE_RETRANSMISSIONS.inc();
 				return;
 			}
 		}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.rtp;
+
+import java.net.InetSocketAddress;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.test.Loopback;
+
+/**
+ * Test for the shared {@link RtcpService}.
+ */
+@SuppressWarnings("javadoc")
+class TestRtcpService {
+
+	@Test
+	void testRestartDefault() throws Exception {
+		RtcpService first = RtcpService.getDefault();
+		Assertions.assertSame(first, RtcpService.getDefault());
+		Assertions.assertTrue(first.isRunning());
+
+		first.halt();
+		Assertions.assertFalse(first.isRunning());
+
+		// A dead service does not stay the default.
+		RtcpService second = RtcpService.getDefault();
+		Assertions.assertNotSame(first, second);
+		Assertions.assertTrue(second.isRunning());
+
+		// New controls are served by the new default service.
+		RtpControl receiver = new RtpControl("bob", 0);
+		int port = ((InetSocketAddress) receiver.channel.getLocalAddress()).getPort();
+		RtpControl sender = new RtpControl("alice", 0, Loopback.ADDRESS, port);
+		try {
+			Assertions.assertSame(second, receiver.service);
+			sender.setRtpSender(new TestRtpControl.Sender());
+			sender.sendReport();
+			for (int n = 0; n < 100 && !receiver.remote_member; n++) {
+				Thread.sleep(50);
+			}
+			Assertions.assertTrue(receiver.remote_member, "Report not received.");
+		} finally {
+			sender.halt();
+			receiver.halt();
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.rtp;
+
+import java.net.InetSocketAddress;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.media.RtpControlledSender;
+import org.mjsip.sip.test.Loopback;
+
+/**
+ * Test for report building and scheduling in {@link RtpControl}.
+ */
+@SuppressWarnings("javadoc")
+class TestRtpControl {
+
+	@Test
+	void testInterval() {
+		// Two members, 5% of 8000 B/s, 100 B reports: below the minimum interval.
+		double min = RtpControl.rtcpInterval(2, 0, 400, false, 100, false, 0);
+		double max = RtpControl.rtcpInterval(2, 0, 400, false, 100, false, 0.999999);
+		Assertions.assertEquals(5 * 0.5 / RtpControl.COMPENSATION, min, 1e-6);
+		Assertions.assertEquals(5 * 1.5 / RtpControl.COMPENSATION, max, 1e-3);
+
+		// The initial report is sent after half of the minimum interval.
+		Assertions.assertEquals(min / 2, RtpControl.rtcpInterval(2, 0, 400, false, 100, true, 0), 1e-6);
+
+		// Large sessions scale with the number of members, receivers share three quarters of the RTCP
+		// bandwidth.
+		double large = RtpControl.rtcpInterval(1000, 0, 400, false, 100, false, 0.5);
+		Assertions.assertEquals(100.0 * 1000 / (400 * 0.75) / RtpControl.COMPENSATION, large, 1e-6);
+
+		// Senders share a quarter of the RTCP bandwidth.
+		double sender = RtpControl.rtcpInterval(1000, 10, 400, true, 100, false, 0.5);
+		Assertions.assertEquals(100.0 * 10 / (400 * 0.25) / RtpControl.COMPENSATION, sender, 1e-6);
+	}
+
+	@Test
+	void testReport() throws Exception {
+		RtpControl receiver = new RtpControl("bob", 0);
+		int port = ((InetSocketAddress) receiver.channel.getLocalAddress()).getPort();
+		RtpControl sender = new RtpControl("alice@example.com", 0, Loopback.ADDRESS, port);
+		try {
+			sender.setRtpSender(new Sender());
+
+			byte[] buf = new byte[256];
+			int len = sender.buildReport(buf);
+			RtcpPacket sr = new RtcpPacket(buf, 0);
+			Assertions.assertEquals(RtcpPacket.PT_SR, sr.getPayloadType());
+			Assertions.assertEquals(28, sr.getPacketLength());
+			Assertions.assertEquals(42, new SrRtcpPacket(sr).getSenderInfo().getPacketCount());
+			RtcpPacket sdes = new RtcpPacket(buf, 28);
+			Assertions.assertEquals(RtcpPacket.PT_SDES, sdes.getPayloadType());
+			Assertions.assertEquals(len, 28 + sdes.getPacketLength());
+			Assertions.assertEquals(0, len % 4);
+
+			sender.sendReport();
+			for (int n = 0; n < 100 && !receiver.remote_member; n++) {
+				Thread.sleep(50);
+			}
+			Assertions.assertTrue(receiver.remote_member, "Report not received.");
+		} finally {
+			sender.halt();
+			receiver.halt();
+		}
+	}
+
+	static final class Sender implements RtpControlledSender {
+		@Override
+		public long getSSRC() {
+			return 0x12345678L;
+		}
+
+		@Override
+		public long getRtpTimestamp() {
+			return 8000;
+		}
+
+		@Override
+		public long getPacketCounter() {
+			return 42;
+		}
+
+		@Override
+		public long getOctectCounter() {
+			return 42 * 160;
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sdp;
+
+import java.util.Vector;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link SdpView} and {@link OfferAnswerCache}.
+ */
+@SuppressWarnings("javadoc")
+class TestSdpView {
+
+	private static final String OFFER = "v=0\r\n"
+			+ "o=alice 123 456 IN IP4 10.0.0.1\r\n"
+			+ "s=-\r\n"
+			+ "c=IN IP4 10.0.0.1\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 4000 RTP/AVP 0 8\r\n"
+			+ "a=rtpmap:0 PCMU/8000\r\n"
+			+ "m=video 5000/2 RTP/AVP 96\r\n"
+			+ "c=IN IP4 10.0.0.2/127\r\n"
+			+ "a=rtpmap:96 H264/90000\r\n";
+
+	@Test
+	void testFields() {
+		SdpView view = new SdpView(OFFER);
+		Assertions.assertEquals("10.0.0.1", view.getConnectionAddress());
+		Assertions.assertEquals(2, view.getMediaCount());
+		Assertions.assertEquals("audio", view.getMediaType(0));
+		Assertions.assertEquals(4000, view.getMediaPort(0));
+		Assertions.assertEquals("10.0.0.1", view.getMediaConnectionAddress(0));
+		Assertions.assertEquals("video", view.getMediaType(1));
+		Assertions.assertEquals(5000, view.getMediaPort(1));
+		Assertions.assertEquals("10.0.0.2", view.getMediaConnectionAddress(1));
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> view.getMediaType(2));
+		Assertions.assertEquals(2, view.toSdpMessage().getMediaDescriptors().size());
+	}
+
+	@Test
+	void testRewrite() {
+		SdpView view = new SdpView(OFFER);
+		String result = new String(view.rewrite("192.168.1.1", new String[] { "video", "audio" }, new int[] { 7000, 6000 }));
+		Assertions.assertEquals(OFFER
+			.replace("c=IN IP4 10.0.0.1", "c=IN IP4 192.168.1.1")
+			.replace("m=audio 4000", "m=audio 6000")
+			.replace("m=video 5000/2", "m=video 7000/2"), result);
+
+		SdpView rewritten = new SdpView(result);
+		Assertions.assertEquals("192.168.1.1", rewritten.getConnectionAddress());
+		Assertions.assertEquals(6000, rewritten.getMediaPort(0));
+		Assertions.assertEquals(7000, rewritten.getMediaPort(1));
+	}
+
+	@Test
+	void testRewriteInsertsConnection() {
+		String offer = OFFER.replace("c=IN IP4 10.0.0.1\r\n", "");
+		SdpView view = new SdpView(offer);
+		Assertions.assertNull(view.getConnectionAddress());
+
+		SdpView rewritten = new SdpView(view.rewrite("192.168.1.1", new String[0], new int[0]));
+		Assertions.assertEquals("192.168.1.1", rewritten.getConnectionAddress());
+		Assertions.assertEquals(4000, rewritten.getMediaPort(0));
+		Assertions.assertTrue(rewritten.toString().contains("s=-\r\nc=IN IP4 192.168.1.1\r\nt=0 0\r\n"), rewritten.toString());
+	}
+
+	@Test
+	void testAnswerCache() {
+		OfferAnswerCache cache = new OfferAnswerCache(OfferAnswerCache.DEFAULT_SIZE);
+		SdpMessage remote = new SdpMessage(OFFER);
+
+		Vector<MediaDescriptor> first = cache.matchMedia(local(8000).getMediaDescriptors(), remote.getMediaDescriptors());
+		Assertions.assertEquals(0, cache.getHits());
+		Assertions.assertEquals(1, cache.getMisses());
+
+		SdpMessage local = local(9000);
+		Vector<MediaDescriptor> second = cache.matchMedia(local.getMediaDescriptors(), remote.getMediaDescriptors());
+		Assertions.assertEquals(1, cache.getHits());
+		Assertions.assertEquals(8000, first.get(0).getMediaField().getPort());
+
+		Vector<MediaDescriptor> expected = OfferAnswerModel.matchMedia(local.getMediaDescriptors(), remote.getMediaDescriptors());
+		Assertions.assertEquals(expected.size(), second.size());
+		for (int n = 0; n < expected.size(); n++) {
+			Assertions.assertEquals(expected.get(n).toString(), second.get(n).toString());
+		}
+	}
+
+	@Test
+	void testAnswerCacheCopies() {
+		OfferAnswerCache cache = new OfferAnswerCache(OfferAnswerCache.DEFAULT_SIZE);
+		SdpMessage remote = new SdpMessage(OFFER);
+		SdpMessage local = local(8000);
+
+		Vector<MediaDescriptor> first = cache.matchMedia(local.getMediaDescriptors(), remote.getMediaDescriptors());
+		String expected = first.get(0).toString();
+
+		// Modifying an answer or the local media must not change later answers.
+		first.get(0).addAttribute(new AttributeField("sendonly"));
+		first.add(MediaDescriptor.copy(first.get(0)));
+		local.getMediaDescriptors().get(0).addAttribute(new AttributeField("ptime", "20"));
+
+		Vector<MediaDescriptor> second = cache.matchMedia(local(8000).getMediaDescriptors(), remote.getMediaDescriptors());
+		Assertions.assertEquals(1, cache.getHits());
+		Assertions.assertEquals(1, second.size());
+		Assertions.assertEquals(expected, second.get(0).toString());
+		Assertions.assertNotSame(first.get(0), second.get(0));
+	}
+
+	private static SdpMessage local(int port) {
+		return new SdpMessage("v=0\r\n"
+				+ "o=bob 1 1 IN IP4 10.0.0.9\r\n"
+				+ "s=-\r\n"
+				+ "c=IN IP4 10.0.0.9\r\n"
+				+ "t=0 0\r\n"
+				+ "m=audio " + port + " RTP/AVP 8 0\r\n"
+				+ "a=rtpmap:8 PCMA/8000\r\n"
+				+ "a=rtpmap:0 PCMU/8000\r\n");
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.call;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sdp.SdpMessage;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.message.SipMethods;
+import org.mjsip.sip.message.SipResponses;
+import org.mjsip.sip.provider.ScriptedSipProvider;
+import org.mjsip.sip.test.Loopback;
+import org.mjsip.time.ConfiguredScheduler;
+
+/**
+ * Test for {@link Call} and {@link ExtendedCall}.
+ */
+@SuppressWarnings("javadoc")
+class TestCall {
+
+	private static final String SDP = "v=0\r\n"
+			+ "o=alice 0 0 IN IP4 127.0.0.1\r\n"
+			+ "s=-\r\n"
+			+ "c=IN IP4 127.0.0.1\r\n"
+			+ "t=0 0\r\n";
+
+	private ConfiguredScheduler _scheduler;
+
+	private ScriptedSipProvider _provider;
+
+	@BeforeEach
+	void setUp() {
+		_scheduler = Loopback.scheduler();
+		_provider = new ScriptedSipProvider(_scheduler);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_provider.halt();
+		_scheduler.scheduler().shutdownNow();
+	}
+
+	@Test
+	void testFastAnswer() {
+		checkFastAnswer(new Call(_provider, caller(_provider), null));
+	}
+
+	@Test
+	void testFastAnswerExtended() {
+		checkFastAnswer(new ExtendedCall(_provider, caller(_provider), null));
+	}
+
+	private void checkFastAnswer(Call call) {
+		// The 2xx is processed before call() returns.
+		_provider.respond(SipMethods.INVITE, SipResponses.OK);
+
+		call.call(callee(), new SdpMessage(SDP));
+		Assertions.assertTrue(call.getState().isActive(), call.getState().toString());
+		Assertions.assertEquals(1, _provider.sent(SipMethods.ACK).size());
+
+		// An established call is closed with BYE, not with CANCEL.
+		call.hangup();
+		Assertions.assertEquals(1, _provider.sent(SipMethods.BYE).size());
+		Assertions.assertEquals(0, _provider.sent(SipMethods.CANCEL).size());
+	}
+
+	private static SipUser caller(ScriptedSipProvider provider) {
+		return new SipUser(new NameAddress(new SipURI("alice", Loopback.ADDRESS, provider.getPort())));
+	}
+
+	private static NameAddress callee() {
+		return new NameAddress(new SipURI("bob", Loopback.ADDRESS, 5999));
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.dialog;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sdp.SdpMessage;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+import org.mjsip.sip.message.SipResponses;
+import org.mjsip.sip.provider.ScriptedSipProvider;
+import org.mjsip.sip.test.Loopback;
+import org.mjsip.time.ConfiguredScheduler;
+
+/**
+ * Test for {@link InviteDialog}.
+ */
+@SuppressWarnings("javadoc")
+class TestInviteDialog {
+
+	private static final String SDP = "v=0\r\n"
+			+ "o=alice 0 0 IN IP4 127.0.0.1\r\n"
+			+ "s=-\r\n"
+			+ "c=IN IP4 127.0.0.1\r\n"
+			+ "t=0 0\r\n";
+
+	private ConfiguredScheduler _scheduler;
+
+	private ScriptedSipProvider _provider;
+
+	@BeforeEach
+	void setUp() {
+		_scheduler = Loopback.scheduler();
+		_provider = new ScriptedSipProvider(_scheduler);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_provider.halt();
+		_scheduler.scheduler().shutdownNow();
+	}
+
+	@Test
+	void testAckRetransmittedSuccessWhileByeing() {
+		NameAddress callee = new NameAddress(new SipURI("bob", Loopback.ADDRESS, 5999));
+		NameAddress caller = new NameAddress(new SipURI("alice", Loopback.ADDRESS, _provider.getPort()));
+
+		AtomicReference<SipMessage> ok = new AtomicReference<>();
+		_provider.respond(SipMethods.INVITE, request -> {
+			ok.set(_provider.messageFactory().createResponse(request, SipResponses.OK, null, callee));
+			return ok.get();
+		});
+
+		InviteDialog dialog = new InviteDialog(_provider, null);
+		dialog.invite(callee, caller, caller, new SdpMessage(SDP));
+		Assertions.assertEquals(DialogStatus.D_CALL, dialog.getStatus());
+		Assertions.assertEquals(1, _provider.sent(SipMethods.ACK).size());
+
+		// The BYE is sent before the callee has received the ACK, and is not yet answered.
+		dialog.bye();
+		Assertions.assertEquals(DialogStatus.D_BYEING, dialog.getStatus());
+
+		// The callee retransmits the 2xx, since the ACK was lost. Without a new ACK, the callee
+		// would not process the BYE.
+		_provider.receive(new SipMessage(ok.get()));
+		Assertions.assertEquals(2, _provider.sent(SipMethods.ACK).size());
+		Assertions.assertEquals(DialogStatus.D_BYEING, dialog.getStatus());
+	}
+
+}
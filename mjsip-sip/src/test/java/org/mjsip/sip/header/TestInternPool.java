@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.header;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.message.SipMessage;
+
+/**
+ * Test for {@link InternPool}.
+ */
+@SuppressWarnings("javadoc")
+class TestInternPool {
+
+	@Test
+	void testIntern() {
+		InternPool pool = new InternPool(16, 8);
+		Assertions.assertEquals(16, pool.getCapacity());
+
+		String first = new String("INVITE");
+		long hits = InternPool.getHits();
+		Assertions.assertSame(first, pool.intern(first));
+		Assertions.assertSame(first, pool.intern(new String("INVITE")));
+		Assertions.assertEquals(hits + 1, InternPool.getHits());
+
+		String large = new String("123456789");
+		Assertions.assertSame(large, pool.intern(large));
+		Assertions.assertNotSame(large, pool.intern(new String("123456789")));
+
+		Assertions.assertNull(pool.intern(null));
+
+		pool.clear();
+		Assertions.assertNotSame(first, pool.intern(new String("INVITE")));
+	}
+
+	@Test
+	void testParse() {
+		SipMessage m1 = message(1);
+		SipMessage m2 = message(2);
+
+		Header h1 = m1.getHeader(SipHeaders.Max_Forwards);
+		Header h2 = m2.getHeader(SipHeaders.Max_Forwards);
+		Assertions.assertSame(h1.getName(), h2.getName());
+		Assertions.assertSame(h1.getValue(), h2.getValue());
+
+		Assertions.assertSame(m1.getHeader(SipHeaders.User_Agent).getValue(),
+			m2.getHeader(SipHeaders.User_Agent).getValue());
+		Assertions.assertSame(m1.getRequestLine().getMethod(), m2.getRequestLine().getMethod());
+
+		SipURI u1 = SipURI.parseSipURI("sip:alice@example.com;transport=tcp");
+		SipURI u2 = SipURI.parseSipURI("sip:bob@example.com;transport=tcp");
+		Assertions.assertSame(u1.getHost(), u2.getHost());
+		Assertions.assertSame(u1.getParameter("transport"), u2.getParameter("transport"));
+
+		// Values that are unique per dialog are not pooled, even if repeated.
+		Header c1 = m1.getHeader(SipHeaders.Call_ID);
+		Header c2 = message(1).getHeader(SipHeaders.Call_ID);
+		Assertions.assertEquals(c1.getValue(), c2.getValue());
+		Assertions.assertNotSame(c1.getValue(), c2.getValue());
+		Assertions.assertTrue(InternPool.getHitRate() > 0);
+	}
+
+	private static SipMessage message(int seq) {
+		return new SipMessage("OPTIONS sip:bob@example.com SIP/2.0\r\n"
+				+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK" + seq + "\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:alice@example.com>;tag=" + seq + "\r\n"
+				+ "To: <sip:bob@example.com>\r\n"
+				+ "Call-ID: intern" + seq + "@127.0.0.1\r\n"
+				+ "CSeq: 1 OPTIONS\r\n"
+				+ "User-Agent: mjsip\r\n"
+				+ "Content-Length: 0\r\n"
+				+ "\r\n");
+	}
+
+}
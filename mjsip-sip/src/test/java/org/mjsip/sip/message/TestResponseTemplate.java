@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.message;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.header.LegacyHeader;
+import org.mjsip.sip.header.SipHeaders;
+import org.mjsip.sip.provider.SipConfig;
+
+/**
+ * Test for {@link ResponseTemplate}.
+ */
+@SuppressWarnings("javadoc")
+class TestResponseTemplate {
+
+	private static final String REQUEST = "INVITE sip:bob@example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK1;rport=5062;received=10.0.0.2\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.3:5060;branch=z9hG4bK2\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: \"Alice\" <sip:alice@example.com>;tag=a1\r\n"
+			+ "To: <sip:bob@example.com>\r\n"
+			+ "Call-ID: template@10.0.0.1\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Contact: <sip:alice@10.0.0.1>\r\n"
+			+ "Content-Length: 0\r\n"
+			+ "\r\n";
+
+	@Test
+	void testRender() {
+		SipMessage req = new SipMessage(REQUEST);
+		ResponseTemplate template = new ResponseTemplate(SipResponses.SERVICE_UNAVAILABLE, null,
+				new LegacyHeader(SipHeaders.Server, "test"));
+
+		byte[] buf = new byte[1024];
+		int len = template.render(req, "b2", new LegacyHeader(SipHeaders.Retry_After, "10"), buf);
+		SipMessage resp = new SipMessage(buf, 0, len);
+
+		Assertions.assertTrue(resp.isResponse());
+		Assertions.assertEquals(503, resp.getStatusLine().getCode());
+		Assertions.assertEquals(SipResponses.reasonOf(503), resp.getStatusLine().getReason());
+		Assertions.assertEquals(req.getVias().getValues(), resp.getVias().getValues());
+		Assertions.assertEquals("alice", resp.getFromHeader().getNameAddress().getAddress().toSipURI().getUserName());
+		Assertions.assertEquals("a1", resp.getFromHeader().getTag());
+		Assertions.assertEquals("b2", resp.getToHeader().getTag());
+		Assertions.assertEquals("template@10.0.0.1", resp.getCallIdHeader().getCallId());
+		Assertions.assertEquals("1 INVITE", resp.getCSeqHeader().getValue());
+		Assertions.assertEquals("test", resp.getHeader(SipHeaders.Server).getValue());
+		Assertions.assertEquals("10", resp.getHeader(SipHeaders.Retry_After).getValue());
+		Assertions.assertFalse(resp.hasContactHeader());
+		Assertions.assertFalse(resp.hasHeader(SipHeaders.Max_Forwards));
+		Assertions.assertEquals(0, resp.getContentLengthHeader().getContentLength());
+		Assertions.assertTrue(new String(buf, 0, len, StandardCharsets.UTF_8).endsWith("\r\n\r\n"));
+	}
+
+	@Test
+	void testOverflow() {
+		SipMessage req = new SipMessage(REQUEST);
+		ResponseTemplate template = new ResponseTemplate(SipResponses.NOT_FOUND, null);
+		Assertions.assertEquals(-1, template.render(req, null, null, new byte[100]));
+	}
+
+	@Test
+	void testFactory() {
+		SipMessageFactory factory = new SipMessageFactory(new SipConfig());
+		ResponseTemplate template = factory.getResponseTemplate(SipResponses.NOT_FOUND);
+		Assertions.assertSame(template, factory.getResponseTemplate(SipResponses.NOT_FOUND));
+
+		SipMessage req = new SipMessage(REQUEST);
+		byte[] buf = new byte[1024];
+		int len = template.render(req, factory.pickResponseTag(req, SipResponses.NOT_FOUND), null, buf);
+		SipMessage rendered = new SipMessage(buf, 0, len);
+		SipMessage created = factory.createResponse(req, SipResponses.NOT_FOUND, null, null);
+		Assertions.assertEquals(created.toString(), rendered.toString());
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link SipMessageBuffer}.
+ */
+@SuppressWarnings("javadoc")
+class TestSipMessageBuffer {
+
+	@Test
+	void testSegments() throws Exception {
+		String body = "x".repeat(20000);
+		byte[] data = ("\r\n\r\n" + message(1, body) + "\r\n" + message(2, "") + message(3, "v=0\r\n")).getBytes();
+
+		// Deliver the stream in small segments.
+		SipMessageBuffer buffer = new SipMessageBuffer();
+		List<SipMessage> messages = new ArrayList<>();
+		for (int pos = 0; pos < data.length; pos += 7) {
+			buffer.append(data, pos, Math.min(7, data.length - pos));
+			SipMessage msg;
+			while ((msg = buffer.parseSipMessage()) != null) {
+				messages.add(msg);
+			}
+		}
+
+		Assertions.assertEquals(3, messages.size());
+		Assertions.assertEquals(body, messages.get(0).getStringBody());
+		Assertions.assertEquals(2, messages.get(1).getCSeqHeader().getSequenceNumber());
+		Assertions.assertFalse(messages.get(1).hasBody());
+		Assertions.assertEquals("v=0\r\n", messages.get(2).getStringBody());
+		Assertions.assertEquals(0, buffer.getLength());
+	}
+
+	@Test
+	void testCompactContentLength() throws Exception {
+		String msg = "MESSAGE sip:bob@127.0.0.1 SIP/2.0\r\n"
+				+ "Call-ID: 1@127.0.0.1\r\n"
+				+ "CSeq: 1 MESSAGE\r\n"
+				+ "l: 5\r\n"
+				+ "\r\n"
+				+ "hello";
+		SipMessageBuffer buffer = new SipMessageBuffer();
+		buffer.append((msg + msg).getBytes());
+		// The body is framed according to the compact header, even if the message parser ignores it.
+		Assertions.assertEquals(1, buffer.parseSipMessage().getCSeqHeader().getSequenceNumber());
+		Assertions.assertEquals(1, buffer.parseSipMessage().getCSeqHeader().getSequenceNumber());
+		Assertions.assertNull(buffer.parseSipMessage());
+		Assertions.assertEquals(0, buffer.getLength());
+	}
+
+	@Test
+	void testMaxMessageSize() throws Exception {
+		SipMessageBuffer buffer = new SipMessageBuffer();
+		buffer.setMaxMessageSize(1000);
+
+		// Rejected as soon as the Content-Length is known.
+		buffer.append(("MESSAGE sip:bob@127.0.0.1 SIP/2.0\r\nContent-Length: 5000\r\n\r\n").getBytes());
+		Assertions.assertThrows(SipFramingException.class, () -> buffer.parseSipMessage());
+
+		// Rejected when the header does not end within the limit.
+		SipMessageBuffer header = new SipMessageBuffer();
+		header.setMaxMessageSize(1000);
+		header.append("MESSAGE sip:bob@127.0.0.1 SIP/2.0\r\n".getBytes());
+		Assertions.assertNull(header.parseSipMessage());
+		header.append(("Subject: " + "x".repeat(1000)).getBytes());
+		Assertions.assertThrows(SipFramingException.class, () -> header.parseSipMessage());
+	}
+
+	@Test
+	void testInvalidContentLength() {
+		SipMessageBuffer buffer = new SipMessageBuffer();
+		buffer.append(("MESSAGE sip:bob@127.0.0.1 SIP/2.0\r\nContent-Length: abc\r\n\r\n").getBytes());
+		Assertions.assertThrows(SipFramingException.class, () -> buffer.parseSipMessage());
+	}
+
+	private static String message(int seq, String body) {
+		return "MESSAGE sip:bob@127.0.0.1 SIP/2.0\r\n"
+				+ "Via: SIP/2.0/TCP 127.0.0.1:5060;branch=z9hG4bK" + seq + "\r\n"
+				+ "From: <sip:alice@127.0.0.1>;tag=1\r\n"
+				+ "To: <sip:bob@127.0.0.1>\r\n"
+				+ "Call-ID: " + seq + "@127.0.0.1\r\n"
+				+ "CSeq: " + seq + " MESSAGE\r\n"
+				+ (body.isEmpty() ? "" : "Content-Type: text/plain\r\n")
+				+ "Content-Length: " + body.length() + "\r\n"
+				+ "\r\n"
+				+ body;
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.message;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.header.MaxForwardsHeader;
+import org.mjsip.sip.header.SipHeaders;
+import org.mjsip.sip.header.ViaHeader;
+
+/**
+ * Test for {@link SipMessageSplicer}.
+ */
+@SuppressWarnings("javadoc")
+class TestSipMessageSplicer {
+
+	private static final String BODY = "v=0\r\n";
+
+	private static final String INVITE = "INVITE sip:bob@example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK1234\r\n"
+			+ "Route: <sip:proxy.example.com;lr>, <sip:next.example.net;lr>\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:alice@example.com>;tag=1\r\n"
+			+ "To: <sip:bob@example.com>\r\n"
+			+ "Call-ID: abc@10.0.0.1\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Content-Length: " + BODY.length() + "\r\n"
+			+ "\r\n"
+			+ BODY;
+
+	@Test
+	void testReceivedBytes() {
+		byte[] data = INVITE.getBytes();
+		SipMessage msg = new SipMessage(data, 0, data.length);
+
+		// Only kept on request.
+		Assertions.assertNull(msg.getReceivedBytes());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new SipMessageSplicer(msg));
+
+		msg.keepReceivedBytes(data, 0);
+		Assertions.assertArrayEquals(data, msg.getReceivedBytes());
+		Assertions.assertNull(new SipMessage(msg).getReceivedBytes());
+
+		// Trailing bytes of the buffer are not part of the message.
+		byte[] padded = (" " + INVITE + "garbage").getBytes();
+		SipMessage parsed = new SipMessage(padded, 1, padded.length - 1);
+		parsed.keepReceivedBytes(padded, 1);
+		Assertions.assertArrayEquals(data, parsed.getReceivedBytes());
+	}
+
+	@Test
+	void testProxyEdits() throws IOException {
+		byte[] data = INVITE.getBytes();
+		SipMessage msg = new SipMessage(data, 0, data.length);
+		msg.keepReceivedBytes(data, 0);
+		SipMessageSplicer splicer = new SipMessageSplicer(msg);
+
+		Assertions.assertEquals("INVITE sip:bob@example.com SIP/2.0", splicer.getFirstLine());
+
+		ViaHeader via = new ViaHeader("udp", "192.168.1.1", 5070);
+		via.setBranch("z9hG4bKproxy");
+		splicer.addHeaderTop(via);
+
+		splicer.removeFirstValue(splicer.indexOfHeader(SipHeaders.Route));
+
+		int maxfwd = splicer.indexOfHeader(SipHeaders.Max_Forwards);
+		Assertions.assertEquals("70", splicer.getHeaderValue(maxfwd));
+		splicer.replaceHeader(maxfwd, new MaxForwardsHeader(69));
+
+		byte[] result = splicer.getBytes();
+		Assertions.assertEquals(splicer.getLength(), result.length);
+
+		SipMessage forwarded = new SipMessage(result, 0, result.length);
+		Assertions.assertEquals(2, forwarded.getVias().size());
+		Assertions.assertEquals("192.168.1.1", forwarded.getViaHeader().getHost());
+		Assertions.assertEquals(1, forwarded.getRoutes().size());
+		Assertions.assertEquals("sip:next.example.net;lr",
+				forwarded.getRouteHeader().getNameAddress().getAddress().toString());
+		Assertions.assertEquals(69, forwarded.getMaxForwardsHeader().getNumber());
+		Assertions.assertEquals(BODY, forwarded.getStringBody());
+	}
+
+	@Test
+	void testRemoveSingleValue() throws IOException {
+		byte[] data = INVITE.replace(", <sip:next.example.net;lr>", "").getBytes();
+		SipMessageSplicer splicer = new SipMessageSplicer(data);
+		splicer.removeFirstValue(splicer.indexOfHeader(SipHeaders.Route));
+		splicer.setFirstLine("INVITE sip:bob@10.0.0.2 SIP/2.0");
+
+		byte[] result = splicer.getBytes();
+		SipMessage forwarded = new SipMessage(result, 0, result.length);
+		Assertions.assertFalse(forwarded.hasRouteHeader());
+		Assertions.assertEquals("sip:bob@10.0.0.2", forwarded.getRequestLine().getAddress().toString());
+	}
+
+	@Test
+	void testCompactHeaderName() throws IOException {
+		byte[] data = INVITE.replace("Via:", "v :").getBytes();
+		SipMessageSplicer splicer = new SipMessageSplicer(data);
+		Assertions.assertEquals(-1, splicer.indexOfHeader(SipHeaders.Via));
+		Assertions.assertEquals(0, splicer.indexOfHeader(SipHeaders.Via, SipHeaders.Via_short));
+		Assertions.assertEquals(2, splicer.indexOfHeader(SipHeaders.Max_Forwards, "x"));
+	}
+
+	@Test
+	void testDuplicateEdit() throws IOException {
+		SipMessageSplicer splicer = new SipMessageSplicer(INVITE.getBytes());
+		int via = splicer.indexOfHeader(SipHeaders.Via);
+		splicer.removeHeader(via);
+		Assertions.assertThrows(IllegalStateException.class, () -> splicer.removeHeader(via));
+	}
+
+}
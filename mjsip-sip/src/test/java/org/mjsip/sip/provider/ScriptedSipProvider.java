@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.test.Loopback;
+import org.mjsip.time.Scheduler;
+
+/**
+ * {@link SipProvider} for tests that records sent messages instead of sending them, and answers
+ * requests synchronously.
+ *
+ * <p>
+ * A response to a request is processed before {@link #sendMessage(SipMessage)} returns to the
+ * sender. This reproduces deterministically what happens, if the receiver thread processes a fast
+ * response before the sending thread continues.
+ * </p>
+ */
+@SuppressWarnings("javadoc")
+public class ScriptedSipProvider extends SipProvider {
+
+	private final List<SipMessage> _sent = new CopyOnWriteArrayList<>();
+
+	private final Map<String, Function<SipMessage, SipMessage>> _responders = new ConcurrentHashMap<>();
+
+	public ScriptedSipProvider(Scheduler scheduler) {
+		super(Loopback.config(), scheduler);
+	}
+
+	public ScriptedSipProvider(SipConfig config, Scheduler scheduler) {
+		super(config, scheduler);
+	}
+
+	/**
+	 * Answers requests with the given method while they are sent.
+	 *
+	 * @param method
+	 *        The request method to answer.
+	 * @param responder
+	 *        Creates the response for a request, <code>null</code> for no response.
+	 */
+	public void respond(String method, Function<SipMessage, SipMessage> responder) {
+		_responders.put(method, responder);
+	}
+
+	/**
+	 * Answers requests with the given method with a response of the given code while they are
+	 * sent.
+	 *
+	 * <p>
+	 * The response contains the request URI as contact.
+	 * </p>
+	 */
+	public void respond(String method, int code) {
+		respond(method, request -> messageFactory().createResponse(request, code, null,
+			new NameAddress(request.getRequestLine().getAddress())));
+	}
+
+	/**
+	 * Simulates the reception of the given message.
+	 */
+	public void receive(SipMessage msg) {
+		onReceivedMessage(null, msg);
+	}
+
+	/**
+	 * All messages sent so far.
+	 */
+	public List<SipMessage> sent() {
+		return _sent;
+	}
+
+	/**
+	 * All requests with the given method sent so far.
+	 */
+	public List<SipMessage> sent(String method) {
+		return _sent.stream()
+			.filter(msg -> msg.isRequest() && msg.getRequestLine().getMethod().equals(method))
+			.collect(Collectors.toList());
+	}
+
+	@Override
+	public ConnectionId sendMessage(SipMessage msg) {
+		_sent.add(msg);
+		if (msg.isRequest()) {
+			Function<SipMessage, SipMessage> responder = _responders.get(msg.getRequestLine().getMethod());
+			if (responder != null) {
+				SipMessage response = responder.apply(msg);
+				if (response != null) {
+					receive(response);
+				}
+			}
+		}
+		// As for an unreliable transport.
+		return null;
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link DialogExecutor}.
+ */
+@SuppressWarnings("javadoc")
+class TestDialogExecutor {
+
+	private ExecutorService _pool;
+
+	private DialogExecutor _executor;
+
+	@BeforeEach
+	void setUp() {
+		_pool = Executors.newFixedThreadPool(4);
+		_executor = new DialogExecutor(_pool);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_pool.shutdownNow();
+	}
+
+	@Test
+	void testOrderPerKey() throws Exception {
+		int keys = 8;
+		int tasks = 5 * DialogExecutor.BATCH;
+		List<List<Integer>> results = new ArrayList<>();
+		List<AtomicInteger> running = new ArrayList<>();
+		AtomicInteger overlaps = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(keys * tasks);
+		for (int k = 0; k < keys; k++) {
+			results.add(Collections.synchronizedList(new ArrayList<>()));
+			running.add(new AtomicInteger());
+		}
+
+		for (int n = 0; n < tasks; n++) {
+			for (int k = 0; k < keys; k++) {
+				List<Integer> result = results.get(k);
+				AtomicInteger active = running.get(k);
+				int value = n;
+				_executor.execute("call-" + k, () -> {
+					if (active.incrementAndGet() > 1) {
+						overlaps.incrementAndGet();
+					}
+					result.add(value);
+					active.decrementAndGet();
+					done.countDown();
+				});
+			}
+		}
+
+		Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+		Assertions.assertEquals(0, overlaps.get());
+		for (List<Integer> result : results) {
+			Assertions.assertEquals(tasks, result.size());
+			for (int n = 0; n < tasks; n++) {
+				Assertions.assertEquals(n, result.get(n));
+			}
+		}
+		awaitIdle();
+		Assertions.assertEquals(keys * tasks, _executor.getExecutedTasks());
+	}
+
+	@Test
+	void testParallelKeys() throws Exception {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch other = new CountDownLatch(1);
+		AtomicInteger after = new AtomicInteger();
+
+		_executor.execute("blocked", () -> {
+			blocked.countDown();
+			await(release);
+		});
+		_executor.execute("blocked", after::incrementAndGet);
+		Assertions.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+		// A task of another call is not delayed by the blocked call.
+		_executor.execute("other", other::countDown);
+		Assertions.assertTrue(other.await(5, TimeUnit.SECONDS));
+		Assertions.assertEquals(0, after.get());
+
+		release.countDown();
+		awaitIdle();
+		Assertions.assertEquals(1, after.get());
+	}
+
+	@Test
+	void testUrgentFirst() throws Exception {
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		try {
+			DialogExecutor executor = new DialogExecutor(single);
+			CountDownLatch blocked = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			executor.execute("blocker", () -> {
+				blocked.countDown();
+				await(release);
+			});
+			Assertions.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+			// A backlog of new calls, and a message of an established call arriving last.
+			List<String> order = Collections.synchronizedList(new ArrayList<>());
+			CountDownLatch done = new CountDownLatch(4);
+			for (String call : List.of("new-1", "new-2", "new-3")) {
+				executor.execute(call, () -> {
+					order.add(call);
+					done.countDown();
+				});
+			}
+			executor.execute("established", () -> {
+				order.add("established");
+				done.countDown();
+			}, true);
+
+			release.countDown();
+			Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+			Assertions.assertEquals(List.of("established", "new-1", "new-2", "new-3"), order);
+		} finally {
+			single.shutdownNow();
+		}
+	}
+
+	@Test
+	void testFailingTask() throws Exception {
+		CountDownLatch done = new CountDownLatch(1);
+		_executor.execute("call", () -> {
+			throw new IllegalStateException("Expected.");
+		});
+		_executor.execute("call", done::countDown);
+		Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	private void awaitIdle() throws InterruptedException {
+		for (int n = 0; n < 500 && _executor.getActiveMailboxes() > 0; n++) {
+			Thread.sleep(10);
+		}
+		Assertions.assertEquals(0, _executor.getActiveMailboxes());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
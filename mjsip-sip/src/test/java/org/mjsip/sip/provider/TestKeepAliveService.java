@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.test.Loopback;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link KeepAliveService}.
+ */
+@SuppressWarnings("javadoc")
+class TestKeepAliveService {
+
+	private static final String ADDRESS = Loopback.ADDRESS;
+
+	@Test
+	void testTokens() throws Exception {
+		try (Loopback.Providers providers = new Loopback.Providers();
+				DatagramSocket peer = new DatagramSocket(0, InetAddress.getByName(ADDRESS))) {
+			SipProvider provider = providers.create();
+			peer.setSoTimeout(2000);
+			KeepAliveService service = new KeepAliveService(provider, 10);
+			try {
+				SocketAddress target = new SocketAddress(ADDRESS, peer.getLocalPort());
+				KeepAliveService.Target handle = service.start(this, SipProvider.PROTO_UDP, target, 20);
+				Assertions.assertSame(handle, service.start(this, "UDP", target, 20));
+				Assertions.assertEquals(1, service.size());
+
+				for (int n = 0; n < 3; n++) {
+					Assertions.assertEquals("\r\n", receive(peer));
+				}
+
+				handle.halt();
+				Assertions.assertFalse(handle.isRunning());
+				Assertions.assertEquals(0, service.size());
+				drain(peer);
+				peer.setSoTimeout(200);
+				Assertions.assertThrows(SocketTimeoutException.class, () -> receive(peer));
+			} finally {
+				service.halt();
+			}
+		}
+	}
+
+	@Test
+	void testExpiration() throws Exception {
+		try (Loopback.Providers providers = new Loopback.Providers()) {
+			KeepAliveService service = new KeepAliveService(providers.create(), 10);
+			KeepAliveService.Target handle = service.start(this, SipProvider.PROTO_UDP,
+				new SocketAddress(ADDRESS, Loopback.freePort()), 20);
+			handle.setExpirationTime(50);
+			Thread.sleep(300);
+			Assertions.assertFalse(handle.isRunning());
+			Assertions.assertEquals(0, service.size());
+			service.halt();
+		}
+	}
+
+	@Test
+	void testPingPong() throws Exception {
+		try (Loopback.Providers providers = new Loopback.Providers();
+				DatagramSocket silent = new DatagramSocket(0, InetAddress.getByName(ADDRESS))) {
+			SipProvider client = providers.create();
+			SipProvider server = providers.create();
+			BlockingQueue<SocketAddress> failures = new LinkedBlockingQueue<>();
+			KeepAliveService service = client.keepAlive();
+			service.addListener((s, proto, target) -> failures.add(target));
+
+			KeepAliveService.Target answering = service.start(this, SipProvider.PROTO_UDP,
+				new SocketAddress(ADDRESS, server.getPort()), 20, true);
+			KeepAliveService.Target failing = service.start(this, SipProvider.PROTO_UDP,
+				new SocketAddress(ADDRESS, silent.getLocalPort()), 20, true);
+
+			SocketAddress failed = failures.poll(5, TimeUnit.SECONDS);
+			Assertions.assertNotNull(failed, "Missing pongs must be detected.");
+			Assertions.assertEquals(silent.getLocalPort(), failed.getPort());
+			Assertions.assertFalse(failing.isRunning());
+
+			Thread.sleep(200);
+			Assertions.assertTrue(answering.isRunning(), "Answered pings must keep the target alive.");
+			Assertions.assertTrue(answering.getMissedPongs() < service.getMaxMissedPongs());
+			Assertions.assertTrue(failures.isEmpty());
+		}
+	}
+
+	@Test
+	void testTcp() throws Exception {
+		try (Loopback.Providers providers = new Loopback.Providers();
+				ServerSocket peer = new ServerSocket(0, 1, InetAddress.getByName(ADDRESS))) {
+			SipProvider provider = providers.create(Loopback.tcpConfig());
+			peer.setSoTimeout(5000);
+			SocketAddress target = new SocketAddress(ADDRESS, peer.getLocalPort());
+			Assertions.assertThrows(IllegalArgumentException.class,
+				() -> provider.keepAlive().start(this, SipProvider.PROTO_TCP, target, 20, true),
+				"Pongs are not reported over TCP.");
+			provider.keepAlive().start(this, SipProvider.PROTO_TCP, target, 20);
+			try (Socket connection = peer.accept()) {
+				connection.setSoTimeout(5000);
+				byte[] buffer = new byte[4];
+				int length = 0;
+				while (length < buffer.length) {
+					length += connection.getInputStream().read(buffer, length, buffer.length - length);
+				}
+				Assertions.assertEquals("\r\n\r\n", new String(buffer));
+			}
+		}
+	}
+
+	@Test
+	void testOwners() throws Exception {
+		try (Loopback.Providers providers = new Loopback.Providers();
+				DatagramSocket peer = new DatagramSocket(0, InetAddress.getByName(ADDRESS))) {
+			peer.setSoTimeout(2000);
+			KeepAliveService service = new KeepAliveService(providers.create(), 10);
+			try {
+				Object first = new Object();
+				Object second = new Object();
+				SocketAddress target = new SocketAddress(ADDRESS, peer.getLocalPort());
+				KeepAliveService.Target firstHandle = service.start(first, SipProvider.PROTO_UDP, target, 20);
+				KeepAliveService.Target secondHandle = service.start(second, SipProvider.PROTO_UDP, target, 20);
+				Assertions.assertNotSame(firstHandle, secondHandle);
+				Assertions.assertEquals(2, service.size());
+
+				// Stopping the target of one owner must not stop the target of the other.
+				Assertions.assertTrue(service.stop(first, SipProvider.PROTO_UDP, target));
+				Assertions.assertFalse(service.stop(first, SipProvider.PROTO_UDP, target));
+				Assertions.assertFalse(firstHandle.isRunning());
+				Assertions.assertTrue(secondHandle.isRunning());
+				Assertions.assertSame(secondHandle, service.get(second, SipProvider.PROTO_UDP, target));
+				Assertions.assertEquals(1, service.size());
+
+				Assertions.assertEquals("\r\n", receive(peer));
+
+				secondHandle.halt();
+				Assertions.assertEquals(0, service.size());
+			} finally {
+				service.halt();
+			}
+		}
+	}
+
+	private static String receive(DatagramSocket peer) throws Exception {
+		DatagramPacket packet = new DatagramPacket(new byte[16], 16);
+		peer.receive(packet);
+		return new String(packet.getData(), 0, packet.getLength());
+	}
+
+	private static void drain(DatagramSocket peer) throws Exception {
+		peer.setSoTimeout(50);
+		try {
+			while (true) {
+				receive(peer);
+			}
+		} catch (SocketTimeoutException ex) {
+			// Done.
+		}
+	}
+
+}
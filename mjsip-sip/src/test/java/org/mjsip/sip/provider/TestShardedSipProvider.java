@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipResponses;
+import org.mjsip.sip.test.Loopback;
+import org.mjsip.time.ConfiguredScheduler;
+
+/**
+ * Test for {@link ShardedSipProvider}.
+ */
+@SuppressWarnings("javadoc")
+class TestShardedSipProvider {
+
+	private static final String ADDRESS = Loopback.ADDRESS;
+
+	private static final int SHARDS = 4;
+
+	@Test
+	void testDispatch() throws Exception {
+		ConfiguredScheduler[] schedulers = schedulers(SHARDS);
+		ShardedSipProvider front = new ShardedSipProvider(Loopback.config(), schedulers);
+		try (Loopback.Providers providers = new Loopback.Providers()) {
+			SipProvider client = providers.create();
+			int port = front.getShard(0).getPort();
+			BlockingQueue<String> received = new LinkedBlockingQueue<>();
+			for (int n = 0; n < SHARDS; n++) {
+				int shard = n;
+				front.getShard(n).addSelectiveListener(SipId.ANY_METHOD,
+					(provider, msg) -> received.add(shard + " " + msg.getCallIdHeader().getCallId()));
+			}
+
+			for (int n = 0; n < 20; n++) {
+				String callId = "shard" + n + "@" + ADDRESS;
+				client.sendMessage(request("sip:test@" + ADDRESS + ":" + port, callId));
+
+				String entry = received.poll(5, TimeUnit.SECONDS);
+				Assertions.assertNotNull(entry, "Request not delivered.");
+				Assertions.assertEquals(ShardedSipProvider.shardOf(callId, SHARDS) + " " + callId, entry);
+			}
+		} finally {
+			front.halt();
+			halt(schedulers);
+		}
+	}
+
+	@Test
+	void testCallIdAffinity() throws Exception {
+		ConfiguredScheduler[] schedulers = schedulers(SHARDS);
+		ShardedSipProvider front = new ShardedSipProvider(Loopback.config(), schedulers);
+		try (Loopback.Providers providers = new Loopback.Providers()) {
+			SipProvider peer = providers.create();
+			peer.addSelectiveListener(SipId.ANY_METHOD,
+				(provider, msg) -> provider.sendStatelessResponse(msg, SipResponses.OK, null));
+
+			BlockingQueue<Integer> responses = new LinkedBlockingQueue<>();
+			for (int n = 0; n < SHARDS; n++) {
+				int shard = n;
+				front.getShard(n).addSelectiveListener(SipId.ANY_METHOD, (provider, msg) -> {
+					if (msg.isResponse()) {
+						responses.add(shard);
+					}
+				});
+			}
+
+			for (int n = 0; n < SHARDS; n++) {
+				SipProvider shard = front.getShard(n);
+				String callId = shard.pickCallId();
+				Assertions.assertEquals(n, ShardedSipProvider.shardOf(callId, SHARDS));
+				Assertions.assertSame(shard, front.shardOf(request("sip:test@" + ADDRESS, callId)));
+
+				// Requests of all shards are sent through the shared transport.
+				shard.sendMessage(request("sip:test@" + ADDRESS + ":" + peer.getPort(), callId));
+				Assertions.assertEquals(Integer.valueOf(n), responses.poll(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			front.halt();
+			halt(schedulers);
+		}
+	}
+
+	@Test
+	void testSharedKeepAlive() {
+		ConfiguredScheduler[] schedulers = schedulers(SHARDS);
+		ShardedSipProvider front = new ShardedSipProvider(Loopback.config(), schedulers);
+		try {
+			// The transports keep a single keep-alive service, that must be the one of all shards.
+			KeepAliveService keepAlive = front.getShard(0).keepAlive();
+			for (int n = 1; n < SHARDS; n++) {
+				Assertions.assertSame(keepAlive, front.getShard(n).keepAlive());
+			}
+		} finally {
+			front.halt();
+			halt(schedulers);
+		}
+	}
+
+	private static ConfiguredScheduler[] schedulers(int count) {
+		ConfiguredScheduler[] result = new ConfiguredScheduler[count];
+		for (int n = 0; n < count; n++) {
+			result[n] = Loopback.scheduler();
+		}
+		return result;
+	}
+
+	private static void halt(ConfiguredScheduler[] schedulers) {
+		for (ConfiguredScheduler scheduler : schedulers) {
+			scheduler.halt();
+		}
+	}
+
+	private static SipMessage request(String uri, String callId) {
+		return new SipMessage("OPTIONS " + uri + " SIP/2.0\r\n"
+				+ "Max-Forwards: 70\r\n"
+				+ "From: <sip:client@" + ADDRESS + ">;tag=1\r\n"
+				+ "To: <" + uri + ">\r\n"
+				+ "Call-ID: " + callId + "\r\n"
+				+ "CSeq: 1 OPTIONS\r\n"
+				+ "Content-Length: 0\r\n"
+				+ "\r\n");
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+
+/**
+ * Test for {@link SipId}.
+ */
+@SuppressWarnings("javadoc")
+class TestSipId {
+
+	private static final String INVITE = "INVITE sip:bob@example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK1234\r\n"
+			+ "From: <sip:alice@example.com>;tag=1\r\n"
+			+ "To: <sip:bob@example.com>;tag=2\r\n"
+			+ "Call-ID: abc@10.0.0.1\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Content-Length: 0\r\n"
+			+ "\r\n";
+
+	private static final String ACK = INVITE.replace("INVITE sip:", "ACK sip:").replace("1 INVITE", "1 ACK");
+
+	@Test
+	void testTransactionId() {
+		SipMessage invite = parse(INVITE);
+		SipId id = SipId.createTransactionServerId(invite);
+		SipId expected = SipId.createTransactionServerId("abc@10.0.0.1", 1, SipMethods.INVITE, "10.0.0.1:5060",
+				"z9hG4bK1234");
+		Assertions.assertEquals(expected, id);
+		Assertions.assertEquals(expected.hashCode(), id.hashCode());
+		Assertions.assertEquals("abc@10.0.0.1-1-INVITE-server-z9hG4bK1234", id.toString());
+
+		// ACK matches the INVITE transaction.
+		Assertions.assertEquals(id, SipId.createTransactionServerId(parse(ACK)));
+
+		Assertions.assertNotEquals(id, SipId.createTransactionClientId(invite));
+	}
+
+	@Test
+	void testDialogId() {
+		SipId id = SipId.createDialogId(parse(INVITE));
+		Assertions.assertEquals(SipId.createDialogId("abc@10.0.0.1", "2", "1"), id);
+		Assertions.assertNotEquals(SipId.createDialogId("abc@10.0.0.1", "1", "2"), id);
+		Assertions.assertEquals("abc@10.0.0.1-2-1", id.toString());
+	}
+
+	@Test
+	void testMethodId() {
+		Assertions.assertEquals(SipId.createMethodId(SipMethods.INVITE), SipId.createMethodId(parse(INVITE)));
+		Assertions.assertEquals(SipId.createMethodId(SipMethods.INVITE),
+				SipId.createTransactionServerId(SipMethods.INVITE));
+		Assertions.assertNotEquals(SipId.ANY_METHOD, SipId.createMethodId(SipMethods.INVITE));
+		Assertions.assertEquals("ANY", SipId.ANY_METHOD.toString());
+	}
+
+	private static SipMessage parse(String message) {
+		byte[] data = message.getBytes();
+		return new SipMessage(data, 0, data.length);
+	}
+
+}
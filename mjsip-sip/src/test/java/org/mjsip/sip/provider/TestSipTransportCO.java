@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipResponses;
+import org.mjsip.sip.test.Loopback;
+import org.mjsip.sip.transaction.TransactionClient;
+import org.mjsip.sip.transaction.TransactionClientListener;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link SipTransportCO} connection management.
+ */
+@SuppressWarnings("javadoc")
+class TestSipTransportCO {
+
+	private static final IpAddress LOCALHOST = new IpAddress("127.0.0.1");
+
+	@Test
+	void testQueueUntilConnected() throws Exception {
+		TcpTransport receiver = new TcpTransport(0, LOCALHOST, 8);
+		TcpTransport sender = new TcpTransport(0, LOCALHOST, 8);
+		try {
+			BlockingQueue<SipMessage> received = listen(receiver);
+			sender.setConnectTimeout(1000);
+
+			for (int n = 0; n < 10; n++) {
+				Assertions.assertNotNull(sender.sendMessage(options(n), LOCALHOST, receiver.getLocalPort(), 0));
+			}
+			for (int n = 0; n < 10; n++) {
+				SipMessage msg = received.poll(5, TimeUnit.SECONDS);
+				Assertions.assertNotNull(msg, "Message " + n + " not received.");
+				Assertions.assertEquals(n, msg.getCSeqHeader().getSequenceNumber(), "Messages must be sent in order.");
+			}
+			Assertions.assertEquals(1, receiver.connections.size());
+		} finally {
+			sender.halt();
+			receiver.halt();
+		}
+	}
+
+	@Test
+	void testUnreachablePeerDoesNotBlock() throws Exception {
+		TcpTransport receiver = new TcpTransport(0, LOCALHOST, 8);
+		TcpTransport sender = new TcpTransport(0, LOCALHOST, 8);
+		try {
+			BlockingQueue<SipMessage> received = listen(receiver);
+			sender.setConnectTimeout(3000);
+
+			long start = System.nanoTime();
+			sender.sendMessage(options(0), new IpAddress("10.255.255.1"), 5060, 0);
+			sender.sendMessage(options(1), LOCALHOST, receiver.getLocalPort(), 0);
+			Assertions.assertNotNull(received.poll(2, TimeUnit.SECONDS));
+			Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2),
+				"Sending must not wait for other connections.");
+		} finally {
+			sender.halt();
+			receiver.halt();
+		}
+	}
+
+	@Test
+	void testLeastRecentlyUsedEviction() throws Exception {
+		TcpTransport[] receivers = new TcpTransport[3];
+		TcpTransport sender = new TcpTransport(0, LOCALHOST, 2);
+		try {
+			BlockingQueue<SipMessage> received = new LinkedBlockingQueue<>();
+			for (int n = 0; n < receivers.length; n++) {
+				receivers[n] = new TcpTransport(0, LOCALHOST, 8);
+				receivers[n].setListener(listener(received));
+			}
+
+			send(sender, receivers[0].getLocalPort(), received);
+			send(sender, receivers[1].getLocalPort(), received);
+			send(sender, receivers[0].getLocalPort(), received);
+			send(sender, receivers[2].getLocalPort(), received);
+
+			Assertions.assertEquals(2, sender.connections.size());
+			Assertions.assertTrue(sender.connections.containsKey(new ConnectionId("tcp", LOCALHOST, receivers[0].getLocalPort())));
+			Assertions.assertTrue(sender.connections.containsKey(new ConnectionId("tcp", LOCALHOST, receivers[2].getLocalPort())));
+
+			sender.setIdleTimeout(1);
+			Thread.sleep(20);
+			Assertions.assertEquals(2, sender.closeIdleConnections());
+			Assertions.assertEquals(0, sender.connections.size());
+		} finally {
+			sender.halt();
+			for (TcpTransport receiver : receivers) {
+				if (receiver != null) {
+					receiver.halt();
+				}
+			}
+		}
+	}
+
+	@Test
+	void testConnectFailureReported() throws Exception {
+		TcpTransport sender = new TcpTransport(0, LOCALHOST, 8);
+		try {
+			BlockingQueue<SipMessage> notSent = new LinkedBlockingQueue<>();
+			sender.setListener(listener(new LinkedBlockingQueue<>(), notSent));
+			sender.setConnectTimeout(1000);
+			sender.setMaxConnectors(1);
+
+			// Nobody listens on the port.
+			int closed = Loopback.freePort();
+			for (int n = 0; n < 3; n++) {
+				sender.sendMessage(options(n), LOCALHOST, closed, 0);
+			}
+			for (int n = 0; n < 3; n++) {
+				SipMessage msg = notSent.poll(5, TimeUnit.SECONDS);
+				Assertions.assertNotNull(msg, "Failure of message " + n + " not reported.");
+				Assertions.assertEquals(n, msg.getCSeqHeader().getSequenceNumber());
+			}
+			Assertions.assertEquals(0, sender.connections.size());
+		} finally {
+			sender.halt();
+		}
+	}
+
+	@Test
+	void testConnectFailureFailsTransaction() throws Exception {
+		try (Loopback.Providers providers = new Loopback.Providers()) {
+			SipProvider provider = providers.create(Loopback.tcpConfig());
+			SipURI recipient = new SipURI("bob", Loopback.ADDRESS, Loopback.freePort());
+			recipient.addTransport("tcp");
+			NameAddress from = new NameAddress(new SipURI("alice", Loopback.ADDRESS, provider.getPort()));
+			SipMessage req = provider.messageFactory().createMessageRequest(new NameAddress(recipient), from,
+				provider.pickCallId(), null, "text/plain", "hello".getBytes());
+
+			CompletableFuture<SipMessage> failure = new CompletableFuture<>();
+			new TransactionClient(provider, req, new TransactionClientListener() {
+				@Override
+				public void onTransProvisionalResponse(TransactionClient tc, SipMessage resp) {
+					// Ignore.
+				}
+
+				@Override
+				public void onTransSuccessResponse(TransactionClient tc, SipMessage resp) {
+					failure.completeExceptionally(new AssertionError("Unexpected success."));
+				}
+
+				@Override
+				public void onTransFailureResponse(TransactionClient tc, SipMessage resp) {
+					failure.complete(resp);
+				}
+
+				@Override
+				public void onTransTimeout(TransactionClient tc) {
+					failure.completeExceptionally(new AssertionError("Timeout instead of failure."));
+				}
+			}).request();
+
+			// Much earlier than the transaction timeout.
+			SipMessage resp = failure.get(5, TimeUnit.SECONDS);
+			Assertions.assertEquals(SipResponses.SERVICE_UNAVAILABLE, resp.getStatusLine().getCode());
+		}
+	}
+
+	private static void send(TcpTransport sender, int port, BlockingQueue<SipMessage> received)
+			throws Exception {
+		sender.sendMessage(options(port), LOCALHOST, port, 0);
+		Assertions.assertNotNull(received.poll(5, TimeUnit.SECONDS));
+		// Wait until the connection is registered.
+		sender.connect(LOCALHOST, port).get(5, TimeUnit.SECONDS);
+		// Connections are ordered by their last use in milliseconds.
+		Thread.sleep(5);
+	}
+
+	private static BlockingQueue<SipMessage> listen(TcpTransport receiver) {
+		BlockingQueue<SipMessage> result = new LinkedBlockingQueue<>();
+		receiver.setListener(listener(result));
+		return result;
+	}
+
+	private static SipTransportListener listener(BlockingQueue<SipMessage> received) {
+		return listener(received, null);
+	}
+
+	private static SipTransportListener listener(BlockingQueue<SipMessage> received, BlockingQueue<SipMessage> notSent) {
+		return new SipTransportListener() {
+			@Override
+			public void onReceivedMessage(SipTransport transport, SipMessage msg) {
+				received.add(msg);
+			}
+
+			@Override
+			public void onMessageNotSent(SipTransport transport, SipMessage msg, Exception error) {
+				if (notSent != null) {
+					notSent.add(msg);
+				}
+			}
+
+			@Override
+			public void onIncomingTransportConnection(SipTransport transport, SocketAddress remote_soaddr) {
+				// Ignore.
+			}
+
+			@Override
+			public void onTransportConnectionTerminated(SipTransport transport, SocketAddress remote_soaddr,
+					Exception error) {
+				// Ignore.
+			}
+
+			@Override
+			public void onTransportTerminated(SipTransport transport, Exception error) {
+				// Ignore.
+			}
+		};
+	}
+
+	private static SipMessage options(int seq) {
+		return new SipMessage("OPTIONS sip:bob@127.0.0.1 SIP/2.0\r\n"
+				+ "Via: SIP/2.0/TCP 127.0.0.1:5060;branch=z9hG4bK" + seq + "\r\n"
+				+ "From: <sip:alice@127.0.0.1>;tag=1\r\n"
+				+ "To: <sip:bob@127.0.0.1>\r\n"
+				+ "Call-ID: test" + seq + "@127.0.0.1\r\n"
+				+ "CSeq: " + seq + " OPTIONS\r\n"
+				+ "Content-Length: 0\r\n"
+				+ "\r\n");
+	}
+
+}
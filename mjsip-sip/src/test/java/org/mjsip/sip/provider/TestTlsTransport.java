@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Base64;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Metrics;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.test.Loopback;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for TLS session resumption and handshaking in {@link TlsTransport}.
+ */
+@SuppressWarnings("javadoc")
+class TestTlsTransport {
+
+	private static final IpAddress LOCALHOST = new IpAddress(Loopback.ADDRESS);
+
+	private static final char[] PASSWORD = "secret".toCharArray();
+
+	private static Path _dir;
+
+	private static String _keyFile;
+
+	private static String _certFile;
+
+	@BeforeAll
+	static void createCertificate() throws Exception {
+		_dir = Files.createTempDirectory("mjsip-tls");
+		File keyStore = _dir.resolve("test.p12").toFile();
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "test", "-keyalg", "RSA",
+			"-keysize", "2048", "-dname", "CN=localhost", "-validity", "1", "-storetype", "PKCS12",
+			"-keystore", keyStore.getPath(), "-storepass", new String(PASSWORD)).inheritIO().start();
+		Assertions.assertEquals(0, process.waitFor());
+
+		KeyStore ks = KeyStore.getInstance("PKCS12");
+		try (FileInputStream in = new FileInputStream(keyStore)) {
+			ks.load(in, PASSWORD);
+		}
+		_keyFile = pem(_dir.resolve("key.pem"), "PRIVATE KEY", ks.getKey("test", PASSWORD).getEncoded());
+		_certFile = pem(_dir.resolve("cert.pem"), "CERTIFICATE", ks.getCertificate("test").getEncoded());
+	}
+
+	@AfterAll
+	static void deleteCertificate() throws Exception {
+		for (File file : _dir.toFile().listFiles()) {
+			file.delete();
+		}
+		Files.delete(_dir);
+	}
+
+	@Test
+	void testResumption() throws Exception {
+		// Resumption with a session ticket (or a PSK from the session cache).
+		checkResumption("TLSv1.3");
+	}
+
+	@Test
+	void testResumptionTls12() throws Exception {
+		// Resumption with the session ID of a cached session.
+		checkResumption("TLSv1.2");
+	}
+
+	@Test
+	void testHandshakeThreads() throws Exception {
+		BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+		TlsTransport receiver = new TlsTransport(0, LOCALHOST, 8, _keyFile, _certFile);
+		try {
+			receiver.setThreadFactory(task -> {
+				threads.add("created");
+				return new Thread(task);
+			});
+			receiver.setHandshakeExecutor(1, 16);
+			BlockingQueue<SipMessage> received = new LinkedBlockingQueue<>();
+			receiver.setListener(listener(received));
+
+			TlsTransport sender = new TlsTransport(0, LOCALHOST, 8, _keyFile, _certFile);
+			try {
+				sender.sendMessage(options(0), LOCALHOST, receiver.getLocalPort(), 0);
+				Assertions.assertNotNull(received.poll(10, TimeUnit.SECONDS));
+			} finally {
+				sender.halt();
+			}
+
+			// The incoming handshake ran on a thread of the transport's factory.
+			Assertions.assertEquals("created", threads.poll(5, TimeUnit.SECONDS));
+		} finally {
+			receiver.halt();
+		}
+	}
+
+	private void checkResumption(String protocol) throws Exception {
+		Counter full = handshakes("full");
+		Counter resumed = handshakes("resumed");
+
+		TlsTransport receiver = new TlsTransport(0, LOCALHOST, 8, _keyFile, _certFile);
+		TlsTransport sender = new TlsTransport(0, LOCALHOST, 8, _keyFile, _certFile);
+		try {
+			sender.tls_socket_factory.setEnabledProtocols(new String[] { protocol });
+			receiver.setHandshakeExecutor(2, 16);
+			sender.setHandshakeExecutor(2, 16);
+			BlockingQueue<SipMessage> received = new LinkedBlockingQueue<>();
+			receiver.setListener(listener(received));
+
+			long fullBefore = full.get();
+			long resumedBefore = resumed.get();
+			sender.sendMessage(options(0), LOCALHOST, receiver.getLocalPort(), 0);
+			Assertions.assertNotNull(received.poll(10, TimeUnit.SECONDS));
+			Assertions.assertEquals(fullBefore + 2, full.get(), "Initial connection requires full handshakes.");
+
+			// Reconnect, until the session ticket issued after the first handshake has been processed.
+			for (int n = 1; n <= 10 && resumed.get() == resumedBefore; n++) {
+				Thread.sleep(100);
+				sender.setIdleTimeout(1);
+				Thread.sleep(10);
+				sender.closeIdleConnections();
+				sender.setIdleTimeout(0);
+
+				sender.sendMessage(options(n), LOCALHOST, receiver.getLocalPort(), 0);
+				Assertions.assertNotNull(received.poll(10, TimeUnit.SECONDS));
+			}
+			Assertions.assertTrue(resumed.get() >= resumedBefore + 2, "Reconnect must resume the " + protocol + " session.");
+		} finally {
+			sender.halt();
+			receiver.halt();
+		}
+	}
+
+	@Test
+	void testIncomingHandshakeTimeout() throws Exception {
+		TlsTransport receiver = new TlsTransport(0, LOCALHOST, 8, _keyFile, _certFile);
+		try {
+			receiver.setHandshakeExecutor(2, 16);
+			receiver.setHandshakeTimeout(200);
+
+			// A client that connects but never starts the handshake must not occupy a handshake thread forever.
+			try (Socket client = new Socket(Loopback.ADDRESS, receiver.getLocalPort())) {
+				client.setSoTimeout(10000);
+				long start = System.nanoTime();
+				try {
+					// Skip a TLS alert sent before closing.
+					while (client.getInputStream().read() >= 0) {
+						// Ignore.
+					}
+				} catch (SocketException ex) {
+					// Connection reset, also closed.
+				}
+				Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+			}
+		} finally {
+			receiver.halt();
+		}
+	}
+
+	private static Counter handshakes(String type) {
+		return Metrics.global().counter("tls_handshakes_total", "TLS handshakes by outcome.", "type", type);
+	}
+
+	private static String pem(Path file, String type, byte[] data) throws Exception {
+		String content = "-----BEGIN " + type + "-----\n"
+				+ Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(data)
+				+ "\n-----END " + type + "-----\n";
+		Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+		return file.toString();
+	}
+
+	private static SipTransportListener listener(BlockingQueue<SipMessage> received) {
+		return new SipTransportListener() {
+			@Override
+			public void onReceivedMessage(SipTransport transport, SipMessage msg) {
+				received.add(msg);
+			}
+
+			@Override
+			public void onIncomingTransportConnection(SipTransport transport, SocketAddress remote_soaddr) {
+				// Ignore.
+			}
+
+			@Override
+			public void onMessageNotSent(SipTransport transport, SipMessage msg, Exception error) {
+				// Ignore.
+			}
+
+			@Override
+			public void onTransportConnectionTerminated(SipTransport transport, SocketAddress remote_soaddr,
+					Exception error) {
+				// Ignore.
+			}
+
+			@Override
+			public void onTransportTerminated(SipTransport transport, Exception error) {
+				// Ignore.
+			}
+		};
+	}
+
+	private static SipMessage options(int seq) {
+		return new SipMessage("OPTIONS sip:bob@127.0.0.1 SIP/2.0\r\n"
+				+ "Via: SIP/2.0/TLS 127.0.0.1:5061;branch=z9hG4bK" + seq + "\r\n"
+				+ "From: <sip:alice@127.0.0.1>;tag=1\r\n"
+				+ "To: <sip:bob@127.0.0.1>\r\n"
+				+ "Call-ID: tls" + seq + "@127.0.0.1\r\n"
+				+ "CSeq: " + seq + " OPTIONS\r\n"
+				+ "Content-Length: 0\r\n"
+				+ "\r\n");
+	}
+
+}
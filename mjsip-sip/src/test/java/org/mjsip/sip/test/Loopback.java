@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramSocket;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+
+/**
+ * Fixtures for tests exchanging messages over the loopback interface.
+ *
+ * <p>
+ * Shared with the tests of other modules through the test jar of this module. The package is not
+ * part of the <code>org.mjsip.sip</code> module, so that it can be used from the class path.
+ * </p>
+ */
+@SuppressWarnings("javadoc")
+public final class Loopback {
+
+	public static final String ADDRESS = "127.0.0.1";
+
+	private Loopback() {
+		// Static utilities.
+	}
+
+	/**
+	 * A port that is currently free for both UDP and TCP.
+	 *
+	 * <p>
+	 * The port may be taken by someone else before it is bound again. Only use it, if the port
+	 * must be known before binding, e.g. for a {@link SipConfig}. Otherwise, bind port
+	 * <code>0</code> and ask for the bound port.
+	 * </p>
+	 */
+	public static int freePort() {
+		IOException problem = null;
+		for (int attempt = 0; attempt < 10; attempt++) {
+			try (DatagramSocket udp = new DatagramSocket(0)) {
+				int port = udp.getLocalPort();
+				try (ServerSocket tcp = new ServerSocket(port)) {
+					return port;
+				}
+			} catch (IOException ex) {
+				problem = ex;
+			}
+		}
+		throw new UncheckedIOException("No free port found.", problem);
+	}
+
+	/**
+	 * The first of the given number of consecutive ports that are currently free for UDP.
+	 */
+	public static int freePortRange(int count) {
+		IOException problem = null;
+		for (int attempt = 0; attempt < 100; attempt++) {
+			List<DatagramSocket> sockets = new ArrayList<>();
+			try {
+				sockets.add(new DatagramSocket(0));
+				int first = sockets.get(0).getLocalPort();
+				if (first + count > 0x10000) {
+					throw new IOException("Range exceeds the port numbers: " + first);
+				}
+				for (int port = first + 1; port < first + count; port++) {
+					sockets.add(new DatagramSocket(port));
+				}
+				return first;
+			} catch (IOException ex) {
+				problem = ex;
+			} finally {
+				for (DatagramSocket socket : sockets) {
+					socket.close();
+				}
+			}
+		}
+		throw new UncheckedIOException("No free port range found.", problem);
+	}
+
+	/**
+	 * A SIP configuration for a provider listening on a free port of the loopback address.
+	 */
+	public static SipConfig config() {
+		return config(freePort());
+	}
+
+	/**
+	 * A SIP configuration for a provider listening with TCP only on a free port of the loopback
+	 * address.
+	 */
+	public static SipConfig tcpConfig() {
+		SipConfig result = new SipConfig();
+		result.setHostPort(freePort());
+		result.setViaAddrIPv4(ADDRESS);
+		result.setTransportProtocols(new String[] { SipProvider.PROTO_TCP });
+		result.normalize();
+		return result;
+	}
+
+	/**
+	 * A SIP configuration for a provider listening on the given port of the loopback address.
+	 */
+	public static SipConfig config(int port) {
+		SipConfig result = new SipConfig();
+		result.setHostPort(port);
+		result.setViaAddrIPv4(ADDRESS);
+		result.normalize();
+		return result;
+	}
+
+	/**
+	 * A scheduler with default settings, must be halted by the test.
+	 */
+	public static ConfiguredScheduler scheduler() {
+		return new ConfiguredScheduler(new SchedulerConfig());
+	}
+
+	/**
+	 * {@link SipProvider}s on the loopback address sharing a scheduler, that are halted together
+	 * with the scheduler when closed.
+	 */
+	public static final class Providers implements AutoCloseable {
+
+		private final ConfiguredScheduler _scheduler = Loopback.scheduler();
+
+		private final List<SipProvider> _providers = new ArrayList<>();
+
+		/**
+		 * A new provider listening on a free port.
+		 */
+		public SipProvider create() {
+			return create(config());
+		}
+
+		/**
+		 * A new provider with the given configuration.
+		 */
+		public SipProvider create(SipConfig config) {
+			SipProvider result = new SipProvider(config, _scheduler);
+			_providers.add(result);
+			return result;
+		}
+
+		/**
+		 * The scheduler of all providers.
+		 */
+		public ConfiguredScheduler scheduler() {
+			return _scheduler;
+		}
+
+		@Override
+		public void close() {
+			for (int n = _providers.size() - 1; n >= 0; n--) {
+				_providers.get(n).halt();
+			}
+			_scheduler.halt();
+		}
+	}
+
+}
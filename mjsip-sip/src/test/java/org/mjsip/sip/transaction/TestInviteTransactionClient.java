@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.transaction;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+import org.mjsip.sip.message.SipResponses;
+import org.mjsip.sip.provider.ScriptedSipProvider;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.test.Loopback;
+import org.mjsip.time.ConfiguredScheduler;
+
+/**
+ * Test for {@link InviteTransactionClient}.
+ */
+@SuppressWarnings("javadoc")
+class TestInviteTransactionClient {
+
+	private static final long T1 = 20;
+
+	private ConfiguredScheduler _scheduler;
+
+	private ScriptedSipProvider _provider;
+
+	private final List<String> _events = new CopyOnWriteArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		SipConfig config = Loopback.config();
+		config.setRetransmissionTimeout(T1);
+		_scheduler = Loopback.scheduler();
+		_provider = new ScriptedSipProvider(config, _scheduler);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_provider.halt();
+		_scheduler.scheduler().shutdownNow();
+	}
+
+	@Test
+	void testProvisionalResponseWhileSending() throws Exception {
+		_provider.respond(SipMethods.INVITE, SipResponses.RINGING);
+
+		InviteTransactionClient tc = new InviteTransactionClient(_provider, invite(), listener());
+		tc.request();
+
+		// The response is processed before request() has scheduled anything else.
+		Assertions.assertEquals(List.of("provisional"), _events);
+		Assertions.assertTrue(tc.isProceeding());
+
+		// The retransmission timer has been cancelled by the response.
+		Thread.sleep(5 * T1);
+		Assertions.assertEquals(1, _provider.sent(SipMethods.INVITE).size());
+		tc.terminate();
+	}
+
+	@Test
+	void testSuccessResponseWhileSending() throws Exception {
+		_provider.respond(SipMethods.INVITE, SipResponses.OK);
+
+		InviteTransactionClient tc = new InviteTransactionClient(_provider, invite(), listener());
+		tc.request();
+
+		Assertions.assertEquals(List.of("success"), _events);
+		Assertions.assertTrue(tc.isTerminated());
+
+		// A terminated transaction must not retransmit the request.
+		Thread.sleep(5 * T1);
+		Assertions.assertEquals(1, _provider.sent(SipMethods.INVITE).size());
+	}
+
+	private SipMessage invite() {
+		NameAddress callee = new NameAddress(new SipURI("bob", Loopback.ADDRESS, 5999));
+		NameAddress caller = new NameAddress(new SipURI("alice", Loopback.ADDRESS, _provider.getPort()));
+		return _provider.messageFactory().createInviteRequest(callee.getAddress(), callee, caller, caller,
+			_provider.pickCallId(), null, null);
+	}
+
+	private TransactionClientListener listener() {
+		return new TransactionClientListener() {
+			@Override
+			public void onTransProvisionalResponse(TransactionClient tc, SipMessage resp) {
+				_events.add("provisional");
+			}
+
+			@Override
+			public void onTransSuccessResponse(TransactionClient tc, SipMessage resp) {
+				_events.add("success");
+			}
+
+			@Override
+			public void onTransFailureResponse(TransactionClient tc, SipMessage resp) {
+				_events.add("failure");
+			}
+
+			@Override
+			public void onTransTimeout(TransactionClient tc) {
+				_events.add("timeout");
+			}
+		};
+	}
+
+}
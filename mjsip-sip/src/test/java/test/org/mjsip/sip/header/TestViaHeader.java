@@ -48,6 +48,22 @@ class TestViaHeader {
 		doTestValue(value);
 	}
 
+	@Test
+	void testQuotedParameter() {
+		ViaHeader header = ViaHeader
+				.parse("SIP/2.0/UDP phoneblock.net;oc=20;oc-algo=\"loss\";x=\"a\\\"b\";branch=z9hG4bK0D731C24CCBB2565");
+
+		Assertions.assertEquals("20", header.getParameter("oc"));
+		Assertions.assertEquals("loss", header.getParameter("oc-algo"));
+		Assertions.assertEquals("a\"b", header.getParameter("x"));
+		Assertions.assertEquals("z9hG4bK0D731C24CCBB2565", header.getBranch());
+
+		header.setQuotedParameter("oc-algo", "loss");
+		header.setParameter("x", "c");
+		Assertions.assertEquals("SIP/2.0/UDP phoneblock.net;oc=20;oc-algo=\"loss\";x=c;branch=z9hG4bK0D731C24CCBB2565",
+				header.getValue());
+	}
+
 	private static void doTestValue(String value) {
 		ViaHeader header = ViaHeader.parse(value);
 		Assertions.assertEquals(value, header.getValue());
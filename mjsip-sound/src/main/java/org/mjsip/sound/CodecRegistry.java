@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sound;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.spi.FormatConversionProvider;
+
+import org.slf4j.LoggerFactory;
+import org.zoolu.sound.CodecType;
+import org.zoolu.sound.SimpleAudioSystem;
+import org.zoolu.sound.codec.amr.AmrFormatConversionProvider;
+import org.zoolu.sound.codec.g711.G711FormatConversionProvider;
+import org.zoolu.sound.codec.g726.G726FormatConversionProvider;
+
+/**
+ * Table resolving codec names to {@link CodecType}s, and {@link CodecType}s to
+ * {@link AudioFormat.Encoding}s, target {@link AudioFormat}s and {@link FormatConversionProvider}s.
+ *
+ * <p>
+ * The javax.sound lookups {@link AudioSystem#getTargetEncodings(AudioFormat)} and
+ * {@link AudioSystem#getTargetFormats(AudioFormat.Encoding, AudioFormat)} scan all installed
+ * conversion providers. The registry performs them only once for each combination of codec, sample
+ * rate and number of channels. The default audio format is resolved when the class is loaded, so
+ * that setting up a media session only requires a table lookup.
+ * </p>
+ */
+public final class CodecRegistry {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(CodecRegistry.class);
+
+	/** Sample rate resolved in advance. */
+	public static final int DEFAULT_SAMPLE_RATE = 8000;
+
+	/** Number of channels resolved in advance. */
+	public static final int DEFAULT_CHANNELS = 1;
+
+	/** All codec types known to the registry. */
+	private static final CodecType[] CODECS = {
+		CodecType.PCM_LINEAR,
+		CodecType.G711_ULAW,
+		CodecType.G711_ALAW,
+		CodecType.G726_24,
+		CodecType.G726_32,
+		CodecType.G726_40,
+		CodecType.GSM0610,
+		CodecType.AMR_NB,
+		CodecType.AMR_0475,
+		CodecType.AMR_0515,
+		CodecType.AMR_0590,
+		CodecType.AMR_0670,
+		CodecType.AMR_0740,
+		CodecType.AMR_0795,
+		CodecType.AMR_1020,
+		CodecType.AMR_1220,
+		CodecType.Clear_Mode,
+	};
+
+	/** {@link CodecType} by upper case name or alias. */
+	private static final Map<String, CodecType> BY_NAME = new HashMap<>();
+
+	/** Converter for a codec by codec name. */
+	private static final Map<String, FormatConversionProvider> CONVERTERS = new HashMap<>();
+
+	/** Encodings supported for a base format by {@link #baseKey(int, int)}. */
+	private static final Map<String, AudioFormat.Encoding[]> ENCODINGS = new ConcurrentHashMap<>();
+
+	/** Resolved formats by {@link #formatKey(CodecType, int, int)}. */
+	private static final Map<String, Format> FORMATS = new ConcurrentHashMap<>();
+
+	static {
+		alias(CodecType.PCM_LINEAR, "PCM_SIGNED", "PCM_LINEAR", "linear");
+		alias(CodecType.G711_ULAW, "PCMU", "ULAW", "PCM_ULAW", "G711_ULAW", "PCM-ulaw", "G711-ulaw");
+		alias(CodecType.G711_ALAW, "PCMA", "ALAW", "PCM_ALAW", "G711_ALAW", "PCM-alaw", "G711-alaw");
+		alias(CodecType.G726_24, "G726_24", "G726-24");
+		alias(CodecType.G726_32, "G726_32", "G726-32");
+		alias(CodecType.G726_40, "G726_40", "G726-40");
+		alias(CodecType.GSM0610, "GSM0610", "GSM");
+		alias(CodecType.AMR_NB, "AMR_NB", "AMR-NB");
+		alias(CodecType.AMR_0475, "AMR", "AMR_0475", "AMR-4.75");
+		alias(CodecType.AMR_0515, "AMR_0515", "AMR-5.15");
+		alias(CodecType.AMR_0590, "AMR_0590", "AMR-5.9");
+		alias(CodecType.AMR_0670, "AMR_0670", "AMR-6.7");
+		alias(CodecType.AMR_0740, "AMR_0740", "AMR-7.4");
+		alias(CodecType.AMR_0795, "AMR_0795", "AMR-7.95");
+		alias(CodecType.AMR_1020, "AMR_1020", "AMR-10.2");
+		alias(CodecType.AMR_1220, "AMR_1220", "AMR-12.2");
+		alias(CodecType.Clear_Mode, "Clear_Mode", "Clear");
+
+		G711FormatConversionProvider g711 = new G711FormatConversionProvider();
+		G726FormatConversionProvider g726 = new G726FormatConversionProvider();
+		AmrFormatConversionProvider amr = new AmrFormatConversionProvider();
+		converter(g711, CodecType.G711_ULAW, CodecType.G711_ALAW);
+		converter(g726, CodecType.G726_24, CodecType.G726_32, CodecType.G726_40);
+		converter(amr, CodecType.AMR_0475, CodecType.AMR_0515, CodecType.AMR_0590, CodecType.AMR_0670,
+			CodecType.AMR_0740, CodecType.AMR_0795, CodecType.AMR_1020, CodecType.AMR_1220);
+
+		for (CodecType codec : CODECS) {
+			getFormat(codec, DEFAULT_SAMPLE_RATE, DEFAULT_CHANNELS);
+		}
+	}
+
+	private CodecRegistry() {
+		// Static utility.
+	}
+
+	private static void alias(CodecType codec, String... names) {
+		for (String name : names) {
+			BY_NAME.put(name.toUpperCase(Locale.ROOT), codec);
+		}
+	}
+
+	private static void converter(FormatConversionProvider converter, CodecType... codecs) {
+		for (CodecType codec : codecs) {
+			CONVERTERS.put(codec.getName(), converter);
+		}
+	}
+
+	/**
+	 * Looks up the {@link CodecType} with the given name or alias (case-insensitive).
+	 *
+	 * @return The codec type, or <code>null</code> if the name is not known.
+	 */
+	public static CodecType getCodecType(String name) {
+		return BY_NAME.get(name.toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * The shared {@link FormatConversionProvider} that converts between linear PCM and the given
+	 * codec, or <code>null</code> if the codec has no converter.
+	 */
+	public static FormatConversionProvider getConverter(CodecType codec) {
+		return CONVERTERS.get(codec.getName());
+	}
+
+	/**
+	 * The resolved audio formats for the given codec.
+	 *
+	 * @param codec
+	 *        The codec to transmit.
+	 * @param sampleRate
+	 *        The sample rate of the linear audio.
+	 * @param channels
+	 *        The number of audio channels.
+	 * @return The resolution result, see {@link Format#isSupported()}.
+	 */
+	public static Format getFormat(CodecType codec, int sampleRate, int channels) {
+		return FORMATS.computeIfAbsent(formatKey(codec, sampleRate, channels),
+			key -> resolve(codec, sampleRate, channels));
+	}
+
+	private static Format resolve(CodecType codec, int sampleRate, int channels) {
+		AudioFormat baseFormat = SimpleAudioSystem.getBaseAudioFormat(sampleRate, channels);
+		AudioFormat.Encoding encoding = null;
+		String encodingName = codec.getEncoding();
+		for (AudioFormat.Encoding supported : getTargetEncodings(baseFormat, sampleRate, channels)) {
+			if (supported.toString().equalsIgnoreCase(encodingName)) {
+				encoding = supported;
+				break;
+			}
+		}
+
+		AudioFormat targetFormat = null;
+		if (encoding != null) {
+			for (AudioFormat format : AudioSystem.getTargetFormats(encoding, baseFormat)) {
+				if (format.getEncoding().equals(encoding)) {
+					targetFormat = format;
+					break;
+				}
+			}
+		}
+		return new Format(codec, baseFormat, encoding, targetFormat);
+	}
+
+	private static AudioFormat.Encoding[] getTargetEncodings(AudioFormat baseFormat, int sampleRate, int channels) {
+		return ENCODINGS.computeIfAbsent(baseKey(sampleRate, channels), key -> {
+			AudioFormat.Encoding[] result = AudioSystem.getTargetEncodings(baseFormat);
+			LOG.info("Supported codecs for {}: {}", baseFormat,
+				Arrays.stream(result).map(Object::toString).collect(Collectors.joining(", ")));
+			return result;
+		});
+	}
+
+	private static String formatKey(CodecType codec, int sampleRate, int channels) {
+		return codec.getName() + '/' + baseKey(sampleRate, channels);
+	}
+
+	private static String baseKey(int sampleRate, int channels) {
+		return sampleRate + "/" + channels;
+	}
+
+	/**
+	 * Audio formats resolved for a {@link CodecType} at a certain sample rate and number of channels.
+	 */
+	public static final class Format {
+
+		private final CodecType _codec;
+
+		private final AudioFormat _baseFormat;
+
+		private final AudioFormat.Encoding _encoding;
+
+		private final AudioFormat _targetFormat;
+
+		Format(CodecType codec, AudioFormat baseFormat, AudioFormat.Encoding encoding, AudioFormat targetFormat) {
+			_codec = codec;
+			_baseFormat = baseFormat;
+			_encoding = encoding;
+			_targetFormat = targetFormat;
+		}
+
+		/**
+		 * The codec type.
+		 */
+		public CodecType getCodec() {
+			return _codec;
+		}
+
+		/**
+		 * The linear PCM format audio is captured and played in.
+		 */
+		public AudioFormat getBaseFormat() {
+			return _baseFormat;
+		}
+
+		/**
+		 * The encoding of the codec, or <code>null</code> if the audio system cannot convert the base
+		 * format to the codec.
+		 */
+		public AudioFormat.Encoding getEncoding() {
+			return _encoding;
+		}
+
+		/**
+		 * The format the base format is converted to, or <code>null</code> if there is no such
+		 * conversion.
+		 */
+		public AudioFormat getTargetFormat() {
+			return _targetFormat;
+		}
+
+		/**
+		 * Whether the audio system can convert from the base format to the codec.
+		 */
+		public boolean isSupported() {
+			return _targetFormat != null;
+		}
+
+		@Override
+		public String toString() {
+			return _codec + ": " + _baseFormat + " -> " + _targetFormat;
+		}
+	}
+
+}
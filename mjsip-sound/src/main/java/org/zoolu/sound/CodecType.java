@@ -1,6 +1,6 @@
 package org.zoolu.sound;
 
-
+import org.mjsip.sound.CodecRegistry;
 
 
 /** Audio codec.
@@ -120,43 +120,10 @@ public class CodecType {
 
 
 	
-	/** Gets Codec from name. */
+	/** Gets Codec from name.
+	  * @see CodecRegistry#getCodecType(String) */
 	public static CodecType getByName(String name) {
-		if (name.equalsIgnoreCase("PCM_SIGNED") || name.equalsIgnoreCase("PCM_LINEAR") || name.equalsIgnoreCase("linear")) return PCM_LINEAR;
-		else
-		if (name.equalsIgnoreCase("PCMU") || name.equalsIgnoreCase("ULAW") || name.equalsIgnoreCase("PCM_ULAW") || name.equalsIgnoreCase("G711_ULAW") || name.equalsIgnoreCase("PCM-ulaw") || name.equalsIgnoreCase("G711-ulaw")) return G711_ULAW;
-		else
-		if (name.equalsIgnoreCase("PCMA") || name.equalsIgnoreCase("ALAW") || name.equalsIgnoreCase("PCM_ALAW") || name.equalsIgnoreCase("G711_ALAW") || name.equalsIgnoreCase("PCM-alaw") || name.equalsIgnoreCase("G711-alaw")) return G711_ALAW;
-		else
-		if (name.equalsIgnoreCase("G726_24") || name.equalsIgnoreCase("G726-24")) return G726_24;
-		else
-		if (name.equalsIgnoreCase("G726_32") || name.equalsIgnoreCase("G726-32")) return G726_32;
-		else
-		if (name.equalsIgnoreCase("G726_40") || name.equalsIgnoreCase("G726-40")) return G726_40;
-		else
-		if (name.equalsIgnoreCase("GSM0610") || name.equalsIgnoreCase("GSM")) return GSM0610;
-		else
-		if (name.equalsIgnoreCase("AMR_NB") || name.equalsIgnoreCase("AMR-NB")) return AMR_NB;
-		else
-		if (name.equalsIgnoreCase("AMR") || name.equalsIgnoreCase("AMR_0475") || name.equalsIgnoreCase("AMR-4.75")) return AMR_0475;
-		else
-		if (name.equalsIgnoreCase("AMR_0515") || name.equalsIgnoreCase("AMR-5.15")) return AMR_0515;
-		else
-		if (name.equalsIgnoreCase("AMR_0590") || name.equalsIgnoreCase("AMR-5.9")) return AMR_0590;
-		else
-		if (name.equalsIgnoreCase("AMR_0670") || name.equalsIgnoreCase("AMR-6.7")) return AMR_0670;
-		else
-		if (name.equalsIgnoreCase("AMR_0740") || name.equalsIgnoreCase("AMR-7.4")) return AMR_0740;
-		else
-		if (name.equalsIgnoreCase("AMR_0795") || name.equalsIgnoreCase("AMR-7.95")) return AMR_0795;
-		else
-		if (name.equalsIgnoreCase("AMR_1020") || name.equalsIgnoreCase("AMR-10.2")) return AMR_1020;
-		else
-		if (name.equalsIgnoreCase("AMR_1220") || name.equalsIgnoreCase("AMR-12.2")) return AMR_1220;
-		else
-		if (name.equalsIgnoreCase("Clear_Mode") || name.equalsIgnoreCase("Clear")) return Clear_Mode;
-		// else
-		return null;
+		return CodecRegistry.getCodecType(name);
 	}
 
 	/** Whether it is equals to the given object. */
@@ -18,12 +18,10 @@ import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.spi.FormatConversionProvider;
 
+import org.mjsip.sound.CodecRegistry;
 import org.zoolu.sound.codec.amr.AmrEncoding;
-import org.zoolu.sound.codec.amr.AmrFormatConversionProvider;
 import org.zoolu.sound.codec.g711.G711Encoding;
-import org.zoolu.sound.codec.g711.G711FormatConversionProvider;
 import org.zoolu.sound.codec.g726.G726Encoding;
-import org.zoolu.sound.codec.g726.G726FormatConversionProvider;
 
 
 
@@ -213,34 +211,6 @@ public class ConverterAudioSystem extends SimpleAudioSystem {
 
 	/** Gets suitable converter for a specified codec type. */
 	private static FormatConversionProvider getFormatConversionProvider(CodecType codec) {
-		FormatConversionProvider converter=null;
-	
-		if (codec.equals(CodecType.G711_ULAW)) converter=new G711FormatConversionProvider();
-		else
-		if (codec.equals(CodecType.G711_ALAW)) converter=new G711FormatConversionProvider();
-		else
-		if (codec.equals(CodecType.G726_24)) converter=new G726FormatConversionProvider();
-		else
-		if (codec.equals(CodecType.G726_32)) converter=new G726FormatConversionProvider();
-		else
-		if (codec.equals(CodecType.G726_40)) converter=new G726FormatConversionProvider();
-		else
-		if (codec.equals(CodecType.AMR_0475)) converter=new AmrFormatConversionProvider();
-		else
-		if (codec.equals(CodecType.AMR_0515)) converter=new AmrFormatConversionProvider();
-		else
-		if (codec.equals(CodecType.AMR_0590)) converter=new AmrFormatConversionProvider();
-		else
-		if (codec.equals(CodecType.AMR_0670)) converter=new AmrFormatConversionProvider();
-		else
-		if (codec.equals(CodecType.AMR_0740)) converter=new AmrFormatConversionProvider();
-		else
-		if (codec.equals(CodecType.AMR_0795)) converter=new AmrFormatConversionProvider();
-		else
-		if (codec.equals(CodecType.AMR_1020)) converter=new AmrFormatConversionProvider();
-		else
-		if (codec.equals(CodecType.AMR_1220)) converter=new AmrFormatConversionProvider();
-		
-		return converter;
+		return CodecRegistry.getConverter(codec);
 	}
 }
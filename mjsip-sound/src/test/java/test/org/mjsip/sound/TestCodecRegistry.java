@@ -0,0 +1,50 @@
+package test.org.mjsip.sound;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.jupiter.api.Test;
+import org.mjsip.sound.CodecRegistry;
+import org.zoolu.sound.CodecType;
+
+/**
+ * Test case for {@link CodecRegistry}.
+ */
+class TestCodecRegistry {
+
+	@Test
+	void testNames() {
+		assertSame(CodecType.G711_ULAW, CodecRegistry.getCodecType("pcmu"));
+		assertSame(CodecType.G711_ALAW, CodecRegistry.getCodecType("G711-alaw"));
+		assertSame(CodecType.AMR_0475, CodecRegistry.getCodecType("amr"));
+		assertSame(CodecType.PCM_LINEAR, CodecType.getByName("linear"));
+		assertNull(CodecRegistry.getCodecType("G729"));
+	}
+
+	@Test
+	void testFormat() {
+		CodecRegistry.Format format = CodecRegistry.getFormat(CodecType.G711_ULAW, 8000, 1);
+		assertTrue(format.isSupported());
+		assertEquals(AudioFormat.Encoding.ULAW, format.getEncoding());
+		assertEquals(AudioFormat.Encoding.ULAW, format.getTargetFormat().getEncoding());
+		assertEquals(AudioFormat.Encoding.PCM_SIGNED, format.getBaseFormat().getEncoding());
+		assertEquals(16000f, CodecRegistry.getFormat(CodecType.G711_ALAW, 16000, 1).getBaseFormat().getSampleRate());
+
+		assertSame(format, CodecRegistry.getFormat(CodecType.G711_ULAW, 8000, 1));
+		assertFalse(CodecRegistry.getFormat(CodecType.Clear_Mode, 8000, 1).isSupported());
+	}
+
+	@Test
+	void testConverter() {
+		assertNotNull(CodecRegistry.getConverter(CodecType.G726_32));
+		assertSame(CodecRegistry.getConverter(CodecType.G711_ULAW), CodecRegistry.getConverter(CodecType.G711_ALAW));
+		assertNull(CodecRegistry.getConverter(CodecType.GSM0610));
+	}
+
+}
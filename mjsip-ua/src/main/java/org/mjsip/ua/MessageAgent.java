@@ -79,6 +79,14 @@ public class MessageAgent implements SipProviderListener, TransactionClientListe
 	}
 
 
+	/** Creates a sender for large numbers of messages with at most <i>window</i> messages in
+	  * progress per destination.
+	  * @see MessagePipeline */
+	public MessagePipeline pipeline(int window) {
+		return new MessagePipeline(sip_provider,_regOptions.getUserURI(),window);
+	}
+
+
 	/** Waits for incoming message. */
 	public void receive() {
 		sip_provider.addSelectiveListener(SipId.createMethodId(SipMethods.MESSAGE),this);
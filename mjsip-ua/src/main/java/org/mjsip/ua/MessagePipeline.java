@@ -0,0 +1,490 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.ua;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.mjsip.sip.address.GenericURI;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.header.ViaHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.ConnectionId;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.transaction.TransactionClient;
+import org.mjsip.sip.transaction.TransactionClientListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sender for large numbers of MESSAGE requests.
+ *
+ * <p>
+ * In contrast to {@link MessageAgent#send(String, String, String, byte[])}, messages are queued
+ * per destination and only a bounded window of MESSAGE transactions is in progress for each
+ * destination at the same time. Further messages are sent as soon as a transaction in the window
+ * completes. Over connection-oriented transports, the connection used by the last transaction to a
+ * destination is reused for the next message without resolving the destination again.
+ * </p>
+ *
+ * <p>
+ * Each message gets a {@link CompletableFuture} that is completed with the final response, or
+ * completed exceptionally with a {@link TimeoutException} if no final response is received. Within
+ * a window, messages to the same destination may be delivered out of order.
+ * </p>
+ *
+ * <p>
+ * The number of messages waiting for each destination is bounded. If the queue of a destination
+ * is full, further messages to this destination are rejected with a
+ * {@link RejectedExecutionException} until its window has drained. A destination without messages
+ * is dropped after an idle timeout.
+ * </p>
+ */
+public class MessagePipeline {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MessagePipeline.class);
+
+	/** Default number of MESSAGE transactions in progress per destination. */
+	public static final int DEFAULT_WINDOW = 32;
+
+	/** Default maximum number of messages waiting per destination. */
+	public static final int DEFAULT_MAX_QUEUED = 1024;
+
+	/** Default time in milliseconds after which a destination without messages is dropped. */
+	public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+	private final SipProvider _sipProvider;
+
+	private final NameAddress _from;
+
+	private final int _window;
+
+	private final int _maxQueued;
+
+	private final long _idleTimeout;
+
+	private final Map<String, Destination> _destinations = new HashMap<>();
+
+	private long _startTime;
+
+	private long _submitted;
+
+	private long _sent;
+
+	private long _delivered;
+
+	private long _failed;
+
+	private long _timeouts;
+
+	private long _rejected;
+
+	private boolean _halted;
+
+	/**
+	 * Creates a {@link MessagePipeline}.
+	 *
+	 * @param sipProvider
+	 *        The SIP stack to send messages with.
+	 * @param from
+	 *        The sender address of all messages.
+	 * @param window
+	 *        The maximum number of MESSAGE transactions in progress per destination.
+	 */
+	public MessagePipeline(SipProvider sipProvider, NameAddress from, int window) {
+		this(sipProvider, from, window, DEFAULT_MAX_QUEUED, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Creates a {@link MessagePipeline}.
+	 *
+	 * @param sipProvider
+	 *        The SIP stack to send messages with.
+	 * @param from
+	 *        The sender address of all messages.
+	 * @param window
+	 *        The maximum number of MESSAGE transactions in progress per destination.
+	 * @param maxQueued
+	 *        The maximum number of messages waiting for a free slot in the window of a destination.
+	 * @param idleTimeout
+	 *        Time in milliseconds after which a destination without messages is dropped together
+	 *        with its connection.
+	 */
+	public MessagePipeline(SipProvider sipProvider, NameAddress from, int window, int maxQueued, long idleTimeout) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must be at least 1: " + window);
+		}
+		if (maxQueued < 0) {
+			throw new IllegalArgumentException("Queue size must not be negative: " + maxQueued);
+		}
+		_sipProvider = sipProvider;
+		_from = from;
+		_window = window;
+		_maxQueued = maxQueued;
+		_idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Queues a text message.
+	 *
+	 * @see #send(NameAddress, String, String, byte[])
+	 */
+	public CompletableFuture<SipMessage> send(String recipient, String subject, String content) {
+		return send(NameAddress.parse(recipient), subject, "application/text", content.getBytes());
+	}
+
+	/**
+	 * Queues a message.
+	 *
+	 * @param recipient
+	 *        The recipient of the message.
+	 * @param subject
+	 *        The subject, or <code>null</code>.
+	 * @param contentType
+	 *        The type of the content.
+	 * @param content
+	 *        The message body.
+	 * @return Future completed with the final response to the MESSAGE request, or completed
+	 *         exceptionally with a {@link RejectedExecutionException}, if too many messages are
+	 *         waiting for the recipient's destination.
+	 */
+	public CompletableFuture<SipMessage> send(NameAddress recipient, String subject, String contentType,
+			byte[] content) {
+		Pending pending = new Pending(recipient, subject, contentType, content);
+		Destination destination;
+		synchronized (this) {
+			if (_halted) {
+				pending._future.completeExceptionally(new CancellationException("Pipeline halted."));
+				return pending._future;
+			}
+			if (_submitted++ == 0) {
+				_startTime = System.nanoTime();
+			}
+			destination = _destinations.computeIfAbsent(destinationKey(recipient.getAddress()), Destination::new);
+			int free = Math.max(0, _window - destination._inFlight);
+			if (destination._queue.size() >= free + _maxQueued) {
+				_rejected++;
+				pending._future.completeExceptionally(
+					new RejectedExecutionException("Too many messages queued for: " + destination));
+				return pending._future;
+			}
+			destination._queue.add(pending);
+		}
+		pump(destination);
+		return pending._future;
+	}
+
+	/**
+	 * Stops sending, all messages that have not yet been sent are cancelled.
+	 */
+	public void halt() {
+		List<Pending> cancelled = new ArrayList<>();
+		synchronized (this) {
+			_halted = true;
+			for (Destination destination : _destinations.values()) {
+				cancelled.addAll(destination._queue);
+				destination._queue.clear();
+			}
+			_destinations.values().removeIf(Destination::isIdle);
+		}
+		for (Pending pending : cancelled) {
+			pending._future.completeExceptionally(new CancellationException("Pipeline halted."));
+		}
+	}
+
+	/**
+	 * The number of messages passed to {@link #send(NameAddress, String, String, byte[])}.
+	 */
+	public synchronized long getSubmitted() {
+		return _submitted;
+	}
+
+	/**
+	 * The number of MESSAGE requests sent.
+	 */
+	public synchronized long getSent() {
+		return _sent;
+	}
+
+	/**
+	 * The number of messages answered with a success response.
+	 */
+	public synchronized long getDelivered() {
+		return _delivered;
+	}
+
+	/**
+	 * The number of messages answered with a failure response.
+	 */
+	public synchronized long getFailed() {
+		return _failed;
+	}
+
+	/**
+	 * The number of messages without final response.
+	 */
+	public synchronized long getTimeouts() {
+		return _timeouts;
+	}
+
+	/**
+	 * The number of messages rejected, because too many messages were queued for their destination.
+	 */
+	public synchronized long getRejected() {
+		return _rejected;
+	}
+
+	/**
+	 * The number of destinations with messages in progress, or that have been used recently.
+	 */
+	public synchronized int getDestinations() {
+		return _destinations.size();
+	}
+
+	/**
+	 * The number of MESSAGE transactions currently in progress.
+	 */
+	public synchronized int getInFlight() {
+		int result = 0;
+		for (Destination destination : _destinations.values()) {
+			result += destination._inFlight;
+		}
+		return result;
+	}
+
+	/**
+	 * The number of messages waiting for a free slot in the window of their destination.
+	 */
+	public synchronized int getQueued() {
+		int result = 0;
+		for (Destination destination : _destinations.values()) {
+			result += destination._queue.size();
+		}
+		return result;
+	}
+
+	/**
+	 * The number of completed messages per second since the first message was submitted.
+	 */
+	public synchronized double getThroughput() {
+		if (_submitted == 0) {
+			return 0;
+		}
+		double seconds = (System.nanoTime() - _startTime) / 1e9;
+		return seconds > 0 ? (_delivered + _failed + _timeouts) / seconds : 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d submitted, %d sent, %d delivered, %d failed, %d timeouts, %d rejected, %d in flight, %d queued, %.1f/s",
+			_submitted, _sent, _delivered, _failed, _timeouts, _rejected, getInFlight(), getQueued(), getThroughput());
+	}
+
+	private String destinationKey(GenericURI recipient) {
+		GenericURI nextHop = _sipProvider.sipConfig().getOutboundProxy();
+		if (nextHop == null) {
+			nextHop = recipient;
+		}
+		if (nextHop.isSipURI()) {
+			SipURI uri = nextHop.toSipURI();
+			return uri.getHost() + ":" + uri.getPort() + (uri.hasTransport() ? ";" + uri.getTransport() : "");
+		}
+		return nextHop.toString();
+	}
+
+	/**
+	 * Starts transactions for queued messages as long as the window of the given destination is not
+	 * full.
+	 */
+	private void pump(Destination destination) {
+		List<Pending> ready = new ArrayList<>();
+		ConnectionId connection;
+		synchronized (this) {
+			while (destination._inFlight < _window && !destination._queue.isEmpty()) {
+				ready.add(destination._queue.poll());
+				destination._inFlight++;
+				_sent++;
+			}
+			connection = destination._connection;
+		}
+
+		for (Pending pending : ready) {
+			SipMessage req = _sipProvider.messageFactory().createMessageRequest(pending._recipient, _from,
+				_sipProvider.pickCallId(), pending._subject, pending._contentType, pending._content);
+			if (connection != null) {
+				ViaHeader via = new ViaHeader(connection.getProtocol(), _sipProvider.getViaAddress(), _sipProvider.getPort());
+				if (_sipProvider.sipConfig().useRport()) {
+					via.setRport();
+				}
+				via.setBranch(SipProvider.pickBranch());
+				// replaces the placeholder Via of the new request
+				if (req.hasViaHeader()) req.removeViaHeader();
+				req.addViaHeader(via);
+				req.setConnectionId(connection);
+			}
+
+			TransactionClient transaction = new TransactionClient(_sipProvider, req, new Completion(destination, pending));
+			transaction.request();
+
+			ConnectionId used = transaction.getTransportConnId();
+			if (used != null && !used.equals(connection)) {
+				synchronized (this) {
+					destination._connection = used;
+				}
+				connection = used;
+			}
+		}
+	}
+
+	private void complete(Destination destination, Pending pending, SipMessage resp, boolean success) {
+		synchronized (this) {
+			destination._inFlight--;
+			if (resp == null) {
+				_timeouts++;
+				// The connection may be broken, resolve the destination again.
+				destination._connection = null;
+			} else if (success) {
+				_delivered++;
+			} else {
+				_failed++;
+			}
+			if (destination.isIdle()) {
+				destination._idleSince = System.nanoTime();
+				if (!destination._evictionScheduled) {
+					destination._evictionScheduled = true;
+					_sipProvider.scheduler().schedule(_idleTimeout, () -> evict(destination));
+				}
+			}
+		}
+
+		if (resp == null) {
+			LOG.debug("MESSAGE to {} timed out.", pending._recipient);
+			pending._future.completeExceptionally(new TimeoutException("No response to MESSAGE: " + pending._recipient));
+		} else {
+			pending._future.complete(resp);
+		}
+		pump(destination);
+	}
+
+	/**
+	 * Drops the given destination, if it had no messages since the idle timeout.
+	 */
+	private void evict(Destination destination) {
+		synchronized (this) {
+			destination._evictionScheduled = false;
+			if (!destination.isIdle()) {
+				// Scheduled again when the destination becomes idle.
+				return;
+			}
+			long remaining = _idleTimeout - (System.nanoTime() - destination._idleSince) / 1000000;
+			if (remaining > 0) {
+				destination._evictionScheduled = true;
+				_sipProvider.scheduler().schedule(remaining, () -> evict(destination));
+				return;
+			}
+			_destinations.remove(destination._key, destination);
+		}
+		LOG.debug("Dropped idle destination {}.", destination);
+	}
+
+	/**
+	 * Messages to the same next hop.
+	 */
+	private static final class Destination {
+
+		private final String _key;
+
+		private final ArrayDeque<Pending> _queue = new ArrayDeque<>();
+
+		private int _inFlight;
+
+		/** Connection of the last transaction over a connection-oriented transport. */
+		private ConnectionId _connection;
+
+		/** Time in nanoseconds when the last message to this destination has completed. */
+		private long _idleSince;
+
+		private boolean _evictionScheduled;
+
+		Destination(String key) {
+			_key = key;
+		}
+
+		boolean isIdle() {
+			return _inFlight == 0 && _queue.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return _key;
+		}
+	}
+
+	/**
+	 * A message waiting to be sent or in progress.
+	 */
+	private static final class Pending {
+
+		private final NameAddress _recipient;
+
+		private final String _subject;
+
+		private final String _contentType;
+
+		private final byte[] _content;
+
+		private final CompletableFuture<SipMessage> _future = new CompletableFuture<>();
+
+		Pending(NameAddress recipient, String subject, String contentType, byte[] content) {
+			_recipient = recipient;
+			_subject = subject;
+			_contentType = contentType;
+			_content = content;
+		}
+	}
+
+	/**
+	 * Listener of a single MESSAGE transaction.
+	 */
+	private final class Completion implements TransactionClientListener {
+
+		private final Destination _destination;
+
+		private final Pending _pending;
+
+		Completion(Destination destination, Pending pending) {
+			_destination = destination;
+			_pending = pending;
+		}
+
+		@Override
+		public void onTransProvisionalResponse(TransactionClient tc, SipMessage resp) {
+			// Ignore.
+		}
+
+		@Override
+		public void onTransSuccessResponse(TransactionClient tc, SipMessage resp) {
+			complete(_destination, _pending, resp, true);
+		}
+
+		@Override
+		public void onTransFailureResponse(TransactionClient tc, SipMessage resp) {
+			complete(_destination, _pending, resp, false);
+		}
+
+		@Override
+		public void onTransTimeout(TransactionClient tc) {
+			complete(_destination, _pending, null, false);
+		}
+	}
+
+}
@@ -88,7 +88,7 @@ public abstract class RegisteringMultipleUAS extends MultipleUAS implements Regi
 		new ExtendedCall(sip_provider,msg,ua);
 		
 		if (autoHangup != null) {
-			autoHangup.start(ua);
+			autoHangup.start(ua, msg);
 		}
 	}
 
@@ -124,8 +124,16 @@ public abstract class RegisteringMultipleUAS extends MultipleUAS implements Regi
 			if (_hangupTimer != null) _hangupTimer.cancel(false);
 		}
 	
-		public void start(UserAgent ua) {
-			_hangupTimer = sip_provider.scheduler().schedule(_hangupTime*1000, () -> ua.hangup());			
+		/**
+		 * Starts the hangup timer for the call started with the given invite.
+		 * 
+		 * @param ua
+		 *        The {@link UserAgent} handling the call.
+		 * @param invite
+		 *        The invite message, the timer runs in the context of its call.
+		 */
+		public void start(UserAgent ua, SipMessage invite) {
+			_hangupTimer = sip_provider.schedule(invite, _hangupTime*1000, () -> ua.hangup());
 		}
 	}
 	
@@ -9,7 +9,7 @@ import org.mjsip.sip.call.NotImplementedServer;
 import org.mjsip.sip.call.OptionsServer;
 import org.mjsip.sip.message.SipMethods;
 import org.mjsip.sip.provider.SipId;
-import org.mjsip.sip.provider.SipKeepAlive;
+import org.mjsip.sip.provider.KeepAliveService;
 import org.mjsip.sip.provider.SipProvider;
 import org.mjsip.ua.registration.RegistrationClient;
 import org.mjsip.ua.registration.RegistrationOptions;
@@ -23,8 +23,8 @@ public class RegisteringUserAgent extends UserAgent {
 	/** RegistrationClient */
 	private RegistrationClient rc=null;
 
-	/** SipKeepAlive daemon */
-	private SipKeepAlive keep_alive;
+	/** Keep-alive toward the registrar or outbound proxy */
+	private KeepAliveService.Target keep_alive;
 
 	private RegistrationOptions _registrationConfig;
 
@@ -78,7 +78,7 @@ public class RegisteringUserAgent extends UserAgent {
 			if (target_port<0) target_port=sip_provider.sipConfig().getDefaultPort();
 			SocketAddress target_soaddr=new SocketAddress(target_host,target_port);
 			if (keep_alive!=null && keep_alive.isRunning()) keep_alive.halt();
-			keep_alive=new SipKeepAlive(sip_provider,target_soaddr,null,keepalive_time);
+			keep_alive=sip_provider.keepAlive().start(this,sip_provider.getDefaultTransport(),target_soaddr,keepalive_time);
 		}
 	}
 
@@ -319,7 +319,7 @@ public class UserAgent extends CallListenerAdapter implements SipProviderListene
 			}
 			
 			LOG.debug("Starting media session: {}", flow_spec);
-			MediaStreamer streamer = _mediaAgent.startMediaSession(sip_provider.scheduler(), flow_spec);
+			MediaStreamer streamer = _mediaAgent.startMediaSession(sip_provider.scheduler().serviceExecutor(), flow_spec);
 			
 			if (streamer == null) {
 				LOG.warn("No media streamer found for type: {}", mediaType);
@@ -353,7 +353,8 @@ public class UserAgent extends CallListenerAdapter implements SipProviderListene
 		MediaSpec media_spec = findMatchingMediaSpec(mediaType, avp);
 		
 		if (local_port!=0 && remote_port!=0 && media_spec!=null) {
-			return new FlowSpec(mediaType,media_spec,local_port,remote_address,remote_port, dir);
+			return new FlowSpec(mediaType,media_spec,local_port,remote_address,remote_port, dir)
+				.setSockets(_portPool.getSockets(local_port));
 		} else {
 			LOG.warn("No matching media found (local_port={}, remote_port={}, remoteDescriptor={}).", local_port, remote_port, remoteDescriptor);
 			return null;
@@ -425,7 +426,7 @@ public class UserAgent extends CallListenerAdapter implements SipProviderListene
 		call.ring();
 
 		if (_config.getRefuseTime()>=0) {
-			response_to=sip_provider.scheduler().schedule(_config.getRefuseTime()*1000, this::onResponseTimeout);
+			response_to=sip_provider.schedule(invite, _config.getRefuseTime()*1000, this::onResponseTimeout);
 		}
 		
 		if (listener!=null) {
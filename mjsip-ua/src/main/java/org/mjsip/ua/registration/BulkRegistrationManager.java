@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.ua.registration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.authentication.DigestAuthentication;
+import org.mjsip.sip.header.AuthenticationHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.transaction.TransactionClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a large number of AORs registered with a registrar using a single refresh timer.
+ *
+ * <p>
+ * In contrast to {@link RegistrationClient#loopRegister(int, int)}, the lines managed here do not
+ * schedule their own timers. Refreshes are spread with random jitter across the expiry window, the
+ * number of outstanding REGISTER transactions is limited, and a nonce received from a realm is
+ * reused for the next registrations of all lines in the same realm.
+ * </p>
+ */
+public class BulkRegistrationManager implements RegistrationClientListener {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BulkRegistrationManager.class);
+
+	/** Default interval in milliseconds for checking for due registrations. */
+	public static final long DEFAULT_TICK = 100;
+
+	/**
+	 * Registration state of a single line.
+	 */
+	public enum Status {
+		/** Not yet registered, or unregistered. */
+		IDLE,
+
+		/** A REGISTER transaction is waiting to be sent or is in progress. */
+		PENDING,
+
+		/** Successfully registered. */
+		REGISTERED,
+
+		/** The last registration attempt failed, a retry is scheduled. */
+		FAILED;
+	}
+
+	private final SipProvider _sipProvider;
+
+	private final int _maxOutstanding;
+
+	private final List<Line> _lines = new ArrayList<>();
+
+	/** Lines waiting for their next registration, ordered by due time. */
+	private final PriorityQueue<Line> _due = new PriorityQueue<>((a, b) -> Long.compare(a._dueTime, b._dueTime));
+
+	/** Last challenge per realm. */
+	private final Map<String, Challenge> _challenges = new ConcurrentHashMap<>();
+
+	private final int[] _counts = new int[Status.values().length];
+
+	private double _minRefresh = 0.5;
+
+	private double _maxRefresh = 0.9;
+
+	private RegistrationClientListener _listener;
+
+	private int _outstanding;
+
+	private ScheduledFuture<?> _tick;
+
+	/**
+	 * Creates a {@link BulkRegistrationManager}.
+	 *
+	 * @param sipProvider
+	 *        The SIP provider to send registrations through.
+	 * @param maxOutstanding
+	 *        The maximum number of REGISTER transactions in progress at the same time.
+	 */
+	public BulkRegistrationManager(SipProvider sipProvider, int maxOutstanding) {
+		_sipProvider = sipProvider;
+		_maxOutstanding = Math.max(1, maxOutstanding);
+	}
+
+	/**
+	 * Sets the fractions of the expiry time between which a registration is refreshed.
+	 *
+	 * @param minRefresh
+	 *        The earliest refresh, e.g. <code>0.5</code> for half of the granted expiry time.
+	 * @param maxRefresh
+	 *        The latest refresh, e.g. <code>0.9</code>.
+	 */
+	public synchronized void setRefreshWindow(double minRefresh, double maxRefresh) {
+		if (minRefresh <= 0 || maxRefresh > 1 || minRefresh > maxRefresh) {
+			throw new IllegalArgumentException("Invalid refresh window: " + minRefresh + " - " + maxRefresh);
+		}
+		_minRefresh = minRefresh;
+		_maxRefresh = maxRefresh;
+	}
+
+	/**
+	 * Optional listener informed about the result of each registration, e.g. a
+	 * {@link RegistrationLogger}.
+	 */
+	public synchronized void setListener(RegistrationClientListener listener) {
+		_listener = listener;
+	}
+
+	/**
+	 * Adds a line to register.
+	 *
+	 * <p>
+	 * The line is registered with the next {@link #start()}, or immediately, if the manager is
+	 * already running.
+	 * </p>
+	 *
+	 * @param options
+	 *        The registration options of the line.
+	 * @return The client sending the registrations of the line.
+	 */
+	public synchronized RegistrationClient add(RegistrationOptions options) {
+		Line line = new Line(_sipProvider, options);
+		_lines.add(line);
+		_counts[Status.IDLE.ordinal()]++;
+		if (_tick != null) {
+			schedule(line, System.nanoTime());
+		}
+		return line;
+	}
+
+	/**
+	 * Starts registering all lines.
+	 */
+	public void start() {
+		start(DEFAULT_TICK);
+	}
+
+	/**
+	 * Starts registering all lines.
+	 *
+	 * @param tick
+	 *        Interval in milliseconds for checking for due registrations.
+	 */
+	public synchronized void start(long tick) {
+		if (_tick != null) {
+			return;
+		}
+		long now = System.nanoTime();
+		for (Line line : _lines) {
+			if (line._status == Status.IDLE) {
+				schedule(line, now);
+			}
+		}
+		_tick = _sipProvider.scheduler().schedulerWithFixedDelay(tick, this::dispatch);
+	}
+
+	/**
+	 * Stops refreshing registrations and unregisters all lines that are currently registered.
+	 *
+	 * <p>
+	 * Unregistrations are sent from the running refresh timer and are subject to the same limit of
+	 * outstanding transactions. Call {@link #halt()} after the number of {@link #getRegistered()
+	 * registered} lines dropped to zero.
+	 * </p>
+	 */
+	public synchronized void unregister() {
+		_due.clear();
+		long now = System.nanoTime();
+		for (Line line : _lines) {
+			line._unregister = true;
+			if (line._status == Status.REGISTERED) {
+				schedule(line, now);
+			} else if (line._status == Status.FAILED) {
+				setStatus(line, Status.IDLE);
+			}
+		}
+	}
+
+	/**
+	 * Stops all timers without unregistering.
+	 */
+	public synchronized void halt() {
+		if (_tick != null) {
+			_tick.cancel(false);
+			_tick = null;
+		}
+		_due.clear();
+	}
+
+	/**
+	 * The number of managed lines.
+	 */
+	public synchronized int getSize() {
+		return _lines.size();
+	}
+
+	/**
+	 * The number of lines in the given state.
+	 */
+	public synchronized int getCount(Status status) {
+		return _counts[status.ordinal()];
+	}
+
+	/**
+	 * The number of successfully registered lines.
+	 */
+	public int getRegistered() {
+		return getCount(Status.REGISTERED);
+	}
+
+	/**
+	 * The number of lines whose last registration failed.
+	 */
+	public int getFailed() {
+		return getCount(Status.FAILED);
+	}
+
+	/**
+	 * The number of REGISTER transactions currently in progress.
+	 */
+	public synchronized int getOutstanding() {
+		return _outstanding;
+	}
+
+	/**
+	 * The state of the given line.
+	 *
+	 * @param client
+	 *        A client returned from {@link #add(RegistrationOptions)}.
+	 */
+	public synchronized Status getStatus(RegistrationClient client) {
+		return ((Line) client)._status;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "registered=" + getRegistered() + ", pending=" + getCount(Status.PENDING) + ", failed=" + getFailed()
+				+ ", idle=" + getCount(Status.IDLE) + ", outstanding=" + _outstanding;
+	}
+
+	private void schedule(Line line, long dueTime) {
+		line._dueTime = dueTime;
+		_due.add(line);
+		if (line._status != Status.REGISTERED) {
+			setStatus(line, Status.PENDING);
+		}
+	}
+
+	private void setStatus(Line line, Status status) {
+		_counts[line._status.ordinal()]--;
+		_counts[status.ordinal()]++;
+		line._status = status;
+	}
+
+	/**
+	 * Sends all due registrations up to the limit of outstanding transactions.
+	 */
+	private void dispatch() {
+		List<Line> send = new ArrayList<>();
+		synchronized (this) {
+			long now = System.nanoTime();
+			while (_tick != null && _outstanding < _maxOutstanding && !_due.isEmpty() && _due.peek()._dueTime - now <= 0) {
+				Line line = _due.poll();
+				line._unregistering = line._unregister;
+				_outstanding++;
+				send.add(line);
+			}
+		}
+		for (Line line : send) {
+			if (line._unregistering) {
+				line.unregister();
+			} else {
+				line.register(line._expires);
+			}
+		}
+	}
+
+	@Override
+	public void onRegistrationSuccess(RegistrationClient registration, NameAddress target, NameAddress contact,
+			int expires, int renewTime, String result) {
+		Line line = (Line) registration;
+		RegistrationClientListener listener;
+		synchronized (this) {
+			_outstanding--;
+			line.resetBackoff();
+			if (line._unregistering) {
+				setStatus(line, Status.IDLE);
+			} else if (line._unregister) {
+				// Registered while unregistration was requested.
+				setStatus(line, Status.REGISTERED);
+				schedule(line, System.nanoTime());
+			} else {
+				setStatus(line, Status.REGISTERED);
+				if (_tick != null) {
+					int granted = expires > 0 ? expires : line._expires;
+					double fraction = _minRefresh + ThreadLocalRandom.current().nextDouble() * (_maxRefresh - _minRefresh);
+					schedule(line, System.nanoTime() + (long) (TimeUnit.SECONDS.toNanos(granted) * fraction));
+				}
+			}
+			listener = _listener;
+		}
+		if (listener != null) {
+			listener.onRegistrationSuccess(registration, target, contact, expires, renewTime, result);
+		}
+		// Use the free transaction slot without waiting for the next tick.
+		dispatch();
+	}
+
+	@Override
+	public void onRegistrationFailure(RegistrationClient registration, NameAddress target, NameAddress contact,
+			String result) {
+		Line line = (Line) registration;
+		RegistrationClientListener listener;
+		synchronized (this) {
+			_outstanding--;
+			if (line._unregister) {
+				setStatus(line, Status.IDLE);
+			} else {
+				setStatus(line, Status.FAILED);
+				if (_tick != null) {
+					long delay = line.nextBackoff();
+					delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+					LOG.debug("Registration of {} failed ({}), retrying in {}ms.", target, result, delay);
+					schedule(line, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+				}
+			}
+			listener = _listener;
+		}
+		if (listener != null) {
+			listener.onRegistrationFailure(registration, target, contact, result);
+		}
+		dispatch();
+	}
+
+	/**
+	 * The last authentication challenge of a realm shared by all lines in that realm.
+	 */
+	private static final class Challenge {
+
+		final AuthenticationHeader _header;
+
+		final boolean _proxy;
+
+		final String _qop;
+
+		final AtomicInteger _nc = new AtomicInteger();
+
+		Challenge(AuthenticationHeader header, boolean proxy) {
+			_header = header;
+			_proxy = proxy;
+			_qop = header.getQopOptionsParam() != null ? "auth" : null;
+		}
+	}
+
+	/**
+	 * A single AOR registered by the manager.
+	 */
+	private final class Line extends RegistrationClient {
+
+		final int _expires;
+
+		/** Guarded by the manager. */
+		Status _status = Status.IDLE;
+
+		/** Guarded by the manager. */
+		long _dueTime;
+
+		/** Guarded by the manager. */
+		boolean _unregister;
+
+		/** Whether the transaction in progress is an unregistration, guarded by the manager. */
+		boolean _unregistering;
+
+		/** Guarded by the manager. */
+		long _backoff;
+
+		Line(SipProvider sipProvider, RegistrationOptions options) {
+			super(sipProvider, options, BulkRegistrationManager.this);
+			_expires = options.getExpires() > 0 ? options.getExpires() : _sipProvider.sipConfig().getDefaultExpires();
+			resetBackoff();
+		}
+
+		void resetBackoff() {
+			_backoff = _sipProvider.sipConfig().getRegMinAttemptTimeout();
+		}
+
+		long nextBackoff() {
+			long result = _backoff;
+			_backoff = Math.min(_backoff * 2, _sipProvider.sipConfig().getRegMaxAttemptTimeout());
+			return result;
+		}
+
+		@Override
+		protected void addAuthorization(SipMessage req) {
+			Challenge challenge = _realm != null ? _challenges.get(_realm.toLowerCase()) : null;
+			if (challenge == null) {
+				super.addAuthorization(req);
+				return;
+			}
+
+			DigestAuthentication auth = new DigestAuthentication(SipMethods.REGISTER,
+					req.getRequestLine().getAddress().toString(), challenge._header, challenge._qop, null,
+					challenge._nc.incrementAndGet(), null, _username, _passwd);
+			if (challenge._proxy) {
+				req.setProxyAuthorizationHeader(auth.getProxyAuthorizationHeader());
+			} else {
+				req.setAuthorizationHeader(auth.getAuthorizationHeader());
+			}
+		}
+
+		@Override
+		public void onTransFailureResponse(TransactionClient transaction, SipMessage resp) {
+			if (_realm != null) {
+				int code = resp.getStatusLine().getCode();
+				if (code == 401 && resp.hasWwwAuthenticateHeader()) {
+					remember(resp.getWwwAuthenticateHeader(), false);
+				} else if (code == 407 && resp.hasProxyAuthenticateHeader()) {
+					remember(resp.getProxyAuthenticateHeader(), true);
+				}
+			}
+			super.onTransFailureResponse(transaction, resp);
+		}
+
+		private void remember(AuthenticationHeader header, boolean proxy) {
+			if (_realm.equalsIgnoreCase(header.getRealmParam())) {
+				_challenges.put(_realm.toLowerCase(), new Challenge(header, proxy));
+			}
+		}
+	}
+
+}
@@ -224,18 +224,7 @@ public class RegistrationClient implements TransactionClientListener {
 		}
 
 		req.setExpiresHeader(new ExpiresHeader(String.valueOf(expire_time)));
-		if (_nextNonce!=null) {
-			AuthorizationHeader ah=new AuthorizationHeader("Digest");
-			//GenericURI to_uri=to_naddr.getAddress();
-			ah.addUsernameParam(_username);
-			ah.addRealmParam(_realm);
-			ah.addNonceParam(_nextNonce);
-			ah.addUriParam(req.getRequestLine().getAddress().toString());
-			ah.addQopParam(_qop);
-			String response=(new DigestAuthentication(SipMethods.REGISTER,ah,null,_passwd)).getResponse();
-			ah.addResponseParam(response);
-			req.setAuthorizationHeader(ah);
-		}
+		addAuthorization(req);
 		if (body!=null) {
 			LOG.debug("Register body type: {}; length: {} bytes", content_type, body.length);
 			req.setBody(content_type,body);
@@ -254,6 +243,29 @@ public class RegistrationClient implements TransactionClientListener {
 	}
 
 
+	/**
+	 * Adds credentials to a new REGISTER request before it is sent, if a nonce for the next
+	 * authentication is known.
+	 *
+	 * @param req
+	 *        The request to authorize.
+	 */
+	protected void addAuthorization(SipMessage req) {
+		if (_nextNonce!=null) {
+			AuthorizationHeader ah=new AuthorizationHeader("Digest");
+			//GenericURI to_uri=to_naddr.getAddress();
+			ah.addUsernameParam(_username);
+			ah.addRealmParam(_realm);
+			ah.addNonceParam(_nextNonce);
+			ah.addUriParam(req.getRequestLine().getAddress().toString());
+			ah.addQopParam(_qop);
+			String response=(new DigestAuthentication(SipMethods.REGISTER,ah,null,_passwd)).getResponse();
+			ah.addResponseParam(response);
+			req.setAuthorizationHeader(ah);
+		}
+	}
+
+
 	/** Unregisters all contacts with the registrar server.
 	  * It performs an unregistration (registration with 0 secs as expiration time) using '*' as contact address. */
 	public void unregisterall() {
@@ -371,7 +383,7 @@ public class RegistrationClient implements TransactionClientListener {
 				resetAttemptTimeout();
 				
 				renewTime = expires > 0 && expires < _renewTime ? expires : _renewTime;
-				_registrationTimer = _sipProvider.scheduler().schedule((long) renewTime * 1000,
+				_registrationTimer = _sipProvider.schedule(resp, (long) renewTime * 1000,
 						this::onRegistrationTimeout);
 			} else {
 				renewTime = 0;
@@ -435,7 +447,7 @@ public class RegistrationClient implements TransactionClientListener {
 					_listener.onRegistrationFailure(this, _toNAddr, _contactNAddr, result);
 				}
 				if (_loop) {
-					scheduleNextAttempt(_sipProvider.sipConfig().getRegMaxAttemptTimeout());
+					scheduleNextAttempt(resp, _sipProvider.sipConfig().getRegMaxAttemptTimeout());
 				}
 			}
 		}
@@ -450,7 +462,7 @@ public class RegistrationClient implements TransactionClientListener {
 				_listener.onRegistrationFailure(this, _toNAddr, _contactNAddr, "Timeout");
 			}
 			if (_loop) {
-				scheduleNextAttempt(nextTimeout());
+				scheduleNextAttempt(transaction.getRequestMessage(), nextTimeout());
 			}
 		}
 	}
@@ -468,10 +480,10 @@ public class RegistrationClient implements TransactionClientListener {
 		return result;
 	}
 
-	private void scheduleNextAttempt(long timeout) {
+	private void scheduleNextAttempt(SipMessage msg, long timeout) {
 		cancelRegistrationTimeout();
 
-		_attemptTimer = _sipProvider.scheduler().schedule(timeout, this::onAttemptTimeout);
+		_attemptTimer = _sipProvider.schedule(msg, timeout, this::onAttemptTimeout);
 
 		LOG.info("Waiting {}ms for next registration of {}.", timeout,  _contactNAddr);
 	}
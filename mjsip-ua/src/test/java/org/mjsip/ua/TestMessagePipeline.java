@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.ua;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+import org.mjsip.sip.provider.SipId;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.test.Loopback;
+import org.mjsip.sip.transaction.TransactionServer;
+
+/**
+ * Test case for {@link MessagePipeline}
+ */
+@SuppressWarnings("javadoc")
+class TestMessagePipeline {
+
+	private static final String ADDRESS = Loopback.ADDRESS;
+
+	private static final int WINDOW = 3;
+
+	private static final int MESSAGES = 30;
+
+	@Test
+	void testWindow() throws Exception {
+		try (Loopback.Providers providers = new Loopback.Providers()) {
+			SipProvider receiverProvider = providers.create();
+			SipProvider senderProvider = providers.create();
+			AtomicInteger inProgress = new AtomicInteger();
+			AtomicInteger maxInProgress = new AtomicInteger();
+			receiverProvider.addSelectiveListener(SipId.createMethodId(SipMethods.MESSAGE), (provider, req) -> {
+				maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+				provider.scheduler().schedule(10, () -> {
+					inProgress.decrementAndGet();
+					int code = req.getStringBody().equals("reject") ? 488 : 200;
+					new TransactionServer(provider, req, null)
+						.respondWith(provider.messageFactory().createResponse(req, code, null, null));
+				});
+			});
+
+			MessagePipeline pipeline = new MessagePipeline(senderProvider,
+				new NameAddress(new SipURI("sender", ADDRESS, senderProvider.getPort())), WINDOW);
+			List<CompletableFuture<SipMessage>> results = new ArrayList<>();
+			for (int n = 0; n < MESSAGES; n++) {
+				results.add(pipeline.send(new NameAddress(new SipURI("user" + n, ADDRESS, receiverProvider.getPort())), null,
+					"text/plain", (n == 0 ? "reject" : "message " + n).getBytes()));
+			}
+			CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+			Assertions.assertEquals(488, results.get(0).get().getStatusLine().getCode());
+			for (int n = 1; n < MESSAGES; n++) {
+				Assertions.assertEquals(200, results.get(n).get().getStatusLine().getCode());
+			}
+			Assertions.assertEquals(MESSAGES - 1, pipeline.getDelivered(), pipeline.toString());
+			Assertions.assertEquals(1, pipeline.getFailed(), pipeline.toString());
+			Assertions.assertEquals(0, pipeline.getInFlight(), pipeline.toString());
+			Assertions.assertEquals(WINDOW, maxInProgress.get(), "Messages in progress must be limited.");
+
+			pipeline.halt();
+			Assertions.assertTrue(pipeline.send("sip:late@" + ADDRESS, null, "late").isCancelled());
+		}
+	}
+
+	@Test
+	void testTcpConnectionReuse() throws Exception {
+		try (Loopback.Providers providers = new Loopback.Providers()) {
+			SipProvider receiverProvider = providers.create(Loopback.tcpConfig());
+			SipProvider senderProvider = providers.create(Loopback.tcpConfig());
+			Set<Integer> remotePorts = ConcurrentHashMap.newKeySet();
+			Set<Integer> viaCounts = ConcurrentHashMap.newKeySet();
+			receiverProvider.addSelectiveListener(SipId.createMethodId(SipMethods.MESSAGE), (provider, req) -> {
+				remotePorts.add(Integer.valueOf(req.getRemotePort()));
+				viaCounts.add(Integer.valueOf(req.getVias().size()));
+				new TransactionServer(provider, req, null)
+					.respondWith(provider.messageFactory().createResponse(req, 200, null, null));
+			});
+
+			MessagePipeline pipeline = new MessagePipeline(senderProvider,
+				new NameAddress(new SipURI("sender", ADDRESS, senderProvider.getPort())), WINDOW);
+			SipURI recipient = new SipURI("user", ADDRESS, receiverProvider.getPort());
+			recipient.addTransport("tcp");
+			for (int n = 0; n < MESSAGES; n++) {
+				pipeline.send(new NameAddress(recipient), null, "text/plain", ("message " + n).getBytes()).get(5,
+					TimeUnit.SECONDS);
+			}
+			Assertions.assertEquals(MESSAGES, pipeline.getDelivered(), pipeline.toString());
+			Assertions.assertEquals(1, remotePorts.size(), "Connection must be reused: " + remotePorts);
+			Assertions.assertEquals(Set.of(Integer.valueOf(1)), viaCounts, "Requests must have a single Via.");
+		}
+	}
+
+	@Test
+	void testQueueLimit() throws Exception {
+		try (Loopback.Providers providers = new Loopback.Providers()) {
+			SipProvider receiverProvider = providers.create();
+			SipProvider senderProvider = providers.create();
+			// Messages are never answered.
+			CountDownLatch received = new CountDownLatch(1);
+			receiverProvider.addSelectiveListener(SipId.createMethodId(SipMethods.MESSAGE), (provider, req) -> received.countDown());
+
+			MessagePipeline pipeline = new MessagePipeline(senderProvider,
+				new NameAddress(new SipURI("sender", ADDRESS, senderProvider.getPort())), 1, 2, MessagePipeline.DEFAULT_IDLE_TIMEOUT);
+			List<CompletableFuture<SipMessage>> results = new ArrayList<>();
+			for (int n = 0; n < 4; n++) {
+				results.add(pipeline.send("sip:user" + n + "@" + ADDRESS + ":" + receiverProvider.getPort(), null, "message " + n));
+			}
+			Assertions.assertTrue(received.await(5, TimeUnit.SECONDS));
+			Assertions.assertEquals(1, pipeline.getInFlight(), pipeline.toString());
+			Assertions.assertEquals(2, pipeline.getQueued(), pipeline.toString());
+			Assertions.assertEquals(1, pipeline.getRejected(), pipeline.toString());
+
+			ExecutionException rejected = Assertions.assertThrows(ExecutionException.class, () -> results.get(3).get());
+			Assertions.assertTrue(rejected.getCause() instanceof RejectedExecutionException, rejected.toString());
+			Assertions.assertFalse(results.get(0).isDone());
+
+			pipeline.halt();
+			Assertions.assertTrue(results.get(1).isCancelled());
+			Assertions.assertTrue(results.get(2).isCancelled());
+		}
+	}
+
+	@Test
+	void testIdleDestinationEviction() throws Exception {
+		try (Loopback.Providers providers = new Loopback.Providers()) {
+			SipProvider receiverProvider = providers.create();
+			SipProvider senderProvider = providers.create();
+			receiverProvider.addSelectiveListener(SipId.createMethodId(SipMethods.MESSAGE), (provider, req) -> {
+				new TransactionServer(provider, req, null)
+					.respondWith(provider.messageFactory().createResponse(req, 200, null, null));
+			});
+
+			MessagePipeline pipeline = new MessagePipeline(senderProvider,
+				new NameAddress(new SipURI("sender", ADDRESS, senderProvider.getPort())), WINDOW,
+				MessagePipeline.DEFAULT_MAX_QUEUED, 100);
+			for (int n = 0; n < 3; n++) {
+				pipeline.send("sip:user" + n + "@" + ADDRESS + ":" + receiverProvider.getPort(), null, "message " + n)
+					.get(5, TimeUnit.SECONDS);
+			}
+			Assertions.assertEquals(3, pipeline.getDelivered(), pipeline.toString());
+
+			long timeout = System.currentTimeMillis() + 5000;
+			while (pipeline.getDestinations() > 0 && System.currentTimeMillis() < timeout) {
+				Thread.sleep(20);
+			}
+			Assertions.assertEquals(0, pipeline.getDestinations(), "Idle destination must be dropped.");
+		}
+	}
+
+}
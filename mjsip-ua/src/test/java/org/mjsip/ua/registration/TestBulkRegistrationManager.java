@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.ua.registration;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.header.WwwAuthenticateHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+import org.mjsip.sip.provider.SipId;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.test.Loopback;
+import org.mjsip.sip.transaction.TransactionServer;
+
+/**
+ * Test case for {@link BulkRegistrationManager}
+ */
+@SuppressWarnings("javadoc")
+class TestBulkRegistrationManager {
+
+	private static final String ADDRESS = Loopback.ADDRESS;
+
+	private static final String REALM = "test";
+
+	private static final int LINES = 20;
+
+	@Test
+	void testRegisterAll() throws InterruptedException {
+		try (Loopback.Providers providers = new Loopback.Providers()) {
+			SipProvider registrarProvider = providers.create();
+			SipProvider uaProvider = providers.create();
+			AtomicInteger challenges = new AtomicInteger();
+			AtomicInteger inProgress = new AtomicInteger();
+			AtomicInteger maxInProgress = new AtomicInteger();
+			registrarProvider.addSelectiveListener(SipId.createMethodId(SipMethods.REGISTER), (provider, req) -> {
+				maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+				provider.scheduler().schedule(20, () -> {
+					inProgress.decrementAndGet();
+					SipMessage resp;
+					if (req.hasAuthorizationHeader()) {
+						resp = provider.messageFactory().createResponse(req, 200, null, null);
+					} else {
+						challenges.incrementAndGet();
+						resp = provider.messageFactory().createResponse(req, 401, null, null);
+						WwwAuthenticateHeader challenge = new WwwAuthenticateHeader("Digest");
+						challenge.addRealmParam(REALM);
+						challenge.addNonceParam("4711");
+						resp.setWwwAuthenticateHeader(challenge);
+					}
+					new TransactionServer(provider, req, null).respondWith(resp);
+				});
+			});
+
+			BulkRegistrationManager manager = new BulkRegistrationManager(uaProvider, 1);
+			SipURI registrar = new SipURI(ADDRESS, registrarProvider.getPort());
+			for (int n = 0; n < LINES; n++) {
+				manager.add(new Line(new NameAddress(new SipURI("line" + n, ADDRESS)), registrar));
+			}
+			manager.start(10);
+
+			for (int n = 0; n < 100 && manager.getRegistered() < LINES; n++) {
+				Thread.sleep(50);
+			}
+			Assertions.assertEquals(LINES, manager.getRegistered(), manager.toString());
+			Assertions.assertEquals(1, maxInProgress.get(), "Outstanding transactions must be limited.");
+			Assertions.assertEquals(1, challenges.get(), "The nonce of the realm must be reused.");
+
+			manager.unregister();
+			for (int n = 0; n < 100 && manager.getRegistered() > 0; n++) {
+				Thread.sleep(50);
+			}
+			Assertions.assertEquals(LINES, manager.getCount(BulkRegistrationManager.Status.IDLE), manager.toString());
+			manager.halt();
+		}
+	}
+
+	private static class Line implements RegistrationOptions {
+
+		private final NameAddress _user;
+
+		private final SipURI _registrar;
+
+		Line(NameAddress user, SipURI registrar) {
+			_user = user;
+			_registrar = registrar;
+		}
+
+		@Override
+		public NameAddress getUserURI() {
+			return _user;
+		}
+
+		@Override
+		public String getAuthUser() {
+			return _user.getAddress().toSipURI().getUserName();
+		}
+
+		@Override
+		public String getAuthPasswd() {
+			return "secret";
+		}
+
+		@Override
+		public String getAuthRealm() {
+			return REALM;
+		}
+
+		@Override
+		public SipURI getRoute() {
+			return null;
+		}
+
+		@Override
+		public SipURI getRegistrar() {
+			return _registrar;
+		}
+
+		@Override
+		public int getExpires() {
+			return 3600;
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.up;
+
+import java.io.ByteArrayOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.media.RtpStreamReceiver;
+import org.mjsip.media.StreamerOptions;
+import org.mjsip.pool.PortPool.Exhausted;
+import org.mjsip.pool.RtpSocketPair;
+import org.mjsip.pool.SocketPool;
+import org.mjsip.sip.test.Loopback;
+import org.mjsip.time.ServiceThreads;
+import org.zoolu.net.UdpPacket;
+
+/**
+ * Test case for {@link SocketPool}
+ */
+@SuppressWarnings("javadoc")
+class TestSocketPool {
+
+	/** Number of consecutive free ports available to each test. */
+	private static final int PORTS = 6;
+
+	private int _firstPort;
+
+	@BeforeEach
+	void findPorts() {
+		// The pool starts at an even port.
+		_firstPort = (Loopback.freePortRange(PORTS + 1) + 1) & ~1;
+	}
+
+	@Test
+	void testAllocate() {
+		SocketPool pool = new SocketPool(_firstPort, 4, 0);
+		try {
+			Assertions.assertEquals(2, pool.getSize());
+
+			int first = pool.allocate();
+			int second = pool.allocate();
+			Assertions.assertEquals(_firstPort, first);
+			Assertions.assertEquals(_firstPort + 2, second);
+			Assertions.assertFalse(pool.isAvailable());
+			Assertions.assertThrows(Exhausted.class, pool::allocate, "Allocating from an exhausted pool must fail.");
+
+			RtpSocketPair sockets = pool.getSockets(first);
+			Assertions.assertEquals(first, sockets.getRtpSocket().getLocalPort());
+			Assertions.assertEquals(first + 1, sockets.getRtcpSocket().getLocalPort());
+
+			pool.release(second);
+			pool.release(first);
+			Assertions.assertEquals(second, pool.allocate(), "Released sockets must be reused in release order.");
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	void testSkipPortsInUse() throws Exception {
+		try (DatagramSocket blocker = new DatagramSocket(_firstPort + 3)) {
+			SocketPool pool = new SocketPool(_firstPort, PORTS, 0);
+			try {
+				Assertions.assertEquals(2, pool.getSize());
+				Assertions.assertEquals(_firstPort, pool.allocate());
+				Assertions.assertEquals(_firstPort + 4, pool.allocate());
+			} finally {
+				pool.close();
+			}
+		}
+	}
+
+	@Test
+	void testRecycle() throws Exception {
+		SocketPool pool = new SocketPool(_firstPort, 2, 0);
+		try {
+			int port = pool.allocate();
+
+			// A late packet for the former call.
+			send(port);
+			Thread.sleep(50);
+			pool.release(port);
+
+			Assertions.assertEquals(port, pool.allocate());
+			RtpSocketPair sockets = pool.getSockets(port);
+			sockets.getRtpSocket().setSoTimeout(100);
+			byte[] buffer = new byte[16];
+			UdpPacket packet = new UdpPacket(buffer, buffer.length);
+			Assertions.assertThrows(SocketTimeoutException.class, () -> sockets.getRtpSocket().receive(packet),
+					"Stale packets must be discarded.");
+
+			send(port);
+			sockets.getRtpSocket().receive(packet);
+			Assertions.assertEquals(3, packet.getLength());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	void testRebindClosed() {
+		SocketPool pool = new SocketPool(_firstPort, 2, 0);
+		try {
+			int port = pool.allocate();
+
+			// Closed by the former user.
+			pool.getSockets(port).getRtcpSocket().close();
+			pool.release(port);
+
+			Assertions.assertEquals(port, pool.allocate());
+			RtpSocketPair sockets = pool.getSockets(port);
+			Assertions.assertEquals(port, sockets.getRtpSocket().getLocalPort());
+			Assertions.assertEquals(port + 1, sockets.getRtcpSocket().getLocalPort());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	void testHaltBorrowedReceiver() throws Exception {
+		SocketPool pool = new SocketPool(_firstPort, 2, 0);
+		try {
+			int port = pool.allocate();
+			RtpSocketPair sockets = pool.getSockets(port);
+
+			RtpStreamReceiver receiver = new RtpStreamReceiver(StreamerOptions.builder().build(),
+				new ByteArrayOutputStream(), null, null, sockets.getRtpSocket(), null);
+			receiver.setSocketBorrowed(true);
+			// Halting a receiver closes sockets that are not borrowed.
+			Thread thread = ServiceThreads.start(ServiceThreads.factory(true), receiver, "receiver");
+
+			// Wait for the receiver to block in receive.
+			while (!receiver.isRunning()) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(50);
+			receiver.halt();
+			thread.join(1000);
+			Assertions.assertFalse(thread.isAlive(), "Halting must wake up a pending receive.");
+
+			pool.release(port);
+			Assertions.assertEquals(port, pool.allocate());
+			Assertions.assertSame(sockets, pool.getSockets(port), "Borrowed sockets must not be bound again.");
+
+			sockets.getRtpSocket().setSoTimeout(1000);
+			send(port);
+			byte[] buffer = new byte[16];
+			UdpPacket packet = new UdpPacket(buffer, buffer.length);
+			sockets.getRtpSocket().receive(packet);
+			Assertions.assertEquals(3, packet.getLength(), "The wake-up packet must be discarded on reuse.");
+		} finally {
+			pool.close();
+		}
+	}
+
+	private static void send(int port) throws Exception {
+		byte[] data = { 1, 2, 3 };
+		try (DatagramSocket sender = new DatagramSocket()) {
+			sender.send(new DatagramPacket(data, data.length, InetAddress.getLoopbackAddress(), port));
+		}
+	}
+
+}
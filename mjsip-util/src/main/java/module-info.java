@@ -8,14 +8,18 @@
 module org.mjsip.util {
 
 	exports org.mjsip.config;
+	exports org.mjsip.metrics;
 	exports org.mjsip.time;
 	exports org.zoolu.util;
 	
 	opens org.mjsip.config to args4j;
+	opens org.mjsip.metrics to args4j;
 	opens org.mjsip.time to args4j;
 	
 	requires args4j;
 	requires org.slf4j;
 	requires java.desktop;
+	requires java.management;
+	requires jdk.httpserver;
 	
 }
\ No newline at end of file
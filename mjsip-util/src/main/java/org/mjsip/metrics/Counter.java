@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing count of events.
+ *
+ * <p>
+ * Incrementing is lock-free and scales with concurrent updates.
+ * </p>
+ *
+ * @see Metrics#counter(String, String, String...)
+ */
+public final class Counter extends Metric {
+
+	private final LongAdder _value = new LongAdder();
+
+	Counter(String name, String labels, String help) {
+		super(name, labels, help);
+	}
+
+	/**
+	 * Counts a single event.
+	 */
+	public void inc() {
+		_value.increment();
+	}
+
+	/**
+	 * Counts the given number of events.
+	 */
+	public void add(long n) {
+		_value.add(n);
+	}
+
+	/**
+	 * The number of events counted so far.
+	 */
+	public long get() {
+		return _value.sum();
+	}
+
+	@Override
+	public String getType() {
+		return "counter";
+	}
+
+	@Override
+	void writeSamples(StringBuilder out) {
+		out.append(getId()).append(' ').append(get()).append('\n');
+	}
+
+}
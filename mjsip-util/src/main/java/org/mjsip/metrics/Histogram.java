@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of latencies recorded in nanoseconds.
+ *
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is divided into
+ * {@value #SUB_BUCKETS} equally sized buckets, so that percentiles are reported with a relative
+ * error of at most 1/{@value #SUB_BUCKETS} over the full range of <code>long</code> values, using
+ * a fixed amount of memory. Recording is lock-free.
+ * </p>
+ *
+ * <p>
+ * In text exposition, the histogram is reported as summary in seconds.
+ * </p>
+ *
+ * @see Metrics#histogram(String, String, String...)
+ */
+public final class Histogram extends Metric {
+
+	private static final int SUB_BITS = 5;
+
+	/** Number of buckets per power of two. */
+	static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	/** Quantiles reported in text exposition. */
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder _count = new LongAdder();
+
+	private final LongAdder _sum = new LongAdder();
+
+	private final AtomicLong _max = new AtomicLong();
+
+	Histogram(String name, String labels, String help) {
+		super(name, labels, help);
+	}
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos
+	 *        The duration in nanoseconds, negative values are recorded as zero.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		_buckets.incrementAndGet(index(value));
+		_count.increment();
+		_sum.add(value);
+
+		long max = _max.get();
+		while (value > max && !_max.compareAndSet(max, value)) {
+			max = _max.get();
+		}
+	}
+
+	/**
+	 * Records the time elapsed since the given start time.
+	 *
+	 * @param startNanos
+	 *        The start time obtained from {@link System#nanoTime()}.
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * The number of recorded values.
+	 */
+	public long getCount() {
+		return _count.sum();
+	}
+
+	/**
+	 * The sum of all recorded values in nanoseconds.
+	 */
+	public long getSum() {
+		return _sum.sum();
+	}
+
+	/**
+	 * The largest recorded value in nanoseconds.
+	 */
+	public long getMax() {
+		return _max.get();
+	}
+
+	/**
+	 * The average of all recorded values in nanoseconds.
+	 */
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : (double) getSum() / count;
+	}
+
+	/**
+	 * The value in nanoseconds below which the given fraction of recorded values fall.
+	 *
+	 * @param quantile
+	 *        The fraction between 0 and 1, e.g. <code>0.99</code> for the 99th percentile.
+	 */
+	public long getPercentile(double quantile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int n = 0; n < BUCKETS; n++) {
+			long count = _buckets.get(n);
+			counts[n] = count;
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		if (rank >= total) {
+			// The largest value is known exactly.
+			return getMax();
+		}
+		long seen = 0;
+		for (int n = 0; n < BUCKETS; n++) {
+			seen += counts[n];
+			if (seen >= rank) {
+				long low = lowerBound(n);
+				long high = lowerBound(n + 1) - 1;
+				return Math.min(low + (high - low) / 2, getMax());
+			}
+		}
+		return getMax();
+	}
+
+	static int index(long value) {
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	static long lowerBound(int index) {
+		if (index < 2 * SUB_BUCKETS) {
+			return index;
+		}
+		if (index >= BUCKETS) {
+			return Long.MAX_VALUE;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+		return mantissa << shift;
+	}
+
+	@Override
+	public String getType() {
+		return "summary";
+	}
+
+	@Override
+	void writeSamples(StringBuilder out) {
+		String labels = getLabels();
+		String separator = labels.isEmpty() ? "" : ",";
+		for (double quantile : QUANTILES) {
+			out.append(getName()).append('{').append(labels).append(separator).append("quantile=\"").append(quantile)
+				.append("\"} ").append(seconds(getPercentile(quantile))).append('\n');
+		}
+		out.append(id(getName() + "_sum", labels)).append(' ').append(seconds(getSum())).append('\n');
+		out.append(id(getName() + "_count", labels)).append(' ').append(getCount()).append('\n');
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+/**
+ * Base class for values observed by a {@link Metrics} registry.
+ *
+ * <p>
+ * A metric is identified by its name and an optional set of labels, e.g.
+ * <code>sip_messages_received_total{method="INVITE"}</code>.
+ * </p>
+ */
+public abstract class Metric {
+
+	private final String _name;
+
+	private final String _labels;
+
+	private final String _help;
+
+	/**
+	 * Creates a {@link Metric}.
+	 *
+	 * @param name
+	 *        See {@link #getName()}.
+	 * @param labels
+	 *        See {@link #getLabels()}.
+	 * @param help
+	 *        See {@link #getHelp()}.
+	 */
+	protected Metric(String name, String labels, String help) {
+		_name = name;
+		_labels = labels;
+		_help = help;
+	}
+
+	/**
+	 * The name of the metric without labels.
+	 */
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * The labels in exposition format, e.g. <code>method="INVITE"</code>, or the empty string.
+	 */
+	public String getLabels() {
+		return _labels;
+	}
+
+	/**
+	 * Description of the metric.
+	 */
+	public String getHelp() {
+		return _help;
+	}
+
+	/**
+	 * The unique identifier of this metric consisting of its name and labels.
+	 */
+	public String getId() {
+		return id(_name, _labels);
+	}
+
+	/**
+	 * The metric type in the text exposition format.
+	 */
+	public abstract String getType();
+
+	/**
+	 * Appends the samples of this metric in text exposition format.
+	 */
+	abstract void writeSamples(StringBuilder out);
+
+	static String id(String name, String labels) {
+		return labels.isEmpty() ? name : name + '{' + labels + '}';
+	}
+
+	@Override
+	public String toString() {
+		return getId();
+	}
+
+}
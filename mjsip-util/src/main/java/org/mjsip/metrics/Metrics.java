@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of {@link Metric}s.
+ *
+ * <p>
+ * Components look up their metrics once, e.g. in a static initializer, and update them without
+ * further synchronization. The whole registry can be exported in text exposition format with
+ * {@link #writeText(Appendable)}, or through JMX and HTTP with {@link MetricsExporter}.
+ * </p>
+ *
+ * <p>
+ * Labels are given as alternating names and values. Since each distinct label value creates a
+ * separate metric, values must be taken from a bounded set, e.g. SIP methods known to the stack,
+ * never from arbitrary message contents.
+ * </p>
+ */
+public class Metrics {
+
+	private static final Metrics GLOBAL = new Metrics();
+
+	private final ConcurrentHashMap<String, Metric> _metrics = new ConcurrentHashMap<>();
+
+	/**
+	 * The registry that is used by all components of the stack.
+	 */
+	public static Metrics global() {
+		return GLOBAL;
+	}
+
+	/**
+	 * Looks up or creates a {@link Counter}.
+	 *
+	 * @param name
+	 *        The metric name, by convention ending with <code>_total</code>.
+	 * @param help
+	 *        Description of the metric.
+	 * @param labels
+	 *        Alternating label names and values.
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		return lookup(Counter.class, name, help, labels, Counter::new);
+	}
+
+	/**
+	 * Looks up or creates a {@link Histogram}.
+	 *
+	 * @param name
+	 *        The metric name, by convention ending with <code>_seconds</code>.
+	 * @param help
+	 *        Description of the metric.
+	 * @param labels
+	 *        Alternating label names and values.
+	 */
+	public Histogram histogram(String name, String help, String... labels) {
+		return lookup(Histogram.class, name, help, labels, Histogram::new);
+	}
+
+	private <T extends Metric> T lookup(Class<T> type, String name, String help, String[] labels,
+			TriFunction<String, String, String, T> constructor) {
+		String labelText = labels(labels);
+		Metric result = _metrics.computeIfAbsent(Metric.id(name, labelText),
+				id -> constructor.apply(name, labelText, help));
+		if (!type.isInstance(result)) {
+			throw new IllegalArgumentException(
+					"Metric '" + result.getId() + "' is a " + result.getType() + ", not a " + type.getSimpleName() + ".");
+		}
+		return type.cast(result);
+	}
+
+	private static String labels(String[] labels) {
+		if (labels.length == 0) {
+			return "";
+		}
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("Labels must be given as name/value pairs.");
+		}
+		StringBuilder result = new StringBuilder();
+		for (int n = 0; n < labels.length; n += 2) {
+			if (n > 0) {
+				result.append(',');
+			}
+			result.append(labels[n]).append("=\"");
+			escape(result, labels[n + 1]);
+			result.append('"');
+		}
+		return result.toString();
+	}
+
+	private static void escape(StringBuilder out, String value) {
+		for (int n = 0, cnt = value.length(); n < cnt; n++) {
+			char ch = value.charAt(n);
+			switch (ch) {
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			default:
+				out.append(ch);
+			}
+		}
+	}
+
+	/**
+	 * All metrics of this registry ordered by name and labels.
+	 */
+	public List<Metric> getMetrics() {
+		List<Metric> result = new ArrayList<>(_metrics.values());
+		result.sort(Comparator.comparing(Metric::getName).thenComparing(Metric::getLabels));
+		return result;
+	}
+
+	/**
+	 * Writes all metrics in the text exposition format of Prometheus.
+	 */
+	public void writeText(Appendable out) throws IOException {
+		StringBuilder buffer = new StringBuilder();
+		String lastName = null;
+		for (Metric metric : getMetrics()) {
+			String name = metric.getName();
+			if (!name.equals(lastName)) {
+				buffer.append("# HELP ").append(name).append(' ').append(metric.getHelp()).append('\n');
+				buffer.append("# TYPE ").append(name).append(' ').append(metric.getType()).append('\n');
+				lastName = name;
+			}
+			metric.writeSamples(buffer);
+		}
+		out.append(buffer);
+	}
+
+	/**
+	 * Constructor of a {@link Metric} from name, labels, and help text.
+	 */
+	private interface TriFunction<A, B, C, R> {
+		R apply(A a, B b, C c);
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import org.kohsuke.args4j.Option;
+import org.mjsip.config.YesNoHandler;
+
+/**
+ * Configuration options for exporting {@link Metrics}.
+ *
+ * @see MetricsExporter
+ */
+public class MetricsConfig {
+
+	@Option(name = "--metrics-port", usage = "The HTTP port serving metrics in text format at /metrics, 0 to disable.")
+	private int _httpPort = 0;
+
+	@Option(name = "--metrics-jmx", handler = YesNoHandler.class, usage = "Whether to register metrics as JMX bean.")
+	private boolean _jmx = false;
+
+	/**
+	 * The HTTP port serving metrics in text exposition format, or <code>0</code> if metrics are not
+	 * served via HTTP.
+	 */
+	public int getHttpPort() {
+		return _httpPort;
+	}
+
+	/** @see #getHttpPort() */
+	public void setHttpPort(int httpPort) {
+		_httpPort = httpPort;
+	}
+
+	/**
+	 * Whether metrics are registered with the platform MBean server.
+	 */
+	public boolean useJmx() {
+		return _jmx;
+	}
+
+	/** @see #useJmx() */
+	public void setJmx(boolean jmx) {
+		_jmx = jmx;
+	}
+
+	/**
+	 * Whether any export is configured.
+	 */
+	public boolean isEnabled() {
+		return _httpPort > 0 || _jmx;
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exports a {@link Metrics} registry through JMX and a HTTP endpoint serving the text exposition
+ * format.
+ */
+public class MetricsExporter implements AutoCloseable {
+
+	/** The JMX name of the exported registry. */
+	public static final String OBJECT_NAME = "org.mjsip:type=Metrics";
+
+	/** The HTTP path of the text exposition. */
+	public static final String PATH = "/metrics";
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final Metrics _metrics;
+
+	private ObjectName _name;
+
+	private HttpServer _server;
+
+	private ExecutorService _executor;
+
+	private MetricsExporter(Metrics metrics) {
+		_metrics = metrics;
+	}
+
+	/**
+	 * Exports the global registry, if enabled in the given configuration.
+	 *
+	 * @return The exporter, or <code>null</code> if no export is configured.
+	 * @throws UncheckedIOException
+	 *         If the export cannot be started, e.g. because the HTTP port is in use.
+	 *
+	 * @see MetricsConfig#isEnabled()
+	 */
+	public static MetricsExporter startIfEnabled(MetricsConfig config) {
+		if (!config.isEnabled()) {
+			return null;
+		}
+		try {
+			return start(config);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Cannot export metrics.", ex);
+		}
+	}
+
+	/**
+	 * Exports the global registry as configured.
+	 *
+	 * @see Metrics#global()
+	 */
+	public static MetricsExporter start(MetricsConfig config) throws IOException {
+		return start(Metrics.global(), config);
+	}
+
+	/**
+	 * Exports the given registry as configured.
+	 *
+	 * @param metrics
+	 *        The registry to export.
+	 * @param config
+	 *        The export options.
+	 * @return The exporter to stop the export with {@link #close()}.
+	 */
+	public static MetricsExporter start(Metrics metrics, MetricsConfig config) throws IOException {
+		MetricsExporter result = new MetricsExporter(metrics);
+		try {
+			if (config.useJmx()) {
+				result.registerMBean();
+			}
+			if (config.getHttpPort() > 0) {
+				result.startServer(config.getHttpPort());
+			}
+		} catch (IOException | RuntimeException ex) {
+			result.close();
+			throw ex;
+		}
+		return result;
+	}
+
+	private void registerMBean() throws IOException {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			server.registerMBean(new MetricsMBean(_metrics), name);
+			_name = name;
+		} catch (JMException ex) {
+			throw new IOException("Cannot register metrics bean: " + ex.getMessage(), ex);
+		}
+	}
+
+	private void startServer(int port) throws IOException {
+		_server = HttpServer.create(new InetSocketAddress(port), 0);
+		_server.createContext(PATH, this::handle);
+		_executor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "MetricsExporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		_server.setExecutor(_executor);
+		_server.start();
+	}
+
+	/**
+	 * The HTTP port the metrics are served on, or <code>0</code> if not served via HTTP.
+	 */
+	public int getPort() {
+		return _server == null ? 0 : _server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			StringBuilder text = new StringBuilder();
+			_metrics.writeText(text);
+			byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (_server != null) {
+			_server.stop(0);
+			_server = null;
+		}
+		if (_executor != null) {
+			_executor.shutdown();
+			_executor = null;
+		}
+		if (_name != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(_name);
+			} catch (JMException ex) {
+				// Ignore.
+			}
+			_name = null;
+		}
+	}
+
+}
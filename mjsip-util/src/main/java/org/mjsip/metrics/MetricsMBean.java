@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Read-only JMX view of a {@link Metrics} registry.
+ *
+ * <p>
+ * Each {@link Counter} is an attribute named by its identifier. Each {@link Histogram} is reported
+ * with the attributes <code>.count</code>, <code>.mean</code>, <code>.p50</code>,
+ * <code>.p90</code>, <code>.p99</code>, and <code>.max</code> appended to its identifier, all
+ * latencies in milliseconds. Metrics created after registration appear automatically.
+ * </p>
+ */
+public class MetricsMBean implements DynamicMBean {
+
+	private static final String COUNT = ".count";
+
+	private static final String MEAN = ".mean";
+
+	private static final String P50 = ".p50";
+
+	private static final String P90 = ".p90";
+
+	private static final String P99 = ".p99";
+
+	private static final String MAX = ".max";
+
+	private static final String[] HISTOGRAM_ATTRIBUTES = { COUNT, MEAN, P50, P90, P99, MAX };
+
+	private final Metrics _metrics;
+
+	/**
+	 * Creates a {@link MetricsMBean}.
+	 */
+	public MetricsMBean(Metrics metrics) {
+		_metrics = metrics;
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		for (Metric metric : _metrics.getMetrics()) {
+			String id = metric.getId();
+			if (metric instanceof Counter) {
+				if (id.equals(attribute)) {
+					return Long.valueOf(((Counter) metric).get());
+				}
+			} else if (metric instanceof Histogram && attribute.startsWith(id)) {
+				Object result = histogramValue((Histogram) metric, attribute.substring(id.length()));
+				if (result != null) {
+					return result;
+				}
+			}
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	private static Object histogramValue(Histogram histogram, String suffix) {
+		switch (suffix) {
+		case COUNT:
+			return Long.valueOf(histogram.getCount());
+		case MEAN:
+			return millis(histogram.getMean());
+		case P50:
+			return millis(histogram.getPercentile(0.5));
+		case P90:
+			return millis(histogram.getPercentile(0.9));
+		case P99:
+			return millis(histogram.getPercentile(0.99));
+		case MAX:
+			return millis(histogram.getMax());
+		default:
+			return null;
+		}
+	}
+
+	private static Double millis(double nanos) {
+		return Double.valueOf(nanos / 1e6);
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList result = new AttributeList();
+		for (String attribute : attributes) {
+			try {
+				result.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (AttributeNotFoundException ex) {
+				// Skip.
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<>();
+		for (Metric metric : _metrics.getMetrics()) {
+			String id = metric.getId();
+			if (metric instanceof Counter) {
+				attributes.add(new MBeanAttributeInfo(id, Long.class.getName(), metric.getHelp(), true, false, false));
+			} else if (metric instanceof Histogram) {
+				for (String suffix : HISTOGRAM_ATTRIBUTES) {
+					String type = suffix.equals(COUNT) ? Long.class.getName() : Double.class.getName();
+					attributes.add(new MBeanAttributeInfo(id + suffix, type, metric.getHelp(), true, false, false));
+				}
+			}
+		}
+		return new MBeanInfo(getClass().getName(), "mjSIP metrics", attributes.toArray(new MBeanAttributeInfo[0]), null,
+				new MBeanOperationInfo[0], null);
+	}
+
+}
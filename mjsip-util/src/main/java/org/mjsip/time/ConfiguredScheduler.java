@@ -8,6 +8,8 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 
+import org.slf4j.LoggerFactory;
+
 /**
  * Service for scheduling tasks.
  *
@@ -15,6 +17,8 @@ import java.util.concurrent.ThreadFactory;
  */
 public class ConfiguredScheduler implements Scheduler {
 
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ConfiguredScheduler.class);
+
 	/**
 	 * Inner non-daemon scheduler. The program terminates only when all non-daemon timers
 	 * (associated to this scheduler) have ended (for timeout or explicitly halted)
@@ -27,12 +31,21 @@ public class ConfiguredScheduler implements Scheduler {
 	 */
 	private ScheduledThreadPoolExecutor daemonExecutor;
 
+	/**
+	 * Factory for threads of long-running blocking services.
+	 */
+	private final ThreadFactory serviceThreads;
+
 	/**
 	 * Creates a {@link ConfiguredScheduler}.
 	 */
 	public ConfiguredScheduler(SchedulerConfig config) {
 		executor = new ScheduledThreadPoolExecutor(config.getThreadPoolSize(),
 				config.useDaemonThreads() ? new DaemonFactory() : Executors.defaultThreadFactory());
+		if (config.useVirtualThreads() && !ServiceThreads.isVirtualSupported()) {
+			LOG.warn("Virtual threads are not supported by this JVM, using platform threads.");
+		}
+		serviceThreads = ServiceThreads.factory(config.useVirtualThreads());
 	}
 	
 	@Override
@@ -45,6 +58,21 @@ public class ConfiguredScheduler implements Scheduler {
 		return executor;
 	}
 
+	@Override
+	public ThreadFactory serviceThreads() {
+		return serviceThreads;
+	}
+
+	/**
+	 * Stops all threads of this scheduler, tasks not yet run are discarded.
+	 */
+	public void halt() {
+		executor.shutdownNow();
+		if (daemonExecutor != null) {
+			daemonExecutor.shutdownNow();
+		}
+	}
+
 	/**
 	 * Executor for background tasks that end if the program terminates.
 	 */
@@ -7,6 +7,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -31,6 +32,23 @@ public interface Scheduler extends Executor {
 		executor().execute(command);
 	}
 
+	/**
+	 * The factory for threads of long-running blocking services, like media streams and
+	 * connectors.
+	 *
+	 * @see ServiceThreads
+	 */
+	default ThreadFactory serviceThreads() {
+		return ServiceThreads.PLATFORM;
+	}
+
+	/**
+	 * Executor that starts each task in a new thread of {@link #serviceThreads()}.
+	 */
+	default Executor serviceExecutor() {
+		return ServiceThreads.executor(serviceThreads());
+	}
+
 	/**
 	 * Schedules a new task.
 	 * 
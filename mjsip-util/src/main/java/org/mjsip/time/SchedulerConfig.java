@@ -19,6 +19,9 @@ public class SchedulerConfig {
 	@Option(name = "--use-daemon-treads", handler = YesNoHandler.class)
 	private boolean _daemonThreads = true;
 
+	@Option(name = "--virtual-threads", handler = YesNoHandler.class)
+	private boolean _virtualThreads = false;
+
 	/**
 	 * The core pool size of the scheduler's thread pool.
 	 */
@@ -33,4 +36,20 @@ public class SchedulerConfig {
 		return _daemonThreads;
 	}
 
+	/**
+	 * Whether blocking services like media streams and connectors run on virtual threads.
+	 *
+	 * @see Scheduler#serviceThreads()
+	 */
+	public boolean useVirtualThreads() {
+		return _virtualThreads;
+	}
+
+	/**
+	 * @see #useVirtualThreads()
+	 */
+	public void setVirtualThreads(boolean value) {
+		_virtualThreads = value;
+	}
+
 }
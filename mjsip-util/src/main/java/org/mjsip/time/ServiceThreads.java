@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.time;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories for long-running blocking services like media streams and connectors.
+ *
+ * <p>
+ * By default, each service runs on its own platform thread. With virtual threads, a single JVM
+ * can serve many thousands of concurrent calls without tuning thread stack sizes. The factory to
+ * use is provided by the {@link Scheduler}, see {@link Scheduler#serviceThreads()}, and selected
+ * with {@link SchedulerConfig#useVirtualThreads()}.
+ * </p>
+ *
+ * <p>
+ * Services are halted by closing their sockets, independent of the kind of thread they run on.
+ * Therefore, a blocking receive needs no socket timeout to check for a stop request.
+ * </p>
+ */
+public final class ServiceThreads {
+
+	/**
+	 * Factory for platform threads.
+	 */
+	public static final ThreadFactory PLATFORM = Thread::new;
+
+	private static final ThreadFactory VIRTUAL = createVirtualFactory();
+
+	private ServiceThreads() {
+		// Static utility.
+	}
+
+	/**
+	 * Whether the running JVM supports virtual threads.
+	 */
+	public static boolean isVirtualSupported() {
+		return VIRTUAL != null;
+	}
+
+	/**
+	 * The factory for service threads.
+	 *
+	 * @param virtual
+	 *        Whether to use virtual threads.
+	 * @return The factory for virtual threads, or {@link #PLATFORM}, if virtual threads are not
+	 *         requested or not supported by the running JVM.
+	 */
+	public static ThreadFactory factory(boolean virtual) {
+		return virtual && VIRTUAL != null ? VIRTUAL : PLATFORM;
+	}
+
+	/**
+	 * Starts the given service in a new thread.
+	 *
+	 * @param factory
+	 *        The factory to create the thread with.
+	 * @param service
+	 *        The service to run.
+	 * @param name
+	 *        The name of the thread.
+	 * @return The started thread.
+	 */
+	public static Thread start(ThreadFactory factory, Runnable service, String name) {
+		Thread thread = factory.newThread(service);
+		thread.setName(name);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * An executor that starts each task in a new thread of the given factory.
+	 */
+	public static Executor executor(ThreadFactory factory) {
+		return task -> factory.newThread(task).start();
+	}
+
+	/**
+	 * The socket timeout for a blocking receive of a service.
+	 *
+	 * @param aliveTime
+	 *        The time in milliseconds after which the service stops, <code>0</code> for no limit.
+	 * @return The timeout to pass to <code>setSoTimeout()</code>, <code>0</code> for no limit.
+	 */
+	public static int receiveTimeout(long aliveTime) {
+		return aliveTime > 0 ? (int) Math.min(aliveTime, Integer.MAX_VALUE) : 0;
+	}
+
+	/**
+	 * Looks up <code>Thread.ofVirtual().factory()</code>, which is not available at the Java version
+	 * this library is compiled for.
+	 */
+	private static ThreadFactory createVirtualFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+			return null;
+		}
+	}
+
+}
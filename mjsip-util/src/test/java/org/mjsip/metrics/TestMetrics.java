@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test case for {@link Metrics}
+ */
+@SuppressWarnings("javadoc")
+class TestMetrics {
+
+	@Test
+	void testBuckets() {
+		for (long value = 0; value < 1_000_000; value++) {
+			int index = Histogram.index(value);
+			Assertions.assertTrue(Histogram.lowerBound(index) <= value, "Value below bucket: " + value);
+			Assertions.assertTrue(value < Histogram.lowerBound(index + 1), "Value above bucket: " + value);
+		}
+		Assertions.assertTrue(Histogram.lowerBound(Histogram.index(Long.MAX_VALUE)) <= Long.MAX_VALUE);
+	}
+
+	@Test
+	void testPercentiles() {
+		Histogram histogram = new Metrics().histogram("latency_seconds", "Latency.");
+		for (long n = 1; n <= 1000; n++) {
+			histogram.record(n * 1_000_000L);
+		}
+		Assertions.assertEquals(1000, histogram.getCount());
+		Assertions.assertEquals(1_000_000_000L, histogram.getMax());
+		assertClose(500_000_000L, histogram.getPercentile(0.5));
+		assertClose(990_000_000L, histogram.getPercentile(0.99));
+		Assertions.assertEquals(1_000_000_000L, histogram.getPercentile(1.0));
+	}
+
+	private static void assertClose(long expected, long actual) {
+		Assertions.assertTrue(Math.abs(expected - actual) <= expected / Histogram.SUB_BUCKETS,
+			"Expected about " + expected + " but was " + actual);
+	}
+
+	@Test
+	void testRegistry() {
+		Metrics metrics = new Metrics();
+		Counter counter = metrics.counter("requests_total", "Requests.", "method", "INVITE");
+		Assertions.assertSame(counter, metrics.counter("requests_total", "Requests.", "method", "INVITE"));
+		Assertions.assertNotSame(counter, metrics.counter("requests_total", "Requests.", "method", "BYE"));
+		Assertions.assertThrows(IllegalArgumentException.class,
+			() -> metrics.histogram("requests_total", "Requests.", "method", "INVITE"));
+	}
+
+	@Test
+	void testText() throws IOException {
+		Metrics metrics = new Metrics();
+		metrics.counter("requests_total", "Requests.", "method", "INVITE").add(3);
+		metrics.counter("requests_total", "Requests.", "method", "BYE").inc();
+		metrics.histogram("latency_seconds", "Latency.").record(2_000_000_000L);
+
+		StringBuilder out = new StringBuilder();
+		metrics.writeText(out);
+		Assertions.assertEquals(
+			"# HELP latency_seconds Latency.\n" +
+			"# TYPE latency_seconds summary\n" +
+			"latency_seconds{quantile=\"0.5\"} 2.0\n" +
+			"latency_seconds{quantile=\"0.9\"} 2.0\n" +
+			"latency_seconds{quantile=\"0.99\"} 2.0\n" +
+			"latency_seconds{quantile=\"0.999\"} 2.0\n" +
+			"latency_seconds_sum 2.0\n" +
+			"latency_seconds_count 1\n" +
+			"# HELP requests_total Requests.\n" +
+			"# TYPE requests_total counter\n" +
+			"requests_total{method=\"BYE\"} 1\n" +
+			"requests_total{method=\"INVITE\"} 3\n",
+			out.toString());
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.time;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link ServiceThreads} and the service threads of a {@link Scheduler}.
+ */
+@SuppressWarnings("javadoc")
+class TestServiceThreads {
+
+	@Test
+	void testPlatformDefault() throws Exception {
+		ConfiguredScheduler scheduler = new ConfiguredScheduler(new SchedulerConfig());
+		try {
+			Assertions.assertSame(ServiceThreads.PLATFORM, scheduler.serviceThreads());
+
+			Thread thread = runService(scheduler);
+			Assertions.assertFalse(thread.toString().contains("Virtual"), thread.toString());
+		} finally {
+			scheduler.halt();
+		}
+	}
+
+	@Test
+	void testVirtual() throws Exception {
+		Assumptions.assumeTrue(ServiceThreads.isVirtualSupported(), "No virtual threads in this JVM.");
+
+		SchedulerConfig config = new SchedulerConfig();
+		config.setVirtualThreads(true);
+		ConfiguredScheduler scheduler = new ConfiguredScheduler(config);
+		try {
+			Thread thread = runService(scheduler);
+			Assertions.assertTrue(thread.toString().contains("Virtual"), thread.toString());
+		} finally {
+			scheduler.halt();
+		}
+	}
+
+	@Test
+	void testVirtualFallback() {
+		ThreadFactory factory = ServiceThreads.factory(true);
+		Assertions.assertEquals(ServiceThreads.isVirtualSupported(), factory != ServiceThreads.PLATFORM);
+		Assertions.assertSame(ServiceThreads.PLATFORM, ServiceThreads.factory(false));
+	}
+
+	@Test
+	void testStart() throws Exception {
+		BlockingQueue<String> names = new LinkedBlockingQueue<>();
+		Thread thread = ServiceThreads.start(ServiceThreads.PLATFORM,
+			() -> names.add(Thread.currentThread().getName()), "Service");
+		Assertions.assertEquals("Service", names.poll(5, TimeUnit.SECONDS));
+		thread.join(5000);
+		Assertions.assertFalse(thread.isAlive());
+	}
+
+	@Test
+	void testReceiveTimeout() {
+		Assertions.assertEquals(0, ServiceThreads.receiveTimeout(0));
+		Assertions.assertEquals(5000, ServiceThreads.receiveTimeout(5000));
+		// Alive times beyond the int range are not truncated to negative values.
+		Assertions.assertEquals(Integer.MAX_VALUE, ServiceThreads.receiveTimeout(Long.MAX_VALUE));
+	}
+
+	/**
+	 * Runs a blocking service with the service executor of the given scheduler.
+	 *
+	 * @return The thread the service ran on.
+	 */
+	private static Thread runService(Scheduler scheduler) throws InterruptedException {
+		BlockingQueue<Thread> threads = new LinkedBlockingQueue<>();
+		scheduler.serviceExecutor().execute(() -> threads.add(Thread.currentThread()));
+		Thread thread = threads.poll(5, TimeUnit.SECONDS);
+		Assertions.assertNotNull(thread);
+		Assertions.assertNotEquals(Thread.currentThread(), thread);
+		// A service does not block the scheduler's threads.
+		Assertions.assertFalse(thread.getName().startsWith("pool-"), thread.getName());
+		return thread;
+	}
+
+}